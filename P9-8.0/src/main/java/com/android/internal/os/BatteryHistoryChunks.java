@@ -0,0 +1,259 @@
+package com.android.internal.os;
+
+import android.os.FileUtils;
+import android.os.Parcel;
+import android.util.AtomicFile;
+import android.util.Slog;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * On-disk copy of the battery history buffer, split into fixed-size chunk files next to a small
+ * manifest holding the tag pool, the total size and the generation of every chunk. The history
+ * buffer only grows at its end or is cut back to a recent position, so the owner reports the
+ * lowest position it touched and a flush rewrites the chunks from there on only. The summary file
+ * is then written without the history, which turns the per-minute write from the whole buffer into
+ * about one chunk.
+ *
+ * A rewritten chunk goes to a new file named after the flush generation, and the manifest is
+ * replaced by rename once all of them are synced. A crash at any point leaves the previous
+ * manifest and the chunk files it names intact. Files no manifest names any more are deleted after
+ * the rename.
+ */
+final class BatteryHistoryChunks {
+    static final int CHUNK_SIZE = 32768;
+    private static final String CHUNK_SUFFIX = ".bin";
+    private static final String META_FILE = "meta";
+    private static final int META_VERSION = 2;
+    private static final String TAG = "BatteryHistoryChunks";
+    private final ArrayList<Integer> mChunkGenerations = new ArrayList();
+    private final File mDir;
+    private int mDirtyPos = 0;
+    private int mGeneration = 0;
+    private final ArrayList<Flush> mInFlight = new ArrayList();
+
+    static final class Flush {
+        final byte[] mData;
+        final byte[] mMeta;
+        final int mSize;
+        final int mStart;
+
+        Flush(int start, byte[] data, int size, byte[] meta) {
+            this.mStart = start;
+            this.mData = data;
+            this.mSize = size;
+            this.mMeta = meta;
+        }
+    }
+
+    BatteryHistoryChunks(File dir) {
+        this.mDir = dir;
+    }
+
+    /** Records that the history buffer changed at or after pos. */
+    synchronized void markDirty(int pos) {
+        if (pos < this.mDirtyPos) {
+            this.mDirtyPos = pos;
+        }
+    }
+
+    /**
+     * Copies the dirty chunks out of the history buffer. A flush that was prepared but never
+     * committed, or that is still being committed, is folded in, so this one can replace it.
+     */
+    synchronized Flush prepare(Parcel history, Parcel meta, Flush pending) {
+        int size = history.dataSize();
+        int dirty = Math.min(this.mDirtyPos, size);
+        if (pending != null && pending.mStart < dirty) {
+            dirty = pending.mStart;
+        }
+        int inFlightSize = this.mInFlight.size();
+        for (int i = 0; i < inFlightSize; i++) {
+            int start = ((Flush) this.mInFlight.get(i)).mStart;
+            if (start < dirty) {
+                dirty = start;
+            }
+        }
+        int start = dirty - (dirty % CHUNK_SIZE);
+        Parcel tail = Parcel.obtain();
+        tail.appendFrom(history, start, size - start);
+        byte[] data = tail.marshall();
+        tail.recycle();
+        this.mDirtyPos = size;
+        return new Flush(start, data, size, meta.marshall());
+    }
+
+    /** Marks a flush as taken for commit; later flushes cover its range until it is released. */
+    synchronized void begin(Flush flush) {
+        this.mInFlight.add(flush);
+    }
+
+    synchronized void release(Flush flush) {
+        this.mInFlight.remove(flush);
+    }
+
+    /**
+     * Writes the chunks of the flush to new files and then switches the manifest over to them.
+     * Called with the write lock held.
+     */
+    void commit(Flush flush) throws IOException {
+        try {
+            if (!this.mDir.exists() && !this.mDir.mkdirs()) {
+                throw new IOException("can't create " + this.mDir);
+            }
+            int first = flush.mStart / CHUNK_SIZE;
+            int count = (flush.mSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            if (first > this.mChunkGenerations.size()) {
+                throw new IOException("chunks before " + first + " were never written");
+            }
+            int generation = this.mGeneration + 1;
+            ArrayList<Integer> generations = new ArrayList(this.mChunkGenerations.subList(0, Math.min(first, count)));
+            for (int pos = flush.mStart; pos < flush.mSize; pos += CHUNK_SIZE) {
+                writeChunk(getChunkFile(pos / CHUNK_SIZE, generation), flush.mData, pos - flush.mStart, Math.min(CHUNK_SIZE, flush.mSize - pos));
+                generations.add(Integer.valueOf(generation));
+            }
+            Parcel meta = Parcel.obtain();
+            meta.writeInt(META_VERSION);
+            meta.writeInt(flush.mSize);
+            meta.writeInt(generation);
+            meta.writeInt(generations.size());
+            int size = generations.size();
+            for (int i = 0; i < size; i++) {
+                meta.writeInt(((Integer) generations.get(i)).intValue());
+            }
+            byte[] header = meta.marshall();
+            meta.recycle();
+            byte[] data = new byte[(header.length + flush.mMeta.length)];
+            System.arraycopy(header, 0, data, 0, header.length);
+            System.arraycopy(flush.mMeta, 0, data, header.length, flush.mMeta.length);
+            AtomicFile metaFile = new AtomicFile(new File(this.mDir, META_FILE));
+            FileOutputStream stream = null;
+            try {
+                stream = metaFile.startWrite();
+                stream.write(data);
+                metaFile.finishWrite(stream);
+            } catch (IOException e) {
+                metaFile.failWrite(stream);
+                throw e;
+            }
+            this.mGeneration = generation;
+            this.mChunkGenerations.clear();
+            this.mChunkGenerations.addAll(generations);
+            deleteUnusedChunks();
+        } catch (IOException e) {
+            markDirty(0);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the chunks named by the manifest into history and the tag pool written by the owner into
+     * meta. Returns false and leaves both empty if nothing was stored or the chunks don't add up to
+     * the stored size.
+     */
+    synchronized boolean read(Parcel history, Parcel meta) {
+        history.setDataSize(0);
+        history.setDataPosition(0);
+        this.mChunkGenerations.clear();
+        AtomicFile metaFile = new AtomicFile(new File(this.mDir, META_FILE));
+        if (!metaFile.exists()) {
+            return false;
+        }
+        try {
+            byte[] raw = metaFile.readFully();
+            meta.unmarshall(raw, 0, raw.length);
+            meta.setDataPosition(0);
+            if (meta.readInt() != META_VERSION) {
+                return false;
+            }
+            int size = meta.readInt();
+            if (size < 0 || (size & -4) != size) {
+                return false;
+            }
+            int generation = meta.readInt();
+            int count = meta.readInt();
+            if (count != (size + CHUNK_SIZE - 1) / CHUNK_SIZE) {
+                return false;
+            }
+            ArrayList<Integer> generations = new ArrayList(count);
+            for (int i = 0; i < count; i++) {
+                generations.add(Integer.valueOf(meta.readInt()));
+            }
+            Parcel chunk = Parcel.obtain();
+            int pos = 0;
+            int index = 0;
+            while (index < count) {
+                File file = getChunkFile(index, ((Integer) generations.get(index)).intValue());
+                if (!file.exists()) {
+                    break;
+                }
+                byte[] data = new AtomicFile(file).readFully();
+                chunk.unmarshall(data, 0, data.length);
+                history.appendFrom(chunk, 0, data.length);
+                pos += data.length;
+                index++;
+            }
+            chunk.recycle();
+            if (pos != size) {
+                Slog.w(TAG, "history chunks hold " + pos + " bytes, expected " + size);
+                history.setDataSize(0);
+                history.setDataPosition(0);
+                return false;
+            }
+            this.mGeneration = generation;
+            this.mChunkGenerations.addAll(generations);
+            this.mDirtyPos = size;
+            return true;
+        } catch (IOException e) {
+            Slog.w(TAG, "Error reading battery history", e);
+            history.setDataSize(0);
+            history.setDataPosition(0);
+            return false;
+        }
+    }
+
+    private File getChunkFile(int index, int generation) {
+        return new File(this.mDir, index + "_" + generation + CHUNK_SUFFIX);
+    }
+
+    private void deleteUnusedChunks() {
+        String[] names = this.mDir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(CHUNK_SUFFIX) && !isChunkInUse(name)) {
+                    new File(this.mDir, name).delete();
+                }
+            }
+        }
+    }
+
+    private boolean isChunkInUse(String name) {
+        int sep = name.indexOf('_');
+        if (sep <= 0) {
+            return false;
+        }
+        try {
+            int index = Integer.parseInt(name.substring(0, sep));
+            int generation = Integer.parseInt(name.substring(sep + 1, name.length() - CHUNK_SUFFIX.length()));
+            if (index < this.mChunkGenerations.size() && ((Integer) this.mChunkGenerations.get(index)).intValue() == generation) {
+                return true;
+            }
+            return false;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void writeChunk(File file, byte[] data, int offset, int length) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            stream.write(data, offset, length);
+            stream.flush();
+            FileUtils.sync(stream);
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -66,6 +66,7 @@ import com.android.ims.ImsConfig;
 import com.android.internal.annotations.GuardedBy;
 import com.android.internal.logging.EventLogTags;
 import com.android.internal.net.NetworkStatsFactory;
+import com.android.internal.os.BatteryHistoryChunks.Flush;
 import com.android.internal.os.KernelUidCpuTimeReader.Callback;
 import com.android.internal.util.ArrayUtils;
 import com.android.internal.util.FastPrintWriter;
@@ -234,6 +235,7 @@ public class BatteryStatsImpl extends BatteryStats {
     final Parcel mHistoryBuffer;
     int mHistoryBufferLastPos;
     HistoryItem mHistoryCache;
+    final BatteryHistoryChunks mHistoryChunks;
     final HistoryItem mHistoryCur;
     HistoryItem mHistoryEnd;
     private HistoryItem mHistoryIterator;
@@ -316,7 +318,9 @@ public class BatteryStatsImpl extends BatteryStats {
     final TimeBase mOnBatteryScreenOffTimeBase;
     protected final TimeBase mOnBatteryTimeBase;
     final ArrayList<StopwatchTimer> mPartialTimers;
+    Flush mPendingHistoryFlush;
     Parcel mPendingWrite;
+    int mPendingWriteSeq;
     int mPhoneDataConnectionType;
     final StopwatchTimer[] mPhoneDataConnectionsTimer;
     boolean mPhoneOn;
@@ -390,6 +394,8 @@ public class BatteryStatsImpl extends BatteryStats {
     final StopwatchTimer[] mWifiSupplStateTimer;
     final ArrayList<StopwatchTimer> mWindowTimers;
     final ReentrantLock mWriteLock;
+    private int mWriteSeq;
+    private int mWrittenSeq;
 
     public interface TimeBaseObs {
         void onTimeStarted(long j, long j2, long j3);
@@ -4660,6 +4666,7 @@ public class BatteryStatsImpl extends BatteryStats {
         this.mWriteLock = new ReentrantLock();
         init(clocks);
         this.mFile = null;
+        this.mHistoryChunks = null;
         this.mCheckinFile = null;
         this.mDailyFile = null;
         this.mHandler = null;
@@ -5041,6 +5048,7 @@ public class BatteryStatsImpl extends BatteryStats {
             if (this.mHistoryBufferLastPos >= 0 && this.mHistoryLastWritten.cmd == (byte) 0 && timeDiff < 1000 && (diffStates & lastDiffStates) == 0 && (diffStates2 & lastDiffStates2) == 0 && ((this.mHistoryLastWritten.wakelockTag == null || cur.wakelockTag == null) && ((this.mHistoryLastWritten.wakeReasonTag == null || cur.wakeReasonTag == null) && this.mHistoryLastWritten.stepDetails == null && ((this.mHistoryLastWritten.eventCode == 0 || cur.eventCode == 0) && this.mHistoryLastWritten.batteryLevel == cur.batteryLevel && this.mHistoryLastWritten.batteryStatus == cur.batteryStatus && this.mHistoryLastWritten.batteryHealth == cur.batteryHealth && this.mHistoryLastWritten.batteryPlugType == cur.batteryPlugType && this.mHistoryLastWritten.batteryTemperature == cur.batteryTemperature && this.mHistoryLastWritten.batteryVoltage == cur.batteryVoltage)))) {
                 this.mHistoryBuffer.setDataSize(this.mHistoryBufferLastPos);
                 this.mHistoryBuffer.setDataPosition(this.mHistoryBufferLastPos);
+                markHistoryDirtyLocked(this.mHistoryBufferLastPos);
                 this.mHistoryBufferLastPos = -1;
                 elapsedRealtimeMs = this.mHistoryLastWritten.time - this.mHistoryBaseTime;
                 if (this.mHistoryLastWritten.wakelockTag != null) {
@@ -5106,6 +5114,7 @@ public class BatteryStatsImpl extends BatteryStats {
             throw new IllegalStateException("Can't do this while iterating history!");
         }
         this.mHistoryBufferLastPos = this.mHistoryBuffer.dataPosition();
+        markHistoryDirtyLocked(this.mHistoryBufferLastPos);
         this.mHistoryLastLastWritten.setTo(this.mHistoryLastWritten);
         this.mHistoryLastWritten.setTo(this.mHistoryBaseTime + elapsedRealtimeMs, cmd, cur);
         HistoryItem historyItem = this.mHistoryLastWritten;
@@ -5143,6 +5152,12 @@ public class BatteryStatsImpl extends BatteryStats {
         addHistoryRecordInnerLocked(elapsedRealtimeMs, uptimeMs, this.mHistoryCur);
     }
 
+    private void markHistoryDirtyLocked(int pos) {
+        if (this.mHistoryChunks != null) {
+            this.mHistoryChunks.markDirty(pos);
+        }
+    }
+
     void addHistoryRecordInnerLocked(long elapsedRealtimeMs, long uptimeMs, HistoryItem cur) {
         addHistoryBufferLocked(elapsedRealtimeMs, uptimeMs, cur);
     }
@@ -5187,6 +5202,7 @@ public class BatteryStatsImpl extends BatteryStats {
         this.mHistoryBuffer.setDataSize(0);
         this.mHistoryBuffer.setDataPosition(0);
         this.mHistoryBuffer.setDataCapacity(131072);
+        markHistoryDirtyLocked(0);
         this.mHistoryLastLastWritten.clear();
         this.mHistoryLastWritten.clear();
         this.mHistoryTagPool.clear();
@@ -7179,8 +7195,10 @@ public class BatteryStatsImpl extends BatteryStats {
         init(clocks);
         if (systemDir != null) {
             this.mFile = new JournaledFile(new File(systemDir, "batterystats.bin"), new File(systemDir, "batterystats.bin.tmp"));
+            this.mHistoryChunks = new BatteryHistoryChunks(new File(systemDir, "battery-history"));
         } else {
             this.mFile = null;
+            this.mHistoryChunks = null;
         }
         this.mCheckinFile = new AtomicFile(new File(systemDir, "batterystats-checkin.bin"));
         this.mDailyFile = new AtomicFile(new File(systemDir, "batterystats-daily.xml"));
@@ -7369,6 +7387,7 @@ public class BatteryStatsImpl extends BatteryStats {
         this.mWriteLock = new ReentrantLock();
         init(clocks);
         this.mFile = null;
+        this.mHistoryChunks = null;
         this.mCheckinFile = null;
         this.mDailyFile = null;
         this.mHandler = null;
@@ -9191,12 +9210,21 @@ public class BatteryStatsImpl extends BatteryStats {
             Slog.w("BatteryStats", "writeLocked: no file associated with this instance");
         } else if (!this.mShuttingDown) {
             Parcel out = Parcel.obtain();
-            writeSummaryToParcel(out, true);
+            writeSummaryToParcel(out, this.mHistoryChunks == null);
+            if (this.mHistoryChunks != null) {
+                Parcel meta = Parcel.obtain();
+                writeHistoryTagPool(meta);
+                this.mPendingHistoryFlush = this.mHistoryChunks.prepare(this.mHistoryBuffer, meta, this.mPendingHistoryFlush);
+                meta.recycle();
+            }
             this.mLastWriteTime = this.mClocks.elapsedRealtime();
             if (this.mPendingWrite != null) {
                 this.mPendingWrite.recycle();
             }
             this.mPendingWrite = out;
+            int i = this.mWriteSeq + 1;
+            this.mWriteSeq = i;
+            this.mPendingWriteSeq = i;
             if (sync) {
                 commitPendingDataToDisk();
             } else {
@@ -9209,39 +9237,55 @@ public class BatteryStatsImpl extends BatteryStats {
         }
     }
 
-    /* JADX WARNING: Missing block: B:7:0x000b, code:
-            r5.mWriteLock.lock();
-     */
-    /* JADX WARNING: Missing block: B:9:?, code:
-            r2 = new java.io.FileOutputStream(r5.mFile.chooseForWrite());
-            r2.write(r1.marshall());
-            r2.flush();
-            android.os.FileUtils.sync(r2);
-            r2.close();
-            r5.mFile.commit();
-     */
-    /* JADX WARNING: Missing block: B:10:0x0038, code:
-            return;
-     */
-    /* JADX WARNING: Missing block: B:14:0x003c, code:
-            r0 = move-exception;
-     */
-    /* JADX WARNING: Missing block: B:16:?, code:
-            android.util.Slog.w("BatteryStats", "Error writing battery statistics", r0);
-            r5.mFile.rollback();
+    /**
+     * Writes the pending summary and history chunks. The write lock is taken after leaving the
+     * monitor, so noteXxx callers never wait for disk I/O. Two committers can then reach the write
+     * lock out of order; the one holding the older write skips it, which loses nothing because a
+     * history flush prepared while an older one is in flight covers its range too.
      */
-    /* JADX WARNING: Missing block: B:18:0x0055, code:
-            r1.recycle();
-            r5.mWriteLock.unlock();
-     */
-    /* Code decompiled incorrectly, please refer to instructions dump. */
     public void commitPendingDataToDisk() {
+        Parcel next;
+        Flush historyFlush;
+        int seq;
         synchronized (this) {
-            Parcel next = this.mPendingWrite;
+            next = this.mPendingWrite;
+            historyFlush = this.mPendingHistoryFlush;
+            seq = this.mPendingWriteSeq;
             this.mPendingWrite = null;
+            this.mPendingHistoryFlush = null;
             if (next == null) {
+                return;
+            }
+            if (historyFlush != null) {
+                this.mHistoryChunks.begin(historyFlush);
             }
         }
+        this.mWriteLock.lock();
+        try {
+            if (seq - this.mWrittenSeq <= 0) {
+                Slog.d("BatteryStats", "Skipping stale write " + seq + ", wrote " + this.mWrittenSeq);
+            } else {
+                if (historyFlush != null) {
+                    this.mHistoryChunks.commit(historyFlush);
+                }
+                FileOutputStream stream = new FileOutputStream(this.mFile.chooseForWrite());
+                stream.write(next.marshall());
+                stream.flush();
+                FileUtils.sync(stream);
+                stream.close();
+                this.mFile.commit();
+                this.mWrittenSeq = seq;
+            }
+        } catch (IOException e) {
+            Slog.w("BatteryStats", "Error writing battery statistics", e);
+            this.mFile.rollback();
+        } finally {
+            if (historyFlush != null) {
+                this.mHistoryChunks.release(historyFlush);
+            }
+            next.recycle();
+            this.mWriteLock.unlock();
+        }
     }
 
     public void readLocked() {
@@ -9263,6 +9307,9 @@ public class BatteryStatsImpl extends BatteryStats {
                 in.setDataPosition(0);
                 stream.close();
                 readSummaryFromParcel(in);
+                if (this.mHistoryChunks != null && this.mHistoryBuffer.dataSize() == 0) {
+                    readHistoryChunksLocked();
+                }
                 this.mEndPlatformVersion = Build.ID;
                 if (this.mHistoryBuffer.dataPosition() > 0) {
                     this.mRecordingHistory = true;
@@ -9287,6 +9334,28 @@ public class BatteryStatsImpl extends BatteryStats {
         long historyBaseTime = in.readLong();
         this.mHistoryBuffer.setDataSize(0);
         this.mHistoryBuffer.setDataPosition(0);
+        markHistoryDirtyLocked(0);
+        readHistoryTagPool(in);
+        int bufSize = in.readInt();
+        int curPos = in.dataPosition();
+        if (bufSize >= SurfaceControl.FX_SURFACE_MASK) {
+            throw new ParcelFormatException("File corrupt: history data buffer too large " + bufSize);
+        } else if ((bufSize & -4) != bufSize) {
+            throw new ParcelFormatException("File corrupt: history data buffer not aligned " + bufSize);
+        } else {
+            this.mHistoryBuffer.appendFrom(in, curPos, bufSize);
+            in.setDataPosition(curPos + bufSize);
+            if (andOldHistory) {
+                readOldHistory(in);
+            }
+            this.mHistoryBaseTime = historyBaseTime;
+            if (this.mHistoryBaseTime > 0) {
+                this.mHistoryBaseTime = (this.mHistoryBaseTime - this.mClocks.elapsedRealtime()) + 1;
+            }
+        }
+    }
+
+    private void readHistoryTagPool(Parcel in) throws ParcelFormatException {
         this.mHistoryTagPool.clear();
         this.mNextHistoryTagIdx = 0;
         this.mNumHistoryTagChars = 0;
@@ -9308,22 +9377,30 @@ public class BatteryStatsImpl extends BatteryStats {
             }
             this.mNumHistoryTagChars += tag.string.length() + 1;
         }
-        int bufSize = in.readInt();
-        int curPos = in.dataPosition();
-        if (bufSize >= SurfaceControl.FX_SURFACE_MASK) {
-            throw new ParcelFormatException("File corrupt: history data buffer too large " + bufSize);
-        } else if ((bufSize & -4) != bufSize) {
-            throw new ParcelFormatException("File corrupt: history data buffer not aligned " + bufSize);
-        } else {
-            this.mHistoryBuffer.appendFrom(in, curPos, bufSize);
-            in.setDataPosition(curPos + bufSize);
-            if (andOldHistory) {
-                readOldHistory(in);
-            }
-            this.mHistoryBaseTime = historyBaseTime;
-            if (this.mHistoryBaseTime > 0) {
-                this.mHistoryBaseTime = (this.mHistoryBaseTime - this.mClocks.elapsedRealtime()) + 1;
+    }
+
+    private void writeHistoryTagPool(Parcel out) {
+        out.writeInt(this.mHistoryTagPool.size());
+        for (Entry<HistoryTag, Integer> ent : this.mHistoryTagPool.entrySet()) {
+            HistoryTag tag = (HistoryTag) ent.getKey();
+            out.writeInt(((Integer) ent.getValue()).intValue());
+            out.writeString(tag.string);
+            out.writeInt(tag.uid);
+        }
+    }
+
+    /** Loads the history buffer and tag pool from the chunk files after a summary without history. */
+    private void readHistoryChunksLocked() {
+        Parcel meta = Parcel.obtain();
+        try {
+            if (this.mHistoryChunks.read(this.mHistoryBuffer, meta)) {
+                readHistoryTagPool(meta);
             }
+        } catch (ParcelFormatException e) {
+            Slog.w(TAG, "Error reading battery history tags", e);
+            clearHistoryLocked();
+        } finally {
+            meta.recycle();
         }
     }
 
@@ -9333,13 +9410,7 @@ public class BatteryStatsImpl extends BatteryStats {
     void writeHistory(Parcel out, boolean inclData, boolean andOldHistory) {
         out.writeLong(this.mHistoryBaseTime + this.mLastHistoryElapsedRealtime);
         if (inclData) {
-            out.writeInt(this.mHistoryTagPool.size());
-            for (Entry<HistoryTag, Integer> ent : this.mHistoryTagPool.entrySet()) {
-                HistoryTag tag = (HistoryTag) ent.getKey();
-                out.writeInt(((Integer) ent.getValue()).intValue());
-                out.writeString(tag.string);
-                out.writeInt(tag.uid);
-            }
+            writeHistoryTagPool(out);
             out.writeInt(this.mHistoryBuffer.dataSize());
             out.appendFrom(this.mHistoryBuffer, 0, this.mHistoryBuffer.dataSize());
             if (andOldHistory) {
@@ -0,0 +1,199 @@
+package com.android.server;
+
+import com.android.server.AlarmManagerService.Batch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Search tree over the alarm batches, ordered like mAlarmBatches by start time. Every node keeps
+ * the latest end among the batches in its subtree that can still take more alarms, so the first
+ * batch whose window overlaps a new alarm is found in O(log n) instead of scanning every batch.
+ * Nodes remember the bounds the batch had when it was inserted; a batch whose bounds change has
+ * to be removed and inserted again, and the owner invalidates the index on bulk edits.
+ */
+final class AlarmBatchIndex {
+    private final HashMap<Batch, Node> mNodes = new HashMap();
+    private final Random mRandom = new Random();
+    private Node mRoot = null;
+    private long mSeq = 0;
+    private boolean mValid = true;
+
+    private static final class Node {
+        final Batch mBatch;
+        final boolean mCoalescable;
+        final long mEnd;
+        Node mLeft;
+        long mMaxEnd;
+        final int mPriority;
+        Node mRight;
+        final long mSeq;
+        final long mStart;
+
+        Node(Batch batch, long seq, int priority) {
+            this.mBatch = batch;
+            this.mStart = batch.start;
+            this.mEnd = batch.end;
+            this.mCoalescable = (batch.flags & 1) == 0;
+            this.mSeq = seq;
+            this.mPriority = priority;
+            this.mMaxEnd = this.mCoalescable ? this.mEnd : Long.MIN_VALUE;
+        }
+
+        boolean before(Node other) {
+            if (this.mStart != other.mStart) {
+                return this.mStart < other.mStart;
+            }
+            return this.mSeq < other.mSeq;
+        }
+
+        void update() {
+            long maxEnd = this.mCoalescable ? this.mEnd : Long.MIN_VALUE;
+            if (this.mLeft != null && this.mLeft.mMaxEnd > maxEnd) {
+                maxEnd = this.mLeft.mMaxEnd;
+            }
+            if (this.mRight != null && this.mRight.mMaxEnd > maxEnd) {
+                maxEnd = this.mRight.mMaxEnd;
+            }
+            this.mMaxEnd = maxEnd;
+        }
+    }
+
+    AlarmBatchIndex() {
+    }
+
+    boolean isValid(int batchCount) {
+        return this.mValid && this.mNodes.size() == batchCount;
+    }
+
+    void invalidate() {
+        this.mValid = false;
+    }
+
+    void clear() {
+        this.mRoot = null;
+        this.mNodes.clear();
+        this.mValid = true;
+    }
+
+    void rebuild(ArrayList<Batch> batches) {
+        clear();
+        int N = batches.size();
+        for (int i = 0; i < N; i++) {
+            add((Batch) batches.get(i));
+        }
+    }
+
+    void add(Batch batch) {
+        if (this.mNodes.containsKey(batch)) {
+            remove(batch);
+        }
+        Node node = new Node(batch, this.mSeq, this.mRandom.nextInt());
+        this.mSeq++;
+        this.mNodes.put(batch, node);
+        this.mRoot = insert(this.mRoot, node);
+    }
+
+    void remove(Batch batch) {
+        Node node = (Node) this.mNodes.remove(batch);
+        if (node != null) {
+            this.mRoot = remove(this.mRoot, node);
+        }
+    }
+
+    /** Returns the earliest batch that can hold an alarm with the given window, or null. */
+    Batch findCoalesceBatch(long whenElapsed, long maxWhen) {
+        Node node = find(this.mRoot, whenElapsed, maxWhen);
+        return node != null ? node.mBatch : null;
+    }
+
+    private static Node find(Node node, long whenElapsed, long maxWhen) {
+        if (node == null || node.mMaxEnd < whenElapsed) {
+            return null;
+        }
+        Node found = find(node.mLeft, whenElapsed, maxWhen);
+        if (found != null) {
+            return found;
+        }
+        if (node.mStart > maxWhen) {
+            return null;
+        }
+        if (node.mCoalescable && node.mEnd >= whenElapsed) {
+            return node;
+        }
+        return find(node.mRight, whenElapsed, maxWhen);
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) {
+            return node;
+        }
+        if (node.mPriority > root.mPriority) {
+            Node[] parts = split(root, node);
+            node.mLeft = parts[0];
+            node.mRight = parts[1];
+            node.update();
+            return node;
+        }
+        if (node.before(root)) {
+            root.mLeft = insert(root.mLeft, node);
+        } else {
+            root.mRight = insert(root.mRight, node);
+        }
+        root.update();
+        return root;
+    }
+
+    private static Node remove(Node root, Node node) {
+        if (root == null) {
+            return null;
+        }
+        if (root == node) {
+            return merge(root.mLeft, root.mRight);
+        }
+        if (node.before(root)) {
+            root.mLeft = remove(root.mLeft, node);
+        } else {
+            root.mRight = remove(root.mRight, node);
+        }
+        root.update();
+        return root;
+    }
+
+    /** Splits the tree into the nodes ordered before the key and the rest. */
+    private static Node[] split(Node root, Node key) {
+        if (root == null) {
+            return new Node[2];
+        }
+        Node[] parts;
+        if (root.before(key)) {
+            parts = split(root.mRight, key);
+            root.mRight = parts[0];
+            root.update();
+            parts[0] = root;
+        } else {
+            parts = split(root.mLeft, key);
+            root.mLeft = parts[1];
+            root.update();
+            parts[1] = root;
+        }
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.mPriority > right.mPriority) {
+            left.mRight = merge(left.mRight, right);
+            left.update();
+            return left;
+        }
+        right.mLeft = merge(left, right.mLeft);
+        right.update();
+        return right;
+    }
+}
@@ -127,6 +127,7 @@ public class AlarmManagerService extends AbsAlarmManagerService {
     long mAllowWhileIdleMinTime;
     AppOpsManager mAppOps;
     private final Intent mBackgroundIntent = new Intent().addFlags(4);
+    final AlarmBatchIndex mBatchIndex = new AlarmBatchIndex();
     int mBroadcastRefCount = 0;
     final SparseArray<ArrayMap<String, BroadcastStats>> mBroadcastStats = new SparseArray();
     boolean mCancelRemoveAction = false;
@@ -1515,9 +1516,22 @@ public class AlarmManagerService extends AbsAlarmManagerService {
     }
 
     int attemptCoalesceLocked(long whenElapsed, long maxWhen) {
+        if (!this.mBatchIndex.isValid(this.mAlarmBatches.size())) {
+            this.mBatchIndex.rebuild(this.mAlarmBatches);
+        }
+        Batch b = this.mBatchIndex.findCoalesceBatch(whenElapsed, maxWhen);
+        if (b == null) {
+            return -1;
+        }
+        int index = indexOfBatchLocked(b);
+        if (index >= 0 && (b.flags & 1) == 0 && b.canHold(whenElapsed, maxWhen)) {
+            return index;
+        }
+        Slog.w(TAG, "Batch index out of date, rebuilding");
+        this.mBatchIndex.invalidate();
         int N = this.mAlarmBatches.size();
         for (int i = 0; i < N; i++) {
-            Batch b = (Batch) this.mAlarmBatches.get(i);
+            b = (Batch) this.mAlarmBatches.get(i);
             if ((b.flags & 1) == 0 && b.canHold(whenElapsed, maxWhen)) {
                 return i;
             }
@@ -1525,6 +1539,55 @@ public class AlarmManagerService extends AbsAlarmManagerService {
         return -1;
     }
 
+    int indexOfBatchLocked(Batch batch) {
+        int index = Collections.binarySearch(this.mAlarmBatches, batch, sBatchOrder);
+        if (index >= 0) {
+            int i = index;
+            while (i >= 0 && ((Batch) this.mAlarmBatches.get(i)).start == batch.start) {
+                if (this.mAlarmBatches.get(i) == batch) {
+                    return i;
+                }
+                i--;
+            }
+            int N = this.mAlarmBatches.size();
+            for (i = index + 1; i < N && ((Batch) this.mAlarmBatches.get(i)).start == batch.start; i++) {
+                if (this.mAlarmBatches.get(i) == batch) {
+                    return i;
+                }
+            }
+        }
+        return this.mAlarmBatches.indexOf(batch);
+    }
+
+    /**
+     * Re-adds the alarms of batches already taken out of mAlarmBatches, letting them coalesce
+     * again without touching the batches that did not change.
+     */
+    void rebatchBatchesLocked(ArrayList<Batch> batches, boolean doValidate) {
+        Alarm oldPendingIdleUntil = this.mPendingIdleUntil;
+        if (batches != null) {
+            long nowElapsed = SystemClock.elapsedRealtime();
+            this.mCancelRemoveAction = true;
+            int M = batches.size();
+            for (int batchNum = 0; batchNum < M; batchNum++) {
+                Batch batch = (Batch) batches.get(batchNum);
+                int N = batch.size();
+                for (int i = 0; i < N; i++) {
+                    reAddAlarmLocked(batch.get(i), nowElapsed, doValidate);
+                }
+            }
+            this.mCancelRemoveAction = false;
+        }
+        if (!(oldPendingIdleUntil == null || oldPendingIdleUntil == this.mPendingIdleUntil)) {
+            Slog.wtf(TAG, "Rebatching: idle until changed from " + oldPendingIdleUntil + " to " + this.mPendingIdleUntil);
+            if (this.mPendingIdleUntil == null) {
+                restorePendingWhileIdleAlarmsLocked();
+            }
+        }
+        rescheduleKernelAlarmsLocked();
+        updateNextAlarmClockLocked();
+    }
+
     void rebatchAllAlarms() {
         synchronized (this.mLock) {
             rebatchAllAlarmsLocked(true);
@@ -1534,6 +1597,7 @@ public class AlarmManagerService extends AbsAlarmManagerService {
     void rebatchAllAlarmsLocked(boolean doValidate) {
         ArrayList<Batch> oldSet = (ArrayList) this.mAlarmBatches.clone();
         this.mAlarmBatches.clear();
+        this.mBatchIndex.clear();
         Alarm oldPendingIdleUntil = this.mPendingIdleUntil;
         long nowElapsed = SystemClock.elapsedRealtime();
         int oldBatches = oldSet.size();
@@ -1789,15 +1853,18 @@ public class AlarmManagerService extends AbsAlarmManagerService {
         }
         adjustAlarmLocked(a);
         int whichBatch = (a.flags & 1) != 0 ? -1 : attemptCoalesceLocked(a.whenElapsed, a.maxWhenElapsed);
+        Batch batch;
         if (whichBatch < 0) {
-            addBatchLocked(this.mAlarmBatches, new Batch(a));
+            batch = new Batch(a);
+            addBatchLocked(this.mAlarmBatches, batch);
         } else {
-            Batch batch = (Batch) this.mAlarmBatches.get(whichBatch);
+            batch = (Batch) this.mAlarmBatches.get(whichBatch);
             if (batch.add(a)) {
                 this.mAlarmBatches.remove(whichBatch);
                 addBatchLocked(this.mAlarmBatches, batch);
             }
         }
+        this.mBatchIndex.add(batch);
         if (a.alarmClock != null) {
             this.mNextAlarmClockMayChange = true;
         }
@@ -2296,12 +2363,18 @@ public class AlarmManagerService extends AbsAlarmManagerService {
     void removeLocked(PendingIntent operation, IAlarmListener directReceiver) {
         int i;
         int didRemove = 0;
+        ArrayList<Batch> changedBatches = null;
         for (i = this.mAlarmBatches.size() - 1; i >= 0; i--) {
             Batch b = (Batch) this.mAlarmBatches.get(i);
-            if (b != null) {
-                didRemove |= b.remove(operation, directReceiver);
-                if (b.size() == 0) {
-                    this.mAlarmBatches.remove(i);
+            if (b != null && b.remove(operation, directReceiver)) {
+                didRemove = 1;
+                this.mAlarmBatches.remove(i);
+                this.mBatchIndex.remove(b);
+                if (b.size() > 0) {
+                    if (changedBatches == null) {
+                        changedBatches = new ArrayList();
+                    }
+                    changedBatches.add(b);
                 }
             }
         }
@@ -2318,10 +2391,21 @@ public class AlarmManagerService extends AbsAlarmManagerService {
                 this.mPendingIdleUntil = null;
                 restorePending = true;
             }
+            boolean idleChanged = restorePending;
             if (this.mNextWakeFromIdle != null && this.mNextWakeFromIdle.matches(operation, directReceiver)) {
                 this.mNextWakeFromIdle = null;
+                idleChanged = true;
+            }
+            if (idleChanged) {
+                if (changedBatches != null) {
+                    for (Batch b : changedBatches) {
+                        addBatchLocked(this.mAlarmBatches, b);
+                    }
+                }
+                rebatchAllAlarmsLocked(true);
+            } else {
+                rebatchBatchesLocked(changedBatches, true);
             }
-            rebatchAllAlarmsLocked(true);
             if (restorePending) {
                 restorePendingWhileIdleAlarmsLocked();
             }
@@ -2533,6 +2617,7 @@ public class AlarmManagerService extends AbsAlarmManagerService {
                 break;
             }
             this.mAlarmBatches.remove(0);
+            this.mBatchIndex.remove(batch);
             int N = batch.size();
             for (i = 0; i < N; i++) {
                 Alarm alarm = batch.get(i);
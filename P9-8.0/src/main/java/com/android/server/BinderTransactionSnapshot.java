@@ -0,0 +1,237 @@
+package com.android.server;
+
+import android.util.Slog;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import libcore.io.IoUtils;
+
+/**
+ * One read of the binder transaction state, parsed into a client pid to server pid blocking
+ * graph. Lines are scanned by hand instead of through a regex, and every chain, cycle and
+ * bad process query of a hang dump is answered from the same snapshot.
+ */
+final class BinderTransactionSnapshot {
+    private static final String FROM = " from ";
+    private static final String OUTGOING = "outgoing transaction";
+    private static final String TO = " to ";
+    private final SparseArray<ArrayList<Integer>> mServerPids = new SparseArray();
+    private final SparseIntArray mTidTargets = new SparseIntArray();
+    private final SparseBooleanArray mTargetPids = new SparseBooleanArray();
+    private final ArrayList<Transaction> mTransactions = new ArrayList();
+
+    static final class Transaction {
+        final String mCode;
+        final int mFromPid;
+        final int mFromTid;
+        final int mToPid;
+        final int mToTid;
+
+        Transaction(int fromPid, int fromTid, int toPid, int toTid, String code) {
+            this.mFromPid = fromPid;
+            this.mFromTid = fromTid;
+            this.mToPid = toPid;
+            this.mToTid = toTid;
+            this.mCode = code;
+        }
+    }
+
+    private static final class LineScanner {
+        private String mLine;
+        private int mPos;
+
+        private LineScanner() {
+        }
+
+        void reset(String line) {
+            this.mLine = line;
+            this.mPos = 0;
+        }
+
+        boolean skipPast(String token) {
+            int index = this.mLine.indexOf(token, this.mPos);
+            if (index < 0) {
+                return false;
+            }
+            this.mPos = token.length() + index;
+            return true;
+        }
+
+        boolean expect(char c) {
+            if (this.mPos >= this.mLine.length() || this.mLine.charAt(this.mPos) != c) {
+                return false;
+            }
+            this.mPos++;
+            return true;
+        }
+
+        int nextInt() {
+            int value = 0;
+            int start = this.mPos;
+            int length = this.mLine.length();
+            while (this.mPos < length) {
+                char c = this.mLine.charAt(this.mPos);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = (value * 10) + (c - 48);
+                this.mPos++;
+            }
+            return this.mPos == start ? -1 : value;
+        }
+
+        String nextWord() {
+            int start = this.mPos;
+            int length = this.mLine.length();
+            while (this.mPos < length && this.mLine.charAt(this.mPos) != ' ') {
+                this.mPos++;
+            }
+            return this.mLine.substring(start, this.mPos);
+        }
+    }
+
+    private BinderTransactionSnapshot() {
+    }
+
+    /** Reads the first existing path once, returns null if none exists or it can't be read. */
+    static BinderTransactionSnapshot read(String... paths) {
+        File file = null;
+        for (String path : paths) {
+            File candidate = new File(path);
+            if (candidate.exists()) {
+                file = candidate;
+                break;
+            }
+            Slog.w(HwBinderMonitor.TAG, "file not exists : " + path);
+        }
+        if (file == null) {
+            return null;
+        }
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            return parse(new BufferedReader(reader));
+        } catch (IOException e) {
+            Slog.e(HwBinderMonitor.TAG, "read binder transactions failed: " + e.toString());
+            return null;
+        } finally {
+            IoUtils.closeQuietly(reader);
+        }
+    }
+
+    static BinderTransactionSnapshot parse(BufferedReader buff) throws IOException {
+        BinderTransactionSnapshot snapshot = new BinderTransactionSnapshot();
+        LineScanner scanner = new LineScanner();
+        for (String readLine = buff.readLine(); readLine != null; readLine = buff.readLine()) {
+            Transaction transaction = parseLine(scanner, readLine);
+            if (transaction != null) {
+                snapshot.add(transaction);
+            }
+        }
+        return snapshot;
+    }
+
+    private static Transaction parseLine(LineScanner scanner, String line) {
+        scanner.reset(line);
+        if (!scanner.skipPast(OUTGOING) || !scanner.skipPast(FROM)) {
+            return null;
+        }
+        int fromPid = scanner.nextInt();
+        if (fromPid < 0 || !scanner.expect(':')) {
+            return null;
+        }
+        int fromTid = scanner.nextInt();
+        if (fromTid < 0 || !scanner.skipPast(TO)) {
+            return null;
+        }
+        int toPid = scanner.nextInt();
+        if (toPid < 0 || !scanner.expect(':')) {
+            return null;
+        }
+        int toTid = scanner.nextInt();
+        if (toTid < 0 || !scanner.skipPast(" code ")) {
+            return null;
+        }
+        return new Transaction(fromPid, fromTid, toPid, toTid, scanner.nextWord());
+    }
+
+    private void add(Transaction transaction) {
+        this.mTransactions.add(transaction);
+        ArrayList<Integer> servers = (ArrayList) this.mServerPids.get(transaction.mFromPid);
+        if (servers == null) {
+            servers = new ArrayList();
+            this.mServerPids.put(transaction.mFromPid, servers);
+        }
+        if (!servers.contains(Integer.valueOf(transaction.mToPid))) {
+            servers.add(Integer.valueOf(transaction.mToPid));
+        }
+        if (transaction.mToPid > 0 && this.mTidTargets.indexOfKey(transaction.mFromTid) < 0) {
+            this.mTidTargets.put(transaction.mFromTid, transaction.mToPid);
+        }
+        this.mTargetPids.put(transaction.mToPid, true);
+    }
+
+    List<Transaction> getTransactions() {
+        return this.mTransactions;
+    }
+
+    /** Server pids the client is blocked on, in the order they appear in the dump. */
+    List<Integer> getServerPids(int clientPid) {
+        List<Integer> servers = (List) this.mServerPids.get(clientPid);
+        return servers != null ? servers : new ArrayList();
+    }
+
+    /** Returns the server pid the thread is blocked on, or -1. */
+    int getServerPidByTid(int tid) {
+        return this.mTidTargets.get(tid, -1);
+    }
+
+    boolean isServerPid(int pid) {
+        return this.mTargetPids.get(pid);
+    }
+
+    /** Returns the pids of the first blocking cycle in the graph, or null if there is none. */
+    List<Integer> findCycle() {
+        SparseIntArray states = new SparseIntArray();
+        ArrayList<Integer> path = new ArrayList();
+        for (int i = 0; i < this.mServerPids.size(); i++) {
+            if (findCycle(this.mServerPids.keyAt(i), states, path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    private boolean findCycle(int pid, SparseIntArray states, ArrayList<Integer> path) {
+        int state = states.get(pid);
+        if (state == 1) {
+            path.subList(0, path.indexOf(Integer.valueOf(pid))).clear();
+            path.add(Integer.valueOf(pid));
+            return true;
+        } else if (state == 2) {
+            return false;
+        } else {
+            states.put(pid, 1);
+            path.add(Integer.valueOf(pid));
+            List<Integer> servers = (List) this.mServerPids.get(pid);
+            if (servers != null) {
+                for (Integer server : servers) {
+                    if (findCycle(server.intValue(), states, path)) {
+                        return true;
+                    }
+                }
+            }
+            path.remove(path.size() - 1);
+            states.put(pid, 2);
+            return false;
+        }
+    }
+}
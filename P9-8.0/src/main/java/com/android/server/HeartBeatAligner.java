@@ -0,0 +1,165 @@
+package com.android.server;
+
+import android.util.Slog;
+import com.android.server.AlarmManagerService.Alarm;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.TreeSet;
+
+/**
+ * Aligns network keep-alive alarms onto shared radio wake windows. Only inexact wakeup alarms of
+ * known IM and push packages, or whose tag marks them as a heartbeat, are looked at. Each is keyed
+ * by package and tag, and the interval between its requests is tracked. Once a key has repeated at
+ * a stable heartbeat interval, its next alarm is delayed onto the earliest wake window already
+ * opened by another heartbeat, if one lies within the alarm's own delivery window and a small share
+ * of the interval. Alarms are never moved earlier. Otherwise the alarm opens a new window. Windows are kept in a sorted set and only the latest is
+ * looked at per alarm, so the alarm path pays O(log n) and takes no lock but this object's own.
+ */
+final class HeartBeatAligner {
+    private static final int ALIGN_SLACK_DIVISOR = 8;
+    private static final String[] HEARTBEAT_PACKAGES = new String[]{"com.tencent.mm", "com.tencent.mobileqq", "com.tencent.tim", "com.whatsapp", "com.facebook.orca", "jp.naver.line.android", "org.telegram.messenger", "com.skype.raider", "com.alibaba.android.rimet", "com.google.android.gms", "com.huawei.android.pushagent", "com.huawei.hwid"};
+    private static final String[] HEARTBEAT_TAGS = new String[]{"heartbeat", "keepalive", "keep_alive", "push", "ping"};
+    private static final int MAX_HEARTBEATS = 256;
+    private static final long MAX_ALIGN_SLACK = 120000;
+    private static final long MAX_HEARTBEAT_INTERVAL = 3600000;
+    private static final long MIN_HEARTBEAT_INTERVAL = 60000;
+    private static final int STABLE_COUNT = 3;
+    static final String TAG = "HeartBeatAligner";
+    private long mAlignedCount = 0;
+    private long mAlignedMillis = 0;
+    private final HashSet<String> mHeartBeatPackages = new HashSet(Arrays.asList(HEARTBEAT_PACKAGES));
+    private final LinkedHashMap<String, HeartBeat> mHeartBeats = new LinkedHashMap<String, HeartBeat>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Entry<String, HeartBeat> entry) {
+            return size() > HeartBeatAligner.MAX_HEARTBEATS;
+        }
+    };
+    private long mObservedCount = 0;
+    private long mWindowCount = 0;
+    private final TreeSet<Long> mWindows = new TreeSet();
+
+    private static final class HeartBeat {
+        long mInterval = 0;
+        long mLastRequest = 0;
+        int mStableCount = 0;
+
+        HeartBeat() {
+        }
+
+        boolean isStable() {
+            return this.mStableCount >= STABLE_COUNT && this.mInterval >= MIN_HEARTBEAT_INTERVAL && this.mInterval <= MAX_HEARTBEAT_INTERVAL;
+        }
+    }
+
+    HeartBeatAligner() {
+    }
+
+    private boolean isAlignable(Alarm a) {
+        if ((a.type == 0 || a.type == 2) && a.alarmClock == null && (a.windowLength != 0 || a.repeatInterval > 0) && (a.flags & 19) == 0) {
+            return isHeartBeat(a);
+        }
+        return false;
+    }
+
+    private boolean isHeartBeat(Alarm a) {
+        if (this.mHeartBeatPackages.contains(a.packageName)) {
+            return true;
+        }
+        if (a.statsTag == null) {
+            return false;
+        }
+        String tag = a.statsTag.toLowerCase();
+        for (String marker : HEARTBEAT_TAGS) {
+            if (tag.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records the requested trigger time of the alarm and moves it onto a shared wake window when
+     * it belongs to a stable heartbeat. Re-adds of the same request while rebatching align again
+     * but are not counted twice.
+     */
+    public synchronized void alignAlarm(Alarm a, long now) {
+        if (isAlignable(a)) {
+            long requested = a.whenElapsed;
+            String key = a.packageName + "/" + a.statsTag;
+            HeartBeat heartBeat = (HeartBeat) this.mHeartBeats.get(key);
+            if (heartBeat == null) {
+                heartBeat = new HeartBeat();
+                this.mHeartBeats.put(key, heartBeat);
+            }
+            long delta = requested - heartBeat.mLastRequest;
+            boolean fresh = heartBeat.mLastRequest == 0 || Math.abs(delta) >= MIN_HEARTBEAT_INTERVAL / 2;
+            if (fresh) {
+                this.mObservedCount++;
+                if (heartBeat.mLastRequest != 0) {
+                    updateInterval(heartBeat, delta);
+                }
+                heartBeat.mLastRequest = requested;
+            }
+            if (heartBeat.isStable()) {
+                while (!this.mWindows.isEmpty() && ((Long) this.mWindows.first()).longValue() < now) {
+                    this.mWindows.pollFirst();
+                }
+                long slack = Math.min(Math.min(heartBeat.mInterval / ((long) ALIGN_SLACK_DIVISOR), MAX_ALIGN_SLACK), a.maxWhenElapsed - requested);
+                Long window = (Long) this.mWindows.ceiling(Long.valueOf(requested));
+                if (window == null || window.longValue() - requested > slack) {
+                    this.mWindows.add(Long.valueOf(requested));
+                    if (fresh) {
+                        this.mWindowCount++;
+                    }
+                    return;
+                }
+                long shift = window.longValue() - requested;
+                if (shift > 0) {
+                    a.whenElapsed += shift;
+                    a.when += shift;
+                }
+                if (fresh) {
+                    this.mAlignedCount++;
+                    this.mAlignedMillis += shift;
+                }
+                if (SmartHeartBeat.DEBUG_HEART_BEAT) {
+                    Slog.d(TAG, "align " + key + " by " + shift + "ms onto " + window + ", interval: " + heartBeat.mInterval);
+                }
+            }
+        }
+    }
+
+    private static void updateInterval(HeartBeat heartBeat, long delta) {
+        if (delta <= 0) {
+            heartBeat.mStableCount = 0;
+            return;
+        }
+        if (heartBeat.mInterval == 0 || Math.abs(delta - heartBeat.mInterval) * 4 > heartBeat.mInterval) {
+            heartBeat.mInterval = delta;
+            heartBeat.mStableCount = 1;
+            return;
+        }
+        heartBeat.mInterval = ((heartBeat.mInterval * 3) + delta) / 4;
+        heartBeat.mStableCount++;
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        int stable = 0;
+        for (HeartBeat heartBeat : this.mHeartBeats.values()) {
+            if (heartBeat.isStable()) {
+                stable++;
+            }
+        }
+        pw.println("===heartbeat alignment:");
+        pw.println("observed: " + this.mObservedCount + ", heartbeats: " + this.mHeartBeats.size() + ", stable: " + stable + ", windows: " + this.mWindowCount + ", pending windows: " + this.mWindows.size());
+        pw.println("radio wakeups saved: " + this.mAlignedCount + ", total delay: " + this.mAlignedMillis + "ms");
+        if (SmartHeartBeat.DEBUG_HEART_BEAT) {
+            for (Entry<String, HeartBeat> entry : this.mHeartBeats.entrySet()) {
+                HeartBeat heartBeat2 = (HeartBeat) entry.getValue();
+                pw.println("    " + ((String) entry.getKey()) + ": interval=" + heartBeat2.mInterval + ", stable=" + heartBeat2.mStableCount);
+            }
+        }
+    }
+}
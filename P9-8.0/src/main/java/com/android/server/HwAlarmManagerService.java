@@ -205,15 +205,16 @@ public class HwAlarmManagerService extends AlarmManagerService {
             if (DEBUG_SHB) {
                 Slog.i(TAG, "SmartHeartBeat:rebatchPkgAlarmsLocked, pkgList: " + pkgList);
             }
-            Alarm oldPendingIdleUntil = this.mPendingIdleUntil;
+            HashSet<String> pkgs = new HashSet(pkgList);
             ArrayList<Batch> batches = new ArrayList();
             for (i = this.mAlarmBatches.size() - 1; i >= 0; i--) {
                 Batch b = (Batch) this.mAlarmBatches.get(i);
                 int alarmSize = b.alarms.size();
                 for (int j = 0; j < alarmSize; j++) {
-                    if (pkgList.contains(((Alarm) b.alarms.get(j)).packageName)) {
+                    if (pkgs.contains(((Alarm) b.alarms.get(j)).packageName)) {
                         batches.add(b);
                         this.mAlarmBatches.remove(i);
+                        this.mBatchIndex.remove(b);
                         break;
                     }
                 }
@@ -221,7 +222,7 @@ public class HwAlarmManagerService extends AlarmManagerService {
             long nowElapsed = SystemClock.elapsedRealtime();
             for (i = this.mPendingNonWakeupAlarms.size() - 1; i >= 0; i--) {
                 Alarm a = (Alarm) this.mPendingNonWakeupAlarms.get(i);
-                if (pkgList.contains(a.packageName) && this.mSmartHB.shouldPendingAlarm(a)) {
+                if (pkgs.contains(a.packageName) && this.mSmartHB.shouldPendingAlarm(a)) {
                     this.mPendingNonWakeupAlarms.remove(i);
                     if (DEBUG_SHB) {
                         Slog.i(TAG, "readd PendingNonWakeupAlarms of " + a.packageName + " " + a);
@@ -230,24 +231,7 @@ public class HwAlarmManagerService extends AlarmManagerService {
                 }
             }
             if (batches.size() != 0) {
-                this.mCancelRemoveAction = true;
-                int M = batches.size();
-                for (int batchNum = 0; batchNum < M; batchNum++) {
-                    Batch batch = (Batch) batches.get(batchNum);
-                    int N = batch.size();
-                    for (i = 0; i < N; i++) {
-                        reAddAlarmLocked(batch.get(i), nowElapsed, true);
-                    }
-                }
-                this.mCancelRemoveAction = false;
-                if (!(oldPendingIdleUntil == null || oldPendingIdleUntil == this.mPendingIdleUntil)) {
-                    Slog.wtf(TAG, "pkg Rebatching: idle until changed from " + oldPendingIdleUntil + " to " + this.mPendingIdleUntil);
-                    if (this.mPendingIdleUntil == null) {
-                        restorePendingWhileIdleAlarmsLocked();
-                    }
-                }
-                rescheduleKernelAlarmsLocked();
-                updateNextAlarmClockLocked();
+                rebatchBatchesLocked(batches, true);
                 if (DEBUG_SHB) {
                     Slog.i(TAG, "SmartHeartBeat:rebatchPkgAlarmsLocked end");
                 }
@@ -117,6 +117,7 @@ import com.android.server.wm.WindowManagerService;
 import com.android.server.wm.WindowState;
 import com.android.server.wm.WindowStateAnimator;
 import java.io.File;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 
 public class HwServiceFactory {
@@ -536,6 +537,8 @@ public class HwServiceFactory {
 
         int checkRecentLockedState();
 
+        void dump(PrintWriter printWriter);
+
         void init(Context context, ActivityManagerService activityManagerService);
 
         void startRun();
@@ -0,0 +1,102 @@
+package com.android.server;
+
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.util.ArraySet;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bounded cache of IntentFilter.match outcomes for IntentResolver. An entry holds, for one
+ * action, type, scheme, data and category combination, the filters that matched in resolution
+ * order together with their match codes. Only the pure match is cached; stopped packages, package
+ * restrictions and allowFilterResult still run on every query. Any filter change bumps the
+ * generation and drops all entries, and a match computed across a change is never stored.
+ */
+final class IntentMatchCache {
+    private static final int MAX_ENTRIES = 64;
+    private final LinkedHashMap<Key, Matches> mEntries = new LinkedHashMap<Key, Matches>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Entry<Key, Matches> entry) {
+            return size() > IntentMatchCache.MAX_ENTRIES;
+        }
+    };
+    private int mGeneration = 0;
+
+    static final class Key {
+        final String mAction;
+        final Set<String> mCategories;
+        final Uri mData;
+        private final int mHashCode;
+        final String mResolvedType;
+        final String mScheme;
+
+        Key(String action, String resolvedType, String scheme, Uri data, Set<String> categories) {
+            this.mAction = action;
+            this.mResolvedType = resolvedType;
+            this.mScheme = scheme;
+            this.mData = data;
+            this.mCategories = categories;
+            this.mHashCode = Objects.hash(new Object[]{action, resolvedType, scheme, data, categories});
+        }
+
+        /** Lookup keys share the intent's categories; stored keys take their own copy. */
+        Key copy() {
+            return new Key(this.mAction, this.mResolvedType, this.mScheme, this.mData, this.mCategories != null ? new ArraySet(this.mCategories) : null);
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            if (this.mHashCode == other.mHashCode && Objects.equals(this.mAction, other.mAction) && Objects.equals(this.mResolvedType, other.mResolvedType) && Objects.equals(this.mScheme, other.mScheme) && Objects.equals(this.mData, other.mData)) {
+                return Objects.equals(this.mCategories, other.mCategories);
+            }
+            return false;
+        }
+
+        public int hashCode() {
+            return this.mHashCode;
+        }
+    }
+
+    static final class Matches {
+        final IntentFilter[] mFilters;
+        final int[] mMatches;
+        final int mSize;
+
+        Matches(IntentFilter[] filters, int[] matches, int size) {
+            this.mFilters = filters;
+            this.mMatches = matches;
+            this.mSize = size;
+        }
+    }
+
+    IntentMatchCache() {
+    }
+
+    synchronized int getGeneration() {
+        return this.mGeneration;
+    }
+
+    synchronized void invalidate() {
+        this.mGeneration++;
+        this.mEntries.clear();
+    }
+
+    synchronized Matches get(Key key) {
+        return (Matches) this.mEntries.get(key);
+    }
+
+    /** Stores the matches unless the filters changed since generation was read. */
+    synchronized void put(Key key, Matches matches, int generation) {
+        if (generation == this.mGeneration) {
+            this.mEntries.put(key.copy(), matches);
+        }
+    }
+}
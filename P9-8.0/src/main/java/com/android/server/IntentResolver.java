@@ -13,6 +13,7 @@ import android.util.PrintWriterPrinter;
 import android.util.Printer;
 import android.util.Slog;
 import com.android.internal.util.FastPrintWriter;
+import com.android.server.IntentMatchCache.Matches;
 import com.android.server.am.HwBroadcastRadarUtil;
 import com.android.server.voiceinteraction.DatabaseHelper.SoundModelContract;
 import java.io.PrintWriter;
@@ -44,6 +45,7 @@ public abstract class IntentResolver<F extends IntentFilter, R> {
     private final ArrayMap<String, F[]> mActionToFilter = new ArrayMap();
     private final ArrayMap<String, F[]> mBaseTypeToFilter = new ArrayMap();
     private final ArraySet<F> mFilters = new ArraySet();
+    private final IntentMatchCache mMatchCache = new IntentMatchCache();
     private final ArrayMap<String, F[]> mSchemeToFilter = new ArrayMap();
     private final ArrayMap<String, F[]> mTypeToFilter = new ArrayMap();
     private final ArrayMap<String, F[]> mTypedActionToFilter = new ArrayMap();
@@ -85,6 +87,7 @@ public abstract class IntentResolver<F extends IntentFilter, R> {
     }
 
     public void addFilter(F f) {
+        this.mMatchCache.invalidate();
         this.mFilters.add(f);
         int numS = register_intent_filter(f, f.schemesIterator(), this.mSchemeToFilter, "      Scheme: ");
         int numT = register_mime_types(f, "      Type: ");
@@ -211,6 +214,7 @@ public abstract class IntentResolver<F extends IntentFilter, R> {
     }
 
     void removeFilterInternal(F f) {
+        this.mMatchCache.invalidate();
         int numS = unregister_intent_filter(f, f.schemesIterator(), this.mSchemeToFilter, "      Scheme: ");
         int numT = unregister_mime_types(f, "      Type: ");
         if (numS == 0 && numT == 0) {
@@ -413,17 +417,28 @@ public abstract class IntentResolver<F extends IntentFilter, R> {
             }
         }
         FastImmutableArraySet<String> categories = getFastIntentCategories(intent);
-        if (firstTypeCut != null) {
-            buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, firstTypeCut, finalList, userId);
-        }
-        if (secondTypeCut != null) {
-            buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, secondTypeCut, finalList, userId);
-        }
-        if (thirdTypeCut != null) {
-            buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, thirdTypeCut, finalList, userId);
-        }
-        if (schemeCut != null) {
-            buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, schemeCut, finalList, userId);
+        if (debug) {
+            if (firstTypeCut != null) {
+                buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, firstTypeCut, finalList, userId);
+            }
+            if (secondTypeCut != null) {
+                buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, secondTypeCut, finalList, userId);
+            }
+            if (thirdTypeCut != null) {
+                buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, thirdTypeCut, finalList, userId);
+            }
+            if (schemeCut != null) {
+                buildResolveList(intent, categories, debug, defaultOnly, resolvedType, scheme, schemeCut, finalList, userId);
+            }
+        } else {
+            IntentMatchCache.Key key = new IntentMatchCache.Key(intent.getAction(), resolvedType, scheme, intent.getData(), intent.getCategories());
+            Matches matches = this.mMatchCache.get(key);
+            if (matches == null) {
+                int generation = this.mMatchCache.getGeneration();
+                matches = matchFilters(intent, categories, resolvedType, scheme, new IntentFilter[][]{firstTypeCut, secondTypeCut, thirdTypeCut, schemeCut});
+                this.mMatchCache.put(key, matches, generation);
+            }
+            buildResolveList(intent, defaultOnly, matches, finalList, userId);
         }
         filterResults(finalList);
         sortResults(finalList);
@@ -609,6 +624,50 @@ public abstract class IntentResolver<F extends IntentFilter, R> {
         return new FastImmutableArraySet((String[]) categories.toArray(new String[categories.size()]));
     }
 
+    /** Runs IntentFilter.match over the cuts in resolution order and keeps the filters that match. */
+    private static Matches matchFilters(Intent intent, FastImmutableArraySet<String> categories, String resolvedType, String scheme, IntentFilter[][] cuts) {
+        String action = intent.getAction();
+        Uri data = intent.getData();
+        IntentFilter[] filters = new IntentFilter[4];
+        int[] codes = new int[4];
+        int size = 0;
+        for (IntentFilter[] cut : cuts) {
+            if (cut != null) {
+                for (IntentFilter filter : cut) {
+                    if (filter == null) {
+                        break;
+                    }
+                    int match = filter.match(action, resolvedType, scheme, data, categories, TAG);
+                    if (match >= 0) {
+                        if (size == filters.length) {
+                            filters = (IntentFilter[]) Arrays.copyOf(filters, size * 2);
+                            codes = Arrays.copyOf(codes, size * 2);
+                        }
+                        filters[size] = filter;
+                        codes[size] = match;
+                        size++;
+                    }
+                }
+            }
+        }
+        return new Matches(filters, codes, size);
+    }
+
+    /** Same checks as the full buildResolveList, minus the match that is already known. */
+    private void buildResolveList(Intent intent, boolean defaultOnly, Matches matches, List<R> dest, int userId) {
+        String packageName = intent.getPackage();
+        boolean excludingStopped = intent.isExcludingStopped();
+        for (int i = 0; i < matches.mSize; i++) {
+            F filter = (F) matches.mFilters[i];
+            if ((!excludingStopped || !isFilterStopped(filter, userId)) && ((packageName == null || isPackageForFilter(packageName, filter)) && allowFilterResult(filter, dest) && (!defaultOnly || filter.hasCategory("android.intent.category.DEFAULT")))) {
+                R oneResult = newResult(filter, matches.mMatches[i], userId);
+                if (oneResult != null) {
+                    dest.add(oneResult);
+                }
+            }
+        }
+    }
+
     private void buildResolveList(Intent intent, FastImmutableArraySet<String> categories, boolean debug, boolean defaultOnly, String resolvedType, String scheme, F[] src, List<R> dest, int userId) {
         PrintWriter logPrintWriter;
         Printer logPrinter;
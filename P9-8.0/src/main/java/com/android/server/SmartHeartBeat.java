@@ -28,6 +28,7 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
     static final int ALARM_PENDING_PACKAGE_MSG = 101;
     static final int ALL_ALARM_TYPE = 0;
     static final boolean DEBUG_HEART_BEAT = SystemProperties.getBoolean("persist.sys.shb.debug", false);
+    static final boolean HEART_BEAT_ALIGN_SWITCHER = SystemProperties.getBoolean("persist.sys.shb.align", true);
     static final int NONE_WAKEUP_ALARM_TYPE = 2;
     static final boolean SHB_MODULE_SWITCHER = SystemProperties.getBoolean("persist.sys.shb.switcher", true);
     static final String TAG = "SmartHeartBeat";
@@ -36,6 +37,7 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
     private static Context mContext;
     private static SmartHeartBeatDummy mInstance = null;
     private static final Object mLock = new Object();
+    private final HeartBeatAligner mAligner = new HeartBeatAligner();
     private HeartBeatDatabase mDataMap;
     private Handler mHandler;
     private HandlerThread mThread = new HandlerThread("HeartBeatHandlerThread");
@@ -70,7 +72,7 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         public final AdjustPackageForActions adjustPackageForActions;
         private Object lock;
         public final AdjustPackage noneWakeupAdjustPkgsMap;
-        private final MultiMap<String, Integer> pendingMap;
+        private final HashMap<String, Integer> pendingMap;
         private final MultiMap<String, String> pendingMapForActions;
         public final AdjustPackage wakeupAdjustPkgsMap;
 
@@ -227,7 +229,7 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         }
 
         private HeartBeatDatabase() {
-            this.pendingMap = new MultiMap();
+            this.pendingMap = new HashMap();
             this.pendingMapForActions = new MultiMap();
             this.wakeupAdjustPkgsMap = new AdjustPackage(this, null);
             this.noneWakeupAdjustPkgsMap = new AdjustPackage(this, null);
@@ -236,7 +238,8 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         }
 
         public void addPendingPackage(String pkgName, int type) {
-            this.pendingMap.put(pkgName, Integer.valueOf(type));
+            Integer types = (Integer) this.pendingMap.get(pkgName);
+            this.pendingMap.put(pkgName, Integer.valueOf((types != null ? types.intValue() : 0) | (1 << type)));
             if (SmartHeartBeat.DEBUG_HEART_BEAT) {
                 Slog.d(SmartHeartBeat.TAG, "addPendingPackage, pkgName: " + pkgName + ", type: " + type);
             }
@@ -253,7 +256,15 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         }
 
         public void removePendingPackage(String pkgName, int type) {
-            this.pendingMap.remove(pkgName, Integer.valueOf(type));
+            Integer types = (Integer) this.pendingMap.get(pkgName);
+            if (types != null) {
+                int remain = types.intValue() & (~(1 << type));
+                if (remain == 0) {
+                    this.pendingMap.remove(pkgName);
+                } else {
+                    this.pendingMap.put(pkgName, Integer.valueOf(remain));
+                }
+            }
             if (SmartHeartBeat.DEBUG_HEART_BEAT) {
                 Slog.d(SmartHeartBeat.TAG, "removePendingPackage, pkgName: " + pkgName + ", type: " + type);
             }
@@ -278,8 +289,11 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         }
 
         public boolean isPendingPackage(Alarm alarm) {
+            return isPendingPackage(alarm, SmartHeartBeat.getActionByClearCallingIdentity(alarm.operation));
+        }
+
+        public boolean isPendingPackage(Alarm alarm, String action) {
             String pkgName = alarm.packageName;
-            String action = SmartHeartBeat.getActionByClearCallingIdentity(alarm.operation);
             List<String> actionList = this.pendingMapForActions.getAll(pkgName);
             if (actionList.size() > 0 && action != null && actionList.contains(action)) {
                 if (SmartHeartBeat.DEBUG_HEART_BEAT) {
@@ -287,18 +301,14 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
                 }
                 return true;
             } else if (alarm.type != 0 || alarm.alarmClock == null) {
-                List<Integer> pendingTypeList = this.pendingMap.getAll(pkgName);
-                if (pendingTypeList.size() > 0) {
-                    for (Integer alarmType : pendingTypeList) {
-                        if (alarmType.intValue() == alarm.type) {
-                            if (SmartHeartBeat.DEBUG_HEART_BEAT) {
-                                Slog.d(SmartHeartBeat.TAG, "isPendingPackage, true, pkg:" + pkgName);
-                            }
-                            return true;
-                        }
-                    }
+                Integer types = (Integer) this.pendingMap.get(pkgName);
+                if (types == null || alarm.type < 0 || alarm.type > 3 || (types.intValue() & (1 << alarm.type)) == 0) {
+                    return false;
                 }
-                return false;
+                if (SmartHeartBeat.DEBUG_HEART_BEAT) {
+                    Slog.d(SmartHeartBeat.TAG, "isPendingPackage, true, pkg:" + pkgName);
+                }
+                return true;
             } else {
                 Slog.d(SmartHeartBeat.TAG, "isPendingPackage, false, pkg:" + pkgName + ", action:" + action + ",not pending alarm with AlarmClockInfo");
                 return false;
@@ -309,7 +319,10 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
             synchronized (this.lock) {
                 pw.println("=======dumping shb bg");
                 pw.println("===pending pkg:");
-                this.pendingMap.dump(pw);
+                for (Entry entry : this.pendingMap.entrySet()) {
+                    pw.print(entry.getKey() + ":");
+                    pw.println(Integer.toBinaryString(((Integer) entry.getValue()).intValue()));
+                }
                 pw.println();
                 pw.println("===pending actions:");
                 this.pendingMapForActions.dump(pw);
@@ -479,12 +492,16 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
     }
 
     private boolean isPending(Alarm alarm) {
-        boolean pending = false;
-        if (alarm == null) {
-            Slog.d(TAG, "isPending, null == alarm");
-            return false;
+        if (alarm != null) {
+            return isPending(alarm, getActionByClearCallingIdentity(alarm.operation));
         }
-        if (this.mDataMap.isPendingPackage(alarm)) {
+        Slog.d(TAG, "isPending, null == alarm");
+        return false;
+    }
+
+    private boolean isPending(Alarm alarm, String action) {
+        boolean pending = false;
+        if (this.mDataMap.isPendingPackage(alarm, action)) {
             pending = true;
         }
         if (DEBUG_HEART_BEAT) {
@@ -563,9 +580,8 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         Slog.i(TAG, "remove all pending alarms");
     }
 
-    private boolean isAdjustAlarm(Alarm a) {
+    private boolean isAdjustAlarm(Alarm a, String action) {
         String pkg = a.packageName;
-        String action = getActionByClearCallingIdentity(a.operation);
         int type = a.type;
         if (this.mDataMap.adjustPackageForActions.containsAdjustKey(pkg, action)) {
             if (DEBUG_HEART_BEAT) {
@@ -596,12 +612,11 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         }
     }
 
-    private long calAlarmWhenElapsed(Alarm a) {
+    private long calAlarmWhenElapsed(Alarm a, String action) {
         long interval = 0;
         int mode = -1;
         long adjustWhenElapsed = a.whenElapsed;
         String pkg = a.packageName;
-        String action = getActionByClearCallingIdentity(a.operation);
         int type = a.type;
         long whenElapsed = a.whenElapsed;
         AdjustValue adjustValue = this.mDataMap.adjustPackageForActions.getAdjustValue(pkg, action);
@@ -649,8 +664,8 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
         return adjustWhenElapsed;
     }
 
-    private long getAdjustAlarmWhenElapsed(Alarm a) {
-        long val = isAdjustAlarm(a) ? calAlarmWhenElapsed(a) : a.whenElapsed;
+    private long getAdjustAlarmWhenElapsed(Alarm a, String action) {
+        long val = isAdjustAlarm(a, action) ? calAlarmWhenElapsed(a, action) : a.whenElapsed;
         if (DEBUG_HEART_BEAT) {
             Slog.d(TAG, "getAdjustAlarmWhenElapsed, val: " + val + ", pkg: " + a.packageName + ", whenElapsed: " + a.whenElapsed + ", type: " + a.type);
         }
@@ -741,9 +756,11 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
             return;
         }
         long now = SystemClock.elapsedRealtime();
+        String action = getActionByClearCallingIdentity(a.operation);
+        boolean align = false;
         synchronized (mLock) {
             if (now >= a.whenElapsed || a.whenElapsed - now <= WifiProCommonUtils.TRUSTED_DAYS_MS) {
-                if (isPending(a)) {
+                if (isPending(a, action)) {
                     long delay;
                     if (now < a.whenElapsed) {
                         delay = WifiProCommonUtils.TRUSTED_DAYS_MS;
@@ -757,8 +774,10 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
                         Slog.i(TAG, "adjustAlarmIfNeeded, is pending alarm: " + a.packageName + ", tag: " + a.statsTag + ", whenElapsed: " + a.whenElapsed + ", now: " + now);
                     }
                 } else {
-                    long whenElapsed = getAdjustAlarmWhenElapsed(a);
-                    if (whenElapsed != a.whenElapsed) {
+                    long whenElapsed = getAdjustAlarmWhenElapsed(a, action);
+                    if (whenElapsed == a.whenElapsed) {
+                        align = HEART_BEAT_ALIGN_SWITCHER;
+                    } else {
                         long delta = whenElapsed - a.whenElapsed;
                         a.whenElapsed += delta;
                         a.when += delta;
@@ -772,11 +791,15 @@ public class SmartHeartBeat extends SmartHeartBeatDummy {
                 Slog.i(TAG, "adjustAlarmIfNeeded, no need change alarm: " + a.packageName + ", whenElapsed: " + a.whenElapsed + ", now: " + now);
             }
         }
+        if (align) {
+            this.mAligner.alignAlarm(a, now);
+        }
     }
 
     public void dump(PrintWriter pw) {
         synchronized (mLock) {
             this.mDataMap.dump(pw);
         }
+        this.mAligner.dump(pw);
     }
 }
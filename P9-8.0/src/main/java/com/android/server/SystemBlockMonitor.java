@@ -13,6 +13,7 @@ import android.util.Slog;
 import com.android.server.HwServiceFactory.ISystemBlockMonitor;
 import com.android.server.Watchdog.Monitor;
 import com.android.server.am.ActivityManagerService;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,9 +32,11 @@ public class SystemBlockMonitor extends Thread implements ISystemBlockMonitor {
     static final int WAITING = 1;
     static SystemBlockMonitor sSystemBlockMonitor;
     private long dumpStarTtime = 0;
+    Context mContext = null;
     final ArrayList<HandlerChecker> mHandlerCheckers = new ArrayList();
     HandlerChecker mMonitorChecker = null;
     HandlerThread mMonitorThread = null;
+    final SystemBlockProfiler mProfiler = new SystemBlockProfiler();
 
     private static final class BinderThreadMonitor implements Monitor {
         /* synthetic */ BinderThreadMonitor(BinderThreadMonitor -this0) {
@@ -100,10 +103,14 @@ public class SystemBlockMonitor extends Thread implements ISystemBlockMonitor {
         public void run() {
             int size = this.mMonitors.size();
             for (int i = 0; i < size; i++) {
+                Monitor monitor;
                 synchronized (SystemBlockMonitor.this) {
                     this.mCurrentMonitor = (Monitor) this.mMonitors.get(i);
+                    monitor = this.mCurrentMonitor;
                 }
-                this.mCurrentMonitor.monitor();
+                long start = SystemClock.uptimeMillis();
+                monitor.monitor();
+                SystemBlockMonitor.this.mProfiler.recordMonitor(monitor, SystemClock.uptimeMillis() - start);
             }
             synchronized (SystemBlockMonitor.this) {
                 this.mCompleted = true;
@@ -143,6 +150,12 @@ public class SystemBlockMonitor extends Thread implements ISystemBlockMonitor {
 
     public void init(Context context, ActivityManagerService activity) {
         Slog.i(TAG, "SystemBlockMonitor Init");
+        this.mContext = context;
+    }
+
+    /** Backs "dumpsys activity blockmonitor"; the caller has already checked the dump permission. */
+    public void dump(PrintWriter pw) {
+        this.mProfiler.dump(pw);
     }
 
     public void addMonitor(Monitor monitor) {
@@ -197,6 +210,14 @@ public class SystemBlockMonitor extends Thread implements ISystemBlockMonitor {
 
     public void startRun() {
         if (sSystemBlockMonitor != null) {
+            synchronized (this) {
+                int checkerSize = this.mHandlerCheckers.size();
+                for (int i = 0; i < checkerSize; i++) {
+                    HandlerChecker hc = (HandlerChecker) this.mHandlerCheckers.get(i);
+                    this.mProfiler.addLooper(hc.mHandler, hc.getName());
+                }
+            }
+            this.mProfiler.start();
             sSystemBlockMonitor.start();
         }
     }
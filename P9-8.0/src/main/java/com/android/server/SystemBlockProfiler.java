@@ -0,0 +1,297 @@
+package com.android.server;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import com.android.server.Watchdog.Monitor;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Continuous profiler behind SystemBlockMonitor. Every monitored looper gets a probe posted at the
+ * front of its queue once per sample interval, so the probe delay is how long the message being
+ * dispatched still held the looper. Idle loopers are never posted to. A probe that is late gets the
+ * looper thread's stack sampled once to name the handler that is running. Monitor checks are timed
+ * on the monitor thread. The slowest dispatches and monitor checks end up in two small ring buffers.
+ */
+final class SystemBlockProfiler {
+    private static final int BUCKET_COUNT = 16;
+    private static final String HANDLER_CLASS = "android.os.Handler";
+    static final long SAMPLE_INTERVAL = 1000;
+    static final long SLOW_THRESHOLD = 100;
+    private static final int SLOW_RECORD_COUNT = 32;
+    private static final Comparator<SlowRecord> SLOW_RECORD_BY_LATENCY = new Comparator<SlowRecord>() {
+        public int compare(SlowRecord arg0, SlowRecord arg1) {
+            return Long.compare(arg1.mLatency, arg0.mLatency);
+        }
+    };
+    static final String TAG = "SystemBlockProfiler";
+    private Handler mHandler = null;
+    private final ArrayMap<String, LatencyHistogram> mMonitorHistograms = new ArrayMap();
+    private final Runnable mSampleRunnable = new Runnable() {
+        public void run() {
+            SystemBlockProfiler.this.sample();
+            SystemBlockProfiler.this.mHandler.postDelayed(this, SystemBlockProfiler.SAMPLE_INTERVAL);
+        }
+    };
+    private final ArrayList<LooperSampler> mSamplers = new ArrayList();
+    private final SlowRecordRing mSlowDispatches = new SlowRecordRing();
+    private final SlowRecordRing mSlowMonitors = new SlowRecordRing();
+    private HandlerThread mThread = null;
+
+    private static final class LatencyHistogram {
+        private int mCount;
+        private final int[] mCounts = new int[BUCKET_COUNT];
+        private long mMax;
+        private long mTotal;
+
+        private LatencyHistogram() {
+        }
+
+        void add(long latency) {
+            int bucket = latency <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(latency);
+            if (bucket >= BUCKET_COUNT) {
+                bucket = BUCKET_COUNT - 1;
+            }
+            int[] iArr = this.mCounts;
+            iArr[bucket] = iArr[bucket] + 1;
+            this.mCount++;
+            this.mTotal += latency;
+            if (latency > this.mMax) {
+                this.mMax = latency;
+            }
+        }
+
+        /** Upper bound in milliseconds of the bucket holding the percentile. */
+        long getPercentile(int percent) {
+            int rank = ((this.mCount * percent) + 99) / 100;
+            int count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += this.mCounts[i];
+                if (count >= rank) {
+                    return 1 << i;
+                }
+            }
+            return this.mMax;
+        }
+
+        void dump(PrintWriter pw, String name) {
+            pw.print("  " + name + ": count=" + this.mCount);
+            if (this.mCount > 0) {
+                pw.print(", avg=" + (this.mTotal / ((long) this.mCount)) + "ms, p50<" + getPercentile(50) + "ms, p99<" + getPercentile(99) + "ms, max=" + this.mMax + "ms");
+            }
+            pw.println();
+            StringBuilder sb = new StringBuilder("    ");
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (this.mCounts[i] > 0) {
+                    sb.append('<').append(1 << i).append("ms:").append(this.mCounts[i]).append(' ');
+                }
+            }
+            pw.println(sb.toString());
+        }
+    }
+
+    private final class LooperSampler implements Runnable {
+        private final Handler mHandler;
+        private final LatencyHistogram mHistogram = new LatencyHistogram();
+        private final String mName;
+        private long mPostTime = 0;
+        private String mTarget = null;
+
+        LooperSampler(Handler handler, String name) {
+            this.mHandler = handler;
+            this.mName = name;
+        }
+
+        /** Returns the post time of a late probe that still needs its target, 0 otherwise. */
+        long sampleLocked(long now) {
+            if (this.mPostTime != 0) {
+                if (this.mTarget == null && now - this.mPostTime >= SystemBlockProfiler.SLOW_THRESHOLD) {
+                    return this.mPostTime;
+                }
+            } else if (this.mHandler.getLooper().getQueue().isPolling()) {
+                this.mHistogram.add(0);
+            } else {
+                this.mPostTime = now;
+                this.mTarget = null;
+                this.mHandler.postAtFrontOfQueue(this);
+            }
+            return 0;
+        }
+
+        void setTargetLocked(long postTime, String target) {
+            if (this.mPostTime == postTime && this.mTarget == null) {
+                this.mTarget = target;
+            }
+        }
+
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            synchronized (SystemBlockProfiler.this) {
+                long latency = now - this.mPostTime;
+                this.mHistogram.add(latency);
+                if (latency >= SystemBlockProfiler.SLOW_THRESHOLD) {
+                    SystemBlockProfiler.this.mSlowDispatches.add(this.mName, latency, this.mTarget);
+                }
+                this.mPostTime = 0;
+                this.mTarget = null;
+            }
+        }
+    }
+
+    private static final class SlowRecord {
+        final long mLatency;
+        final String mName;
+        final String mTarget;
+        final long mTime;
+
+        SlowRecord(String name, long latency, String target, long time) {
+            this.mName = name;
+            this.mLatency = latency;
+            this.mTarget = target;
+            this.mTime = time;
+        }
+    }
+
+    private static final class SlowRecordRing {
+        private int mCount = 0;
+        private int mIndex = 0;
+        private final SlowRecord[] mRecords = new SlowRecord[SLOW_RECORD_COUNT];
+
+        private SlowRecordRing() {
+        }
+
+        void add(String name, long latency, String target) {
+            this.mRecords[this.mIndex] = new SlowRecord(name, latency, target, System.currentTimeMillis());
+            this.mIndex = (this.mIndex + 1) % SLOW_RECORD_COUNT;
+            if (this.mCount < SLOW_RECORD_COUNT) {
+                this.mCount++;
+            }
+        }
+
+        void dump(PrintWriter pw, SimpleDateFormat format, boolean withTarget) {
+            SlowRecord[] records = new SlowRecord[this.mCount];
+            for (int i = 0; i < this.mCount; i++) {
+                records[i] = this.mRecords[i];
+            }
+            Arrays.sort(records, SLOW_RECORD_BY_LATENCY);
+            for (SlowRecord record : records) {
+                String line = "  " + format.format(new Date(record.mTime)) + " " + record.mName + " " + record.mLatency + "ms";
+                if (withTarget) {
+                    line = line + " " + (record.mTarget != null ? record.mTarget : "unknown");
+                }
+                pw.println(line);
+            }
+        }
+    }
+
+    SystemBlockProfiler() {
+    }
+
+    public synchronized void addLooper(Handler handler, String name) {
+        if (handler != null) {
+            this.mSamplers.add(new LooperSampler(handler, name));
+        }
+    }
+
+    public synchronized void start() {
+        if (this.mThread == null) {
+            this.mThread = new HandlerThread(TAG, 10);
+            this.mThread.start();
+            this.mHandler = new Handler(this.mThread.getLooper());
+            this.mHandler.postDelayed(this.mSampleRunnable, SAMPLE_INTERVAL);
+        }
+    }
+
+    /** Called on the monitor thread with the time the monitor took to acquire its lock. */
+    public synchronized void recordMonitor(Monitor monitor, long latency) {
+        String name = monitor.getClass().getName();
+        LatencyHistogram histogram = (LatencyHistogram) this.mMonitorHistograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            this.mMonitorHistograms.put(name, histogram);
+        }
+        histogram.add(latency);
+        if (latency >= SLOW_THRESHOLD) {
+            this.mSlowMonitors.add(name, latency, null);
+        }
+    }
+
+    /**
+     * Posts the probes under the lock but walks the stacks of late loopers outside it, so a slow
+     * getStackTrace never holds up recordMonitor or dump. A target is dropped if its probe already
+     * ran in the meantime.
+     */
+    private void sample() {
+        long now = SystemClock.uptimeMillis();
+        ArrayList<LooperSampler> late = null;
+        long[] postTimes = null;
+        synchronized (this) {
+            int size = this.mSamplers.size();
+            for (int i = 0; i < size; i++) {
+                LooperSampler sampler = (LooperSampler) this.mSamplers.get(i);
+                long postTime = sampler.sampleLocked(now);
+                if (postTime != 0) {
+                    if (late == null) {
+                        late = new ArrayList();
+                        postTimes = new long[size];
+                    }
+                    postTimes[late.size()] = postTime;
+                    late.add(sampler);
+                }
+            }
+        }
+        if (late != null) {
+            int lateSize = late.size();
+            String[] targets = new String[lateSize];
+            for (int i = 0; i < lateSize; i++) {
+                targets[i] = findDispatchTarget(((LooperSampler) late.get(i)).mHandler.getLooper().getThread());
+            }
+            synchronized (this) {
+                for (int i = 0; i < lateSize; i++) {
+                    ((LooperSampler) late.get(i)).setTargetLocked(postTimes[i], targets[i]);
+                }
+            }
+        }
+    }
+
+    /** Returns the handler or callback the thread is dispatching and the frame it is in. */
+    static String findDispatchTarget(Thread thread) {
+        StackTraceElement[] stack = thread.getStackTrace();
+        for (int i = stack.length - 1; i > 0; i--) {
+            if (HANDLER_CLASS.equals(stack[i].getClassName()) && "dispatchMessage".equals(stack[i].getMethodName())) {
+                int target = i - 1;
+                while (target > 0 && HANDLER_CLASS.equals(stack[target].getClassName())) {
+                    target--;
+                }
+                return stack[target].getClassName() + "." + stack[target].getMethodName() + " at " + stack[0];
+            }
+        }
+        return stack.length > 0 ? "unknown at " + stack[0] : "unknown";
+    }
+
+    public synchronized void dump(PrintWriter pw) {
+        int i;
+        pw.println("Looper dispatch latency (sampled every " + SAMPLE_INTERVAL + "ms):");
+        int size = this.mSamplers.size();
+        for (i = 0; i < size; i++) {
+            LooperSampler sampler = (LooperSampler) this.mSamplers.get(i);
+            sampler.mHistogram.dump(pw, sampler.mName);
+        }
+        pw.println("Monitor lock wait:");
+        size = this.mMonitorHistograms.size();
+        for (i = 0; i < size; i++) {
+            ((LatencyHistogram) this.mMonitorHistograms.valueAt(i)).dump(pw, (String) this.mMonitorHistograms.keyAt(i));
+        }
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        pw.println("Slowest recent dispatches (>= " + SLOW_THRESHOLD + "ms):");
+        this.mSlowDispatches.dump(pw, format, true);
+        pw.println("Slowest recent monitor lock waits (>= " + SLOW_THRESHOLD + "ms):");
+        this.mSlowMonitors.dump(pw, format, false);
+    }
+}
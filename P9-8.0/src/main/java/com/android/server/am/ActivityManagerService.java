@@ -212,6 +212,7 @@ import com.android.server.HwServiceFactory.IHwActivityStackSupervisor;
 import com.android.server.HwServiceFactory.IHwActivityStarter;
 import com.android.server.HwServiceFactory.IHwAppOpsService;
 import com.android.server.HwServiceFactory.IHwBinderMonitor;
+import com.android.server.HwServiceFactory.ISystemBlockMonitor;
 import com.android.server.IntentResolver;
 import com.android.server.LocalServices;
 import com.android.server.LockGuard;
@@ -15496,6 +15497,14 @@ public class ActivityManagerService extends AbsActivityManager implements IHwAct
                             }
                         }
                         Binder.restoreCallingIdentity(origId);
+                    } else if ("blockmonitor".equals(cmd)) {
+                        ISystemBlockMonitor blockMonitor = HwServiceFactory.getISystemBlockMonitor();
+                        if (blockMonitor != null) {
+                            blockMonitor.dump(pw);
+                        } else {
+                            pw.println("Block monitor is not running");
+                        }
+                        Binder.restoreCallingIdentity(origId);
                     } else if ("intents".equals(cmd) || "i".equals(cmd)) {
                         if (opti >= args.length) {
                             newArgs = EMPTY_STRING_ARRAY;
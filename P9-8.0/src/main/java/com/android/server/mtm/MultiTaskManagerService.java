@@ -114,6 +114,10 @@ public class MultiTaskManagerService extends Stub {
                 Slog.i(MultiTaskManagerService.TAG, "onForegroundActivitiesChanged pid = " + pid + ", uid = " + uid);
             }
             MultiTaskManagerService.this.notifyProcessStatusChange(pid, uid);
+            AwareAppMngSort appMngSort = AwareAppMngSort.getInstance();
+            if (appMngSort != null) {
+                appMngSort.onForegroundActivitiesChanged(pid, foregroundActivities);
+            }
             MultiTaskManagerService.this.dispatchFgActivitiesChanged(pid, uid, foregroundActivities);
             if (MultiTaskManagerService.this.mIawareBrPolicy != null) {
                 MultiTaskManagerService.this.mIawareBrPolicy.notifyIawareUnproxyBr(pid, uid);
@@ -125,6 +129,10 @@ public class MultiTaskManagerService extends Stub {
                 Slog.i(MultiTaskManagerService.TAG, "onProcessDied pid = " + pid + ", uid = " + uid);
             }
             MultiTaskManagerService.this.notifyProcessDiedChange(pid, uid);
+            AwareAppMngSort appMngSort = AwareAppMngSort.getInstance();
+            if (appMngSort != null) {
+                appMngSort.onProcessDied(pid);
+            }
             MultiTaskManagerService.this.dispatchProcessDied(pid, uid);
         }
     };
@@ -312,6 +320,10 @@ public class MultiTaskManagerService extends Stub {
     public void notifyProcessStatusChange(String pkg, String process, String hostingType, int pid, int uid) {
         enforceCallingPermission();
         sendProcessChangeMessage(2, pid, uid);
+        AwareAppMngSort appMngSort = AwareAppMngSort.getInstance();
+        if (appMngSort != null) {
+            appMngSort.onProcessStarted(pid, uid);
+        }
         AwareAppStartupPolicy policy = AwareAppStartupPolicy.self();
         if (policy != null) {
             policy.notifyProcessStart(pkg, process, hostingType, pid, uid);
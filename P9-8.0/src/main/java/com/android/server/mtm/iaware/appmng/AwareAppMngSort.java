@@ -19,6 +19,8 @@ import android.util.ArraySet;
 import android.util.Log;
 import com.android.internal.os.BackgroundThread;
 import com.android.server.am.HwActivityManagerService;
+import com.android.server.mtm.iaware.appmng.AwareProcessBlockIndex.BlockFilter;
+import com.android.server.mtm.iaware.appmng.AwareProcessBlockIndex.BlockScorer;
 import com.android.server.mtm.iaware.appmng.AwareProcessInfo.XmlConfig;
 import com.android.server.mtm.iaware.appmng.appclean.CleanSource;
 import com.android.server.mtm.iaware.appmng.appclean.SmartClean;
@@ -29,6 +31,7 @@ import com.android.server.mtm.taskstatus.ProcessInfoCollector;
 import com.android.server.mtm.utils.AppStatusUtils;
 import com.android.server.mtm.utils.AppStatusUtils.Status;
 import com.android.server.rms.algorithm.AwareUserHabit;
+import com.android.server.rms.algorithm.AwareUserHabitAlgorithm.HabitProtectListChangeListener;
 import com.android.server.rms.iaware.appmng.AppMngConfig;
 import com.android.server.rms.iaware.appmng.AwareAppAssociate;
 import com.android.server.rms.iaware.appmng.AwareAppKeyBackgroup;
@@ -131,6 +134,7 @@ public class AwareAppMngSort {
     private static final int MSG_PRINT_BETA_LOG = 1;
     public static final long PREVIOUS_APP_DIRCACTIVITY_DECAYTIME = 600000;
     private static final int SEC_PER_MIN = 60;
+    private static final int STALE_VICTIM_ADJ = 200;
     private static final String SUBTYPE_ASSOCIATION = "assoc";
     private static final String TAG = "AwareAppMngSort";
     private static final int TOP_N_IMPORT_RATE = -100;
@@ -143,9 +147,16 @@ public class AwareAppMngSort {
     private final Context mContext;
     private List<String> mGcmAppList = null;
     private Handler mHandler = null;
+    private HabitProtectListChangeListener mHabitListener = null;
     private HwActivityManagerService mHwAMS = null;
     private long mLastBetaLogOutTime = 0;
     private List<String> mPkgTopN = null;
+    private final BlockFilter mVictimFilter = new BlockFilter() {
+        public boolean isStale(AwareProcessBlockInfo block) {
+            return AwareAppMngSort.this.isVictimStale(block);
+        }
+    };
+    private final AwareProcessBlockIndex mVictimIndex = new AwareProcessBlockIndex();
 
     public enum AllowStopSubClassRate {
         NONE("none"),
@@ -711,6 +722,10 @@ public class AwareAppMngSort {
 
     public static void disable() {
         mEnabled = false;
+        AwareAppMngSort sort = getInstance();
+        if (sort != null) {
+            sort.mVictimIndex.invalidate();
+        }
     }
 
     private boolean containsVisibleWindow(Set<String> visibleWindowList, List<String> pkgList) {
@@ -1874,6 +1889,8 @@ public class AwareAppMngSort {
                 Collections.sort(needClean, BLOCK_BY_USER_HABIT);
             }
         }
+        this.mVictimIndex.rebuild(memLevel, needClean, memLevel == 3, SystemClock.elapsedRealtime());
+        registerHabitListenerIfNeeded();
         switch (groupId) {
             case 0:
                 appGroup.put(Integer.valueOf(0), rawInfo);
@@ -1891,6 +1908,88 @@ public class AwareAppMngSort {
         return appGroup;
     }
 
+    /**
+     * Returns up to count allow-stop blocks of the memory clean level in the same order as the
+     * allow-stop list of getAppMngSortPolicy, taken from the victim index while it is fresh.
+     * Blocks in exclude are skipped, so a caller can pull further victims on demand.
+     */
+    public List<AwareProcessBlockInfo> getAppMngVictims(int memLevel, int count, Set<AwareProcessBlockInfo> exclude) {
+        if (!mEnabled || count <= 0) {
+            return null;
+        }
+        List<AwareProcessBlockInfo> victims = this.mVictimIndex.getVictims(memLevel, count, SystemClock.elapsedRealtime(), this.mVictimFilter, exclude);
+        if (victims != null) {
+            if (DEBUG) {
+                AwareLog.i(TAG, "getAppMngVictims from index, level:" + memLevel + ", count:" + victims.size());
+            }
+            return victims;
+        } else if (getAppMngSortGroupForMemCleanChina(2, memLevel) == null) {
+            return null;
+        } else {
+            return this.mVictimIndex.getVictims(memLevel, count, SystemClock.elapsedRealtime(), this.mVictimFilter, exclude);
+        }
+    }
+
+    public void onProcessStarted(int pid, int uid) {
+        if (mEnabled) {
+            this.mVictimIndex.onProcessStarted(pid, uid);
+        }
+    }
+
+    public void onProcessDied(int pid) {
+        if (mEnabled) {
+            this.mVictimIndex.onProcessDied(pid);
+        }
+    }
+
+    public void onForegroundActivitiesChanged(int pid, boolean foregroundActivities) {
+        if (mEnabled) {
+            this.mVictimIndex.onForegroundActivitiesChanged(pid, foregroundActivities);
+        }
+    }
+
+    private boolean isVictimStale(AwareProcessBlockInfo block) {
+        if (this.mHwAMS == null || block.mProcessList == null) {
+            return false;
+        }
+        for (AwareProcessInfo info : block.mProcessList) {
+            if (info != null) {
+                AwareProcessBaseInfo baseInfo = this.mHwAMS.getProcessBaseInfo(info.mPid);
+                if (baseInfo == null || baseInfo.mCurAdj <= STALE_VICTIM_ADJ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private synchronized void registerHabitListenerIfNeeded() {
+        if (this.mHabitListener == null) {
+            AwareUserHabit habit = AwareUserHabit.getInstance();
+            if (habit != null) {
+                this.mHabitListener = new HabitProtectListChangeListener() {
+                    public void onListChanged() {
+                        AwareAppMngSort.this.reorderVictimIndex();
+                    }
+                };
+                habit.registHabitProtectListChangeListener(this.mHabitListener);
+            }
+        }
+    }
+
+    private void reorderVictimIndex() {
+        AwareUserHabit habit = AwareUserHabit.getInstance();
+        if (mEnabled && habit != null) {
+            final Map<String, Integer> allTopList = habit.getAllTopList();
+            final List<String> pkgTopN = habit.getTopN(AppMngConfig.getTopN());
+            this.mVictimIndex.reorder(new BlockScorer() {
+                public int score(AwareProcessBlockInfo block) {
+                    return AwareAppMngSort.this.getPropImportance(block, allTopList, pkgTopN);
+                }
+            });
+        }
+    }
+
     public AwareAppMngSortPolicy getAppMngSortPolicyForMemRepair(int sceneType) {
         if (!mEnabled) {
             return null;
@@ -1964,27 +2063,30 @@ public class AwareAppMngSort {
     }
 
     private void setPropImportance(AwareProcessBlockInfo block) {
-        int i = 0;
+        setPropImportance(block, this.mAllTopList, this.mPkgTopN);
+    }
+
+    private void setPropImportance(AwareProcessBlockInfo block, Map<String, Integer> allTopList, List<String> pkgTopN) {
         if (block != null) {
-            if (isNonSystemUser(block.mUid)) {
-                block.mImportance = 10000;
-                return;
-            }
-            Integer num = null;
-            if (this.mAllTopList != null) {
-                num = (Integer) this.mAllTopList.get(block.mPackageName);
-            }
-            if (this.mPkgTopN != null) {
-                int topIdx = this.mPkgTopN.indexOf(block.mPackageName);
-                if (topIdx >= 0 && topIdx < 8) {
-                    num = Integer.valueOf((8 - topIdx) * TOP_N_IMPORT_RATE);
-                }
-            }
-            if (num != null) {
-                i = num.intValue();
+            block.mImportance = getPropImportance(block, allTopList, pkgTopN);
+        }
+    }
+
+    private int getPropImportance(AwareProcessBlockInfo block, Map<String, Integer> allTopList, List<String> pkgTopN) {
+        if (isNonSystemUser(block.mUid)) {
+            return 10000;
+        }
+        Integer num = null;
+        if (allTopList != null) {
+            num = (Integer) allTopList.get(block.mPackageName);
+        }
+        if (pkgTopN != null) {
+            int topIdx = pkgTopN.indexOf(block.mPackageName);
+            if (topIdx >= 0 && topIdx < 8) {
+                num = Integer.valueOf((8 - topIdx) * TOP_N_IMPORT_RATE);
             }
-            block.mImportance = i;
         }
+        return num != null ? num.intValue() : 0;
     }
 
     public static void enableDebug() {
@@ -2068,19 +2170,18 @@ public class AwareAppMngSort {
         if (!mEnabled || procGroup == null) {
             return false;
         }
-        ArrayList<ProcessInfo> procs = ProcessInfoCollector.getInstance().getProcessInfoList();
-        if (procs.isEmpty()) {
-            return false;
+        return ProcessInfoCollector.getInstance().getNewestCreatedTime(procGroup.mUid) - procGroup.mUpdateTime > 0;
+    }
+
+    public boolean isProcessBlockPidChanged(AwareProcessBlockInfo procGroup, Map<Integer, Long> uidCreatedTimes) {
+        if (uidCreatedTimes == null) {
+            return isProcessBlockPidChanged(procGroup);
         }
-        int uid = procGroup.mUid;
-        int size = procs.size();
-        for (int i = 0; i < size; i++) {
-            ProcessInfo procInfo = (ProcessInfo) procs.get(i);
-            if (procInfo != null && procInfo.mUid == uid && procInfo.mCreatedTime - procGroup.mUpdateTime > 0) {
-                return true;
-            }
+        if (!mEnabled || procGroup == null) {
+            return false;
         }
-        return false;
+        Long newest = (Long) uidCreatedTimes.get(Integer.valueOf(procGroup.mUid));
+        return newest != null && newest.longValue() - procGroup.mUpdateTime > 0;
     }
 
     private void dumpBlockList(PrintWriter pw, List<AwareProcessBlockInfo> list, boolean toPrint) {
@@ -2181,6 +2282,8 @@ public class AwareAppMngSort {
                     disable();
                 } else if (type.equals("checkEnabled")) {
                     pw.println("AwareAppMngSort is " + checkAppMngEnable());
+                } else if (type.equals("victimIndex")) {
+                    this.mVictimIndex.dump(pw, SystemClock.elapsedRealtime());
                 } else if (!type.equals("procinfo")) {
                     pw.println("  dump parameter error!");
                 } else if (mEnabled) {
@@ -0,0 +1,192 @@
+package com.android.server.mtm.iaware.appmng;
+
+import android.util.SparseArray;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Victim index for the memory clean path. It is rebuilt from a full classify-and-sort pass and
+ * then patched on process death, foreground switches and habit list changes, so the next victims
+ * can be taken from the tail in O(log n) each instead of classifying and sorting every process
+ * again. Entries keep their position in the sorted pass as a tie breaker, which gives the same
+ * order as the stable sort it replaces. A process start drops the blocks of its uid, which no
+ * longer hold all of its processes. The death of a process the index does not hold may change how
+ * other processes are classified, so it drops the whole index.
+ */
+final class AwareProcessBlockIndex {
+    private static final Comparator<Entry> ENTRY_BY_RANK = new Comparator<Entry>() {
+        public int compare(Entry arg0, Entry arg1) {
+            if (arg0.mRank != arg1.mRank) {
+                return arg0.mRank < arg1.mRank ? -1 : 1;
+            }
+            if (arg0.mSeq != arg1.mSeq) {
+                return arg0.mSeq < arg1.mSeq ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+    private static final long MAX_INDEX_AGE = 10000;
+    private long mBuildTime = 0;
+    private boolean mByWeight = false;
+    private TreeSet<Entry> mEntries = null;
+    private int mMemLevel = -1;
+    private final SparseArray<Entry> mPidEntries = new SparseArray();
+
+    public interface BlockFilter {
+        boolean isStale(AwareProcessBlockInfo awareProcessBlockInfo);
+    }
+
+    public interface BlockScorer {
+        int score(AwareProcessBlockInfo awareProcessBlockInfo);
+    }
+
+    private static final class Entry {
+        final AwareProcessBlockInfo mBlock;
+        final int mRank;
+        final int mSeq;
+
+        Entry(AwareProcessBlockInfo block, int rank, int seq) {
+            this.mBlock = block;
+            this.mRank = rank;
+            this.mSeq = seq;
+        }
+    }
+
+    AwareProcessBlockIndex() {
+    }
+
+    public synchronized void rebuild(int memLevel, List<AwareProcessBlockInfo> sortedBlocks, boolean byWeight, long now) {
+        this.mEntries = new TreeSet(ENTRY_BY_RANK);
+        this.mPidEntries.clear();
+        this.mMemLevel = memLevel;
+        this.mByWeight = byWeight;
+        this.mBuildTime = now;
+        if (sortedBlocks != null) {
+            int seq = 0;
+            for (AwareProcessBlockInfo block : sortedBlocks) {
+                if (block != null && block.mProcessList != null && !block.mProcessList.isEmpty()) {
+                    addLocked(new Entry(block, rankOf(block), seq));
+                    seq++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to count victims of the given level in kill order, lowest priority last, or
+     * null if the index has to be rebuilt first. Entries rejected by the filter are dropped, and
+     * blocks in exclude, which the caller has already pulled, are passed over.
+     */
+    public synchronized List<AwareProcessBlockInfo> getVictims(int memLevel, int count, long now, BlockFilter filter, Set<AwareProcessBlockInfo> exclude) {
+        if (this.mEntries == null || this.mMemLevel != memLevel || now - this.mBuildTime > MAX_INDEX_AGE || now < this.mBuildTime) {
+            return null;
+        }
+        List<AwareProcessBlockInfo> victims = new ArrayList();
+        Iterator<Entry> it = this.mEntries.descendingIterator();
+        while (it.hasNext() && victims.size() < count) {
+            Entry entry = (Entry) it.next();
+            if (exclude != null && exclude.contains(entry.mBlock)) {
+                continue;
+            }
+            if (filter == null || !filter.isStale(entry.mBlock)) {
+                victims.add(entry.mBlock);
+            } else {
+                it.remove();
+                removePidsLocked(entry);
+            }
+        }
+        Collections.reverse(victims);
+        return victims;
+    }
+
+    public synchronized void onProcessStarted(int pid, int uid) {
+        if (this.mEntries != null) {
+            Iterator<Entry> it = this.mEntries.iterator();
+            while (it.hasNext()) {
+                Entry entry = (Entry) it.next();
+                if (entry.mBlock.mUid == uid) {
+                    it.remove();
+                    removePidsLocked(entry);
+                }
+            }
+        }
+    }
+
+    public synchronized void onProcessDied(int pid) {
+        if (this.mEntries != null && !removeByPidLocked(pid)) {
+            invalidate();
+        }
+    }
+
+    public synchronized void onForegroundActivitiesChanged(int pid, boolean foregroundActivities) {
+        if (foregroundActivities) {
+            removeByPidLocked(pid);
+        }
+    }
+
+    /** Ranks the entries again by the scorer's importance; the blocks themselves are not changed. */
+    public synchronized void reorder(BlockScorer scorer) {
+        if (this.mEntries != null && !this.mByWeight && !this.mEntries.isEmpty()) {
+            List<Entry> entries = new ArrayList(this.mEntries);
+            this.mEntries.clear();
+            this.mPidEntries.clear();
+            for (Entry entry : entries) {
+                addLocked(new Entry(entry.mBlock, scorer.score(entry.mBlock), entry.mSeq));
+            }
+        }
+    }
+
+    public synchronized void invalidate() {
+        this.mEntries = null;
+        this.mPidEntries.clear();
+        this.mMemLevel = -1;
+    }
+
+    public synchronized void dump(PrintWriter pw, long now) {
+        if (pw != null) {
+            if (this.mEntries == null) {
+                pw.println("victim index: invalid");
+            } else {
+                pw.println("victim index: level=" + this.mMemLevel + ", blocks=" + this.mEntries.size() + ", pids=" + this.mPidEntries.size() + ", age=" + (now - this.mBuildTime) + "ms");
+            }
+        }
+    }
+
+    private int rankOf(AwareProcessBlockInfo block) {
+        return this.mByWeight ? -block.mWeight : block.mImportance;
+    }
+
+    private void addLocked(Entry entry) {
+        if (this.mEntries.add(entry)) {
+            for (AwareProcessInfo info : entry.mBlock.mProcessList) {
+                if (info != null) {
+                    this.mPidEntries.put(info.mPid, entry);
+                }
+            }
+        }
+    }
+
+    private boolean removeByPidLocked(int pid) {
+        Entry entry = (Entry) this.mPidEntries.get(pid);
+        if (entry == null) {
+            return false;
+        }
+        this.mEntries.remove(entry);
+        removePidsLocked(entry);
+        return true;
+    }
+
+    private void removePidsLocked(Entry entry) {
+        for (AwareProcessInfo info : entry.mBlock.mProcessList) {
+            if (info != null && this.mPidEntries.get(info.mPid) == entry) {
+                this.mPidEntries.remove(info.mPid);
+            }
+        }
+    }
+}
@@ -59,4 +59,9 @@ public final class AwareJobSchedulerConstants {
     public static Map<String, Boolean> getCacheConditionMap() {
         return new HashMap(CACHE_CONDITION_MAP);
     }
+
+    public static boolean isCacheCondition(String condition) {
+        Boolean cache = (Boolean) CACHE_CONDITION_MAP.get(condition);
+        return cache != null ? cache.booleanValue() : false;
+    }
 }
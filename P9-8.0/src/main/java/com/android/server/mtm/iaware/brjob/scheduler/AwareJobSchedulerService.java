@@ -8,11 +8,15 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.rms.iaware.AwareLog;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import com.android.server.am.HwBroadcastRecord;
 import com.android.server.am.HwMtmBroadcastResourceManager;
+import com.android.server.mtm.iaware.brjob.AwareJobSchedulerConstants;
 import com.android.server.mtm.iaware.brjob.controller.AppStatusController;
 import com.android.server.mtm.iaware.brjob.controller.AwareStateController;
 import com.android.server.mtm.iaware.brjob.controller.BarStatusController;
@@ -27,7 +31,8 @@ import com.android.server.mtm.iaware.brjob.controller.WidgetStatusController;
 import com.android.server.pfw.autostartup.comm.XmlConst.PreciseIgnore;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 public class AwareJobSchedulerService implements AwareStateChangedListener {
@@ -49,11 +54,20 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
             }
         }
     };
+    private long mCancelledCount = 0;
+    private final ArrayMap<String, AwareStateController> mConditionControllers = new ArrayMap();
     private final Context mContext;
     private ArrayList<AwareStateController> mControllers;
+    private long mDispatchBatchCount = 0;
+    private long mDispatchedCount = 0;
     private final AwareJobHandler mHandler;
-    private ArrayList<AwareJobStatus> mJobs;
+    private LinkedHashMap<String, AwareJobStatus> mJobs;
     private final Object mLock = new Object();
+    private long mMaxDispatchLatency = 0;
+    private int mMaxQueueLength = 0;
+    private final LinkedHashSet<AwareJobStatus> mPendingJobs = new LinkedHashSet();
+    private long mScheduledCount = 0;
+    private long mTotalDispatchLatency = 0;
 
     private class AwareJobHandler extends Handler {
         public AwareJobHandler(Looper looper) {
@@ -71,7 +85,7 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
                     synchronized (-get0) {
                         AwareJobStatus runNow = message.obj;
                         if (runNow != null) {
-                            HwMtmBroadcastResourceManager.insertIawareOrderedBroadcast(runNow.getHwBroadcastRecord());
+                            AwareJobSchedulerService.this.dispatchJobLocked(runNow, SystemClock.elapsedRealtime());
                             AwareJobSchedulerService.this.stopTrackingJobLocked(runNow);
                             break;
                         }
@@ -102,24 +116,31 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
     public AwareJobSchedulerService(Context context, HandlerThread handlerThread) {
         this.mContext = context;
         this.mHandler = new AwareJobHandler(handlerThread.getLooper());
-        this.mJobs = new ArrayList();
+        this.mJobs = new LinkedHashMap();
         this.mControllers = new ArrayList();
-        this.mControllers.add(LimitNumController.get(this));
-        this.mControllers.add(KeyWordController.get(this));
-        this.mControllers.add(SIMStatusController.get(this));
-        this.mControllers.add(BluetoothStatusController.get(this));
-        this.mControllers.add(WidgetStatusController.get(this));
-        this.mControllers.add(BarStatusController.get(this));
-        this.mControllers.add(AppStatusController.get(this));
-        this.mControllers.add(MinTimeController.get(this));
-        this.mControllers.add(ServicesStatusController.get(this));
-        this.mControllers.add(ConnectivityController.get(this));
+        addController(LimitNumController.get(this), AwareJobSchedulerConstants.LIMITNUM_PERDAY_ACTION_FILTER_NAME, AwareJobSchedulerConstants.LIMITNUM_PERHOUR_ACTION_FILTER_NAME);
+        addController(KeyWordController.get(this), AwareJobSchedulerConstants.KEYWORD_ACTION_FILTER_NAME, AwareJobSchedulerConstants.EXTRA_ACTION_FILTER_NAME);
+        addController(SIMStatusController.get(this), AwareJobSchedulerConstants.SIMSTATUS_ACTION_FILTER_NAME);
+        addController(BluetoothStatusController.get(this), AwareJobSchedulerConstants.BLUETOOTHSTATUS_ACTION_FILTER_NAME);
+        addController(WidgetStatusController.get(this), AwareJobSchedulerConstants.WIDGETSTATUS_ACTION_FILTER_NAME);
+        addController(BarStatusController.get(this), AwareJobSchedulerConstants.BARSTATUS_ACTION_FILTER_NAME);
+        addController(AppStatusController.get(this), AwareJobSchedulerConstants.APPSTATUS_ACTION_FILTER_NAME);
+        addController(MinTimeController.get(this), AwareJobSchedulerConstants.MINTIME_ONHOUR_ACTION_FILTER_NAME, AwareJobSchedulerConstants.MINTIME_ONMINUTE_ACTION_FILTER_NAME);
+        addController(ServicesStatusController.get(this), AwareJobSchedulerConstants.SERVICESSTATUS_ACTION_FILTER_NAME);
+        addController(ConnectivityController.get(this), AwareJobSchedulerConstants.NETWORKSTATUS_ACTION_FILTER_NAME, AwareJobSchedulerConstants.WIFISTATUS_ACTION_FILTER_NAME);
         IntentFilter filter = new IntentFilter();
         filter.addAction("android.intent.action.PACKAGE_REMOVED");
         filter.addDataScheme("package");
         context.registerReceiverAsUser(this.mBroadcastReceiver, UserHandle.ALL, filter, null, null);
     }
 
+    private void addController(AwareStateController controller, String... conditions) {
+        this.mControllers.add(controller);
+        for (String condition : conditions) {
+            this.mConditionControllers.put(condition, controller);
+        }
+    }
+
     public void onControllerStateChanged(List<AwareJobStatus> jobList) {
         if (jobList != null) {
             Message msg = this.mHandler.obtainMessage(MSG_CONTROLLER_CHANGED);
@@ -166,22 +187,31 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
 
     private void scheduleJob(AwareJobStatus jobStatus) {
         synchronized (this.mLock) {
-            Iterator<AwareJobStatus> it = this.mJobs.iterator();
-            while (it.hasNext()) {
-                if (((AwareJobStatus) it.next()).equalJob(jobStatus)) {
-                    it.remove();
-                    break;
-                }
+            AwareJobStatus oldJob = (AwareJobStatus) this.mJobs.remove(jobStatus.getJobKey());
+            if (oldJob != null) {
+                this.mPendingJobs.remove(oldJob);
             }
-            this.mJobs.add(jobStatus);
-            int listSize = this.mControllers.size();
-            for (int i = 0; i < listSize; i++) {
-                ((AwareStateController) this.mControllers.get(i)).maybeStartTrackingJobLocked(jobStatus);
+            this.mJobs.put(jobStatus.getJobKey(), jobStatus);
+            this.mScheduledCount++;
+            if (this.mJobs.size() > this.mMaxQueueLength) {
+                this.mMaxQueueLength = this.mJobs.size();
             }
+            startTrackingJobLocked(jobStatus);
+            this.mPendingJobs.add(jobStatus);
         }
         this.mHandler.obtainMessage(MSG_CHECK_JOB).sendToTarget();
     }
 
+    private void startTrackingJobLocked(AwareJobStatus job) {
+        ArraySet<AwareStateController> tracked = new ArraySet();
+        for (String condition : job.getConstraints()) {
+            AwareStateController controller = (AwareStateController) this.mConditionControllers.get(condition);
+            if (controller != null && tracked.add(controller)) {
+                controller.maybeStartTrackingJobLocked(job);
+            }
+        }
+    }
+
     private void controllerStateChanged(List<AwareJobStatus> jobList) {
         if (this.DEBUG) {
             AwareLog.i(TAG, "iaware_brjob controllerStateChanged begin");
@@ -190,9 +220,9 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
             int listSize = jobList.size();
             for (int i = 0; i < listSize; i++) {
                 AwareJobStatus job = (AwareJobStatus) jobList.get(i);
-                int controllerSize = this.mControllers.size();
-                for (int index = 0; index < controllerSize; index++) {
-                    ((AwareStateController) this.mControllers.get(index)).maybeStartTrackingJobLocked(job);
+                if (this.mJobs.get(job.getJobKey()) == job) {
+                    startTrackingJobLocked(job);
+                    this.mPendingJobs.add(job);
                 }
             }
         }
@@ -201,17 +231,20 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
 
     private void cancelJobsForPkgLocked(String packageName) {
         synchronized (this.mLock) {
-            int length = this.mJobs.size();
-            if (length < 1) {
+            if (this.mJobs.size() < 1) {
                 AwareLog.w(TAG, "iaware_brjob no job need to cancel.");
                 return;
             }
-            for (int i = length; i > 0; i--) {
-                AwareJobStatus jobStatus = (AwareJobStatus) this.mJobs.get(i - 1);
+            List<AwareJobStatus> cancelJobs = new ArrayList();
+            for (AwareJobStatus jobStatus : this.mJobs.values()) {
                 if (packageName.equals(jobStatus.getReceiverPkg())) {
-                    stopTrackingJobLocked(jobStatus);
+                    cancelJobs.add(jobStatus);
                 }
             }
+            int listSize = cancelJobs.size();
+            for (int i = 0; i < listSize; i++) {
+                stopTrackingJobLocked((AwareJobStatus) cancelJobs.get(i));
+            }
         }
     }
 
@@ -219,10 +252,28 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
         if (this.DEBUG) {
             AwareLog.i(TAG, "iaware_brjob stopTrackingJobLocked begin");
         }
-        this.mJobs.remove(jobStatus);
-        int controllerSize = this.mControllers.size();
-        for (int i = 0; i < controllerSize; i++) {
-            ((AwareStateController) this.mControllers.get(i)).maybeStopTrackingJobLocked(jobStatus);
+        if (jobStatus != null) {
+            if (this.mJobs.get(jobStatus.getJobKey()) == jobStatus) {
+                this.mJobs.remove(jobStatus.getJobKey());
+            }
+            this.mPendingJobs.remove(jobStatus);
+            ArraySet<AwareStateController> untracked = new ArraySet();
+            for (String condition : jobStatus.getConstraints()) {
+                AwareStateController controller = (AwareStateController) this.mConditionControllers.get(condition);
+                if (controller != null && untracked.add(controller)) {
+                    controller.maybeStopTrackingJobLocked(jobStatus);
+                }
+            }
+        }
+    }
+
+    private void dispatchJobLocked(AwareJobStatus job, long now) {
+        HwMtmBroadcastResourceManager.insertIawareOrderedBroadcast(job.getHwBroadcastRecord());
+        long latency = now - job.getScheduleTime();
+        this.mDispatchedCount++;
+        this.mTotalDispatchLatency += latency;
+        if (latency > this.mMaxDispatchLatency) {
+            this.mMaxDispatchLatency = latency;
         }
     }
 
@@ -231,14 +282,38 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
             AwareLog.i(TAG, "iaware_brjob maybeQueueReadyJobsForExecution begin");
         }
         synchronized (this.mLock) {
-            for (int i = this.mJobs.size() - 1; i >= 0; i--) {
-                AwareJobStatus job = (AwareJobStatus) this.mJobs.get(i);
-                if (job.isReady()) {
-                    HwMtmBroadcastResourceManager.insertIawareOrderedBroadcast(job.getHwBroadcastRecord());
-                    stopTrackingJobLocked(job);
-                } else if (job.shouldCancelled()) {
-                    stopTrackingJobLocked(job);
+            if (!this.mPendingJobs.isEmpty()) {
+                LinkedHashMap<String, List<AwareJobStatus>> readyJobs = new LinkedHashMap();
+                List<AwareJobStatus> cancelJobs = new ArrayList();
+                for (AwareJobStatus job : this.mPendingJobs) {
+                    if (job.isReady()) {
+                        String pkg = job.getReceiverPkg();
+                        List<AwareJobStatus> pkgJobs = (List) readyJobs.get(pkg);
+                        if (pkgJobs == null) {
+                            pkgJobs = new ArrayList();
+                            readyJobs.put(pkg, pkgJobs);
+                        }
+                        pkgJobs.add(job);
+                    } else if (job.shouldCancelled()) {
+                        cancelJobs.add(job);
+                    }
+                }
+                this.mPendingJobs.clear();
+                long now = SystemClock.elapsedRealtime();
+                for (List<AwareJobStatus> pkgJobs2 : readyJobs.values()) {
+                    int jobSize = pkgJobs2.size();
+                    for (int j = 0; j < jobSize; j++) {
+                        AwareJobStatus job2 = (AwareJobStatus) pkgJobs2.get(j);
+                        dispatchJobLocked(job2, now);
+                        stopTrackingJobLocked(job2);
+                    }
+                    this.mDispatchBatchCount++;
                 }
+                int cancelSize = cancelJobs.size();
+                for (int i = 0; i < cancelSize; i++) {
+                    stopTrackingJobLocked((AwareJobStatus) cancelJobs.get(i));
+                }
+                this.mCancelledCount += (long) cancelSize;
             }
         }
     }
@@ -263,6 +338,8 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
                 }
             } else if ("controller".equals(args[2])) {
                 dumpControllers(pw);
+            } else if ("stats".equals(args[2])) {
+                dumpStats(pw);
             } else {
                 pw.println("  bad command" + args[2]);
             }
@@ -275,12 +352,20 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
                 pw.println("    There is no job now.");
                 return;
             }
-            for (AwareJobStatus job : this.mJobs) {
+            for (AwareJobStatus job : this.mJobs.values()) {
                 job.dump(pw);
             }
         }
     }
 
+    private void dumpStats(PrintWriter pw) {
+        synchronized (this.mLock) {
+            pw.println("    queue length: " + this.mJobs.size() + ", max: " + this.mMaxQueueLength + ", pending check: " + this.mPendingJobs.size());
+            pw.println("    scheduled: " + this.mScheduledCount + ", dispatched: " + this.mDispatchedCount + " in " + this.mDispatchBatchCount + " package batches, cancelled: " + this.mCancelledCount);
+            pw.println("    dispatch latency avg: " + (this.mDispatchedCount > 0 ? this.mTotalDispatchLatency / this.mDispatchedCount : 0) + "ms, max: " + this.mMaxDispatchLatency + "ms");
+        }
+    }
+
     /* JADX WARNING: Missing block: B:19:0x0050, code:
             return;
      */
@@ -292,9 +377,7 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
                 return;
             }
             boolean hasAction = false;
-            int listSize = this.mJobs.size();
-            for (int i = 0; i < listSize; i++) {
-                AwareJobStatus job = (AwareJobStatus) this.mJobs.get(i);
+            for (AwareJobStatus job : this.mJobs.values()) {
                 if (action.equals(job.getAction())) {
                     job.dump(pw);
                     hasAction = true;
@@ -317,9 +400,7 @@ public class AwareJobSchedulerService implements AwareStateChangedListener {
                 return;
             }
             boolean hasReceiver = false;
-            int listSize = this.mJobs.size();
-            for (int i = 0; i < listSize; i++) {
-                AwareJobStatus job = (AwareJobStatus) this.mJobs.get(i);
+            for (AwareJobStatus job : this.mJobs.values()) {
                 if (receiver.equals(job.getReceiverPkg())) {
                     job.dump(pw);
                     hasReceiver = true;
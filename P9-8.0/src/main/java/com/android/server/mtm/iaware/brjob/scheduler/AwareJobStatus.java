@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.IntentFilter.ActionFilterEntry;
 import android.content.pm.ResolveInfo;
+import android.os.SystemClock;
 import android.rms.iaware.AwareLog;
 import android.text.TextUtils;
 import com.android.server.am.HwBroadcastRecord;
@@ -16,6 +17,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class AwareJobStatus {
@@ -24,9 +26,11 @@ public final class AwareJobStatus {
     private Map<String, String> mActionFilters = new HashMap();
     private int mForceCacheTag = 2;
     private HwBroadcastRecord mHwBr;
+    private String mJobKey;
     private AtomicBoolean mParseError = new AtomicBoolean(false);
     private ResolveInfo mReceiver;
     private Map<String, Boolean> mSatisfied = new HashMap();
+    private final long mScheduleTime = SystemClock.elapsedRealtime();
     private AtomicBoolean mShouldCache = new AtomicBoolean(true);
     private AtomicBoolean mShouldRunByError = new AtomicBoolean(false);
 
@@ -131,10 +135,7 @@ public final class AwareJobStatus {
     }
 
     private boolean shouldCache(String condition) {
-        if (AwareJobSchedulerConstants.getCacheConditionMap().containsKey(condition)) {
-            return ((Boolean) AwareJobSchedulerConstants.getCacheConditionMap().get(condition)).booleanValue();
-        }
-        return false;
+        return AwareJobSchedulerConstants.isCacheCondition(condition);
     }
 
     public String getActionFilterValue(String filterName) {
@@ -148,6 +149,21 @@ public final class AwareJobStatus {
         return this.mActionFilters.size();
     }
 
+    public Set<String> getConstraints() {
+        return this.mActionFilters.keySet();
+    }
+
+    public long getScheduleTime() {
+        return this.mScheduleTime;
+    }
+
+    public String getJobKey() {
+        if (this.mJobKey == null) {
+            this.mJobKey = getAction() + "/" + getComponentName();
+        }
+        return this.mJobKey;
+    }
+
     public String getReceiverPkg() {
         if (!(this.mReceiver == null || this.mReceiver.getComponentInfo() == null)) {
             try {
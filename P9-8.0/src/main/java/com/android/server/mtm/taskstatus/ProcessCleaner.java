@@ -18,6 +18,7 @@ import com.android.server.mtm.iaware.appmng.AwareAppMngSort;
 import com.android.server.mtm.iaware.appmng.AwareProcessBlockInfo;
 import com.android.server.mtm.iaware.appmng.AwareProcessInfo;
 import com.android.server.rms.iaware.appmng.AwareIntelligentRecg;
+import com.android.server.rms.iaware.memory.utils.MemoryConstant;
 import com.huawei.android.app.HwActivityManager;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -32,6 +33,7 @@ public class ProcessCleaner {
     private static final int CLEAN_UID_NOTIFICATION = 1;
     private static final int PROTECTED_APP_NUM_FROM_MDM = 3;
     private static final String TAG = "ProcessCleaner";
+    private static final String TAG_BATCH = "ProcessCleaner_Batch";
     private static ProcessCleaner mProcessCleaner = null;
     private ActivityManager mActivityManager;
     Handler mHandler;
@@ -39,6 +41,71 @@ public class ProcessCleaner {
     private ArrayList<String> mMDMProtectedList;
     private ProcessInfoCollector mProcInfoCollector;
 
+    /**
+     * Kills a series of blocks picked by one memory policy pass. The process table is read once
+     * for the whole batch to reject blocks whose uid started a new process after they were sorted,
+     * and kills are issued asynchronously so the victims die in parallel instead of one AMS round
+     * trip at a time. Blocks of a uid already killed in the batch are checked against the live
+     * table instead, since restartable processes of that uid may have come back meanwhile.
+     */
+    public final class KillBatch {
+        private final AtomicBoolean mInterrupt;
+        private final ArraySet<Integer> mKilledUids = new ArraySet();
+        private int mKilledGroupCount = 0;
+        private int mKilledPidCount = 0;
+        private final String mReason;
+        private int mSkippedGroupCount = 0;
+        private int mSnapshotGeneration;
+        private int mSnapshotRefreshCount = 0;
+        private final long mStartTime = SystemClock.elapsedRealtime();
+        private ArrayMap<Integer, Long> mUidCreatedTimes;
+
+        KillBatch(AtomicBoolean interrupt, String reason) {
+            this.mInterrupt = interrupt;
+            this.mReason = reason;
+            refreshSnapshot();
+        }
+
+        /**
+         * Reads the generation before the created times, so a process added in between only
+         * causes one more refresh.
+         */
+        private void refreshSnapshot() {
+            this.mSnapshotGeneration = ProcessCleaner.this.mProcInfoCollector.getProcMapGeneration();
+            this.mUidCreatedTimes = ProcessCleaner.this.mProcInfoCollector.getNewestCreatedTimeByUid();
+        }
+
+        public List<Integer> killGroup(AwareProcessBlockInfo procGroup) {
+            if (procGroup == null) {
+                return null;
+            }
+            Integer uid = Integer.valueOf(procGroup.mUid);
+            if (ProcessCleaner.this.mProcInfoCollector.getProcMapGeneration() != this.mSnapshotGeneration) {
+                refreshSnapshot();
+                this.mSnapshotRefreshCount++;
+            }
+            List<Integer> pids = ProcessCleaner.this.killProcessesSameUidExt(procGroup, this.mInterrupt, true, false, this.mReason, this.mKilledUids.contains(uid) ? null : this.mUidCreatedTimes);
+            if (pids == null || pids.isEmpty()) {
+                this.mSkippedGroupCount++;
+                return pids;
+            }
+            this.mKilledUids.add(uid);
+            this.mKilledGroupCount++;
+            this.mKilledPidCount += pids.size();
+            return pids;
+        }
+
+        /**
+         * Returns an estimate of the memory the killed processes free, in KB: the number of killed
+         * processes times APP_AVG_USS. Nothing is measured.
+         */
+        public long finish() {
+            long freedMem = ((long) this.mKilledPidCount) * MemoryConstant.APP_AVG_USS;
+            AwareLog.i(ProcessCleaner.TAG_BATCH, this.mReason + " batch: groups=" + this.mKilledGroupCount + ", skipped=" + this.mSkippedGroupCount + ", uids=" + this.mKilledUids.size() + ", pids=" + this.mKilledPidCount + ", refreshed=" + this.mSnapshotRefreshCount + ", estFreed=" + freedMem + "KB, cost=" + (SystemClock.elapsedRealtime() - this.mStartTime) + "ms");
+            return freedMem;
+        }
+    }
+
     public enum CleanType {
         NONE("do-nothing"),
         COMPACT("compact"),
@@ -296,6 +363,10 @@ public class ProcessCleaner {
         }
     }
 
+    public KillBatch beginKillBatch(AtomicBoolean interrupt, String reason) {
+        return new KillBatch(interrupt, reason);
+    }
+
     public List<Integer> killProcessesSameUidExt(AwareProcessBlockInfo procGroup, boolean quickKillAction, String reason) {
         return killProcessesSameUidExt(procGroup, null, true, quickKillAction, reason);
     }
@@ -332,6 +403,10 @@ public class ProcessCleaner {
      */
     /* Code decompiled incorrectly, please refer to instructions dump. */
     public List<Integer> killProcessesSameUidExt(AwareProcessBlockInfo procGroup, AtomicBoolean interrupt, boolean isAsynchronous, boolean quickKillAction, String reason) {
+        return killProcessesSameUidExt(procGroup, interrupt, isAsynchronous, quickKillAction, reason, null);
+    }
+
+    private List<Integer> killProcessesSameUidExt(AwareProcessBlockInfo procGroup, AtomicBoolean interrupt, boolean isAsynchronous, boolean quickKillAction, String reason, Map<Integer, Long> uidCreatedTimes) {
         Throwable th;
         if (procGroup == null) {
             return null;
@@ -358,7 +433,7 @@ public class ProcessCleaner {
             Slog.d(TAG, "[aware_mem] start process cleaner kill process start");
         }
         AwareAppMngSort appMngSort = AwareAppMngSort.getInstance();
-        if (procGroup.mIsNativeForceStop || appMngSort == null || !appMngSort.isProcessBlockPidChanged(procGroup)) {
+        if (procGroup.mIsNativeForceStop || appMngSort == null || !appMngSort.isProcessBlockPidChanged(procGroup, uidCreatedTimes)) {
             boolean isCleanAllRes = resCleanAllow;
             boolean isCleanUidActivity = false;
             boolean needCheckAlarm = appMngSort != null ? appMngSort.needCheckAlarm(procGroup) : true;
@@ -8,6 +8,7 @@ import android.os.UserHandle;
 import android.rms.HwSysResManager;
 import android.rms.iaware.AwareConstant.ResourceType;
 import android.rms.iaware.CollectData;
+import android.util.ArrayMap;
 import android.util.Slog;
 import com.android.server.am.HwActivityManagerService;
 import com.android.server.am.ProcessRecord;
@@ -32,6 +33,7 @@ public class ProcessInfoCollector {
     private int mIndex = 0;
     private ProcessInfo[] mKilledProcList = new ProcessInfo[10];
     private HashMap<Integer, ProcessInfo> mProcMap = new HashMap();
+    private int mProcMapGeneration = 0;
 
     private ProcessInfoCollector() {
         init();
@@ -191,6 +193,41 @@ public class ProcessInfoCollector {
         }
     }
 
+    public long getNewestCreatedTime(int uid) {
+        long newest = -1;
+        synchronized (this.mProcMap) {
+            for (ProcessInfo info : this.mProcMap.values()) {
+                if (info.mUid == uid && info.mCreatedTime > newest) {
+                    newest = info.mCreatedTime;
+                }
+            }
+        }
+        return newest;
+    }
+
+    /** Changes whenever a process is added, so a snapshot of created times can tell it is stale. */
+    public int getProcMapGeneration() {
+        int i;
+        synchronized (this.mProcMap) {
+            i = this.mProcMapGeneration;
+        }
+        return i;
+    }
+
+    public ArrayMap<Integer, Long> getNewestCreatedTimeByUid() {
+        ArrayMap<Integer, Long> createdTimes;
+        synchronized (this.mProcMap) {
+            createdTimes = new ArrayMap(this.mProcMap.size());
+            for (ProcessInfo info : this.mProcMap.values()) {
+                Long newest = (Long) createdTimes.get(Integer.valueOf(info.mUid));
+                if (newest == null || info.mCreatedTime > newest.longValue()) {
+                    createdTimes.put(Integer.valueOf(info.mUid), Long.valueOf(info.mCreatedTime));
+                }
+            }
+        }
+        return createdTimes;
+    }
+
     public ArrayList<ProcessInfo> getProcessInfoList() {
         ArrayList<ProcessInfo> procList;
         synchronized (this.mProcMap) {
@@ -240,6 +277,7 @@ public class ProcessInfoCollector {
                         curProcessInfo.mCount++;
                         if (!exist) {
                             this.mProcMap.put(Integer.valueOf(pid), curProcessInfo);
+                            this.mProcMapGeneration++;
                         }
                     } else {
                         Slog.e(TAG, "recordProcessInfo  source or target object is null");
@@ -55,6 +55,10 @@ public class AntiMalDataManager {
     private ArrayList<AntiMalComponentInfo> mOldComponentList = new ArrayList();
     private AntiMalCounter mOldCounter;
     private boolean mOtaBoot;
+    private int mScanApkCount;
+    private long mScanApkTime;
+    private int mScanCacheHitCount;
+    private long mScanWhiteListTime;
 
     private static class AntiMalCounter {
         int mAddCnt;
@@ -148,6 +152,13 @@ public class AntiMalDataManager {
         }
     }
 
+    public void setScanStatistics(long whiteListTime, long apkScanTime, int apkCount, int cacheHitCount) {
+        this.mScanWhiteListTime = whiteListTime;
+        this.mScanApkTime = apkScanTime;
+        this.mScanApkCount = apkCount;
+        this.mScanCacheHitCount = cacheHitCount;
+    }
+
     public Bundle getAntimalComponentInfo() {
         Bundle bundle = new Bundle();
         if (this.mCurComponentList.size() > 0) {
@@ -369,6 +380,10 @@ public class AntiMalDataManager {
         antimalData.putInt(HwSecDiagnoseConstant.ANTIMAL_DELETE_COUNT, this.mCurCounter.mDeleteCnt);
         antimalData.putInt(HwSecDiagnoseConstant.ANTIMAL_TAMPER_COUNT, this.mCurCounter.mModifiedCnt);
         antimalData.putString("SecVer", null);
+        antimalData.putLong(HwSecDiagnoseConstant.ANTIMAL_SCAN_WHITE_LIST_TIME, this.mScanWhiteListTime);
+        antimalData.putLong(HwSecDiagnoseConstant.ANTIMAL_SCAN_APK_TIME, this.mScanApkTime);
+        antimalData.putInt(HwSecDiagnoseConstant.ANTIMAL_SCAN_APK_COUNT, this.mScanApkCount);
+        antimalData.putInt(HwSecDiagnoseConstant.ANTIMAL_SCAN_CACHE_HIT_COUNT, this.mScanCacheHitCount);
         if (this.mCurApkInfoList.size() > 0) {
             antimalData.putParcelableArrayList(HwSecDiagnoseConstant.ANTIMAL_APK_LIST, this.mCurApkInfoList);
         }
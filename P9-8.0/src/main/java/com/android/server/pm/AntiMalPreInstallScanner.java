@@ -2,22 +2,31 @@ package com.android.server.pm;
 
 import android.content.Context;
 import android.content.pm.PackageParser.Package;
+import android.os.Environment;
+import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.text.TextUtils;
+import android.util.AtomicFile;
 import android.util.Log;
 import android.util.Slog;
 import android.util.Xml;
+import com.android.internal.os.BackgroundThread;
 import com.android.server.security.securitydiagnose.AntiMalApkInfo;
 import com.android.server.security.securitydiagnose.HwSecDiagnoseConstant;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.MessageDigest;
@@ -35,6 +44,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import libcore.io.IoUtils;
 import org.apache.commons.codec.binary.Base64;
 import org.xmlpull.v1.XmlPullParser;
@@ -47,9 +63,12 @@ public class AntiMalPreInstallScanner {
     private static final String ENCRYPT_ARG = "RSA/ECB/OAEPWithSHA-1AndMGF1Padding";
     private static final boolean HW_DEBUG;
     private static final String KEY_ALGORITHM = "RSA";
+    private static final int MAX_SCAN_THREADS = 4;
     private static final String PATH_SLANT = "/";
     private static final String PKGLIST_SIGN_PUBLIC_KEY = "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEArO6tIeIxD78HrazoYkAeKdXhKINVUE1fAwnXb6OiabTYf3qO22wcFoqyKsm2tlaWrDU8+hnxjkZOLIvpcJ0bEDAkICoIRNGBoJzJzN6PyIOyfLd4IOA/bS071jaA5JjLGpMkBKYuhzECnK/pmruKngl3ED/t8HRw44ku1rabcwJjKl8dF4D0ogoosrr8mrwfnQaJpkmTL1oScF/Mr4plkrUdw3Ab00HZoklMVznT+M5KV8DmEjo8PIYkdFlJCwEx4Cj6PXKHfBEGeivyPe2W1/EnYdaREu4GO9ZLBsIhRhS3b7UY5UFsjbYBK23M4zrpZlMVQer4zyqmzefs25BYAwIDAQAB";
     private static final String[] PREINSTALL_APK_DIR = new String[]{"/system/", "/oem/app/", "/version/", "/product/", "/cust/"};
+    private static final String SCAN_CACHE_FILE = "AntiMalScanCache";
+    private static final int SCAN_CACHE_VERSION = 3;
     private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
     private static final String SYSAPK_SIGN_PATH = "xml/sign";
     private static final String SYSAPK_WHITE_LIST_PATH = "xml/criticalpro.xml";
@@ -58,12 +77,20 @@ public class AntiMalPreInstallScanner {
     private static AntiMalPreInstallScanner mInstance;
     private static boolean mIsOtaBoot;
     private HashMap<String, ApkBasicInfo> mApkInfoList = new HashMap();
+    private final AtomicInteger mCacheHitCount = new AtomicInteger();
+    private final HashMap<android.content.pm.Signature, String> mCertHashCache = new HashMap();
     private AntiMalDataManager mDataManager = new AntiMalDataManager(mIsOtaBoot);
     private long mDeviceFirstUseTime;
     private boolean mNeedScan = this.mDataManager.needScanIllegalApks();
     private HashMap<String, AntiMalApkInfo> mOldIllegalApks = new HashMap();
     private AntiMalPreInstallReport mReport = new AntiMalPreInstallReport(this.mDataManager);
+    private final AtomicInteger mScanApkCount = new AtomicInteger();
+    private final AtomicLong mScanApkTime = new AtomicLong();
+    private final HashMap<String, ScanResult> mScanCache = new HashMap();
+    private final HashMap<String, ScanResult> mScanResults = new HashMap();
     private HashMap<String, ArrayList<ApkBasicInfo>> mSysApkWhitelist = new HashMap();
+    private String mWhitelistDigest;
+    private long mWhitelistLoadTime;
 
     private static class ApkBasicInfo {
         public boolean mExist = false;
@@ -80,6 +107,37 @@ public class AntiMalPreInstallScanner {
         }
     }
 
+    private static class ComponentScan {
+        public final AntiMalComponentInfo mComponentInfo;
+        public final HashMap<String, ApkBasicInfo> mApkInfoList = new HashMap();
+        public final HashMap<String, ArrayList<ApkBasicInfo>> mSysApkWhitelist = new HashMap();
+        public byte[] mWhitelistData;
+
+        ComponentScan(String componentPath) {
+            this.mComponentInfo = new AntiMalComponentInfo(componentPath);
+        }
+    }
+
+    private static class ScanResult {
+        public final String mCertDigest;
+        public final long mLastModified;
+        public final long mLength;
+        public final boolean mMatched;
+        public final String mPath;
+
+        ScanResult(String path, long length, long lastModified, String certDigest, boolean matched) {
+            this.mPath = path;
+            this.mLength = length;
+            this.mLastModified = lastModified;
+            this.mCertDigest = certDigest;
+            this.mMatched = matched;
+        }
+
+        boolean isSameApk(long length, long lastModified, String certDigest) {
+            return this.mLength == length && this.mLastModified == lastModified && this.mCertDigest.equals(certDigest);
+        }
+    }
+
     static {
         boolean z;
         if (Log.HWINFO) {
@@ -119,6 +177,11 @@ public class AntiMalPreInstallScanner {
         if (CHINA_RELEASE_VERSION) {
             if (this.mNeedScan) {
                 checkDeletedIllegallyApks();
+                saveScanCache();
+            }
+            this.mDataManager.setScanStatistics(this.mWhitelistLoadTime, this.mScanApkTime.get(), this.mScanApkCount.get(), this.mCacheHitCount.get());
+            if (HW_DEBUG) {
+                Slog.d(TAG, "systemReady whitelist TIME = " + this.mWhitelistLoadTime + " apk scan TIME = " + this.mScanApkTime.get() + " scanned = " + this.mScanApkCount.get() + " cache hits = " + this.mCacheHitCount.get());
             }
             this.mReport.report(null);
         }
@@ -150,7 +213,7 @@ public class AntiMalPreInstallScanner {
                     if (!verify(fileToByte(apkListFile), PKGLIST_SIGN_PUBLIC_KEY, readFromFile(signFile))) {
                         Slog.w(TAG, "getSysWhitelist System package list verify failed");
                         return null;
-                    } else if (parsePackagelist(apkListFile)) {
+                    } else if (parsePackagelist(apkListFile, this.mApkInfoList, this.mSysApkWhitelist)) {
                         i++;
                     } else {
                         Slog.w(TAG, "getSysWhitelist Sign verified, but parsing whitelist failed");
@@ -191,50 +254,37 @@ public class AntiMalPreInstallScanner {
             return;
         }
         if (this.mNeedScan) {
-            long timeStart = System.currentTimeMillis();
-            for (String componentPath : COMPONENT_ARRY) {
-                if (HW_DEBUG) {
-                    Log.d(TAG, "loadSysWhitelist componentPath " + componentPath);
-                }
-                File apkListFile = new File(componentPath, SYSAPK_WHITE_LIST_PATH);
-                AntiMalComponentInfo aci = new AntiMalComponentInfo(componentPath);
-                if (apkListFile.exists()) {
-                    if (HW_DEBUG) {
-                        Slog.d(TAG, "loadSysWhitelist the white list file = " + apkListFile.getAbsolutePath());
-                    }
-                    File signFile = new File(componentPath, SYSAPK_SIGN_PATH);
-                    if (signFile.exists()) {
-                        try {
-                            if (verify(fileToByte(apkListFile), PKGLIST_SIGN_PUBLIC_KEY, readFromFile(signFile))) {
-                                aci.setVerifyStatus(0);
-                                if (!parsePackagelist(apkListFile)) {
-                                    aci.setVerifyStatus(4);
-                                    Slog.e(TAG, "loadSysWhitelist Sign verified, but parsing whitelist failed, componentPath = " + componentPath);
-                                }
-                                this.mDataManager.addComponentInfo(aci);
-                            } else {
-                                Slog.e(TAG, "loadSysWhitelist System package list verify failed componentPath = " + componentPath);
-                                aci.setVerifyStatus(3);
-                                this.mDataManager.addComponentInfo(aci);
-                            }
-                        } catch (Exception e) {
-                            Slog.e(TAG, "loadSysWhitelist Exception failed: " + e);
-                            aci.setVerifyStatus(3);
-                            this.mDataManager.addComponentInfo(aci);
-                        }
-                    } else {
-                        Slog.e(TAG, "loadSysWhitelist sign not exist! componentPath = " + componentPath);
-                        aci.setVerifyStatus(2);
-                        this.mDataManager.addComponentInfo(aci);
+            long timeStart = SystemClock.uptimeMillis();
+            ArrayList<ComponentScan> scans = loadComponentsInParallel();
+            MessageDigest whitelistDigest = null;
+            try {
+                whitelistDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                Slog.e(TAG, "loadSysWhitelist get sha256 failed");
+            }
+            for (ComponentScan scan : scans) {
+                this.mApkInfoList.putAll(scan.mApkInfoList);
+                for (String packageName : scan.mSysApkWhitelist.keySet()) {
+                    ArrayList<ApkBasicInfo> plist = (ArrayList) this.mSysApkWhitelist.get(packageName);
+                    if (plist == null) {
+                        plist = new ArrayList();
+                        this.mSysApkWhitelist.put(packageName, plist);
                     }
-                } else {
-                    Slog.e(TAG, "loadSysWhitelist criticalpro not exist. componentPath = " + componentPath);
-                    aci.setVerifyStatus(1);
-                    this.mDataManager.addComponentInfo(aci);
+                    plist.addAll((ArrayList) scan.mSysApkWhitelist.get(packageName));
+                }
+                if (!(whitelistDigest == null || scan.mWhitelistData == null)) {
+                    whitelistDigest.update(scan.mComponentInfo.mName.getBytes(StandardCharsets.UTF_8));
+                    whitelistDigest.update(scan.mWhitelistData);
                 }
+                this.mDataManager.addComponentInfo(scan.mComponentInfo);
             }
+            if (whitelistDigest != null) {
+                this.mWhitelistDigest = bytesToString(whitelistDigest.digest());
+                loadScanCache();
+            }
+            this.mWhitelistLoadTime = SystemClock.uptimeMillis() - timeStart;
             if (HW_DEBUG) {
-                Slog.d(TAG, "loadSysWhitelist TIME = " + (System.currentTimeMillis() - timeStart));
+                Slog.d(TAG, "loadSysWhitelist TIME = " + this.mWhitelistLoadTime);
             }
             return;
         }
@@ -243,6 +293,146 @@ public class AntiMalPreInstallScanner {
         }
     }
 
+    private ArrayList<ComponentScan> loadComponentsInParallel() {
+        ArrayList<ComponentScan> scans = new ArrayList();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(COMPONENT_ARRY.length, MAX_SCAN_THREADS));
+        ArrayList<Future<ComponentScan>> futures = new ArrayList();
+        for (final String componentPath : COMPONENT_ARRY) {
+            futures.add(executor.submit(new Callable<ComponentScan>() {
+                public ComponentScan call() {
+                    return AntiMalPreInstallScanner.this.loadComponent(componentPath);
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            ComponentScan scan;
+            try {
+                scan = (ComponentScan) ((Future) futures.get(i)).get();
+            } catch (InterruptedException | ExecutionException e) {
+                Slog.e(TAG, "loadSysWhitelist Exception failed: " + e);
+                scan = new ComponentScan(COMPONENT_ARRY[i]);
+                scan.mComponentInfo.setVerifyStatus(3);
+            }
+            scans.add(scan);
+        }
+        executor.shutdown();
+        return scans;
+    }
+
+    private ComponentScan loadComponent(String componentPath) {
+        if (HW_DEBUG) {
+            Log.d(TAG, "loadSysWhitelist componentPath " + componentPath);
+        }
+        ComponentScan scan = new ComponentScan(componentPath);
+        AntiMalComponentInfo aci = scan.mComponentInfo;
+        File apkListFile = new File(componentPath, SYSAPK_WHITE_LIST_PATH);
+        if (apkListFile.exists()) {
+            if (HW_DEBUG) {
+                Slog.d(TAG, "loadSysWhitelist the white list file = " + apkListFile.getAbsolutePath());
+            }
+            File signFile = new File(componentPath, SYSAPK_SIGN_PATH);
+            if (signFile.exists()) {
+                try {
+                    byte[] whitelistData = fileToByte(apkListFile);
+                    if (verify(whitelistData, PKGLIST_SIGN_PUBLIC_KEY, readFromFile(signFile))) {
+                        aci.setVerifyStatus(0);
+                        scan.mWhitelistData = whitelistData;
+                        if (!parsePackagelist(apkListFile, scan.mApkInfoList, scan.mSysApkWhitelist)) {
+                            aci.setVerifyStatus(4);
+                            Slog.e(TAG, "loadSysWhitelist Sign verified, but parsing whitelist failed, componentPath = " + componentPath);
+                        }
+                    } else {
+                        Slog.e(TAG, "loadSysWhitelist System package list verify failed componentPath = " + componentPath);
+                        aci.setVerifyStatus(3);
+                    }
+                } catch (Exception e) {
+                    Slog.e(TAG, "loadSysWhitelist Exception failed: " + e);
+                    aci.setVerifyStatus(3);
+                }
+            } else {
+                Slog.e(TAG, "loadSysWhitelist sign not exist! componentPath = " + componentPath);
+                aci.setVerifyStatus(2);
+            }
+        } else {
+            Slog.e(TAG, "loadSysWhitelist criticalpro not exist. componentPath = " + componentPath);
+            aci.setVerifyStatus(1);
+        }
+        return scan;
+    }
+
+    private File getScanCacheFile() {
+        return Environment.buildPath(Environment.getDataDirectory(), new String[]{"system", SCAN_CACHE_FILE});
+    }
+
+    private void loadScanCache() {
+        File cacheFile = getScanCacheFile();
+        if (cacheFile.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new AtomicFile(cacheFile).openRead());
+                if (in.readInt() != SCAN_CACHE_VERSION || !in.readUTF().equals(this.mWhitelistDigest)) {
+                    if (HW_DEBUG) {
+                        Slog.d(TAG, "loadScanCache whitelist changed, drop the scan cache");
+                    }
+                    IoUtils.closeQuietly(in);
+                    return;
+                }
+                int count = in.readInt();
+                synchronized (this.mScanCache) {
+                    for (int i = 0; i < count; i++) {
+                        ScanResult result = new ScanResult(in.readUTF(), in.readLong(), in.readLong(), in.readUTF(), in.readBoolean());
+                        this.mScanCache.put(result.mPath, result);
+                    }
+                }
+            } catch (IOException e) {
+                Slog.e(TAG, "loadScanCache IOException " + e);
+                synchronized (this.mScanCache) {
+                    this.mScanCache.clear();
+                }
+            }
+            IoUtils.closeQuietly(in);
+        }
+    }
+
+    private void saveScanCache() {
+        if (this.mWhitelistDigest != null) {
+            final ArrayList<ScanResult> results;
+            synchronized (this.mScanResults) {
+                results = new ArrayList(this.mScanResults.values());
+            }
+            final String whitelistDigest = this.mWhitelistDigest;
+            BackgroundThread.getHandler().post(new Runnable() {
+                public void run() {
+                    AntiMalPreInstallScanner.this.writeScanCache(whitelistDigest, results);
+                }
+            });
+        }
+    }
+
+    private void writeScanCache(String whitelistDigest, ArrayList<ScanResult> results) {
+        AtomicFile cacheFile = new AtomicFile(getScanCacheFile());
+        FileOutputStream fos = null;
+        try {
+            fos = cacheFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(SCAN_CACHE_VERSION);
+            out.writeUTF(whitelistDigest);
+            out.writeInt(results.size());
+            for (ScanResult result : results) {
+                out.writeUTF(result.mPath);
+                out.writeLong(result.mLength);
+                out.writeLong(result.mLastModified);
+                out.writeUTF(result.mCertDigest);
+                out.writeBoolean(result.mMatched);
+            }
+            out.flush();
+            cacheFile.finishWrite(fos);
+        } catch (IOException e) {
+            Slog.e(TAG, "writeScanCache IOException " + e);
+            cacheFile.failWrite(fos);
+        }
+    }
+
     private byte[] fileToByte(File file) {
         FileNotFoundException e;
         Throwable th;
@@ -435,7 +625,7 @@ public class AntiMalPreInstallScanner {
         return false;
     }
 
-    private boolean parsePackagelist(File whitelist) {
+    private boolean parsePackagelist(File whitelist, HashMap<String, ApkBasicInfo> apkInfoList, HashMap<String, ArrayList<ApkBasicInfo>> sysApkWhitelist) {
         Exception e;
         Throwable th;
         boolean retVal = true;
@@ -469,16 +659,16 @@ public class AntiMalPreInstallScanner {
                         String version = parser.getAttributeValue(null, "version");
                         if (!(TextUtils.isEmpty(packageName) || TextUtils.isEmpty(path) || TextUtils.isEmpty(sign) || !isPreinstallApkDir(path))) {
                             ApkBasicInfo pbi = new ApkBasicInfo(packageName, path, sign.split(","), version);
-                            this.mApkInfoList.put(packageName, pbi);
+                            apkInfoList.put(packageName, pbi);
                             ArrayList<ApkBasicInfo> plist;
-                            if (this.mSysApkWhitelist.get(packageName) == null) {
+                            if (sysApkWhitelist.get(packageName) == null) {
                                 plist = new ArrayList();
                                 plist.add(pbi);
-                                this.mSysApkWhitelist.put(packageName, plist);
+                                sysApkWhitelist.put(packageName, plist);
                             } else {
-                                plist = (ArrayList) this.mSysApkWhitelist.get(packageName);
+                                plist = (ArrayList) sysApkWhitelist.get(packageName);
                                 plist.add(pbi);
-                                this.mSysApkWhitelist.put(packageName, plist);
+                                sysApkWhitelist.put(packageName, plist);
                             }
                         }
                     }
@@ -612,7 +802,7 @@ public class AntiMalPreInstallScanner {
         int i = 0;
         while (i < apkSign.length) {
             try {
-                apkSignHashAry[i] = sha256(((X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(apkSign[i].toByteArray()))).getSignature());
+                apkSignHashAry[i] = getCertHash(apkSign[i]);
                 i++;
             } catch (CertificateException e) {
                 Slog.e(TAG, "compareHashcode E: " + e);
@@ -633,6 +823,79 @@ public class AntiMalPreInstallScanner {
         return true;
     }
 
+    private String getCertHash(android.content.pm.Signature sign) throws CertificateException {
+        String hash;
+        synchronized (this.mCertHashCache) {
+            hash = (String) this.mCertHashCache.get(sign);
+        }
+        if (hash == null) {
+            hash = sha256(((X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(sign.toByteArray()))).getSignature());
+            if (hash != null) {
+                synchronized (this.mCertHashCache) {
+                    this.mCertHashCache.put(sign, hash);
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Digest of the raw signing certificates. Unlike compareHashcode this doesn't parse the
+     * certificates, so it's cheap enough to check on every cache hit.
+     */
+    private String getCertDigest(android.content.pm.Signature[] signs) {
+        if (signs == null || signs.length == 0) {
+            return null;
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (android.content.pm.Signature sign : signs) {
+                md.update(sign.toByteArray());
+            }
+            return bytesToString(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            if (HW_DEBUG) {
+                Slog.e(TAG, "get cert digest failed");
+            }
+            return null;
+        }
+    }
+
+    private boolean matchSysWhitelist(Package pkg, ArrayList<ApkBasicInfo> pbi) {
+        File apkFile = new File(pkg.baseCodePath);
+        long length = apkFile.length();
+        long lastModified = apkFile.lastModified();
+        String certDigest = getCertDigest(pkg.mSignatures);
+        if (certDigest != null) {
+            ScanResult cached;
+            synchronized (this.mScanCache) {
+                cached = (ScanResult) this.mScanCache.get(pkg.baseCodePath);
+            }
+            if (cached != null && cached.isSameApk(length, lastModified, certDigest)) {
+                this.mCacheHitCount.incrementAndGet();
+                synchronized (this.mScanResults) {
+                    this.mScanResults.put(cached.mPath, cached);
+                }
+                return cached.mMatched;
+            }
+        }
+        boolean matched = false;
+        Iterator<ApkBasicInfo> it = pbi.iterator();
+        while (it.hasNext()) {
+            ApkBasicInfo apkInfo = (ApkBasicInfo) it.next();
+            if (apkInfo.mPackagename != null && apkInfo.mPath != null && pkg.baseCodePath.contains(apkInfo.mPath) && compareHashcode(apkInfo.mHashCode, pkg)) {
+                matched = true;
+                break;
+            }
+        }
+        if (certDigest != null) {
+            synchronized (this.mScanResults) {
+                this.mScanResults.put(pkg.baseCodePath, new ScanResult(pkg.baseCodePath, length, lastModified, certDigest, matched));
+            }
+        }
+        return matched;
+    }
+
     private String bytesToString(byte[] bytes) {
         if (bytes == null) {
             return null;
@@ -687,12 +950,12 @@ public class AntiMalPreInstallScanner {
                     setComponentAntiMalStatus(pkg.baseCodePath, 1);
                     return 1;
                 }
-                Iterator<ApkBasicInfo> it = pbi.iterator();
-                while (it.hasNext()) {
-                    ApkBasicInfo apkInfo = (ApkBasicInfo) it.next();
-                    if (apkInfo.mPackagename != null && apkInfo.mPath != null && pkg.baseCodePath.contains(apkInfo.mPath) && compareHashcode(apkInfo.mHashCode, pkg)) {
-                        return 0;
-                    }
+                long scanStart = SystemClock.uptimeMillis();
+                boolean matched = matchSysWhitelist(pkg, pbi);
+                this.mScanApkTime.addAndGet(SystemClock.uptimeMillis() - scanStart);
+                this.mScanApkCount.incrementAndGet();
+                if (matched) {
+                    return 0;
                 }
                 AntiMalApkInfo modifiedApkInfo = new AntiMalApkInfo(pkg, 2);
                 if (HW_DEBUG) {
@@ -133,9 +133,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import libcore.io.IoUtils;
@@ -278,7 +275,6 @@ public class HwPackageManagerService extends PackageManagerService {
     static final StringBuilder mReadMessages = new StringBuilder();
     private static ArrayList<String> mRemoveablePreInstallApks = new ArrayList();
     private static File mSystemDir = null;
-    private static final int mThreadNum = (Runtime.getRuntime().availableProcessors() + 1);
     private static String mUninstallApk = null;
     static final ArrayList<String> mUninstalledDelappList = new ArrayList();
     static final Map<String, String> mUninstalledMap = new HashMap();
@@ -2005,41 +2001,24 @@ public class HwPackageManagerService extends PackageManagerService {
     }
 
     private void installAPKforInstallList(HashSet<String> installList, int flags, int scanMode, long currentTime, int hwFlags) {
-        ExecutorService executorService = Executors.newFixedThreadPool(mThreadNum);
+        ArrayList<File> files = new ArrayList();
         for (String installPath : installList) {
             Flog.i(205, "package install path : " + installPath);
-            final File file = new File(installPath);
-            if (this.mIsPackageScanMultiThread) {
-                final int i = flags;
-                final int i2 = scanMode;
-                final long j = currentTime;
-                final int i3 = hwFlags;
-                try {
-                    executorService.submit(new Runnable() {
-                        public void run() {
-                            try {
-                                HwPackageManagerService.this.scanPackageLI(file, i, i2, j, null, i3);
-                            } catch (PackageManagerException e) {
-                                Slog.e(HwPackageManagerService.TAG, "Failed to parse package: " + e.getMessage());
-                            }
-                        }
-                    });
-                } catch (Exception e) {
-                    this.mIsPackageScanMultiThread = false;
-                }
-            }
-            if (!this.mIsPackageScanMultiThread) {
-                try {
-                    scanPackageLI(file, flags, scanMode, currentTime, null, hwFlags);
-                } catch (PackageManagerException e2) {
-                    Slog.e(TAG, "Failed to parse package: " + e2.getMessage());
-                }
+            File file = new File(installPath);
+            if (!isUninstallApk(file.getPath() + ".apk") && ((134217728 & hwFlags) == 0 || isCustApkRecorded(file))) {
+                files.add(file);
             }
         }
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(1, TimeUnit.DAYS);
-        } catch (InterruptedException e3) {
+        if (this.mIsPackageScanMultiThread) {
+            scanFilesLI(files, (scanMode & 128) != 0 ? flags | 512 : flags, scanMode, currentTime, hwFlags, false);
+            return;
+        }
+        for (File file2 : files) {
+            try {
+                scanPackageLI(file2, flags, scanMode, currentTime, null, hwFlags);
+            } catch (PackageManagerException e) {
+                Slog.e(TAG, "Failed to parse package: " + e.getMessage());
+            }
         }
     }
 
@@ -2067,7 +2067,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                 }
                 synchronized (PackageManagerService.this.mPackages) {
                     if (PackageManagerService.this.mSettings.createIntentFilterVerificationIfNeededLPw(packageName, domainsSet) != null) {
-                        PackageManagerService.this.scheduleWriteSettingsLocked();
+                        PackageManagerService.this.scheduleWritePackageSettingsLocked(packageName);
                     }
                 }
                 sendVerificationRequest(userId, verificationId, ivs);
@@ -2111,7 +2111,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                 } else {
                     ivi.setStatus(1);
                 }
-                PackageManagerService.this.scheduleWriteSettingsLocked();
+                PackageManagerService.this.scheduleWritePackageSettingsLocked(packageName);
                 int userId = ivs.getUserId();
                 if (userId != -1) {
                     int updatedStatus = 0;
@@ -2779,7 +2779,11 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                     synchronized (PackageManagerService.this.mPackages) {
                         removeMessages(13);
                         removeMessages(14);
-                        PackageManagerService.this.mSettings.writeLPr();
+                        if (PackageManagerService.this.mSettings.writePendingLPr()) {
+                            for (Integer intValue : PackageManagerService.this.mDirtyUsers) {
+                                PackageManagerService.this.mSettings.writePackageRestrictionsLPr(intValue.intValue());
+                            }
+                        }
                         PackageManagerService.this.mDirtyUsers.clear();
                     }
                     Process.setThreadPriority(10);
@@ -3755,6 +3759,16 @@ public class PackageManagerService extends AbsPackageManagerService implements P
         }
     }
 
+    private static final class ScanMetrics {
+        int mCount;
+        int mFailed;
+        long mParseTime;
+        long mScanTime;
+
+        ScanMetrics() {
+        }
+    }
+
     private final class ServiceIntentResolver extends IntentResolver<ServiceIntentInfo, ResolveInfo> {
         private int mFlags;
         private final ArrayMap<ComponentName, Service> mServices;
@@ -4211,6 +4225,15 @@ public class PackageManagerService extends AbsPackageManagerService implements P
     }
 
     void scheduleWriteSettingsLocked() {
+        this.mSettings.requestFullWriteLPw();
+        if (!this.mHandler.hasMessages(13)) {
+            this.mHandler.sendEmptyMessageDelayed(13, 10000);
+        }
+    }
+
+    /** Like scheduleWriteSettingsLocked() for a change confined to the settings of one package. */
+    void scheduleWritePackageSettingsLocked(String packageName) {
+        this.mSettings.markPackageDirtyLPw(packageName);
         if (!this.mHandler.hasMessages(13)) {
             this.mHandler.sendEmptyMessageDelayed(13, 10000);
         }
@@ -6824,7 +6847,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                     throw new SecurityException("Cannot grant policy fixed permission " + name + " for package " + packageName);
                 } else if (bp.isDevelopment()) {
                     if (permissionsState.grantInstallPermission(bp) != -1) {
-                        scheduleWriteSettingsLocked();
+                        scheduleWritePackageSettingsLocked(packageName);
                     }
                 } else if (ps.getInstantApp(userId) && (bp.isInstant() ^ 1) != 0) {
                     throw new SecurityException("Cannot grant non-ephemeral permission" + name + " for package " + packageName);
@@ -6896,7 +6919,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                     throw new SecurityException("Cannot revoke policy fixed permission " + name + " for package " + packageName);
                 } else if (bp.isDevelopment()) {
                     if (permissionsState.revokeInstallPermission(bp) != -1) {
-                        scheduleWriteSettingsLocked();
+                        scheduleWritePackageSettingsLocked(packageName);
                     }
                 } else if (permissionsState.revokeRuntimePermission(bp, userId) == -1) {
                     return;
@@ -9327,8 +9350,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
             Log.d(TAG, "No files in app dir " + dir);
             return;
         }
-        ParallelPackageParser parallelPackageParser = new ParallelPackageParser(this.mSeparateProcesses, this.mOnlyCore, this.mMetrics, this.mCacheDir, this.mParallelPackageParserCallback);
-        int fileCount = 0;
+        ArrayList<File> scanFiles = new ArrayList();
         for (File file : files) {
             boolean isPackage;
             if (PackageParser.isApkFile(file) || file.isDirectory()) {
@@ -9340,48 +9362,89 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                 if (!isUninstallApk(file.getPath() + ".apk")) {
                     HwCustEmergDataManager emergDataManager = HwCustEmergDataManager.getDefault();
                     if (emergDataManager == null || (emergDataManager.isEmergencyState() ^ 1) == 0 || !emergDataManager.getEmergencyPkgName().contains(file.getName())) {
-                        parallelPackageParser.submit(file, parseFlags);
-                        fileCount++;
+                        scanFiles.add(file);
                     } else {
                         Log.i(TAG, "dont scan EmergencyData.apk");
                     }
                 }
             }
         }
-        while (fileCount > 0) {
-            ParseResult parseResult = parallelPackageParser.take();
-            Throwable throwable = parseResult.throwable;
-            int errorCode = 1;
-            if (throwable == null) {
-                if (parseResult.pkg.applicationInfo.isStaticSharedLibrary()) {
-                    renameStaticSharedLibraryPackage(parseResult.pkg);
-                }
-                try {
-                    parseResult.pkg.applicationInfo.hwFlags = hwFlags;
-                    int currHwFlags = hwFlags;
-                    if (isPreRemovableApp(parseResult.pkg.codePath) && (33554432 & hwFlags) == 0) {
-                        currHwFlags = hwFlags | 33554432;
-                        parseResult.pkg.applicationInfo.hwFlags = currHwFlags;
-                    }
-                    scanPackageLI(parseResult.pkg, parseResult.scanFile, parseFlags, scanFlags, currentTime, null, currHwFlags);
-                } catch (PackageManagerException e) {
-                    errorCode = e.error;
-                    Slog.w(TAG, "Failed to scan " + parseResult.scanFile + ": " + e.getMessage());
-                }
-            } else if (throwable instanceof PackageParserException) {
-                PackageParserException e2 = (PackageParserException) throwable;
-                errorCode = e2.error;
-                Slog.w(TAG, "Failed to parse " + parseResult.scanFile + ": " + e2.getMessage());
-            } else {
-                throw new IllegalStateException("Unexpected exception occurred while parsing " + parseResult.scanFile, throwable);
+        scanFilesLI(scanFiles, parseFlags, scanFlags, currentTime, hwFlags, true);
+    }
+
+    /**
+     * Parses the files in parallel through the shared parser cache and commits every result to
+     * the package state on the calling thread, in completion order. A strict scan deletes invalid
+     * non-system packages and fails on unexpected parse errors, like a directory scan always did.
+     * Parse and scan times are logged per parent directory.
+     */
+    protected void scanFilesLI(List<File> files, int parseFlags, int scanFlags, long currentTime, int hwFlags, boolean strict) {
+        int fileCount = files.size();
+        if (fileCount != 0) {
+            ParallelPackageParser parallelPackageParser = new ParallelPackageParser(this.mSeparateProcesses, this.mOnlyCore, this.mMetrics, this.mCacheDir, this.mParallelPackageParserCallback);
+            ArrayMap<String, ScanMetrics> metrics = new ArrayMap();
+            long startTime = SystemClock.uptimeMillis();
+            for (int i = 0; i < fileCount; i++) {
+                parallelPackageParser.submit((File) files.get(i), parseFlags);
+            }
+            while (fileCount > 0) {
+                scanParseResultLI(parallelPackageParser.take(), parseFlags, scanFlags, currentTime, hwFlags, strict, metrics);
+                fileCount--;
             }
-            if ((parseFlags & 1) == 0 && errorCode == -2) {
-                logCriticalInfo(5, "Deleting invalid package at " + parseResult.scanFile);
-                removeCodePathLI(parseResult.scanFile);
+            parallelPackageParser.close();
+            for (int i2 = 0; i2 < metrics.size(); i2++) {
+                ScanMetrics m = (ScanMetrics) metrics.valueAt(i2);
+                Slog.i(TAG, "scan " + ((String) metrics.keyAt(i2)) + ": " + m.mCount + " packages, " + m.mFailed + " failed, parse " + m.mParseTime + " ms, scan " + m.mScanTime + " ms");
             }
-            fileCount--;
+            Slog.i(TAG, "scanned " + files.size() + " packages in " + (SystemClock.uptimeMillis() - startTime) + " ms");
         }
-        parallelPackageParser.close();
+    }
+
+    private void scanParseResultLI(ParseResult parseResult, int parseFlags, int scanFlags, long currentTime, int hwFlags, boolean strict, ArrayMap<String, ScanMetrics> metrics) {
+        String dir = parseResult.scanFile.getParent();
+        ScanMetrics m = (ScanMetrics) metrics.get(dir);
+        if (m == null) {
+            m = new ScanMetrics();
+            metrics.put(dir, m);
+        }
+        long startTime = SystemClock.uptimeMillis();
+        m.mCount++;
+        m.mParseTime += parseResult.parseTime;
+        Throwable throwable = parseResult.throwable;
+        int errorCode = 1;
+        if (throwable == null) {
+            if (parseResult.pkg.applicationInfo.isStaticSharedLibrary()) {
+                renameStaticSharedLibraryPackage(parseResult.pkg);
+            }
+            try {
+                parseResult.pkg.applicationInfo.hwFlags = hwFlags;
+                int currHwFlags = hwFlags;
+                if (isPreRemovableApp(parseResult.pkg.codePath) && (33554432 & hwFlags) == 0) {
+                    currHwFlags = hwFlags | 33554432;
+                    parseResult.pkg.applicationInfo.hwFlags = currHwFlags;
+                }
+                scanPackageLI(parseResult.pkg, parseResult.scanFile, parseFlags, scanFlags, currentTime, null, currHwFlags);
+            } catch (PackageManagerException e) {
+                errorCode = e.error;
+                Slog.w(TAG, "Failed to scan " + parseResult.scanFile + ": " + e.getMessage());
+            }
+        } else if (throwable instanceof PackageParserException) {
+            PackageParserException e2 = (PackageParserException) throwable;
+            errorCode = e2.error;
+            Slog.w(TAG, "Failed to parse " + parseResult.scanFile + ": " + e2.getMessage());
+        } else if (strict) {
+            throw new IllegalStateException("Unexpected exception occurred while parsing " + parseResult.scanFile, throwable);
+        } else {
+            Slog.e(TAG, "Failed to parse " + parseResult.scanFile, throwable);
+        }
+        if (errorCode != 1 || throwable != null) {
+            m.mFailed++;
+        }
+        if (strict && (parseFlags & 1) == 0 && errorCode == -2) {
+            logCriticalInfo(5, "Deleting invalid package at " + parseResult.scanFile);
+            removeCodePathLI(parseResult.scanFile);
+        }
+        m.mScanTime += SystemClock.uptimeMillis() - startTime;
     }
 
     private static File getSettingsProblemFile() {
@@ -13711,7 +13774,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
                         if (installerPackageName != null) {
                             this.mSettings.mInstallerPackages.add(installerPackageName);
                         }
-                        scheduleWriteSettingsLocked();
+                        scheduleWritePackageSettingsLocked(targetPackage);
                     } else {
                         throw new SecurityException("Caller does not have same cert as new installer package " + installerPackageName);
                     }
@@ -13735,7 +13798,7 @@ public class PackageManagerService extends AbsPackageManagerService implements P
             } else if (Objects.equals(callerPackageName, ps.installerPackageName)) {
                 if (ps.categoryHint != categoryHint) {
                     ps.categoryHint = categoryHint;
-                    scheduleWriteSettingsLocked();
+                    scheduleWritePackageSettingsLocked(packageName);
                 }
             } else {
                 throw new IllegalArgumentException("Calling package " + callerPackageName + " is not installer for " + packageName);
@@ -4,6 +4,7 @@ import android.content.pm.PackageParser;
 import android.content.pm.PackageParser.Callback;
 import android.content.pm.PackageParser.Package;
 import android.content.pm.PackageParser.PackageParserException;
+import android.os.SystemClock;
 import android.os.Trace;
 import android.util.DisplayMetrics;
 import com.android.internal.util.ConcurrentUtils;
@@ -26,6 +27,7 @@ class ParallelPackageParser implements AutoCloseable {
     private final ExecutorService mService = ConcurrentUtils.newFixedThreadPool(4, "package-parsing-thread", -2);
 
     static class ParseResult {
+        long parseTime;
         Package pkg;
         File scanFile;
         Throwable throwable;
@@ -64,6 +66,7 @@ class ParallelPackageParser implements AutoCloseable {
 
     /* synthetic */ void lambda$-com_android_server_pm_ParallelPackageParser_3701(File scanFile, int parseFlags) {
         ParseResult pr = new ParseResult();
+        long startTime = SystemClock.uptimeMillis();
         Trace.traceBegin(262144, "parallel parsePackage [" + scanFile + "]");
         try {
             PackageParser pp = new PackageParser();
@@ -79,6 +82,7 @@ class ParallelPackageParser implements AutoCloseable {
         } finally {
             Trace.traceEnd(262144);
         }
+        pr.parseTime = SystemClock.uptimeMillis() - startTime;
         try {
             this.mQueue.put(pr);
         } catch (InterruptedException e2) {
@@ -65,6 +65,8 @@ import huawei.cust.HwCfgFilePolicy;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -174,8 +176,11 @@ final class Settings {
     final SparseArray<String> mDefaultBrowserApp;
     final SparseArray<String> mDefaultDialerApp;
     private ArrayList<String> mDelAppLists;
+    private final ArraySet<String> mDirtyPackages;
     private final ArrayMap<String, PackageSetting> mDisabledSysPackages;
+    private boolean mFullWritePending;
     final ArraySet<String> mInstallerPackages;
+    private final SettingsJournal mJournal;
     private final ArrayMap<String, KernelPackageState> mKernelMapping;
     private final File mKernelMappingFilename;
     public final KeySetManagerService mKeySetManagerService;
@@ -623,6 +628,7 @@ final class Settings {
         this.mInstallerPackages = new ArraySet();
         this.mKernelMapping = new ArrayMap();
         this.mDisabledSysPackages = new ArrayMap();
+        this.mDirtyPackages = new ArraySet();
         this.mBlockUninstallPackages = new SparseArray();
         this.mRestoredIntentFilterVerifications = new ArrayMap();
         this.mRestoredUserGrants = new SparseArray();
@@ -654,6 +660,7 @@ final class Settings {
         this.mSettingsFilename = new File(this.mSystemDir, "packages.xml");
         this.mBackupSettingsFilename = new File(this.mSystemDir, "packages-backup.xml");
         this.mPackageListFilename = new File(this.mSystemDir, "packages.list");
+        this.mJournal = new SettingsJournal(new File(this.mSystemDir, "packages.journal"));
         FileUtils.setPermissions(this.mPackageListFilename, 416, 1000, 1032);
         File kernelDir = new File("/config/sdcardfs");
         if (!kernelDir.exists()) {
@@ -2314,7 +2321,77 @@ final class Settings {
         }
     }
 
+    /**
+     * Records that only the package or updated-package element of packageName changed, so the
+     * next writePendingLPr() may journal it instead of rewriting packages.xml. Packages in a
+     * shared user keep their permissions in the shared-user element and force a full write.
+     */
+    void markPackageDirtyLPw(String packageName) {
+        PackageSetting ps = (PackageSetting) this.mPackages.get(packageName);
+        if (ps == null || ps.sharedUser != null) {
+            this.mFullWritePending = true;
+        } else {
+            this.mDirtyPackages.add(packageName);
+        }
+    }
+
+    /** Records a change outside of single package elements; the next write is a full one. */
+    void requestFullWriteLPw() {
+        this.mFullWritePending = true;
+    }
+
+    /**
+     * Writes the changes recorded since the last write. Returns true if they were appended to the
+     * journal, in which case packages.list was rewritten but package restrictions and runtime
+     * permissions were not.
+     */
+    boolean writePendingLPr() {
+        if (!this.mFullWritePending && !this.mDirtyPackages.isEmpty() && this.mJournal.canAppend() && writeJournalLPr()) {
+            return true;
+        }
+        writeLPr();
+        return false;
+    }
+
     void writeLPr() {
+        writeFullLPr();
+    }
+
+    private boolean writeJournalLPr() {
+        long startTime = SystemClock.uptimeMillis();
+        try {
+            ArrayMap<String, byte[]> records = new ArrayMap(this.mDirtyPackages.size());
+            int size = this.mDirtyPackages.size();
+            for (int i = 0; i < size; i++) {
+                String name = (String) this.mDirtyPackages.valueAt(i);
+                PackageSetting ps = (PackageSetting) this.mPackages.get(name);
+                if (ps == null) {
+                    return false;
+                }
+                records.put(SettingsJournal.KEY_PACKAGE_PREFIX + name, writePackageFragmentLPr(ps, false));
+                PackageSetting disabled = (PackageSetting) this.mDisabledSysPackages.get(name);
+                if (disabled != null) {
+                    records.put(SettingsJournal.KEY_DISABLED_PREFIX + name, writePackageFragmentLPr(disabled, true));
+                }
+            }
+            int written = this.mJournal.appendRecords(records);
+            this.mDirtyPackages.clear();
+            writePackageListLPr();
+            long elapsed = SystemClock.uptimeMillis() - startTime;
+            if (PackageManagerService.DEBUG_SETTINGS) {
+                Slog.i(TAG, "Journaled " + written + " package records in " + elapsed + "ms, last full write took " + this.mJournal.getLastFullWriteMillis() + "ms");
+            }
+            return true;
+        } catch (IOException e) {
+            Slog.w(TAG, "Unable to append package settings journal, writing full settings", e);
+            this.mJournal.invalidate();
+            return false;
+        }
+    }
+
+    private void writeFullLPr() {
+        long startTime = SystemClock.uptimeMillis();
+        long generation = this.mJournal.getNextGeneration();
         if (this.mSettingsFilename.exists()) {
             if (this.mBackupSettingsFilename.exists()) {
                 this.mSettingsFilename.delete();
@@ -2326,7 +2403,6 @@ final class Settings {
         }
         this.mPastSignatures.clear();
         try {
-            int i;
             FileOutputStream fstr = new FileOutputStream(this.mSettingsFilename);
             OutputStream bufferedOutputStream = new BufferedOutputStream(fstr);
             XmlSerializer serializer = new FastXmlSerializer();
@@ -2334,77 +2410,17 @@ final class Settings {
             serializer.startDocument(null, Boolean.valueOf(true));
             serializer.setFeature("http://xmlpull.org/v1/doc/features.html#indent-output", true);
             serializer.startTag(null, "packages");
-            for (i = 0; i < this.mVersion.size(); i++) {
-                String volumeUuid = (String) this.mVersion.keyAt(i);
-                VersionInfo ver = (VersionInfo) this.mVersion.valueAt(i);
-                serializer.startTag(null, "version");
-                XmlUtils.writeStringAttribute(serializer, ATTR_VOLUME_UUID, volumeUuid);
-                XmlUtils.writeIntAttribute(serializer, ATTR_SDK_VERSION, ver.sdkVersion);
-                XmlUtils.writeIntAttribute(serializer, ATTR_DATABASE_VERSION, ver.databaseVersion);
-                XmlUtils.writeStringAttribute(serializer, ATTR_FINGERPRINT, ver.fingerprint);
-                serializer.endTag(null, "version");
-            }
-            if (this.mVerifierDeviceIdentity != null) {
-                serializer.startTag(null, "verifier");
-                serializer.attribute(null, "device", this.mVerifierDeviceIdentity.toString());
-                serializer.endTag(null, "verifier");
-            }
-            if (this.mReadExternalStorageEnforced != null) {
-                serializer.startTag(null, TAG_READ_EXTERNAL_STORAGE);
-                serializer.attribute(null, ATTR_ENFORCEMENT, this.mReadExternalStorageEnforced.booleanValue() ? "1" : "0");
-                serializer.endTag(null, TAG_READ_EXTERNAL_STORAGE);
-            }
-            serializer.startTag(null, "permission-trees");
-            for (BasePermission bp : this.mPermissionTrees.values()) {
-                writePermissionLPr(serializer, bp);
-            }
-            serializer.endTag(null, "permission-trees");
-            serializer.startTag(null, "permissions");
-            for (BasePermission bp2 : this.mPermissions.values()) {
-                writePermissionLPr(serializer, bp2);
-            }
-            serializer.endTag(null, "permissions");
+            serializer.startTag(null, SettingsJournal.TAG_JOURNAL_CHECKPOINT);
+            XmlUtils.writeLongAttribute(serializer, SettingsJournal.ATTR_GENERATION, generation);
+            serializer.endTag(null, SettingsJournal.TAG_JOURNAL_CHECKPOINT);
+            writeGlobalHeadLPr(serializer);
             for (PackageSetting pkg : this.mPackages.values()) {
                 writePackageLPr(serializer, pkg);
             }
             for (PackageSetting pkg2 : this.mDisabledSysPackages.values()) {
                 writeDisabledSysPackageLPr(serializer, pkg2);
             }
-            for (SharedUserSetting usr : this.mSharedUsers.values()) {
-                serializer.startTag(null, TAG_SHARED_USER);
-                serializer.attribute(null, ATTR_NAME, usr.name);
-                serializer.attribute(null, "userId", Integer.toString(usr.userId));
-                usr.signatures.writeXml(serializer, "sigs", this.mPastSignatures);
-                writePermissionsLPr(serializer, usr.getPermissionsState().getInstallPermissionStates());
-                serializer.endTag(null, TAG_SHARED_USER);
-            }
-            if (this.mPackagesToBeCleaned.size() > 0) {
-                for (PackageCleanItem item : this.mPackagesToBeCleaned) {
-                    String userStr = Integer.toString(item.userId);
-                    serializer.startTag(null, "cleaning-package");
-                    serializer.attribute(null, ATTR_NAME, item.packageName);
-                    serializer.attribute(null, ATTR_CODE, item.andCode ? "true" : "false");
-                    serializer.attribute(null, ATTR_USER, userStr);
-                    serializer.endTag(null, "cleaning-package");
-                }
-            }
-            if (this.mRenamedPackages.size() > 0) {
-                for (Entry<String, String> e : this.mRenamedPackages.entrySet()) {
-                    serializer.startTag(null, "renamed-package");
-                    serializer.attribute(null, "new", (String) e.getKey());
-                    serializer.attribute(null, "old", (String) e.getValue());
-                    serializer.endTag(null, "renamed-package");
-                }
-            }
-            int numIVIs = this.mRestoredIntentFilterVerifications.size();
-            if (numIVIs > 0) {
-                serializer.startTag(null, "restored-ivi");
-                for (i = 0; i < numIVIs; i++) {
-                    writeDomainVerificationsLPr(serializer, (IntentFilterVerificationInfo) this.mRestoredIntentFilterVerifications.valueAt(i));
-                }
-                serializer.endTag(null, "restored-ivi");
-            }
-            this.mKeySetManagerService.writeKeySetManagerServiceLPr(serializer);
+            writeGlobalTailLPr(serializer);
             serializer.endTag(null, "packages");
             serializer.endDocument();
             bufferedOutputStream.flush();
@@ -2412,6 +2428,9 @@ final class Settings {
             bufferedOutputStream.close();
             this.mBackupSettingsFilename.delete();
             FileUtils.setPermissions(this.mSettingsFilename.toString(), 432, -1, -1);
+            this.mJournal.onCheckpointWritten(generation, SystemClock.uptimeMillis() - startTime);
+            this.mDirtyPackages.clear();
+            this.mFullWritePending = false;
             writeKernelMappingLPr();
             writePackageListLPr();
             writeAllUsersPackageRestrictionsLPr();
@@ -2427,6 +2446,164 @@ final class Settings {
         }
     }
 
+    private void writeGlobalHeadLPr(XmlSerializer serializer) throws IOException {
+        for (int i = 0; i < this.mVersion.size(); i++) {
+            String volumeUuid = (String) this.mVersion.keyAt(i);
+            VersionInfo ver = (VersionInfo) this.mVersion.valueAt(i);
+            serializer.startTag(null, "version");
+            XmlUtils.writeStringAttribute(serializer, ATTR_VOLUME_UUID, volumeUuid);
+            XmlUtils.writeIntAttribute(serializer, ATTR_SDK_VERSION, ver.sdkVersion);
+            XmlUtils.writeIntAttribute(serializer, ATTR_DATABASE_VERSION, ver.databaseVersion);
+            XmlUtils.writeStringAttribute(serializer, ATTR_FINGERPRINT, ver.fingerprint);
+            serializer.endTag(null, "version");
+        }
+        if (this.mVerifierDeviceIdentity != null) {
+            serializer.startTag(null, "verifier");
+            serializer.attribute(null, "device", this.mVerifierDeviceIdentity.toString());
+            serializer.endTag(null, "verifier");
+        }
+        if (this.mReadExternalStorageEnforced != null) {
+            serializer.startTag(null, TAG_READ_EXTERNAL_STORAGE);
+            serializer.attribute(null, ATTR_ENFORCEMENT, this.mReadExternalStorageEnforced.booleanValue() ? "1" : "0");
+            serializer.endTag(null, TAG_READ_EXTERNAL_STORAGE);
+        }
+        serializer.startTag(null, "permission-trees");
+        for (BasePermission bp : this.mPermissionTrees.values()) {
+            writePermissionLPr(serializer, bp);
+        }
+        serializer.endTag(null, "permission-trees");
+        serializer.startTag(null, "permissions");
+        for (BasePermission bp2 : this.mPermissions.values()) {
+            writePermissionLPr(serializer, bp2);
+        }
+        serializer.endTag(null, "permissions");
+    }
+
+    private void writeGlobalTailLPr(XmlSerializer serializer) throws IOException {
+        for (SharedUserSetting usr : this.mSharedUsers.values()) {
+            serializer.startTag(null, TAG_SHARED_USER);
+            serializer.attribute(null, ATTR_NAME, usr.name);
+            serializer.attribute(null, "userId", Integer.toString(usr.userId));
+            usr.signatures.writeXml(serializer, "sigs", this.mPastSignatures);
+            writePermissionsLPr(serializer, usr.getPermissionsState().getInstallPermissionStates());
+            serializer.endTag(null, TAG_SHARED_USER);
+        }
+        if (this.mPackagesToBeCleaned.size() > 0) {
+            for (PackageCleanItem item : this.mPackagesToBeCleaned) {
+                String userStr = Integer.toString(item.userId);
+                serializer.startTag(null, "cleaning-package");
+                serializer.attribute(null, ATTR_NAME, item.packageName);
+                serializer.attribute(null, ATTR_CODE, item.andCode ? "true" : "false");
+                serializer.attribute(null, ATTR_USER, userStr);
+                serializer.endTag(null, "cleaning-package");
+            }
+        }
+        if (this.mRenamedPackages.size() > 0) {
+            for (Entry<String, String> e : this.mRenamedPackages.entrySet()) {
+                serializer.startTag(null, "renamed-package");
+                serializer.attribute(null, "new", (String) e.getKey());
+                serializer.attribute(null, "old", (String) e.getValue());
+                serializer.endTag(null, "renamed-package");
+            }
+        }
+        int numIVIs = this.mRestoredIntentFilterVerifications.size();
+        if (numIVIs > 0) {
+            serializer.startTag(null, "restored-ivi");
+            for (int i = 0; i < numIVIs; i++) {
+                writeDomainVerificationsLPr(serializer, (IntentFilterVerificationInfo) this.mRestoredIntentFilterVerifications.valueAt(i));
+            }
+            serializer.endTag(null, "restored-ivi");
+        }
+        this.mKeySetManagerService.writeKeySetManagerServiceLPr(serializer);
+    }
+
+    private byte[] writePackageFragmentLPr(PackageSetting pkg, boolean isDisabled) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        XmlSerializer serializer = new FastXmlSerializer();
+        serializer.setOutput(bytes, StandardCharsets.UTF_8.name());
+        serializer.startDocument(null, Boolean.valueOf(true));
+        this.mPastSignatures.clear();
+        if (isDisabled) {
+            writeDisabledSysPackageLPr(serializer, pkg);
+        } else {
+            writePackageLPr(serializer, pkg);
+        }
+        serializer.endDocument();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Skips a checkpoint element replaced by the journal. Its cert definitions are still
+     * registered, because later elements of packages.xml refer to them by index.
+     */
+    private void skipOverriddenPackageLPw(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int outerDepth = parser.getDepth();
+        while (true) {
+            int type = parser.next();
+            if (type == 1) {
+                return;
+            }
+            if (type == 3 && parser.getDepth() <= outerDepth) {
+                return;
+            }
+            if (type == 2 && "cert".equals(parser.getName())) {
+                String index = parser.getAttributeValue(null, "index");
+                String key = parser.getAttributeValue(null, "key");
+                if (index != null && key != null) {
+                    try {
+                        int idx = Integer.parseInt(index);
+                        if (idx >= 0) {
+                            while (this.mPastSignatures.size() <= idx) {
+                                this.mPastSignatures.add(null);
+                            }
+                            this.mPastSignatures.set(idx, new Signature(key));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        PackageManagerService.reportSettingsProblem(5, "Error in skipped package cert index " + index + ": " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    private void replayJournalLPw() {
+        ArrayMap<String, byte[]> records = this.mJournal.takeReplayRecords();
+        if (records != null) {
+            ArrayList<Signature> pastSignatures = new ArrayList(this.mPastSignatures);
+            int size = records.size();
+            for (int i = 0; i < size; i++) {
+                String key = (String) records.keyAt(i);
+                byte[] fragment = (byte[]) records.valueAt(i);
+                if (fragment != null) {
+                    try {
+                        XmlPullParser parser = Xml.newPullParser();
+                        parser.setInput(new ByteArrayInputStream(fragment), StandardCharsets.UTF_8.name());
+                        int type;
+                        do {
+                            type = parser.next();
+                            if (type == 2) {
+                                break;
+                            }
+                        } while (type != 1);
+                        if (type == 2) {
+                            this.mPastSignatures.clear();
+                            if (key.startsWith(SettingsJournal.KEY_DISABLED_PREFIX)) {
+                                readDisabledSysPackageLPw(parser);
+                            } else {
+                                readPackageLPw(parser);
+                            }
+                        }
+                    } catch (XmlPullParserException | IOException e) {
+                        PackageManagerService.reportSettingsProblem(5, "Error replaying settings journal for " + key + ": " + e);
+                    }
+                }
+            }
+            this.mPastSignatures.clear();
+            this.mPastSignatures.addAll(pastSignatures);
+            this.mReadMessages.append("Replayed ").append(size).append(" journaled package records\n");
+        }
+    }
+
     private void writeKernelRemoveUserLPr(int userId) {
         if (this.mKernelMappingFilename != null) {
             writeIntToFile(new File(this.mKernelMappingFilename, "remove_userid"), userId);
@@ -2787,6 +2964,7 @@ final class Settings {
         this.mPastSignatures.clear();
         this.mKeySetRefs.clear();
         this.mInstallerPackages.clear();
+        this.mJournal.load();
         if (str == null) {
             try {
                 if (this.mSettingsFilename.exists()) {
@@ -2850,7 +3028,13 @@ final class Settings {
             } else if (!(type == 3 || type == 4)) {
                 String tagName = parser.getName();
                 if (tagName.equals(HwBroadcastRadarUtil.KEY_PACKAGE)) {
-                    readPackageLPw(parser);
+                    if (this.mJournal.isOverridden(SettingsJournal.KEY_PACKAGE_PREFIX + parser.getAttributeValue(null, ATTR_NAME))) {
+                        skipOverriddenPackageLPw(parser);
+                    } else {
+                        readPackageLPw(parser);
+                    }
+                } else if (tagName.equals(SettingsJournal.TAG_JOURNAL_CHECKPOINT)) {
+                    this.mJournal.onCheckpointRead(XmlUtils.readLongAttribute(parser, SettingsJournal.ATTR_GENERATION, 0));
                 } else if (tagName.equals("permissions")) {
                     readPermissionsLPw(this.mPermissions, parser);
                 } else if (tagName.equals("permission-trees")) {
@@ -2869,7 +3053,11 @@ final class Settings {
                     } else if (tagName.equals(TAG_DEFAULT_BROWSER)) {
                         readDefaultAppsLPw(parser, 0);
                     } else if (tagName.equals("updated-package")) {
-                        readDisabledSysPackageLPw(parser);
+                        if (this.mJournal.isOverridden(SettingsJournal.KEY_DISABLED_PREFIX + parser.getAttributeValue(null, ATTR_NAME))) {
+                            skipOverriddenPackageLPw(parser);
+                        } else {
+                            readDisabledSysPackageLPw(parser);
+                        }
                     } else if (tagName.equals("cleaning-package")) {
                         String name = parser.getAttributeValue(null, ATTR_NAME);
                         String userStr = parser.getAttributeValue(null, ATTR_USER);
@@ -2918,6 +3106,7 @@ final class Settings {
                     } else if (TAG_READ_EXTERNAL_STORAGE.equals(tagName)) {
                         this.mReadExternalStorageEnforced = Boolean.valueOf("1".equals(parser.getAttributeValue(null, ATTR_ENFORCEMENT)));
                     } else if (tagName.equals("keyset-settings")) {
+                        replayJournalLPw();
                         this.mKeySetManagerService.readKeySetsLPw(parser, this.mKeySetRefs);
                     } else if ("version".equals(tagName)) {
                         VersionInfo ver = findOrCreateVersion(XmlUtils.readStringAttribute(parser, ATTR_VOLUME_UUID));
@@ -2932,6 +3121,7 @@ final class Settings {
             }
         }
         str.close();
+        replayJournalLPw();
         int N = this.mPendingPackages.size();
         for (int i = 0; i < N; i++) {
             PackageSetting p = (PackageSetting) this.mPendingPackages.get(i);
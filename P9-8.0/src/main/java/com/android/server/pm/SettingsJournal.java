@@ -0,0 +1,212 @@
+package com.android.server.pm;
+
+import android.os.FileUtils;
+import android.os.SystemProperties;
+import android.util.ArrayMap;
+import android.util.Slog;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import libcore.io.IoUtils;
+
+/**
+ * Append-only log of per-package settings changes written on top of the packages.xml checkpoint.
+ *
+ * The journal starts with [JOURNAL_MAGIC][generation]; the generation must match the
+ * journal-checkpoint element of packages.xml, otherwise the journal is stale and ignored.
+ * Each record is [op][key][length][xml fragment][crc32], where the key is the package name
+ * prefixed with KEY_PACKAGE_PREFIX or KEY_DISABLED_PREFIX and the fragment is a standalone
+ * package or updated-package element. A torn record at the tail ends the replay.
+ *
+ * Only packages the caller names are serialized, so an append costs O(changed packages). A caller
+ * that can't name what changed writes a full checkpoint instead.
+ */
+final class SettingsJournal {
+    static final String ATTR_GENERATION = "generation";
+    static final String KEY_DISABLED_PREFIX = "d:";
+    static final String KEY_PACKAGE_PREFIX = "p:";
+    private static final int JOURNAL_MAGIC = 1347110449;
+    private static final long MAX_JOURNAL_BYTES = 524288;
+    private static final int MAX_JOURNAL_RECORDS = 128;
+    private static final int MAX_RECORD_BYTES = 1048576;
+    private static final byte OP_PUT = (byte) 1;
+    private static final String PROPERTY_JOURNAL_ENABLED = "ro.config.hw_pms_settings_journal";
+    private static final String TAG = "PackageSettingsJournal";
+    static final String TAG_JOURNAL_CHECKPOINT = "journal-checkpoint";
+    private boolean mCheckpointed;
+    private final boolean mEnabled = SystemProperties.getBoolean(PROPERTY_JOURNAL_ENABLED, true);
+    private long mGeneration;
+    private final File mJournalFile;
+    private long mLastFullWriteMillis;
+    private int mRecordCount;
+    private long mReplayGeneration = -1;
+    private final ArrayMap<String, byte[]> mReplayRecords = new ArrayMap();
+    private boolean mReplayValid;
+
+    SettingsJournal(File journalFile) {
+        this.mJournalFile = journalFile;
+    }
+
+    long getNextGeneration() {
+        return this.mGeneration + 1;
+    }
+
+    boolean canAppend() {
+        if (!this.mEnabled || !this.mCheckpointed || this.mRecordCount >= MAX_JOURNAL_RECORDS) {
+            return false;
+        }
+        return this.mJournalFile.length() < MAX_JOURNAL_BYTES;
+    }
+
+    long getLastFullWriteMillis() {
+        return this.mLastFullWriteMillis;
+    }
+
+    /** Appends one record per key and returns the number of records written. */
+    int appendRecords(ArrayMap<String, byte[]> records) throws IOException {
+        if (records.isEmpty()) {
+            return 0;
+        }
+        boolean isNewFile = this.mJournalFile.length() == 0;
+        FileOutputStream fstr = new FileOutputStream(this.mJournalFile, true);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fstr));
+            if (isNewFile) {
+                out.writeInt(JOURNAL_MAGIC);
+                out.writeLong(this.mGeneration);
+            }
+            int size = records.size();
+            for (int i = 0; i < size; i++) {
+                writeRecord(out, (String) records.keyAt(i), (byte[]) records.valueAt(i));
+            }
+            out.flush();
+            FileUtils.sync(fstr);
+            this.mRecordCount += size;
+            return size;
+        } catch (IOException e) {
+            this.mCheckpointed = false;
+            throw e;
+        } finally {
+            IoUtils.closeQuietly(fstr);
+        }
+    }
+
+    /**
+     * Called once a full packages.xml carrying {@code generation} has been committed. The
+     * journal is restarted empty.
+     */
+    void onCheckpointWritten(long generation, long elapsedMillis) {
+        this.mGeneration = generation;
+        this.mLastFullWriteMillis = elapsedMillis;
+        this.mRecordCount = 0;
+        if (this.mJournalFile.delete() || !this.mJournalFile.exists()) {
+            this.mCheckpointed = this.mEnabled;
+            return;
+        }
+        Slog.w(TAG, "Failed to reset settings journal " + this.mJournalFile);
+        this.mCheckpointed = false;
+    }
+
+    /** Forces the next write to be a full checkpoint. */
+    void invalidate() {
+        this.mCheckpointed = false;
+    }
+
+    void load() {
+        this.mReplayRecords.clear();
+        this.mReplayGeneration = -1;
+        this.mReplayValid = false;
+        this.mCheckpointed = false;
+        if (!this.mJournalFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.mJournalFile)));
+            if (in.readInt() != JOURNAL_MAGIC) {
+                Slog.w(TAG, "Ignoring settings journal with bad magic");
+                return;
+            }
+            this.mReplayGeneration = in.readLong();
+            while (readRecord(in)) {
+            }
+        } catch (EOFException e) {
+            Slog.w(TAG, "Settings journal ends with a torn record");
+        } catch (IOException e2) {
+            Slog.w(TAG, "Failed to read settings journal", e2);
+        } finally {
+            IoUtils.closeQuietly(in);
+        }
+    }
+
+    /** Called when the journal-checkpoint element of packages.xml has been parsed. */
+    void onCheckpointRead(long generation) {
+        this.mGeneration = generation;
+        this.mReplayValid = this.mReplayGeneration == generation;
+        if (!this.mReplayValid && !this.mReplayRecords.isEmpty()) {
+            Slog.i(TAG, "Discarding stale settings journal, generation " + this.mReplayGeneration + " != " + generation);
+        }
+    }
+
+    boolean isOverridden(String key) {
+        return this.mReplayValid && this.mReplayRecords.containsKey(key);
+    }
+
+    ArrayMap<String, byte[]> takeReplayRecords() {
+        ArrayMap<String, byte[]> records = null;
+        if (this.mReplayValid && !this.mReplayRecords.isEmpty()) {
+            records = new ArrayMap(this.mReplayRecords);
+        }
+        this.mReplayRecords.clear();
+        this.mReplayValid = false;
+        return records;
+    }
+
+    private static void writeRecord(DataOutputStream out, String key, byte[] fragment) throws IOException {
+        out.writeByte(OP_PUT);
+        out.writeUTF(key);
+        out.writeInt(fragment.length);
+        out.write(fragment);
+        out.writeInt((int) recordCrc(key, fragment));
+    }
+
+    private boolean readRecord(DataInputStream in) throws IOException {
+        int op = in.read();
+        if (op < 0) {
+            return false;
+        }
+        if (op != OP_PUT) {
+            Slog.w(TAG, "Unknown settings journal op " + op);
+            return false;
+        }
+        String key = in.readUTF();
+        int length = in.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            Slog.w(TAG, "Settings journal record too large for " + key);
+            return false;
+        }
+        byte[] fragment = new byte[length];
+        in.readFully(fragment);
+        if (in.readInt() != ((int) recordCrc(key, fragment))) {
+            Slog.w(TAG, "Settings journal crc mismatch for " + key);
+            return false;
+        }
+        this.mReplayRecords.put(key, fragment);
+        return true;
+    }
+
+    private static long recordCrc(String key, byte[] fragment) {
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        crc.update(fragment);
+        return crc.getValue();
+    }
+}
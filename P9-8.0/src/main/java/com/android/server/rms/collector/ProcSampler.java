@@ -0,0 +1,79 @@
+package com.android.server.rms.collector;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+public final class ProcSampler {
+    private static final String PROC_STAT_PATH = "/proc/stat";
+    private static final int[] SYSTEM_STAT_FORMAT = new int[]{288, 8224, 8224, 8224, 8224, 8224, 8224, 8224};
+    private static final String TAG = "RMS.ProcSampler";
+    private static ProcSampler sInstance;
+    private final Object mCpuLock = new Object();
+    private volatile CpuSnapshot mCpuSnapshot;
+    private final long[] mStatBuffer = new long[7];
+
+    public static final class CpuSnapshot {
+        public final long idleTickTime;
+        public final long iowaitTickTime;
+        public final long irqTickTime;
+        public final long niceTickTime;
+        public final long softIrqTickTime;
+        public final long systemTickTime;
+        public final long timeStamp;
+        public final long totalTickTime;
+        public final long userTickTime;
+
+        CpuSnapshot(long[] sysCpu, long timeStamp) {
+            this.userTickTime = sysCpu[0];
+            this.niceTickTime = sysCpu[1];
+            this.systemTickTime = sysCpu[2];
+            this.idleTickTime = sysCpu[3];
+            this.iowaitTickTime = sysCpu[4];
+            this.irqTickTime = sysCpu[5];
+            this.softIrqTickTime = sysCpu[6];
+            this.totalTickTime = (((((sysCpu[0] + sysCpu[1]) + sysCpu[2]) + sysCpu[3]) + sysCpu[4]) + sysCpu[5]) + sysCpu[6];
+            this.timeStamp = timeStamp;
+        }
+    }
+
+    public static ProcSampler getInstance() {
+        ProcSampler procSampler;
+        synchronized (ProcSampler.class) {
+            if (sInstance == null) {
+                sInstance = new ProcSampler();
+            }
+            procSampler = sInstance;
+        }
+        return procSampler;
+    }
+
+    private ProcSampler() {
+    }
+
+    public CpuSnapshot getCpuSnapshot(long maxAgeMillis) {
+        CpuSnapshot snapshot = this.mCpuSnapshot;
+        if (isFresh(snapshot != null ? snapshot.timeStamp : -1, maxAgeMillis)) {
+            return snapshot;
+        }
+        synchronized (this.mCpuLock) {
+            snapshot = this.mCpuSnapshot;
+            if (isFresh(snapshot != null ? snapshot.timeStamp : -1, maxAgeMillis)) {
+                return snapshot;
+            }
+            long[] sysCpu = this.mStatBuffer;
+            if (Process.readProcFile(PROC_STAT_PATH, SYSTEM_STAT_FORMAT, null, sysCpu, null)) {
+                snapshot = new CpuSnapshot(sysCpu, SystemClock.elapsedRealtime());
+                this.mCpuSnapshot = snapshot;
+            } else {
+                Log.w(TAG, "getCpuSnapshot,fail to read /proc/stat");
+                return snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private static boolean isFresh(long timeStamp, long maxAgeMillis) {
+        return timeStamp >= 0 && SystemClock.elapsedRealtime() - timeStamp <= maxAgeMillis;
+    }
+}
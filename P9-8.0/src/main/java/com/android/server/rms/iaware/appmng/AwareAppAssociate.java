@@ -73,6 +73,7 @@ public final class AwareAppAssociate {
     private static AwareAppAssociate mAwareAppAssociate = null;
     private static boolean mEnabled = false;
     private final AwareAppLruBase mAmsPrevBase;
+    private final AwareAssocGraph mAssocGraph;
     private final ArrayMap<Integer, AssocPidRecord> mAssocRecordMap;
     private ArrayMap<Integer, ProcessData> mBgRecentForcePids;
     private final ArraySet<IAwareVisibleCallback> mCallbacks;
@@ -496,6 +497,7 @@ public final class AwareAppAssociate {
         this.mHomeProcessUid = 0;
         this.mHomePackageList = new ArrayList();
         this.mAssocRecordMap = new ArrayMap();
+        this.mAssocGraph = new AwareAssocGraph();
         this.mProcInfoMap = new ProcessMap();
         this.mProcPidMap = new ArrayMap();
         this.mProcUidMap = new ArrayMap();
@@ -754,52 +756,13 @@ public final class AwareAppAssociate {
 
     private void getStrongAssocClient(int pid, Set<Integer> strong) {
         if (pid > 0 && strong != null) {
-            synchronized (this) {
-                for (Entry<Integer, AssocPidRecord> map : this.mAssocRecordMap.entrySet()) {
-                    int clientPid = ((Integer) map.getKey()).intValue();
-                    AssocPidRecord record = (AssocPidRecord) map.getValue();
-                    int NP = record.mAssocBindService.getMap().size();
-                    for (int i = 0; i < NP; i++) {
-                        SparseArray<AssocBaseRecord> brs = (SparseArray) record.mAssocBindService.getMap().valueAt(i);
-                        int NB = brs.size();
-                        for (int j = 0; j < NB; j++) {
-                            AssocBaseRecord br = (AssocBaseRecord) brs.valueAt(j);
-                            if (br != null && br.pid == pid) {
-                                strong.add(Integer.valueOf(clientPid));
-                            }
-                        }
-                    }
-                }
-            }
+            this.mAssocGraph.getBindClients(pid, strong);
         }
     }
 
     public void getAssocClientListForUid(int uid, Set<String> strong) {
         if (mEnabled && uid > 0 && strong != null) {
-            synchronized (this) {
-                for (Entry<Integer, AssocPidRecord> map : this.mAssocRecordMap.entrySet()) {
-                    AssocPidRecord record = (AssocPidRecord) map.getValue();
-                    if (record.uid >= 10000) {
-                        boolean bfound = false;
-                        int NP = record.mAssocBindService.getMap().size();
-                        for (int i = 0; i < NP; i++) {
-                            SparseArray<AssocBaseRecord> brs = (SparseArray) record.mAssocBindService.getMap().valueAt(i);
-                            int NB = brs.size();
-                            for (int j = 0; j < NB; j++) {
-                                AssocBaseRecord br = (AssocBaseRecord) brs.valueAt(j);
-                                if (br != null && br.uid == uid) {
-                                    strong.addAll(getPackageNameForUid(record.uid, record.pid));
-                                    bfound = true;
-                                    break;
-                                }
-                            }
-                            if (bfound) {
-                                break;
-                            }
-                        }
-                    }
-                }
-            }
+            this.mAssocGraph.getBindClientPkgsForUid(uid, 10000, strong);
             if (DEBUG) {
                 AwareLog.i(TAG, "[" + uid + "]strongList:" + strong);
             }
@@ -869,44 +832,58 @@ public final class AwareAppAssociate {
 
     private void getStrongAssoc(int pid, Set<Integer> strong) {
         if (pid > 0 && strong != null) {
-            synchronized (this) {
-                long curElapse = SystemClock.elapsedRealtime();
-                AssocPidRecord record = (AssocPidRecord) this.mAssocRecordMap.get(Integer.valueOf(pid));
-                if (record == null) {
-                    return;
-                }
-                int i;
-                SparseArray<AssocBaseRecord> brs;
-                int NB;
-                int j;
-                int targetPid;
-                int NP = record.mAssocBindService.getMap().size();
-                for (i = 0; i < NP; i++) {
-                    brs = (SparseArray) record.mAssocBindService.getMap().valueAt(i);
-                    NB = brs.size();
-                    for (j = 0; j < NB; j++) {
-                        targetPid = ((AssocBaseRecord) brs.valueAt(j)).pid;
-                        if (targetPid != 0) {
-                            strong.add(Integer.valueOf(targetPid));
-                        }
-                    }
-                }
-                NP = record.mAssocProvider.getMap().size();
-                for (i = 0; i < NP; i++) {
-                    brs = (SparseArray) record.mAssocProvider.getMap().valueAt(i);
-                    NB = brs.size();
-                    for (j = 0; j < NB; j++) {
-                        AssocBaseRecord br = (AssocBaseRecord) brs.valueAt(j);
-                        targetPid = br.pid;
-                        if (targetPid != 0 && br.isStrong && curElapse - br.miniTime < 120000) {
-                            strong.add(Integer.valueOf(targetPid));
-                        }
-                    }
-                }
-            }
+            this.mAssocGraph.getStrongTargets(pid, SystemClock.elapsedRealtime(), 120000, strong);
         }
     }
 
+    private void publishAssocLocked(AssocPidRecord record) {
+        if (record.isEmpty()) {
+            this.mAssocGraph.clearEdges(record.pid);
+            return;
+        }
+        int i;
+        SparseArray<AssocBaseRecord> brs;
+        int NB;
+        int j;
+        int bindSize = 0;
+        int NP = record.mAssocBindService.getMap().size();
+        for (i = 0; i < NP; i++) {
+            bindSize += ((SparseArray) record.mAssocBindService.getMap().valueAt(i)).size();
+        }
+        int[] bindPids = new int[bindSize];
+        int[] bindUids = new int[bindSize];
+        int index = 0;
+        for (i = 0; i < NP; i++) {
+            brs = (SparseArray) record.mAssocBindService.getMap().valueAt(i);
+            NB = brs.size();
+            for (j = 0; j < NB; j++) {
+                AssocBaseRecord br = (AssocBaseRecord) brs.valueAt(j);
+                bindPids[index] = br.pid;
+                bindUids[index] = br.uid;
+                index++;
+            }
+        }
+        int providerSize = 0;
+        NP = record.mAssocProvider.getMap().size();
+        for (i = 0; i < NP; i++) {
+            providerSize += ((SparseArray) record.mAssocProvider.getMap().valueAt(i)).size();
+        }
+        int[] providerPids = new int[providerSize];
+        long[] providerTimes = new long[providerSize];
+        index = 0;
+        for (i = 0; i < NP; i++) {
+            brs = (SparseArray) record.mAssocProvider.getMap().valueAt(i);
+            NB = brs.size();
+            for (j = 0; j < NB; j++) {
+                AssocBaseRecord br2 = (AssocBaseRecord) brs.valueAt(j);
+                providerPids[index] = br2.pid;
+                providerTimes[index] = br2.isStrong ? br2.miniTime : -1;
+                index++;
+            }
+        }
+        this.mAssocGraph.updateEdges(record.pid, record.uid, bindPids, bindUids, providerPids, providerTimes);
+    }
+
     private void addWidget(int userId, int widgetId, String pkgName, Bundle options) {
         if (pkgName != null) {
             if (DEBUG) {
@@ -1282,6 +1259,7 @@ public final class AwareAppAssociate {
                         if (relations != null) {
                             relations.put(targetName, targetUid, baseRecord);
                             this.mAssocRecordMap.put(Integer.valueOf(callerPid), pidRecord);
+                            publishAssocLocked(pidRecord);
                         } else if (DEBUG) {
                             AwareLog.e(TAG, "Error type:" + type);
                         }
@@ -1293,11 +1271,13 @@ public final class AwareAppAssociate {
                                 baseRecord = new AssocBaseRecord(targetName, targetUid, targetPid);
                                 baseRecord.mComponents.add(comp);
                                 relations.put(targetName, targetUid, baseRecord);
+                                publishAssocLocked(pidRecord);
                                 return;
                             }
                             baseRecord.miniTime = SystemClock.elapsedRealtime();
                             baseRecord.isStrong = true;
                             baseRecord.mComponents.add(comp);
+                            publishAssocLocked(pidRecord);
                         } else if (DEBUG) {
                             AwareLog.e(TAG, "Error type:" + type);
                         }
@@ -1352,6 +1332,7 @@ public final class AwareAppAssociate {
                             if (pr.isEmpty()) {
                                 this.mAssocRecordMap.remove(Integer.valueOf(pr.pid));
                             }
+                            publishAssocLocked(pr);
                         }
                     }
                 } else if (DEBUG) {
@@ -1397,6 +1378,7 @@ public final class AwareAppAssociate {
                     this.mProcUidMap.remove(Integer.valueOf(uid));
                 }
             }
+            this.mAssocGraph.removeProcess(pid, uid);
             Iterator<Entry<Integer, AssocPidRecord>> it = this.mAssocRecordMap.entrySet().iterator();
             while (it.hasNext()) {
                 AssocPidRecord record = (AssocPidRecord) ((Entry) it.next()).getValue();
@@ -1404,8 +1386,13 @@ public final class AwareAppAssociate {
                     it.remove();
                 } else {
                     if (br != null) {
-                        record.mAssocBindService.remove(br.processName, br.uid);
-                        record.mAssocProvider.remove(br.processName, br.uid);
+                        boolean removed = record.mAssocBindService.remove(br.processName, br.uid) != null;
+                        if (record.mAssocProvider.remove(br.processName, br.uid) != null) {
+                            removed = true;
+                        }
+                        if (removed) {
+                            publishAssocLocked(record);
+                        }
                     }
                     if (record.isEmpty()) {
                         it.remove();
@@ -1495,14 +1482,21 @@ public final class AwareAppAssociate {
                     AssocPidRecord record = (AssocPidRecord) ((Entry) it.next()).getValue();
                     if (record.pid == pid) {
                         it.remove();
+                        this.mAssocGraph.clearEdges(pid);
                     } else {
+                        boolean changed = false;
                         br = (AssocBaseRecord) record.mAssocBindService.get(name, uid);
-                        if (br != null) {
+                        if (!(br == null || br.pid == pid)) {
                             br.pid = pid;
+                            changed = true;
                         }
                         br = (AssocBaseRecord) record.mAssocProvider.get(name, uid);
-                        if (br != null) {
+                        if (!(br == null || br.pid == pid)) {
                             br.pid = pid;
+                            changed = true;
+                        }
+                        if (changed) {
+                            publishAssocLocked(record);
                         }
                     }
                 }
@@ -1523,6 +1517,7 @@ public final class AwareAppAssociate {
                 br.uid = uid;
                 br.pid = pid;
                 br.pkgList.addAll(pkgList);
+                this.mAssocGraph.updateProcess(pid, uid, br.pkgList);
                 try {
                     br = (AssocBaseRecord) this.mProcInfoMap.get(name, uid);
                     if (br == null) {
@@ -1671,6 +1666,7 @@ public final class AwareAppAssociate {
                 ArraySet<Integer> pids = new ArraySet();
                 pids.add(Integer.valueOf(this.mMyPid));
                 this.mProcUidMap.put(Integer.valueOf(1000), pids);
+                this.mAssocGraph.updateProcess(this.mMyPid, 1000, br.pkgList);
             }
             initSwitchUser();
             initVisibleWindows();
@@ -1699,6 +1695,7 @@ public final class AwareAppAssociate {
         }
         synchronized (this) {
             this.mAssocRecordMap.clear();
+            this.mAssocGraph.clear();
             this.mProcInfoMap.getMap().clear();
             this.mProcPidMap.clear();
             this.mProcUidMap.clear();
@@ -1711,12 +1708,7 @@ public final class AwareAppAssociate {
 
     public void getPidsByUid(int uid, Set<Integer> pids) {
         if (mEnabled && uid > 0 && pids != null) {
-            synchronized (this) {
-                ArraySet<Integer> procPids = (ArraySet) this.mProcUidMap.get(Integer.valueOf(uid));
-                if (procPids != null) {
-                    pids.addAll(procPids);
-                }
-            }
+            this.mAssocGraph.getPidsByUid(uid, pids);
         }
     }
 
@@ -0,0 +1,261 @@
+package com.android.server.rms.iaware.appmng;
+
+import android.util.SparseArray;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class AwareAssocGraph {
+    private static final int[] EMPTY_INTS = new int[0];
+    private static final long[] EMPTY_LONGS = new long[0];
+    private static final String[] EMPTY_STRINGS = new String[0];
+    private static final int STRIPE_COUNT = 16;
+    private static final int STRIPE_MASK = 15;
+    private volatile EdgeSnapshot mEdgeSnapshot;
+    private final AtomicInteger mEdgeVersion = new AtomicInteger();
+    private final Stripe[] mStripes = new Stripe[STRIPE_COUNT];
+    private final SparseArray<int[]> mUidPids = new SparseArray();
+
+    private static final class AssocNode {
+        final int[] bindPids;
+        final int[] bindUids;
+        final int pid;
+        final String[] pkgs;
+        final int[] providerPids;
+        final long[] providerTimes;
+        final int uid;
+
+        AssocNode(int pid, int uid, String[] pkgs, int[] bindPids, int[] bindUids, int[] providerPids, long[] providerTimes) {
+            this.pid = pid;
+            this.uid = uid;
+            this.pkgs = pkgs;
+            this.bindPids = bindPids;
+            this.bindUids = bindUids;
+            this.providerPids = providerPids;
+            this.providerTimes = providerTimes;
+        }
+
+        boolean hasEdges() {
+            return this.bindPids.length > 0 || this.providerPids.length > 0;
+        }
+    }
+
+    /** Nodes with edges as of one edge version, shared by reverse queries until the next change. */
+    private static final class EdgeSnapshot {
+        final AssocNode[] nodes;
+        final int version;
+
+        EdgeSnapshot(AssocNode[] nodes, int version) {
+            this.nodes = nodes;
+            this.version = version;
+        }
+    }
+
+    private static final class Stripe {
+        final SparseArray<AssocNode> nodes = new SparseArray();
+
+        Stripe() {
+        }
+    }
+
+    AwareAssocGraph() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            this.mStripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripeFor(int pid) {
+        return this.mStripes[pid & STRIPE_MASK];
+    }
+
+    void updateProcess(int pid, int uid, Set<String> pkgs) {
+        String[] pkgArray = (pkgs == null || pkgs.isEmpty()) ? EMPTY_STRINGS : (String[]) pkgs.toArray(new String[pkgs.size()]);
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            AssocNode node = (AssocNode) stripe.nodes.get(pid);
+            if (node == null) {
+                node = new AssocNode(pid, uid, pkgArray, EMPTY_INTS, EMPTY_INTS, EMPTY_INTS, EMPTY_LONGS);
+            } else {
+                node = new AssocNode(pid, uid, pkgArray, node.bindPids, node.bindUids, node.providerPids, node.providerTimes);
+            }
+            stripe.nodes.put(pid, node);
+        }
+        if (node.hasEdges()) {
+            this.mEdgeVersion.incrementAndGet();
+        }
+        synchronized (this.mUidPids) {
+            int[] pids = (int[]) this.mUidPids.get(uid);
+            if (!contains(pids, pid)) {
+                this.mUidPids.put(uid, append(pids, pid));
+            }
+        }
+    }
+
+    void removeProcess(int pid, int uid) {
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            stripe.nodes.remove(pid);
+        }
+        this.mEdgeVersion.incrementAndGet();
+        synchronized (this.mUidPids) {
+            int[] pids = (int[]) this.mUidPids.get(uid);
+            if (contains(pids, pid)) {
+                int[] remain = remove(pids, pid);
+                if (remain.length == 0) {
+                    this.mUidPids.remove(uid);
+                } else {
+                    this.mUidPids.put(uid, remain);
+                }
+            }
+        }
+    }
+
+    void updateEdges(int pid, int uid, int[] bindPids, int[] bindUids, int[] providerPids, long[] providerTimes) {
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            AssocNode node = (AssocNode) stripe.nodes.get(pid);
+            stripe.nodes.put(pid, new AssocNode(pid, uid, node != null ? node.pkgs : EMPTY_STRINGS, bindPids, bindUids, providerPids, providerTimes));
+        }
+        this.mEdgeVersion.incrementAndGet();
+    }
+
+    void clearEdges(int pid) {
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            AssocNode node = (AssocNode) stripe.nodes.get(pid);
+            if (node != null && node.hasEdges()) {
+                stripe.nodes.put(pid, new AssocNode(pid, node.uid, node.pkgs, EMPTY_INTS, EMPTY_INTS, EMPTY_INTS, EMPTY_LONGS));
+                this.mEdgeVersion.incrementAndGet();
+            }
+        }
+    }
+
+    void clear() {
+        for (Stripe stripe : this.mStripes) {
+            synchronized (stripe) {
+                stripe.nodes.clear();
+            }
+        }
+        synchronized (this.mUidPids) {
+            this.mUidPids.clear();
+        }
+        this.mEdgeVersion.incrementAndGet();
+    }
+
+    void getStrongTargets(int pid, long curElapse, long decayTime, Set<Integer> strong) {
+        AssocNode node;
+        Stripe stripe = stripeFor(pid);
+        synchronized (stripe) {
+            node = (AssocNode) stripe.nodes.get(pid);
+        }
+        if (node != null) {
+            for (int targetPid : node.bindPids) {
+                if (targetPid != 0) {
+                    strong.add(Integer.valueOf(targetPid));
+                }
+            }
+            int size = node.providerPids.length;
+            for (int i = 0; i < size; i++) {
+                int targetPid2 = node.providerPids[i];
+                long miniTime = node.providerTimes[i];
+                if (targetPid2 != 0 && miniTime >= 0 && curElapse - miniTime < decayTime) {
+                    strong.add(Integer.valueOf(targetPid2));
+                }
+            }
+        }
+    }
+
+    void getBindClients(int pid, Set<Integer> clients) {
+        for (AssocNode node : snapshotNodes()) {
+            if (contains(node.bindPids, pid)) {
+                clients.add(Integer.valueOf(node.pid));
+            }
+        }
+    }
+
+    void getBindClientPkgsForUid(int uid, int minClientUid, Set<String> pkgs) {
+        for (AssocNode node : snapshotNodes()) {
+            if (node.uid >= minClientUid && contains(node.bindUids, uid)) {
+                for (String pkg : node.pkgs) {
+                    pkgs.add(pkg);
+                }
+            }
+        }
+    }
+
+    void getPidsByUid(int uid, Set<Integer> pids) {
+        int[] uidPids;
+        synchronized (this.mUidPids) {
+            uidPids = (int[]) this.mUidPids.get(uid);
+        }
+        if (uidPids != null) {
+            for (int pid : uidPids) {
+                pids.add(Integer.valueOf(pid));
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes with edges. The array is built once per edge version and then shared, so
+     * reverse queries between two changes don't copy the graph. A build that overlaps a change is
+     * used by its caller but not kept.
+     */
+    private AssocNode[] snapshotNodes() {
+        int version = this.mEdgeVersion.get();
+        EdgeSnapshot snapshot = this.mEdgeSnapshot;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.nodes;
+        }
+        ArrayList<AssocNode> nodes = new ArrayList();
+        for (Stripe stripe : this.mStripes) {
+            synchronized (stripe) {
+                int size = stripe.nodes.size();
+                for (int i = 0; i < size; i++) {
+                    AssocNode node = (AssocNode) stripe.nodes.valueAt(i);
+                    if (node.hasEdges()) {
+                        nodes.add(node);
+                    }
+                }
+            }
+        }
+        AssocNode[] result = (AssocNode[]) nodes.toArray(new AssocNode[nodes.size()]);
+        if (this.mEdgeVersion.get() == version) {
+            this.mEdgeSnapshot = new EdgeSnapshot(result, version);
+        }
+        return result;
+    }
+
+    private static boolean contains(int[] array, int value) {
+        if (array == null) {
+            return false;
+        }
+        for (int item : array) {
+            if (item == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null) {
+            return new int[]{value};
+        }
+        int[] result = new int[(array.length + 1)];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static int[] remove(int[] array, int value) {
+        int[] result = new int[(array.length - 1)];
+        int index = 0;
+        for (int item : array) {
+            if (item != value && index < result.length) {
+                result[index] = item;
+                index++;
+            }
+        }
+        return result;
+    }
+}
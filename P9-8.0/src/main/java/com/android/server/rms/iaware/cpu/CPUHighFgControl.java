@@ -6,6 +6,8 @@ import android.os.Message;
 import android.os.UserHandle;
 import android.rms.iaware.AwareLog;
 import android.util.SparseArray;
+import com.android.server.rms.collector.ProcSampler;
+import com.android.server.rms.collector.ProcSampler.CpuSnapshot;
 import com.android.server.rms.iaware.memory.utils.MemoryConstant;
 import java.io.BufferedReader;
 import java.io.File;
@@ -38,7 +40,7 @@ public class CPUHighFgControl {
     private static final int CPU_LOAD_THRESHOLD_MIN = 20;
     private static final int CPU_POLLING_INTERVAL_MAX_VALUE = 5000;
     private static final int CPU_POLLING_INTERVAL_MIN_VALUE = 100;
-    private static final String CPU_STAT_PATH = "/proc/stat";
+    private static final long CPU_SNAPSHOT_MAX_AGE = 10;
     private static final int CPU_TA_LOAD_REGULAR_THRESHOLD_DEFAULT = 75;
     private static final int CPU_TA_LOAD_THRESHOLD_DEFAULT = 90;
     private static final long INVALID_VALUE = -1;
@@ -1065,12 +1067,7 @@ public class CPUHighFgControl {
     }
 
     private long getCpuLoad() {
-        String strContent = getContentWithOneLine(CPU_STAT_PATH, "cpu ");
-        if (strContent == null) {
-            AwareLog.e(TAG, "getCpuLoad null content!");
-            return -1;
-        }
-        ProcessStatInfo info = getCpuStatInfo(strContent);
+        ProcessStatInfo info = getCpuStatInfo();
         if (info == null) {
             return -1;
         }
@@ -1078,59 +1075,19 @@ public class CPUHighFgControl {
     }
 
     private ProcessStatInfo getCpuStatInfo() {
-        String strContent = getContentWithOneLine(CPU_STAT_PATH, "cpu ");
-        if (strContent != null) {
-            return getCpuStatInfo(strContent);
-        }
-        AwareLog.e(TAG, "getProcessLoad null content!");
-        return null;
-    }
-
-    private List<String> getProcStatInfo(String content) {
-        if (content == null || content.length() == 0) {
-            AwareLog.e(TAG, "getWallTime null content!");
-            return null;
-        }
-        String[] conts = content.split(" ");
-        List<String> listTemp = new ArrayList();
-        for (String str : conts) {
-            if (!"".equals(str)) {
-                listTemp.add(str);
-            }
-        }
-        return listTemp;
-    }
-
-    private ProcessStatInfo getCpuStatInfo(String content) {
-        List<String> listTemp = getProcStatInfo(content);
-        if (listTemp == null || listTemp.size() < 10) {
-            return null;
-        }
-        String strNice = (String) listTemp.get(2);
-        String strSystem = (String) listTemp.get(3);
-        String strIdle = (String) listTemp.get(4);
-        String strIoWait = (String) listTemp.get(5);
-        String strIrq = (String) listTemp.get(6);
-        String strSoftIrq = (String) listTemp.get(7);
-        long userTime = parseLong((String) listTemp.get(1));
-        long nice = parseLong(strNice);
-        long system = parseLong(strSystem);
-        long idle = parseLong(strIdle);
-        long iowait = parseLong(strIoWait);
-        long irq = parseLong(strIrq);
-        long softIrq = parseLong(strSoftIrq);
-        if (userTime == -1 || nice == -1 || system == -1 || idle == -1 || iowait == -1 || irq == -1 || softIrq == -1) {
-            AwareLog.e(TAG, "getWallTime inalid value!");
+        CpuSnapshot snapshot = ProcSampler.getInstance().getCpuSnapshot(CPU_SNAPSHOT_MAX_AGE);
+        if (snapshot == null) {
+            AwareLog.e(TAG, "getProcessLoad null snapshot!");
             return null;
         }
         ProcessStatInfo info = new ProcessStatInfo(null);
-        info.idle = idle;
-        info.iowait = iowait;
-        info.irq = irq;
-        info.nice = nice;
-        info.softIrq = softIrq;
-        info.system = system;
-        info.userTime = userTime;
+        info.idle = snapshot.idleTickTime;
+        info.iowait = snapshot.iowaitTickTime;
+        info.irq = snapshot.irqTickTime;
+        info.nice = snapshot.niceTickTime;
+        info.softIrq = snapshot.softIrqTickTime;
+        info.system = snapshot.systemTickTime;
+        info.userTime = snapshot.userTickTime;
         return info;
     }
 
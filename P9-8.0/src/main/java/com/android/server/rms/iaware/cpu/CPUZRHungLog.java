@@ -4,6 +4,8 @@ import android.rms.iaware.AwareLog;
 import android.util.SparseArray;
 import android.util.ZRHung;
 import android.util.ZRHung.HungConfig;
+import com.android.server.rms.collector.ProcSampler;
+import com.android.server.rms.collector.ProcSampler.CpuSnapshot;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -20,7 +22,7 @@ import java.util.List;
 public class CPUZRHungLog {
     private static final int CPU_HIGHLOAD_POLLING_INTERVAL_DEFAULT = 1000;
     private static final int CPU_LOAD_APP_ARRAY_SIZE_DEFAULT = 10;
-    private static final String CPU_STAT_PATH = "/proc/stat";
+    private static final long CPU_SNAPSHOT_MAX_AGE = 100;
     private static final long INVALID_VALUE = -1;
     private static final int LOAD_STATUS_HIGH = 2;
     private static final int LOAD_STATUS_LOW = 1;
@@ -244,59 +246,19 @@ public class CPUZRHungLog {
     }
 
     private ProcessStatInfo getCpuStatInfo() {
-        String strContent = getContentWithOneLine(CPU_STAT_PATH, "cpu ");
-        if (strContent != null) {
-            return getCpuStatInfo(strContent);
-        }
-        AwareLog.e(TAG, "getProcessLoad null content!");
-        return null;
-    }
-
-    private List<String> getProcStatInfo(String content) {
-        if (content == null || content.length() == 0) {
-            AwareLog.e(TAG, "getWallTime null content!");
-            return null;
-        }
-        String[] conts = content.split(" ");
-        List<String> listTemp = new ArrayList();
-        for (String str : conts) {
-            if (!"".equals(str)) {
-                listTemp.add(str);
-            }
-        }
-        return listTemp;
-    }
-
-    private ProcessStatInfo getCpuStatInfo(String content) {
-        List<String> listTemp = getProcStatInfo(content);
-        if (listTemp == null || listTemp.size() < 10) {
-            return null;
-        }
-        String strNice = (String) listTemp.get(2);
-        String strSystem = (String) listTemp.get(3);
-        String strIdle = (String) listTemp.get(4);
-        String strIoWait = (String) listTemp.get(5);
-        String strIrq = (String) listTemp.get(6);
-        String strSoftIrq = (String) listTemp.get(7);
-        long userTime = parseLong((String) listTemp.get(1));
-        long nice = parseLong(strNice);
-        long system = parseLong(strSystem);
-        long idle = parseLong(strIdle);
-        long iowait = parseLong(strIoWait);
-        long irq = parseLong(strIrq);
-        long softIrq = parseLong(strSoftIrq);
-        if (userTime == -1 || nice == -1 || system == -1 || idle == -1 || iowait == -1 || irq == -1 || softIrq == -1) {
-            AwareLog.e(TAG, "getWallTime inalid value!");
+        CpuSnapshot snapshot = ProcSampler.getInstance().getCpuSnapshot(CPU_SNAPSHOT_MAX_AGE);
+        if (snapshot == null) {
+            AwareLog.e(TAG, "getProcessLoad null snapshot!");
             return null;
         }
         ProcessStatInfo info = new ProcessStatInfo(null);
-        info.idle = idle;
-        info.iowait = iowait;
-        info.irq = irq;
-        info.nice = nice;
-        info.softIrq = softIrq;
-        info.system = system;
-        info.userTime = userTime;
+        info.idle = snapshot.idleTickTime;
+        info.iowait = snapshot.iowaitTickTime;
+        info.irq = snapshot.irqTickTime;
+        info.nice = snapshot.niceTickTime;
+        info.softIrq = snapshot.softIrqTickTime;
+        info.system = snapshot.systemTickTime;
+        info.userTime = snapshot.userTickTime;
         return info;
     }
 
@@ -6,10 +6,11 @@ import android.os.Bundle;
 import android.os.SystemClock;
 import android.os.SystemProperties;
 import android.rms.iaware.AwareLog;
-import com.android.server.mtm.iaware.appmng.AwareAppMngSortPolicy;
+import android.util.ArraySet;
 import com.android.server.mtm.iaware.appmng.AwareProcessBlockInfo;
 import com.android.server.mtm.iaware.appmng.AwareProcessInfo;
 import com.android.server.mtm.taskstatus.ProcessCleaner;
+import com.android.server.mtm.taskstatus.ProcessCleaner.KillBatch;
 import com.android.server.rms.iaware.appmng.AppMngConfig;
 import com.android.server.rms.iaware.memory.utils.EventTracker;
 import com.android.server.rms.iaware.memory.utils.MemoryConstant;
@@ -19,11 +20,14 @@ import com.android.server.rms.iaware.memory.utils.PackageTracker;
 import com.android.server.rms.iaware.srms.AppCleanupDumpRadar;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class KillAction extends Action {
     private static final int MAX_PROCESS_KILL_COUNT = 5;
+    private static final int MAX_VICTIM_PULLS = 4;
     private static final long MIN_LEVEL2_CLEAN_INTERVAL = 300000;
     private static final String TAG = "AwareMem_Kill";
+    private static final int VICTIM_PULL_FACTOR = 2;
     private final boolean MEM_EMERG_KILL = SystemProperties.getBoolean("persist.iaware.mem_emerg_kill", false);
     private int mInvaildKillCount = 0;
     private long mLastExecTime = 0;
@@ -56,9 +60,9 @@ public class KillAction extends Action {
         if (getInvaildKillCount() > 3 && AppMngConfig.getKillMoreFlag()) {
             memCleanLevel = 1;
         }
-        AwareAppMngSortPolicy policy = getAwareAppMngSortPolicy(memCleanLevel);
-        if (policy == null) {
-            AwareLog.w(TAG, "getAppMngSortPolicy null policy!");
+        List<AwareProcessBlockInfo> procGroups = getAppMngVictims(memCleanLevel, maxKillCount, null);
+        if (procGroups == null) {
+            AwareLog.w(TAG, "getAppMngVictims null victims!");
             return -1;
         } else if (this.mInterrupt.get()) {
             this.mLastKillZeroCount++;
@@ -67,14 +71,12 @@ public class KillAction extends Action {
         } else {
             int i;
             int killedCount = 0;
-            List<AwareProcessBlockInfo> procGroups = MemoryUtils.getAppMngProcGroup(policy, 2);
             long now = SystemClock.elapsedRealtime();
             if (procGroups == null || (procGroups.isEmpty() ^ 1) == 0) {
                 AwareLog.w(TAG, "empty group list!");
                 this.mLastKillZeroCount++;
             } else {
-                updateGroupList(procGroups, false);
-                killedCount = execKillGroup(extras, procGroups, maxKillCount);
+                killedCount = killVictims(extras, memCleanLevel, procGroups, maxKillCount, false);
                 this.mLastExecTime = now;
                 if (killedCount > 0) {
                     this.mLastKillZeroCount = 0;
@@ -109,16 +111,14 @@ public class KillAction extends Action {
     }
 
     private int excuteEmergKill(Bundle extras, int maxKillCount) {
-        AwareAppMngSortPolicy policy = getAwareAppMngSortPolicy(2);
-        if (policy == null) {
-            AwareLog.w(TAG, "getAppMngSortPolicy level2 null policy!");
+        List<AwareProcessBlockInfo> procGroups = getAppMngVictims(2, maxKillCount, null);
+        if (procGroups == null) {
+            AwareLog.w(TAG, "getAppMngVictims level2 null victims!");
             return 0;
         }
         int killedCount = 0;
-        List<AwareProcessBlockInfo> procGroups = MemoryUtils.getAppMngProcGroup(policy, 2);
         if (!(procGroups == null || (procGroups.isEmpty() ^ 1) == 0)) {
-            updateGroupList(procGroups, true);
-            killedCount = execKillGroup(extras, procGroups, maxKillCount);
+            killedCount = killVictims(extras, 2, procGroups, maxKillCount, true);
             this.mLastExecTime = SystemClock.elapsedRealtime();
             this.mLastLevel2ExecTime = SystemClock.elapsedRealtime();
             if (killedCount > 0) {
@@ -129,9 +129,42 @@ public class KillAction extends Action {
         return killedCount;
     }
 
-    private AwareAppMngSortPolicy getAwareAppMngSortPolicy(int memCleanLevel) {
-        AwareLog.i(TAG, "request grouplist level=" + memCleanLevel);
-        return MemoryUtils.getAppMngSortPolicy(2, 3, memCleanLevel);
+    private List<AwareProcessBlockInfo> getAppMngVictims(int memCleanLevel, int maxKillCount, Set<AwareProcessBlockInfo> pulled) {
+        AwareLog.i(TAG, "request victims level=" + memCleanLevel);
+        return MemoryUtils.getAppMngVictims(memCleanLevel, maxKillCount * VICTIM_PULL_FACTOR, pulled);
+    }
+
+    /**
+     * Kills from procGroups, the first pull of victims, and pulls the next victims from the index
+     * while the request is not met: updateGroupList drops critical and high frequency groups and
+     * some kills fail, so the first pull may run out before reqMem or maxKillCount is reached.
+     */
+    private int killVictims(Bundle extras, int memCleanLevel, List<AwareProcessBlockInfo> procGroups, int maxKillCount, boolean retained) {
+        long reqMem = extras.getLong("reqMem");
+        Set<AwareProcessBlockInfo> pulled = new ArraySet(procGroups);
+        List<AwareProcessBlockInfo> victims = procGroups;
+        int pullCount = maxKillCount * VICTIM_PULL_FACTOR;
+        int killedCount = 0;
+        int pulls = 1;
+        while (true) {
+            boolean exhausted = victims.size() < pullCount;
+            updateGroupList(victims, retained);
+            if (!victims.isEmpty()) {
+                killedCount += execKillGroup(extras, victims, maxKillCount - killedCount, reqMem - (((long) killedCount) * MemoryConstant.APP_AVG_USS));
+            }
+            if (exhausted || killedCount >= maxKillCount || reqMem <= ((long) killedCount) * MemoryConstant.APP_AVG_USS || pulls >= MAX_VICTIM_PULLS || this.mInterrupt.get()) {
+                break;
+            }
+            pullCount = (maxKillCount - killedCount) * VICTIM_PULL_FACTOR;
+            victims = getAppMngVictims(memCleanLevel, maxKillCount - killedCount, pulled);
+            pulls++;
+            if (victims == null || victims.isEmpty()) {
+                break;
+            }
+            pulled.addAll(victims);
+        }
+        AwareLog.d(TAG, "killVictims: pulls=" + pulls + ", blocks=" + pulled.size() + ", killed=" + killedCount);
+        return killedCount;
     }
 
     public int getInvaildKillCount() {
@@ -168,14 +201,14 @@ public class KillAction extends Action {
         return this.mLastKillZeroCount;
     }
 
-    private int execKillGroup(Bundle extras, List<AwareProcessBlockInfo> procGroups, int maxKillCount) {
+    private int execKillGroup(Bundle extras, List<AwareProcessBlockInfo> procGroups, int maxKillCount, long reqMem) {
         if (extras == null || procGroups == null || procGroups.size() < 1 || this.mContext == null) {
             AwareLog.w(TAG, "execKillGroup: null procGroups");
             return 0;
         }
-        long reqMem = extras.getLong("reqMem");
         int position = procGroups.size() - 1;
         int killedPids = 0;
+        KillBatch batch = ProcessCleaner.getInstance(this.mContext).beginKillBatch(this.mInterrupt, "LowMem");
         while (reqMem > 0 && position >= 0) {
             if (this.mInterrupt.get()) {
                 AwareLog.w(TAG, "execKillGroup: mInterrupt, return");
@@ -194,7 +227,7 @@ public class KillAction extends Action {
                     AwareProcessInfo currentProcess = (AwareProcessInfo) procs.get(0);
                     String processName = currentProcess.mProcInfo != null ? currentProcess.mProcInfo.mProcessName : null;
                     long beginTime = System.currentTimeMillis();
-                    List<Integer> pids = ProcessCleaner.getInstance(this.mContext).killProcessesSameUidExt(procGroup, this.mInterrupt, false, false, "LowMem");
+                    List<Integer> pids = batch.killGroup(procGroup);
                     int exeTime = (int) (System.currentTimeMillis() - beginTime);
                     if (pids != null) {
                         killedPids += pids.size();
@@ -212,6 +245,7 @@ public class KillAction extends Action {
                 }
             }
         }
+        extras.putLong(MemoryConstant.EXTRA_EST_FREED_MEM, extras.getLong(MemoryConstant.EXTRA_EST_FREED_MEM, 0) + batch.finish());
         AppCleanupDumpRadar.getInstance().reportMemoryData(procGroups, position);
         return killedPids;
     }
@@ -48,10 +48,11 @@ public class MemoryScenePolicy {
         } else {
             int result = 0;
             long start = SystemClock.elapsedRealtime();
+            this.mExtras.putLong(MemoryConstant.EXTRA_EST_FREED_MEM, 0);
             for (Action action : this.mActions) {
                 result |= action.execute(this.mExtras);
             }
-            AwareLog.d(TAG, "Execute memorypolicy use: " + (SystemClock.elapsedRealtime() - start) + " ms");
+            AwareLog.d(TAG, "Execute memorypolicy use: " + (SystemClock.elapsedRealtime() - start) + " ms, reqMem: " + reqMem + "KB, estimated freed: " + this.mExtras.getLong(MemoryConstant.EXTRA_EST_FREED_MEM) + "KB");
             return result;
         }
     }
@@ -1,23 +1,15 @@
 package com.android.server.rms.iaware.memory.utils;
 
-import android.os.Process;
+import android.os.SystemClock;
 import android.rms.iaware.AwareLog;
+import com.android.server.rms.collector.ProcSampler;
+import com.android.server.rms.collector.ProcSampler.CpuSnapshot;
 
 public class CpuReader {
     private static final int CPU_INTERVAL_TIME = 20;
-    private static final int[] SYSTEM_STAT_FORMAT = new int[]{288, 8224, 8224, 8224, 8224, 8224, 8224, 8224};
     private static final String TAG = "AwareMem_CpuReader";
-    private static long[] mSystemStatData = new long[7];
     private static CpuReader sReader;
 
-    private static class CpuData {
-        long mIdleTickTime = 0;
-        long mTotalTickTime = 0;
-
-        CpuData() {
-        }
-    }
-
     public static CpuReader getInstance() {
         CpuReader cpuReader;
         synchronized (CpuReader.class) {
@@ -29,30 +21,24 @@ public class CpuReader {
         return cpuReader;
     }
 
-    private int sample(CpuData data) {
-        long[] sysCpu = mSystemStatData;
-        if (Process.readProcFile("/proc/stat", SYSTEM_STAT_FORMAT, null, sysCpu, null)) {
-            data.mTotalTickTime = (((((sysCpu[0] + sysCpu[1]) + sysCpu[2]) + sysCpu[3]) + sysCpu[4]) + sysCpu[5]) + sysCpu[6];
-            data.mIdleTickTime = sysCpu[3];
-            return 0;
-        }
-        AwareLog.w(TAG, "init read /proc/stat error !");
-        return -1;
-    }
-
     public final long getCpuPercent() {
-        CpuData systemStatData1 = new CpuData();
-        if (sample(systemStatData1) != 0) {
+        ProcSampler sampler = ProcSampler.getInstance();
+        CpuSnapshot systemStatData1 = sampler.getCpuSnapshot((long) CPU_INTERVAL_TIME);
+        if (systemStatData1 == null) {
+            AwareLog.w(TAG, "init read /proc/stat error !");
             return -1;
         }
         try {
-            Thread.sleep(20);
-            CpuData systemStatData2 = new CpuData();
-            if (sample(systemStatData2) != 0) {
+            long waitTime = ((long) CPU_INTERVAL_TIME) - (SystemClock.elapsedRealtime() - systemStatData1.timeStamp);
+            if (waitTime > 0) {
+                Thread.sleep(waitTime);
+            }
+            CpuSnapshot systemStatData2 = sampler.getCpuSnapshot(Math.max(0, (SystemClock.elapsedRealtime() - systemStatData1.timeStamp) - ((long) CPU_INTERVAL_TIME)));
+            if (systemStatData2 == null) {
                 return -1;
             }
-            long totalTickTime = systemStatData2.mTotalTickTime - systemStatData1.mTotalTickTime;
-            long idleTickTime = systemStatData2.mIdleTickTime - systemStatData1.mIdleTickTime;
+            long totalTickTime = systemStatData2.totalTickTime - systemStatData1.totalTickTime;
+            long idleTickTime = systemStatData2.idleTickTime - systemStatData1.idleTickTime;
             if (totalTickTime < 0 || idleTickTime < 0 || idleTickTime > totalTickTime) {
                 return -1;
             }
@@ -34,6 +34,7 @@ public final class MemoryConstant {
     public static final int DO_APPLY_MASK = 1;
     public static final int DO_SHRINK_MASK = 2;
     private static long EMERGENCY_MEMORY = 307200;
+    public static final String EXTRA_EST_FREED_MEM = "estFreedMem";
     private static final Key<int[]> HW_CAMERA_MEMORY_REQUIREMENT_SUPPORTED = new Key("com.huawei.device.capabilities.hwCameraMemoryRequirementSupported", int[].class);
     private static long IDLE_MEMORY = MB_SIZE;
     public static final int LARGE_CPU_MASK = 16711680;
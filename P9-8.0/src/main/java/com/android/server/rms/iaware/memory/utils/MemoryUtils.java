@@ -31,6 +31,7 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 public class MemoryUtils {
     private static final long FLUSH_TIMEOUT = 2000;
@@ -57,6 +58,17 @@ public class MemoryUtils {
         return sorted.getAppMngSortPolicy(resourceType, subType, groupId);
     }
 
+    public static List<AwareProcessBlockInfo> getAppMngVictims(int memLevel, int count, Set<AwareProcessBlockInfo> exclude) {
+        if (!AwareAppMngSort.checkAppMngEnable()) {
+            return null;
+        }
+        AwareAppMngSort sorted = AwareAppMngSort.getInstance();
+        if (sorted == null) {
+            return null;
+        }
+        return sorted.getAppMngVictims(memLevel, count, exclude);
+    }
+
     public static AwareAppMngSortPolicy getAppMngSortPolicyForMemRepair(int sceneType) {
         if (!AwareAppMngSort.checkAppMngEnable()) {
             return null;
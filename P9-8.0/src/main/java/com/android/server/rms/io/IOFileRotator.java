@@ -13,6 +13,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import libcore.io.IoUtils;
@@ -93,6 +94,14 @@ public class IOFileRotator {
         void write(OutputStream outputStream) throws IOException;
     }
 
+    public interface Appender extends Writer {
+        long getValidLength(File file) throws IOException;
+    }
+
+    public interface SegmentReader {
+        void readSegments(File file, long matchStartMillis, long matchEndMillis) throws IOException;
+    }
+
     public interface Rewriter extends Reader, Writer {
         void reset();
 
@@ -147,7 +156,7 @@ public class IOFileRotator {
             Log.e(TAG, "IOFileRotator,fail to create the directory:" + this.mBasePath);
         }
         for (String name : getBasePathFileList()) {
-            if (name.startsWith(this.mPrefix)) {
+            if (name.startsWith(this.mPrefix + ".")) {
                 if (name.endsWith(SUFFIX_BACKUP)) {
                     if (Utils.DEBUG) {
                         Log.d(TAG, "recovering " + name);
@@ -356,6 +365,32 @@ Caused by: jadx.core.utils.exceptions.CodegenException: MERGE can be used only i
         rewriteActive(new RewriterDef(reader, writer), currentTimeMillis);
     }
 
+    public void appendActive(Appender appender, long currentTimeMillis) throws IOException {
+        if (appender == null) {
+            Log.e(TAG, "appendActive,the appender is null");
+            return;
+        }
+        String name = getActiveName(currentTimeMillis);
+        if (Utils.DEBUG) {
+            Log.d(TAG, "appending " + name);
+        }
+        File file = new File(this.mBasePath, name);
+        long validLength = 0;
+        if (file.exists()) {
+            validLength = appender.getValidLength(file);
+            if (validLength < file.length()) {
+                Log.w(TAG, "appendActive,drop the torn tail of " + name + ",valid length:" + validLength);
+                truncateFile(file, validLength);
+            }
+        }
+        try {
+            appendFile(file, appender);
+        } catch (Throwable t) {
+            truncateFile(file, validLength);
+            rethrowAsIoException(t);
+        }
+    }
+
     private void rewriteSingle(Rewriter rewriter, String name) throws IOException {
         IOException rethrowAsIoException;
         if (Utils.DEBUG) {
@@ -421,6 +456,18 @@ Caused by: jadx.core.utils.exceptions.CodegenException: MERGE can be used only i
         }
     }
 
+    public void readMatchingSegments(SegmentReader reader, long matchStartMillis, long matchEndMillis) throws IOException {
+        FileInfo info = new FileInfo(this.mPrefix);
+        for (String name : getBasePathFileList()) {
+            if (info.parse(name) && info.startMillis <= matchEndMillis && matchStartMillis <= info.endMillis) {
+                if (Utils.DEBUG) {
+                    Log.d(TAG, "reading matching segments " + name);
+                }
+                reader.readSegments(new File(this.mBasePath, name), matchStartMillis, matchEndMillis);
+            }
+        }
+    }
+
     private String getActiveName(long currentTimeMillis) {
         String oldestActiveName = null;
         long oldestActiveStart = Long.MAX_VALUE;
@@ -501,6 +548,36 @@ Caused by: jadx.core.utils.exceptions.CodegenException: MERGE can be used only i
         }
     }
 
+    private static void appendFile(File file, Writer writer) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file, true);
+        BufferedOutputStream bos = new BufferedOutputStream(fos);
+        try {
+            writer.write(bos);
+            bos.flush();
+        } finally {
+            FileUtils.sync(fos);
+            IoUtils.closeQuietly(bos);
+        }
+    }
+
+    private static void truncateFile(File file, long length) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        if (length <= 0) {
+            if (!file.delete()) {
+                Log.e(TAG, "truncateFile,fail to delete the file:" + file.getName());
+            }
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            IoUtils.closeQuietly(raf);
+        }
+    }
+
     private static IOException rethrowAsIoException(Throwable t) throws IOException {
         if (t instanceof IOException) {
             throw ((IOException) t);
@@ -199,6 +199,40 @@ public final class IOStatsHistory implements Cloneable {
         }
     }
 
+    public boolean writeCompactToStream(DataOutputStream out, long[] timeRange) throws IOException {
+        if (out == null || timeRange == null || timeRange.length < 2) {
+            Log.e(TAG, "writeCompactToStream,the parameters are invalid");
+            return false;
+        }
+        int entryCount = 0;
+        for (Entry entry : this.mIOStatsList) {
+            if (entry.mNumberOfWrite != 0 || entry.mNumberOfRead != 0) {
+                entryCount++;
+            }
+        }
+        if (entryCount == 0) {
+            if (Utils.DEBUG) {
+                Log.d(TAG, "uid:" + this.mUid + ",writeCompactToStream,no entry to write");
+            }
+            return false;
+        }
+        IOStatsRecordFile.writeVarLong(out, (long) this.mUid);
+        out.writeUTF(this.mPkgName != null ? this.mPkgName : "");
+        IOStatsRecordFile.writeVarLong(out, (long) entryCount);
+        long lastStartTime = 0;
+        for (Entry entry2 : this.mIOStatsList) {
+            if (entry2.mNumberOfWrite != 0 || entry2.mNumberOfRead != 0) {
+                IOStatsRecordFile.writeVarLong(out, IOStatsRecordFile.zigZagEncode(entry2.mStartTime - lastStartTime));
+                IOStatsRecordFile.writeVarLong(out, entry2.mNumberOfWrite);
+                IOStatsRecordFile.writeVarLong(out, entry2.mNumberOfRead);
+                lastStartTime = entry2.mStartTime;
+                timeRange[0] = Math.min(timeRange[0], entry2.mStartTime);
+                timeRange[1] = Math.max(timeRange[1], entry2.mStartTime);
+            }
+        }
+        return true;
+    }
+
     public int queryNumberOfAccessingIO(int queryType, long startTime, long endTime) {
         if (this.mIOStatsList.size() == 0) {
             return -1;
@@ -0,0 +1,178 @@
+package com.android.server.rms.io;
+
+import android.rms.utils.Utils;
+import android.util.Log;
+import com.android.server.rms.io.IOFileRotator.Appender;
+import com.android.server.rms.io.IOFileRotator.SegmentReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import libcore.io.IoUtils;
+
+/**
+ * Append-only, compact record format for the io stats files.
+ *
+ * Each save appends one segment to the active file:
+ * [SEGMENT_MAGIC][bodyLength] body [minStartTime][maxStartTime][historyCount][FOOTER_MAGIC].
+ * The body holds one block per uid: varint uid, UTF package name, varint entry count and
+ * the entries as zigzag varint start time deltas followed by varint write/read bytes.
+ * The footer lets readers skip whole segments that fall outside the requested time range.
+ */
+final class IOStatsRecordFile implements Appender, SegmentReader {
+    private static final int FOOTER_MAGIC = 1229935425;
+    private static final int FOOTER_SIZE = 24;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_SEGMENT_BODY_SIZE = 262144;
+    private static final int SEGMENT_MAGIC = 1229935411;
+    private static final String TAG = "RMS.IO.IOStatsRecordFile";
+    private final IOStatsCollection mCollection;
+
+    public IOStatsRecordFile(IOStatsCollection collection) {
+        this.mCollection = collection;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        if (out == null) {
+            Log.e(TAG, "write,OutputStream is null");
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream bodyOut = new DataOutputStream(body);
+        long[] timeRange = new long[]{Long.MAX_VALUE, Long.MIN_VALUE};
+        int historyCount = 0;
+        int statsMapSize = this.mCollection.getIOStatsHistoryMap().size();
+        for (int index = 0; index < statsMapSize; index++) {
+            if (((IOStatsHistory) this.mCollection.getIOStatsHistoryMap().valueAt(index)).writeCompactToStream(bodyOut, timeRange)) {
+                historyCount++;
+            }
+        }
+        if (historyCount == 0) {
+            if (Utils.DEBUG) {
+                Log.d(TAG, "write,no entries to append");
+            }
+            return;
+        }
+        bodyOut.flush();
+        DataOutputStream dataOutStream = new DataOutputStream(out);
+        dataOutStream.writeInt(SEGMENT_MAGIC);
+        dataOutStream.writeInt(body.size());
+        body.writeTo(dataOutStream);
+        dataOutStream.writeLong(timeRange[0]);
+        dataOutStream.writeLong(timeRange[1]);
+        dataOutStream.writeInt(historyCount);
+        dataOutStream.writeInt(FOOTER_MAGIC);
+        dataOutStream.flush();
+    }
+
+    public long getValidLength(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return scanSegments(raf, Long.MIN_VALUE, Long.MAX_VALUE, false);
+        } finally {
+            IoUtils.closeQuietly(raf);
+        }
+    }
+
+    public void readSegments(File file, long matchStartMillis, long matchEndMillis) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            scanSegments(raf, matchStartMillis, matchEndMillis, true);
+        } finally {
+            IoUtils.closeQuietly(raf);
+        }
+    }
+
+    private long scanSegments(RandomAccessFile raf, long matchStartMillis, long matchEndMillis, boolean isDecode) throws IOException {
+        long fileLength = raf.length();
+        long position = 0;
+        while ((position + HEADER_SIZE) + FOOTER_SIZE <= fileLength) {
+            raf.seek(position);
+            if (raf.readInt() != SEGMENT_MAGIC) {
+                Log.e(TAG, "scanSegments,bad segment magic at " + position);
+                break;
+            }
+            int bodyLength = raf.readInt();
+            long footerPosition = (position + HEADER_SIZE) + ((long) bodyLength);
+            if (bodyLength <= 0 || bodyLength > MAX_SEGMENT_BODY_SIZE || footerPosition + FOOTER_SIZE > fileLength) {
+                Log.e(TAG, "scanSegments,truncated segment at " + position);
+                break;
+            }
+            raf.seek(footerPosition);
+            long minStartTime = raf.readLong();
+            long maxStartTime = raf.readLong();
+            raf.readInt();
+            if (raf.readInt() != FOOTER_MAGIC) {
+                Log.e(TAG, "scanSegments,bad footer magic at " + footerPosition);
+                break;
+            }
+            if (isDecode && minStartTime <= matchEndMillis && matchStartMillis <= maxStartTime) {
+                byte[] body = new byte[bodyLength];
+                raf.seek(position + HEADER_SIZE);
+                raf.readFully(body);
+                decodeBody(body, matchStartMillis, matchEndMillis);
+            }
+            position = footerPosition + FOOTER_SIZE;
+        }
+        return position;
+    }
+
+    private void decodeBody(byte[] body, long matchStartMillis, long matchEndMillis) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        while (in.available() > 0) {
+            int uid = (int) readVarLong(in);
+            String packageName = in.readUTF();
+            int entryCount = (int) readVarLong(in);
+            IOStatsHistory history = null;
+            long startTime = 0;
+            for (int index = 0; index < entryCount; index++) {
+                startTime += zigZagDecode(readVarLong(in));
+                long numberOfWrite = readVarLong(in);
+                long numberOfRead = readVarLong(in);
+                if (startTime >= matchStartMillis && startTime <= matchEndMillis) {
+                    if (history == null) {
+                        history = new IOStatsHistory(uid, packageName);
+                    }
+                    history.addEntry(startTime, numberOfRead, numberOfWrite);
+                }
+            }
+            if (history != null) {
+                this.mCollection.recordHistory(history);
+            }
+        }
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((-128 & value) != 0) {
+            out.writeByte((int) ((127 & value) | 128));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= ((long) (b & 127)) << shift;
+            if ((b & 128) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    static long zigZagEncode(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long zigZagDecode(long value) {
+        return (value >>> 1) ^ (-(1 & value));
+    }
+}
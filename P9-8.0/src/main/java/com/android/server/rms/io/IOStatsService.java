@@ -22,16 +22,12 @@ import android.util.Log;
 import android.util.SparseArray;
 import com.android.server.rms.CompactJobService;
 import com.android.server.rms.defraggler.IODefraggler;
-import com.android.server.rms.io.IOFileRotator.Rewriter;
 import com.android.server.wifipro.WifiProCommonUtils;
 import huawei.com.android.server.policy.HwGlobalActionsData;
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Hashtable;
@@ -50,6 +46,7 @@ public class IOStatsService extends Stub {
     private static final int INSTALL_TYPE_INVALID = -1;
     private static final int INSTALL_TYPE_SYSTEM_APP = 2;
     private static final int INSTALL_TYPE_THIRDPARTY_APP = 3;
+    private static final String IOS_STATS_COMPACT_FILE_PREFIX = "io_stats_compact";
     private static final String IOS_STATS_FILE_PREFIX = "io_stats";
     private static final long IO_STATS_FILE_DELETED_PERIOD = 864000000;
     private static final long IO_STATS_FILE_ROTATE_PERIOD = 86400000;
@@ -112,6 +109,7 @@ public class IOStatsService extends Stub {
     private boolean mIsServiceReady = false;
     private long mLastScreenOffTime = 0;
     private IOStatsCollection mLastSnapShotCollecton = null;
+    private IOFileRotator mLegacyRotator = null;
     private Looper mLooper = null;
     private PackageManager mPM = null;
     private BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
@@ -122,7 +120,7 @@ public class IOStatsService extends Stub {
     private List<Integer> mPendingAddUidList = new ArrayList();
     private IOStatsCollection mPendingCollection = null;
     private List<Integer> mPendingDeleteUidList = new ArrayList();
-    private CombiningRewriter mPendingRewriter = null;
+    private IOStatsRecordFile mPendingAppender = null;
     private List<Integer> mQueryTypeList = null;
     private IOFileRotator mRotator = null;
     private BroadcastReceiver mScreenOffReceiver = new BroadcastReceiver() {
@@ -145,29 +143,6 @@ public class IOStatsService extends Stub {
         }
     };
 
-    private static class CombiningRewriter implements Rewriter {
-        private final IOStatsCollection mCollection;
-
-        public CombiningRewriter(IOStatsCollection collection) {
-            this.mCollection = collection;
-        }
-
-        public void reset() {
-        }
-
-        public void read(InputStream in) throws IOException {
-            this.mCollection.read(in);
-        }
-
-        public boolean shouldWrite() {
-            return true;
-        }
-
-        public void write(OutputStream out) throws IOException {
-            this.mCollection.write(new DataOutputStream(out));
-        }
-    }
-
     private IOStatsService(Context context, Looper looper) {
         Log.i(TAG, "IOStatsService construct");
         this.mContext = context;
@@ -216,12 +191,13 @@ public class IOStatsService extends Stub {
         }
         try {
             this.mIOExceptionHandle = new IOExceptionHandle(this);
-            this.mRotator = new IOFileRotator(new File(IO_STATS_PATH), IOS_STATS_FILE_PREFIX, 86400000, IO_STATS_FILE_DELETED_PERIOD);
+            this.mRotator = new IOFileRotator(new File(IO_STATS_PATH), IOS_STATS_COMPACT_FILE_PREFIX, 86400000, IO_STATS_FILE_DELETED_PERIOD);
+            this.mLegacyRotator = new IOFileRotator(new File(IO_STATS_PATH), IOS_STATS_FILE_PREFIX, 86400000, IO_STATS_FILE_DELETED_PERIOD);
             this.mRotator.removeFilesWhenOverFlow();
             this.mDropBox = (DropBoxManager) this.mContext.getSystemService("dropbox");
             this.mPM = this.mContext.getPackageManager();
             this.mPendingCollection = new IOStatsCollection();
-            this.mPendingRewriter = new CombiningRewriter(this.mPendingCollection);
+            this.mPendingAppender = new IOStatsRecordFile(this.mPendingCollection);
             this.mCompleteCollection = new IOStatsCollection();
             this.mLastSnapShotCollecton = new IOStatsCollection();
             this.mHandler.sendEmptyMessage(3);
@@ -275,7 +251,7 @@ public class IOStatsService extends Stub {
             IOStatsCollection collection;
             if (DUMP_TYPE_FULL.equals(tag)) {
                 collection = new IOStatsCollection();
-                this.mRotator.readMatching(collection, Long.MIN_VALUE, Long.MAX_VALUE);
+                readAllFromDisk(collection);
             } else {
                 collection = this.mPendingCollection;
             }
@@ -396,7 +372,7 @@ public class IOStatsService extends Stub {
     private void loadIOStatsFromDisk() {
         try {
             Log.i(TAG, "loadIOStatsFromDisk");
-            this.mRotator.readMatching(this.mCompleteCollection, Long.MIN_VALUE, Long.MAX_VALUE);
+            readAllFromDisk(this.mCompleteCollection);
         } catch (IOException e) {
             Log.wtf(TAG, "fail to loadIOStatsFromDisk,IO Exception occurs", e);
             recoverFromWtf();
@@ -406,6 +382,11 @@ public class IOStatsService extends Stub {
         }
     }
 
+    private void readAllFromDisk(IOStatsCollection collection) throws IOException {
+        this.mLegacyRotator.readMatching(collection, Long.MIN_VALUE, Long.MAX_VALUE);
+        this.mRotator.readMatchingSegments(new IOStatsRecordFile(collection), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
     private void recoverFromWtf() {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
         try {
@@ -419,6 +400,7 @@ public class IOStatsService extends Stub {
             this.mDropBox.addData(TAG_IOSTATS_DUMP, os.toByteArray(), 0);
         }
         this.mRotator.deleteAll();
+        this.mLegacyRotator.deleteAll();
     }
 
     private void loadAllUidsMonitored() {
@@ -579,8 +561,9 @@ public class IOStatsService extends Stub {
         try {
             Log.i(TAG, "forcePersistLocked");
             IOStatsCollection clonePendingCollection = this.mPendingCollection.clone();
-            this.mRotator.rewriteActive(this.mPendingRewriter, currentTimeMillis);
+            this.mRotator.appendActive(this.mPendingAppender, currentTimeMillis);
             this.mRotator.maybeRotate(currentTimeMillis);
+            this.mLegacyRotator.maybeRotate(currentTimeMillis);
             this.mRotator.removeFilesWhenOverFlow();
             this.mCompleteCollection.addHistories(clonePendingCollection);
             this.mPendingCollection.reset();
@@ -14,6 +14,10 @@ public interface HwSecDiagnoseConstant {
     public static final String ANTIMAL_MAL_COUNT = "MalCount";
     public static final String ANTIMAL_RESERVED = "SecVer";
     public static final String ANTIMAL_ROOT_STATE = "RSTAT";
+    public static final String ANTIMAL_SCAN_APK_COUNT = "ScanCount";
+    public static final String ANTIMAL_SCAN_APK_TIME = "ScanTime";
+    public static final String ANTIMAL_SCAN_CACHE_HIT_COUNT = "CacheHit";
+    public static final String ANTIMAL_SCAN_WHITE_LIST_TIME = "WhiteListTime";
     public static final String ANTIMAL_SECURE_PATCH_VERSION = "SecVer";
     public static final String ANTIMAL_SELINUX_STATE = "SLSTAT";
     public static final String ANTIMAL_SYSTEM_CUST_STATE = "EWP";
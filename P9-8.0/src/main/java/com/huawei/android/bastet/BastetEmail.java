@@ -15,6 +15,7 @@ public class BastetEmail extends BastetManager {
         this.mLoginInfo = login;
         this.mSyncConfig = config;
         this.mProtocol = protocol;
+        this.mHandler = handler;
         try {
             this.mProxyId = this.mIBastetManager.initEmailProxy(this.mProtocol, this.mLoginInfo.getHost(), this.mLoginInfo.getPort(), this.mLoginInfo.getSecurity(), this.mLoginInfo.getInterval(), this.mLoginInfo.getAccount(), this.mLoginInfo.getPassword(), this.mIBastetListener);
         } catch (RemoteException e) {
@@ -39,18 +40,52 @@ public class BastetEmail extends BastetManager {
         Log.d(TAG, "bastetd died");
     }
 
+    /**
+     * Hands the proxy configuration to bastetd, throwing on failure as before, and starts the proxy
+     * on the phase shared by all email accounts, see BastetEmailScheduler. The proxy is therefore
+     * not running when this returns: the start happens at the next grid point, up to ALIGN_PERIOD
+     * (60 s) later. A failure of the delayed start is reported to the handler as
+     * BASTET_EMAIL_PROXY_START_FAILED with the error code.
+     */
     public void startProxy() throws Exception {
         if (this.mProxyId <= 0) {
             throw new Exception();
         }
+        prepareProxy();
+        BastetEmailScheduler.getInstance().schedule(this);
+    }
+
+    protected void prepareProxy() throws Exception {
         this.mIBastetManager.updateEmailBoxInfo(this.mProxyId, this.mSyncConfig.getFolderName(), this.mSyncConfig.getLatestUid());
-        this.mIBastetManager.startBastetProxy(this.mProxyId);
+    }
+
+    void startProxyNow() {
+        int err;
+        try {
+            err = this.mIBastetManager.startBastetProxy(this.mProxyId);
+        } catch (RemoteException e) {
+            err = -1;
+        }
+        if (err < 0) {
+            Log.e(TAG, "start proxy " + this.mProxyId + " failed: " + err);
+            sendMessage(9, err);
+        }
+    }
+
+    /** Stops a proxy whose delayed start raced with stopProxy() or clearProxy(). */
+    void stopProxyNow() {
+        try {
+            this.mIBastetManager.stopBastetProxy(this.mProxyId);
+        } catch (RemoteException e) {
+            Log.e(TAG, "stop proxy " + this.mProxyId + " failed");
+        }
     }
 
     public void stopProxy() throws Exception {
         if (this.mProxyId <= 0) {
             throw new Exception();
         }
+        BastetEmailScheduler.getInstance().cancel(this);
         this.mIBastetManager.stopBastetProxy(this.mProxyId);
     }
 
@@ -58,6 +93,7 @@ public class BastetEmail extends BastetManager {
         if (this.mProxyId <= 0) {
             throw new Exception();
         }
+        BastetEmailScheduler.getInstance().cancel(this);
         this.mIBastetManager.clearProxyById(this.mProxyId);
     }
 }
@@ -12,12 +12,8 @@ public class BastetEmailExchange extends BastetEmail {
         this.mWbInfo = wb;
     }
 
-    public void startProxy() throws Exception {
-        if (this.mProxyId <= 0) {
-            throw new Exception();
-        }
+    protected void prepareProxy() throws Exception {
         this.mIBastetManager.setExchangeHttpHeader(this.mProxyId, this.mHttpHeader.getVersion(), this.mHttpHeader.getUserAgent(), this.mHttpHeader.getEncoding(), this.mHttpHeader.getPolicyKey(), this.mHttpHeader.getHostName());
         this.mIBastetManager.updateExchangeWebXmlInfo(this.mProxyId, this.mWbInfo.getCollectionId(), this.mWbInfo.getSyncKey(), this.mWbInfo.getSyncType());
-        this.mIBastetManager.startBastetProxy(this.mProxyId);
     }
 }
@@ -10,11 +10,8 @@ public class BastetEmailImap extends BastetEmail {
         this.mIdCmd = idCmd;
     }
 
-    public void startProxy() throws Exception {
-        if (this.mProxyId <= 0) {
-            throw new Exception();
-        }
+    protected void prepareProxy() throws Exception {
         this.mIBastetManager.setImapIdCmd(this.mProxyId, this.mIdCmd);
-        super.startProxy();
+        super.prepareProxy();
     }
 }
@@ -0,0 +1,113 @@
+package com.huawei.android.bastet;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+
+/**
+ * Puts the proxy starts of all email accounts on a shared phase. bastetd runs the IDLE, poll and
+ * ping timers of a proxy from the moment it is started, so accounts started at different times
+ * wake the radio at different times. Each start is held until the next multiple of ALIGN_PERIOD on
+ * the elapsed realtime clock, the same grid in every process. bastetd derives the timer period
+ * from the interval class, which is not visible here; periods of whole minutes then fire on the
+ * same grid points, whenever the account was started.
+ *
+ * A proxy stays in mStarting while its start is on its way to bastetd. A stop or clear takes it
+ * out again, so the flush either skips the start or, if the start was already sent, stops the
+ * proxy once more after it.
+ */
+final class BastetEmailScheduler {
+    static final long ALIGN_PERIOD = 60000;
+    private static final String TAG = "BastetEmailScheduler";
+    private static BastetEmailScheduler sInstance;
+    private long mBatchCount = 0;
+    private final Runnable mFlushRunnable = new Runnable() {
+        public void run() {
+            BastetEmailScheduler.this.flush();
+        }
+    };
+    private Handler mHandler;
+    private final ArrayList<BastetEmail> mPending = new ArrayList();
+    private long mSkipCount = 0;
+    private long mStartCount = 0;
+    private final ArrayList<BastetEmail> mStarting = new ArrayList();
+
+    private BastetEmailScheduler() {
+    }
+
+    static synchronized BastetEmailScheduler getInstance() {
+        BastetEmailScheduler bastetEmailScheduler;
+        synchronized (BastetEmailScheduler.class) {
+            if (sInstance == null) {
+                sInstance = new BastetEmailScheduler();
+            }
+            bastetEmailScheduler = sInstance;
+        }
+        return bastetEmailScheduler;
+    }
+
+    /** Queues the start of the proxy for the next grid point; a proxy already queued is kept once. */
+    synchronized void schedule(BastetEmail email) {
+        if (!this.mPending.contains(email)) {
+            this.mPending.add(email);
+        }
+        if (this.mPending.size() == 1) {
+            if (this.mHandler == null) {
+                HandlerThread thread = new HandlerThread(TAG);
+                thread.start();
+                this.mHandler = new Handler(thread.getLooper());
+            }
+            this.mHandler.postDelayed(this.mFlushRunnable, ALIGN_PERIOD - (SystemClock.elapsedRealtime() % ALIGN_PERIOD));
+        }
+    }
+
+    /**
+     * Drops a queued start, so a proxy stopped or cleared before the window is not started. A start
+     * already taken by the flush is marked as stopped, see flush().
+     */
+    synchronized void cancel(BastetEmail email) {
+        this.mPending.remove(email);
+        this.mStarting.remove(email);
+        if (this.mPending.isEmpty() && this.mHandler != null) {
+            this.mHandler.removeCallbacks(this.mFlushRunnable);
+        }
+    }
+
+    private void flush() {
+        ArrayList<BastetEmail> batch;
+        synchronized (this) {
+            batch = new ArrayList(this.mPending);
+            this.mPending.clear();
+            this.mStarting.addAll(batch);
+            this.mBatchCount++;
+        }
+        int started = 0;
+        for (BastetEmail email : batch) {
+            synchronized (this) {
+                if (!this.mStarting.contains(email)) {
+                    this.mSkipCount++;
+                    continue;
+                }
+            }
+            email.startProxyNow();
+            boolean stopped;
+            synchronized (this) {
+                stopped = !this.mStarting.remove(email);
+            }
+            if (stopped) {
+                Log.d(TAG, "proxy stopped while starting, stopping it again");
+                email.stopProxyNow();
+            } else {
+                started++;
+            }
+        }
+        String stats;
+        synchronized (this) {
+            this.mStartCount += (long) started;
+            stats = "started " + started + " of " + batch.size() + " proxies, total " + this.mStartCount + " at " + this.mBatchCount + " grid points, skipped " + this.mSkipCount;
+        }
+        Log.d(TAG, stats);
+    }
+}
@@ -5,6 +5,7 @@ public final class BastetParameters {
     public static final int BACKGROUND_UID = 1;
     public static final int BASTET_CONNECTION_CLOSED = 2;
     public static final int BASTET_CONNECTION_ESTABLISHED = 1;
+    public static final int BASTET_EMAIL_PROXY_START_FAILED = 9;
     public static final int BASTET_HAS_NEW_EMAIL = 6;
     public static final int BASTET_HB_NOT_AVAILABLE = 5;
     public static final int BASTET_HEARTBEAT_CYCLE = 4;
@@ -12,6 +12,7 @@ import android.util.Log;
 import com.huawei.android.hwaps.FpsRequest.SceneTypeE;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 public class EventAnalyzed implements IEventAnalyzed {
     public static final int ACTION_CANCEL = 3;
@@ -46,6 +47,7 @@ public class EventAnalyzed implements IEventAnalyzed {
     public static final int DEFAULT_SHORT_DALTA = 15;
     public static final int DEFAULT_STUDY_BATTERY = 60;
     private static final int DEFAULT_TARGETFPS = -1;
+    private static final int FRAME_RATE_SAMPLE_INTERVAL = 1000;
     private static final int FULL_SCREEN_REGION_COUNT = 4;
     public static final int HIGH_POWER_MODE = 0;
     public static final int KEYCODE_VOLUME_DOWN = 25;
@@ -128,6 +130,7 @@ public class EventAnalyzed implements IEventAnalyzed {
     private FpsRequest mExactlyFpsRequest;
     private boolean mFirstTimeResumeFps = true;
     private FpsRequest mFpsRequest;
+    private final FrameHistogram mFrameHistogram = FrameHistogram.getInstance();
     private GameState mGameState;
     private int mGameType = 0;
     private Handler mHandler = null;
@@ -138,12 +141,6 @@ public class EventAnalyzed implements IEventAnalyzed {
     private boolean mHasReleaseAPS = false;
     private boolean mHasSetFPS = false;
     private boolean mHasSetPid = false;
-    private HashMap<String, Integer> mHashCtrlBattery = new HashMap();
-    private HashMap<String, Integer> mHashFixdFps = new HashMap();
-    private HashMap<String, Float> mHashFixdRatio = new HashMap();
-    private HashMap<String, Boolean> mHashSceneFixed = new HashMap();
-    private HashMap<String, ArrayList<Integer>> mHashSceneFps = new HashMap();
-    private HashMap<String, ArrayList<Float>> mHashSceneRatio = new HashMap();
     private HwapsFactoryImpl mHwapsFactoryImpl = null;
     private Intent mIntent = null;
     private boolean mIsAllScroll = false;
@@ -179,10 +176,12 @@ public class EventAnalyzed implements IEventAnalyzed {
     private OperateExperienceLib mOperateExLib;
     private boolean mPerformanceDebug = false;
     private String mPkgName;
+    private volatile SceneParams mPkgSceneParams = null;
     private FpsRequest mPowerKitFpsRequest = null;
     private ResumeFpsByTouch mResumeFpsByTouch = null;
     private ResumePowerKit mResumePowerKit = null;
     private int[] mSceenRegion = new int[9];
+    private final Map<String, SceneParams> mSceneParams = new HashMap();
     private int mScreenHeightRegion = 0;
     private int mScreenOrientation = -2;
     private int mScreenWidth = 0;
@@ -210,6 +209,32 @@ public class EventAnalyzed implements IEventAnalyzed {
     private float mYdpi = 0.0f;
     private boolean mhasFirstSetFPS = false;
 
+    private static final class SceneParams {
+        final int ctrlBattery;
+        final int fixedFps;
+        final float fixedRatio;
+        final boolean sceneFixed;
+        final int[] sceneFps;
+        final float[] sceneRatio;
+
+        SceneParams(int[] sceneFps, float[] sceneRatio, int ctrlBattery, int fixedFps, float fixedRatio, boolean sceneFixed) {
+            this.sceneFps = sceneFps;
+            this.sceneRatio = sceneRatio;
+            this.ctrlBattery = ctrlBattery;
+            this.fixedFps = fixedFps;
+            this.fixedRatio = fixedRatio;
+            this.sceneFixed = sceneFixed;
+        }
+
+        int getSceneFps(int index, int defaultFps) {
+            return index < this.sceneFps.length ? this.sceneFps[index] : defaultFps;
+        }
+
+        float getSceneRatio(int index, float defaultRatio) {
+            return index < this.sceneRatio.length ? this.sceneRatio[index] : defaultRatio;
+        }
+    }
+
     private class QueryThread extends Thread {
         /* synthetic */ QueryThread(EventAnalyzed this$0, QueryThread -this1) {
             this();
@@ -340,8 +365,14 @@ public class EventAnalyzed implements IEventAnalyzed {
         }
 
         public void run() {
-            if (EventAnalyzed.this.mStatisFpsCount <= 50) {
+            if (EventAnalyzed.this.mStatisFpsCount > 50) {
+                if (!EventAnalyzed.this.mHasOnPaused) {
+                    EventAnalyzed.this.mFrameHistogram.onFrameRateSampled(EventAnalyzed.this.getCurrentFPS(), FRAME_RATE_SAMPLE_INTERVAL);
+                    EventAnalyzed.this.mHandler.postDelayed(EventAnalyzed.this.mStatisFps, (long) FRAME_RATE_SAMPLE_INTERVAL);
+                }
+            } else {
                 int currentFps = EventAnalyzed.this.getCurrentFPS();
+                EventAnalyzed.this.mFrameHistogram.onFrameRateSampled(currentFps, 300);
                 if (currentFps == 0) {
                     EventAnalyzed.this.mIsLowFps = true;
                 }
@@ -609,9 +640,10 @@ public class EventAnalyzed implements IEventAnalyzed {
 
     private void queryByName(String name) {
         if (this.mOperateExLib != null && this.mOperateExLib.queryByName(name)) {
-            ArrayList<Integer> sceneFps = (ArrayList) this.mOperateExLib.getSceneFps().clone();
-            ArrayList<Float> sceneRatio = (ArrayList) this.mOperateExLib.getSceneRatio().clone();
-            if (sceneFps != null && sceneRatio != null) {
+            ArrayList sceneFpsList = this.mOperateExLib.getSceneFps();
+            ArrayList sceneRatioList = this.mOperateExLib.getSceneRatio();
+            if (sceneFpsList != null && sceneRatioList != null) {
+                int i;
                 int fixedFps = this.mOperateExLib.getMinFps();
                 float fixedRatio = this.mOperateExLib.getMinSdrRatio();
                 int ctrlBattery = this.mOperateExLib.getCtrlBattery();
@@ -620,25 +652,28 @@ public class EventAnalyzed implements IEventAnalyzed {
                 } else {
                     this.mIsSceneFixed = true;
                 }
-                this.mHashSceneFps.put(name, sceneFps);
-                this.mHashSceneRatio.put(name, sceneRatio);
-                this.mHashCtrlBattery.put(name, Integer.valueOf(ctrlBattery));
-                this.mHashFixdFps.put(name, Integer.valueOf(fixedFps));
-                this.mHashFixdRatio.put(name, Float.valueOf(fixedRatio));
-                this.mHashSceneFixed.put(name, Boolean.valueOf(this.mIsSceneFixed));
-                int i = 0;
-                while (i < sceneFps.size()) {
-                    if (!(this.mGameState == null || sceneFps.get(i) == null)) {
-                        this.mGameState.setSceneFps(name, i + 1, ((Integer) sceneFps.get(i)).intValue());
+                int[] sceneFps = new int[sceneFpsList.size()];
+                for (i = 0; i < sceneFps.length; i++) {
+                    Integer fps = (Integer) sceneFpsList.get(i);
+                    sceneFps[i] = fps != null ? fps.intValue() : 0;
+                    if (!(this.mGameState == null || fps == null)) {
+                        this.mGameState.setSceneFps(name, i + 1, sceneFps[i]);
                     }
-                    i++;
                 }
-                i = 0;
-                while (i < sceneRatio.size()) {
-                    if (!(this.mGameState == null || sceneRatio.get(i) == null)) {
-                        this.mGameState.setSceneRatio(name, i + 1, (double) ((Float) sceneRatio.get(i)).floatValue());
+                float[] sceneRatio = new float[sceneRatioList.size()];
+                for (i = 0; i < sceneRatio.length; i++) {
+                    Float ratio = (Float) sceneRatioList.get(i);
+                    sceneRatio[i] = ratio != null ? ratio.floatValue() : 0.0f;
+                    if (!(this.mGameState == null || ratio == null)) {
+                        this.mGameState.setSceneRatio(name, i + 1, (double) sceneRatio[i]);
                     }
-                    i++;
+                }
+                SceneParams params = new SceneParams(sceneFps, sceneRatio, ctrlBattery, fixedFps, fixedRatio, this.mIsSceneFixed);
+                synchronized (this.mSceneParams) {
+                    this.mSceneParams.put(name, params);
+                }
+                if (name != null && name.equals(this.mPkgName)) {
+                    this.mPkgSceneParams = params;
                 }
                 if (this.mGameState != null) {
                     this.mGameState.setCtrlBattery(name, ctrlBattery);
@@ -648,6 +683,28 @@ public class EventAnalyzed implements IEventAnalyzed {
         }
     }
 
+    private SceneParams getSceneParams(String name) {
+        SceneParams params;
+        synchronized (this.mSceneParams) {
+            params = (SceneParams) this.mSceneParams.get(name);
+        }
+        return params;
+    }
+
+    private int getPkgSceneFps(int index, int defaultFps) {
+        SceneParams params = this.mPkgSceneParams;
+        return params != null ? params.getSceneFps(index, defaultFps) : defaultFps;
+    }
+
+    private float getPkgSdrRatio() {
+        SceneParams params = this.mPkgSceneParams;
+        float ratio = this.mDesignatedSdrRatio;
+        if (this.mIsSceneFixed || params == null) {
+            return ratio;
+        }
+        return this.mSdrController.getPacedSdrRatio(params.getSceneRatio(0, ratio), this.mFrameHistogram.getScene());
+    }
+
     private int getFpsByGameType(int gameTypeId) {
         String name = mIdentifyGameType[gameTypeId];
         if (getCurrentBattery() > getCtrlBattery(name)) {
@@ -671,22 +728,28 @@ public class EventAnalyzed implements IEventAnalyzed {
     }
 
     private int getSceneFps(String name) {
-        if (this.mHashSceneFps.containsKey(name)) {
-            return ((Integer) ((ArrayList) this.mHashSceneFps.get(name)).get(0)).intValue();
+        SceneParams params = getSceneParams(name);
+        if (params != null) {
+            return params.getSceneFps(0, 0);
         }
         return 0;
     }
 
     private float getSceneRatio(String name) {
-        if (this.mHashSceneRatio.containsKey(name)) {
-            return ((Float) ((ArrayList) this.mHashSceneRatio.get(name)).get(0)).floatValue();
+        SceneParams params = getSceneParams(name);
+        if (params != null) {
+            return params.getSceneRatio(0, 0.0f);
         }
         return 0.0f;
     }
 
     private int getCtrlBattery(String name) {
-        if (this.mHashCtrlBattery.containsKey(name)) {
-            return ((Integer) this.mHashCtrlBattery.get(name)).intValue();
+        SceneParams params = this.mPkgSceneParams;
+        if (params == null || !name.equals(this.mPkgName)) {
+            params = getSceneParams(name);
+        }
+        if (params != null) {
+            return params.ctrlBattery;
         }
         if (!name.equals("LR_LDF_GAME") && !name.equals("PLR_LTR_GAME") && !name.equals("NOT_DRAW_WITHOUT_DRAG") && !name.equals("RUN_GAME")) {
             return this.mBatteryLimitValue;
@@ -695,22 +758,25 @@ public class EventAnalyzed implements IEventAnalyzed {
     }
 
     private boolean isSceneFixed(String name) {
-        if (this.mHashSceneFixed.containsKey(name)) {
-            return ((Boolean) this.mHashSceneFixed.get(name)).booleanValue();
+        SceneParams params = getSceneParams(name);
+        if (params != null) {
+            return params.sceneFixed;
         }
         return false;
     }
 
     private int getFixdFps(String name) {
-        if (this.mHashFixdFps.containsKey(name)) {
-            return ((Integer) this.mHashFixdFps.get(name)).intValue();
+        SceneParams params = getSceneParams(name);
+        if (params != null) {
+            return params.fixedFps;
         }
         return 0;
     }
 
     private float getFixdRatio(String name) {
-        if (this.mHashFixdRatio.containsKey(name)) {
-            return ((Float) this.mHashFixdRatio.get(name)).floatValue();
+        SceneParams params = getSceneParams(name);
+        if (params != null) {
+            return params.fixedRatio;
         }
         return 0.0f;
     }
@@ -977,11 +1043,12 @@ public class EventAnalyzed implements IEventAnalyzed {
             int fps = 60;
             if (CUST_GAME_TYPE == this.mGameType || CUST_APP_TYPE == this.mGameType) {
                 if (getCurrentBattery() <= getCtrlBattery(this.mPkgName)) {
-                    fps = this.mIsSceneFixed ? this.mDesignatedFps : ((Integer) ((ArrayList) this.mHashSceneFps.get(this.mPkgName)).get(0)).intValue();
+                    fps = this.mIsSceneFixed ? this.mDesignatedFps : getPkgSceneFps(0, fps);
                 }
             } else if (getCurrentBattery() <= getCtrlBattery(mIdentifyGameType[gameType])) {
                 fps = this.mMaxFps;
             }
+            this.mFrameHistogram.setScene(FrameHistogram.sceneIndex(gameType), fps);
             setFPS(fps, gameType);
             this.mhasFirstSetFPS = true;
             ApsCommon.logD(TAG, "first enter  setFPS : " + fps);
@@ -1016,8 +1083,12 @@ public class EventAnalyzed implements IEventAnalyzed {
                     this.mOperateExLib.saveAPSResult(gameType, recommendFPS, this.mMinFps);
                 }
                 if (getCurrentBattery() <= getCtrlBattery(mIdentifyGameType[gameType])) {
+                    int scene = FrameHistogram.sceneIndex(gameType);
+                    int pacedFPS = FpsController.getPacedFps(recommendFPS, this.mMinFps, this.mMaxFps, scene);
+                    ApsCommon.logD(TAG, "recommendFPS : " + recommendFPS + ", pacedFPS : " + pacedFPS + ", " + this.mFrameHistogram.dump(scene));
+                    this.mFrameHistogram.setScene(scene, pacedFPS);
                     this.mHasSetFPS = true;
-                    setFPS(recommendFPS, gameType);
+                    setFPS(pacedFPS, gameType);
                     Log.d(TAG, "APS: action type is " + gameType + ", display type is " + openGLType);
                 }
             }
@@ -1151,11 +1222,7 @@ public class EventAnalyzed implements IEventAnalyzed {
         this.mSlowScrollCount = 0;
         ApsCommon.logD(TAG, "resetAnalyzePara");
         if (!this.mCanUseDebug && CUST_GAME_TYPE == this.mGameType && getCurrentBattery() <= getCtrlBattery(this.mPkgName) && this.mSdrController != null && this.mSdrController.IsSdrCase()) {
-            if (this.mIsSceneFixed) {
-                this.mSdrController.setSdrRatio(this.mDesignatedSdrRatio);
-            } else {
-                this.mSdrController.setSdrRatio(((Float) ((ArrayList) this.mHashSceneRatio.get(this.mPkgName)).get(0)).floatValue());
-            }
+            this.mSdrController.setSdrRatio(getPkgSdrRatio());
             this.mSdrController.startSdr();
         }
         if (this.mIsLowFpsGame) {
@@ -1284,6 +1351,10 @@ public class EventAnalyzed implements IEventAnalyzed {
                 if (this.mHasOnPaused) {
                     resetAnalyzePara();
                     this.mHasOnPaused = false;
+                    if (this.mStatisFpsCount > 50) {
+                        this.mHandler.removeCallbacks(this.mStatisFps);
+                        this.mHandler.postDelayed(this.mStatisFps, (long) FRAME_RATE_SAMPLE_INTERVAL);
+                    }
                     if (this.mApsThermal != null) {
                         this.mApsThermal.resume();
                     }
@@ -1301,11 +1372,7 @@ public class EventAnalyzed implements IEventAnalyzed {
                 if (CUST_GAME_TYPE == this.mGameType) {
                     if (getCurrentBattery() <= getCtrlBattery(this.mPkgName)) {
                         if (!this.mCanUseDebug && this.mSdrController != null && this.mSdrController.IsSdrCase() && action == 0) {
-                            if (this.mIsSceneFixed) {
-                                this.mSdrController.setSdrRatio(this.mDesignatedSdrRatio);
-                            } else {
-                                this.mSdrController.setSdrRatio(((Float) ((ArrayList) this.mHashSceneRatio.get(this.mPkgName)).get(0)).floatValue());
-                            }
+                            this.mSdrController.setSdrRatio(getPkgSdrRatio());
                             this.mSdrController.startSdr();
                         }
                         return;
@@ -1465,7 +1532,7 @@ public class EventAnalyzed implements IEventAnalyzed {
                 if (this.mIsSceneFixed) {
                     fps = this.mDesignatedFps;
                 } else {
-                    fps = ((Integer) ((ArrayList) this.mHashSceneFps.get(this.mPkgName)).get(2)).intValue();
+                    fps = getPkgSceneFps(2, fps);
                     if (fps == 60) {
                         fps = 55;
                     }
@@ -1574,17 +1641,14 @@ public class EventAnalyzed implements IEventAnalyzed {
             return;
         }
         if (!this.mCanUseDebug && CUST_GAME_TYPE == this.mGameType && getCurrentBattery() <= getCtrlBattery(this.mPkgName) && this.mSdrController.IsSdrCase()) {
-            if (this.mIsSceneFixed) {
-                this.mSdrController.setSdrRatio(this.mDesignatedSdrRatio);
-            } else {
-                this.mSdrController.setSdrRatio(((Float) ((ArrayList) this.mHashSceneRatio.get(this.mPkgName)).get(0)).floatValue());
-            }
+            this.mSdrController.setSdrRatio(getPkgSdrRatio());
             this.mSdrController.startSdr();
         } else if (CUST_APP_TYPE != this.mGameType || getCurrentBattery() > getCtrlBattery(this.mPkgName)) {
             if (gameType == 7 && openGLType == 10) {
                 gameType = 10;
             }
             if ((gameType == 10 || gameType == 8 || gameType == 9) && this.mIsAnalyzedEnable && !this.mCanUseDebug && this.mAverageFps >= 10 && (this.mIsLowFps ^ 1) != 0 && this.mStatisFpsCount >= 50) {
+                this.mSdrRatio = this.mSdrController.getPacedSdrRatio(1.0f, FrameHistogram.sceneIndex(gameType));
                 this.mHandler.removeCallbacks(this.mStartSdr);
                 this.mHandler.postDelayed(this.mStartSdr, 2000);
             }
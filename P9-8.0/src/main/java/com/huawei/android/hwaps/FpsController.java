@@ -4,10 +4,15 @@ import android.app.HwApsInterface;
 import android.util.Log;
 
 public class FpsController implements IFpsController {
+    private static final int MIN_PACING_SAMPLES = 120;
+    private static final int PACING_FPS_STEP = 5;
+    private static final int PACING_JANK_PERCENT = 10;
     private static final String TAG = "Hwaps";
+    private final FrameHistogram mFrameHistogram = FrameHistogram.getInstance();
     private long mNativeObject = HwApsInterface.nativeInitFpsController();
 
     public void powerCtroll() {
+        this.mFrameHistogram.onFramePosted(System.nanoTime());
         HwApsInterface.nativePowerCtroll(this.mNativeObject);
     }
 
@@ -15,6 +20,26 @@ public class FpsController implements IFpsController {
         Log.d(TAG, "FpsController create");
     }
 
+    public static int getPacedFps(int fps, int minFps, int maxFps, int scene) {
+        FrameHistogram histogram = FrameHistogram.getInstance();
+        int samples = histogram.getSampleCount(scene);
+        if (fps <= 0 || samples < MIN_PACING_SAMPLES) {
+            return fps;
+        }
+        if (histogram.getJankCount(scene) * 100 > samples * PACING_JANK_PERCENT) {
+            return Math.min(fps + PACING_FPS_STEP, Math.max(fps, maxFps));
+        }
+        int p50 = histogram.getPercentileMillis(scene, 50);
+        if (p50 <= 0) {
+            return fps;
+        }
+        int sustainedFps = (1000 / p50) + PACING_FPS_STEP;
+        if (sustainedFps >= fps) {
+            return fps;
+        }
+        return Math.max(sustainedFps, Math.min(fps, minFps));
+    }
+
     protected void finalize() throws Throwable {
         try {
             HwApsInterface.nativeFpsControllerRelease(this.mNativeObject);
@@ -0,0 +1,159 @@
+package com.huawei.android.hwaps;
+
+import java.lang.reflect.Array;
+
+/**
+ * Streaming frame-interval histogram kept per scene. Scenes are the identified game types,
+ * with one extra slot for every other type. Buckets are one millisecond wide and the last
+ * bucket collects every longer interval. Counters are halved once a scene reaches MAX_SAMPLES,
+ * so the distribution follows the recent frame pacing without ever allocating.
+ *
+ * Canvas frames posted through a SurfaceView are recorded one by one. GL frames never pass
+ * through Java, so for them the frame rate measured by the native layer is recorded instead,
+ * as that many frames of the mean interval over the sampling window.
+ */
+public final class FrameHistogram {
+    private static final int BUCKET_COUNT = 64;
+    private static final long DEFAULT_TARGET_INTERVAL_NANOS = 16666666;
+    private static final long IDLE_INTERVAL_NANOS = 250000000;
+    private static final int MAX_SAMPLES = 1024;
+    private static final long NANOS_PER_MILLI = 1000000;
+    private static final long NANOS_PER_SECOND = 1000000000;
+    private static final int OTHER_SCENE = 12;
+    public static final int SCENE_COUNT = 13;
+    private static FrameHistogram sInstance = null;
+    private final int[][] mBuckets = ((int[][]) Array.newInstance(Integer.TYPE, new int[]{SCENE_COUNT, BUCKET_COUNT}));
+    private int mFramesSinceRateSample = 0;
+    private final int[] mJankCounts = new int[SCENE_COUNT];
+    private long mLastFrameNanos = 0;
+    private final int[] mSampleCounts = new int[SCENE_COUNT];
+    private int mScene = 0;
+    private long mTargetIntervalNanos = DEFAULT_TARGET_INTERVAL_NANOS;
+
+    public static FrameHistogram getInstance() {
+        FrameHistogram frameHistogram;
+        synchronized (FrameHistogram.class) {
+            if (sInstance == null) {
+                sInstance = new FrameHistogram();
+            }
+            frameHistogram = sInstance;
+        }
+        return frameHistogram;
+    }
+
+    public static int sceneIndex(int gameType) {
+        if (gameType < 0 || gameType >= OTHER_SCENE) {
+            return OTHER_SCENE;
+        }
+        return gameType;
+    }
+
+    public synchronized void setScene(int scene, int targetFps) {
+        this.mScene = scene;
+        this.mTargetIntervalNanos = targetFps > 0 ? NANOS_PER_SECOND / ((long) targetFps) : DEFAULT_TARGET_INTERVAL_NANOS;
+        this.mLastFrameNanos = 0;
+    }
+
+    public synchronized int getScene() {
+        return this.mScene;
+    }
+
+    public synchronized void onFramePosted(long nowNanos) {
+        long lastFrameNanos = this.mLastFrameNanos;
+        this.mLastFrameNanos = nowNanos;
+        this.mFramesSinceRateSample++;
+        if (lastFrameNanos != 0) {
+            long interval = nowNanos - lastFrameNanos;
+            if (interval > 0 && interval <= IDLE_INTERVAL_NANOS) {
+                record(interval, 1);
+            }
+        }
+    }
+
+    /**
+     * Records the frame rate the native layer measured over the last windowMillis. Ignored when
+     * frames were posted through onFramePosted() in the meantime, since those are already
+     * counted one by one.
+     */
+    public synchronized void onFrameRateSampled(int fps, int windowMillis) {
+        int postedFrames = this.mFramesSinceRateSample;
+        this.mFramesSinceRateSample = 0;
+        if (postedFrames > 0 || fps <= 0 || windowMillis <= 0) {
+            return;
+        }
+        int frames = (fps * windowMillis) / 1000;
+        if (frames > 0) {
+            record(NANOS_PER_SECOND / ((long) fps), Math.min(frames, MAX_SAMPLES));
+        }
+    }
+
+    private void record(long interval, int frames) {
+        int scene = this.mScene;
+        while (this.mSampleCounts[scene] > 0 && this.mSampleCounts[scene] + frames > MAX_SAMPLES) {
+            decay(scene);
+        }
+        int bucket = (int) (interval / NANOS_PER_MILLI);
+        if (bucket >= BUCKET_COUNT) {
+            bucket = BUCKET_COUNT - 1;
+        }
+        int[] iArr = this.mBuckets[scene];
+        iArr[bucket] = iArr[bucket] + frames;
+        int[] iArr2 = this.mSampleCounts;
+        iArr2[scene] = iArr2[scene] + frames;
+        if (interval * 2 > this.mTargetIntervalNanos * 3) {
+            int[] iArr3 = this.mJankCounts;
+            iArr3[scene] = iArr3[scene] + frames;
+        }
+    }
+
+    public synchronized int getSampleCount(int scene) {
+        return this.mSampleCounts[scene];
+    }
+
+    public synchronized int getJankCount(int scene) {
+        return this.mJankCounts[scene];
+    }
+
+    /** Returns the upper bound in milliseconds of the bucket holding the percentile, or -1. */
+    public synchronized int getPercentileMillis(int scene, int percent) {
+        int total = this.mSampleCounts[scene];
+        if (total == 0) {
+            return -1;
+        }
+        int rank = ((total * percent) + 99) / 100;
+        int[] buckets = this.mBuckets[scene];
+        int count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets[i];
+            if (count >= rank) {
+                return i + 1;
+            }
+        }
+        return BUCKET_COUNT;
+    }
+
+    public synchronized void reset(int scene) {
+        int[] buckets = this.mBuckets[scene];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = 0;
+        }
+        this.mSampleCounts[scene] = 0;
+        this.mJankCounts[scene] = 0;
+    }
+
+    private void decay(int scene) {
+        int[] buckets = this.mBuckets[scene];
+        int total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = buckets[i] >> 1;
+            total += buckets[i];
+        }
+        this.mSampleCounts[scene] = total;
+        int[] iArr = this.mJankCounts;
+        iArr[scene] = iArr[scene] >> 1;
+    }
+
+    public synchronized String dump(int scene) {
+        return "scene:" + scene + ", samples:" + this.mSampleCounts[scene] + ", jank:" + this.mJankCounts[scene] + ", p50:" + getPercentileMillis(scene, 50) + "ms, p95:" + getPercentileMillis(scene, 95) + "ms";
+    }
+}
@@ -9,6 +9,10 @@ public class SdrController {
     public static final int KEYCODE_HOME = 3;
     public static final int KEYCODE_MENU = 82;
     public static final int KEYCODE_POWER = 26;
+    private static final int MIN_PACING_SAMPLES = 120;
+    private static final float MIN_PACED_SDR_RATIO = 0.5f;
+    private static final int PACING_JANK_PERCENT = 10;
+    private static final float SDR_RATIO_STEP = 0.1f;
     private static final String TAG = "SdrController";
     private static boolean mIsModuleTurnOn;
     private static SdrController sInstance = null;
@@ -63,6 +67,15 @@ public class SdrController {
         ApsCommon.logD(TAG, "SDR: control: setSdrRatio  : " + this.mRatio);
     }
 
+    public float getPacedSdrRatio(float ratio, int scene) {
+        FrameHistogram histogram = FrameHistogram.getInstance();
+        int samples = histogram.getSampleCount(scene);
+        if (samples < MIN_PACING_SAMPLES || ratio <= MIN_PACED_SDR_RATIO || histogram.getJankCount(scene) * 100 <= samples * PACING_JANK_PERCENT) {
+            return ratio;
+        }
+        return Math.max(MIN_PACED_SDR_RATIO, ratio - SDR_RATIO_STEP);
+    }
+
     public float getCurrentSdrRatio() {
         return HwApsInterface.nativeGetCurrentSdrRatio();
     }
@@ -7,9 +7,11 @@ import android.graphics.ColorSpace;
 import android.graphics.ColorSpace.Named;
 import android.graphics.Point;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.os.PersistableBundle;
 import android.os.RemoteException;
 import android.util.Size;
+import com.huawei.displayengine.ImageTileScheduler.TileProcessor;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -25,6 +27,7 @@ class ImageProcessor {
     private static final String CMD_DESTROY_TILE_PROCESS_ENGINE = "destroyTileProcessEngine";
     private static final String CMD_GET_SUPPORT_CMD = "getSupportCmd";
     private static final String CMD_GET_WIDE_COLOR_GAMUT_SUPPORTED = "getWideColorGamutSupported";
+    private static final String CMD_PROCESS_IMAGE_TILES = "processImageTiles";
     private static final String CMD_PROCESS_THUMBNAIL = "processThumbnail";
     private static final String CMD_PROCESS_TILE = "processTile";
     private static final int COMMON_INFO_CACHE_MAX_SIZE = 20;
@@ -39,6 +42,7 @@ class ImageProcessor {
     private int mHardwareSharpnessLevel = -1;
     private final IDisplayEngineServiceEx mService;
     private Map<Long, ImageEngine> mTileProcessEngineCache;
+    private final ImageTileScheduler mTileScheduler;
 
     public enum AlgoType {
         ACE(1),
@@ -257,6 +261,13 @@ class ImageProcessor {
             this.mTileSize = ((Integer) param.get(PARAM_TILE_SIZE)).intValue();
             this.mTileBorder = ((Integer) param.get(PARAM_TILE_BORDER)).intValue();
         }
+
+        public CreateTileProcessEngineParam(TileEngineType engineType, int tileSize, int tileBorder) {
+            this.mEngineType = engineType;
+            this.mTileSize = tileSize;
+            this.mTileBorder = tileBorder;
+            this.mAlgos = ImageProcessor.mAlgoStrategy.getTileEngineAlgos(engineType);
+        }
     }
 
     private static class DestroyTileProcessEngineParam {
@@ -283,6 +294,54 @@ class ImageProcessor {
         }
     }
 
+    public static class ImageTilesParam extends ColorspaceParam {
+        private static final String PARAM_FILE_PATH = "filePath";
+        private static final String PARAM_SKIN_BEAUTY = "skinBeauty";
+        private static final String PARAM_TILE_BORDER = "tileBorder";
+        private static final String PARAM_TILE_SIZE = "tileSize";
+        private static final String PARAM_VIEWPORT = "viewport";
+        public String mFilePath;
+        public ImageType mImageType = ImageType.NORMAL;
+        public boolean mSkinBeauty;
+        public int mTileBorder;
+        public int mTileSize;
+        public Rect mViewport;
+
+        public ImageTilesParam(Map<String, Object> param) {
+            super(param);
+            this.mFilePath = (String) param.get(PARAM_FILE_PATH);
+            this.mTileSize = ((Integer) param.get(PARAM_TILE_SIZE)).intValue();
+            this.mTileBorder = ((Integer) param.get(PARAM_TILE_BORDER)).intValue();
+            this.mViewport = (Rect) param.get(PARAM_VIEWPORT);
+            if (param.containsKey(PARAM_SKIN_BEAUTY)) {
+                this.mSkinBeauty = ((Boolean) param.get(PARAM_SKIN_BEAUTY)).booleanValue();
+            }
+            if (this.mSkinBeauty) {
+                this.mImageType = ImageType.SKIN_BEAUTY;
+            } else if (this.mInColorspace != ColorspaceType.SRGB) {
+                this.mImageType = ImageType.WIDE_COLOR_SPACE;
+            }
+            if (isParamInvalid()) {
+                throw new IllegalArgumentException("processImageTiles input param invalid");
+            }
+        }
+
+        private boolean isParamInvalid() {
+            if (this.mFilePath == null || this.mFilePath.isEmpty()) {
+                DElog.e(ImageProcessor.TAG, "isParamInvalid() error! mFilePath is empty");
+                return true;
+            } else if (this.mTileSize <= 0 || this.mTileBorder < 0) {
+                DElog.e(ImageProcessor.TAG, "isParamInvalid() error! mTileSize=" + this.mTileSize + ", mTileBorder=" + this.mTileBorder);
+                return true;
+            } else if (this.mInBitmap.getWidth() == this.mOutBitmap.getWidth() && this.mInBitmap.getHeight() == this.mOutBitmap.getHeight()) {
+                return false;
+            } else {
+                DElog.e(ImageProcessor.TAG, "isParamInvalid() error! in and out bitmap size differ");
+                return true;
+            }
+        }
+    }
+
     public enum ImageType {
         NORMAL,
         WIDE_COLOR_SPACE,
@@ -423,6 +482,17 @@ class ImageProcessor {
             }
         }
 
+        public TileParam(ImageTilesParam tilesParam, Bitmap inBitmap, Bitmap outBitmap, Point decodedStartPoint, Size decodedSize, long algoHandle) {
+            super(inBitmap, outBitmap, tilesParam.mInColorspace, tilesParam.mOutColorspace);
+            this.mEngineType = TileEngineType.NON_SR;
+            this.mAlgoHandle = algoHandle;
+            this.mFilePath = tilesParam.mFilePath;
+            this.mDecodedStartPoint = decodedStartPoint;
+            this.mDecodedSize = decodedSize;
+            this.mSkinBeauty = tilesParam.mSkinBeauty;
+            this.mImageType = tilesParam.mImageType;
+        }
+
         private boolean isParamInvalid() {
             if (this.mEngineType == null) {
                 DElog.e(ImageProcessor.TAG, "isParamInvalid() error! mEngineType is null");
@@ -461,7 +531,7 @@ class ImageProcessor {
         if (command == null) {
             return false;
         }
-        if (command.equals(CMD_GET_SUPPORT_CMD) || command.equals(CMD_GET_WIDE_COLOR_GAMUT_SUPPORTED) || command.equals(CMD_PROCESS_THUMBNAIL) || command.equals(CMD_CREATE_TILE_PROCESS_ENGINE) || command.equals(CMD_PROCESS_TILE) || command.equals(CMD_DESTROY_TILE_PROCESS_ENGINE)) {
+        if (command.equals(CMD_GET_SUPPORT_CMD) || command.equals(CMD_GET_WIDE_COLOR_GAMUT_SUPPORTED) || command.equals(CMD_PROCESS_THUMBNAIL) || command.equals(CMD_CREATE_TILE_PROCESS_ENGINE) || command.equals(CMD_PROCESS_TILE) || command.equals(CMD_DESTROY_TILE_PROCESS_ENGINE) || command.equals(CMD_PROCESS_IMAGE_TILES)) {
             return true;
         }
         return false;
@@ -492,12 +562,18 @@ class ImageProcessor {
             }
         });
         this.mTileProcessEngineCache = Collections.synchronizedMap(new HashMap());
+        this.mTileScheduler = new ImageTileScheduler(this.mAlgo, new TileProcessor() {
+            public void processTile(TileParam tileParam, ImageEngine imageEngine, CommonInfo commonInfo) {
+                ImageProcessor.this.processTileInWorker(tileParam, imageEngine, commonInfo);
+            }
+        });
         DElog.i(TAG, "ImageProcessor exit");
     }
 
     protected void finalize() throws Throwable {
         DElog.i(TAG, "finalize");
         try {
+            this.mTileScheduler.release();
             clearCommonInfo();
             clearImageEngine();
         } finally {
@@ -528,6 +604,8 @@ class ImageProcessor {
                     processTile((Map) param);
                 } else if (command.equals(CMD_DESTROY_TILE_PROCESS_ENGINE)) {
                     destroyTileProcessEngine(param);
+                } else if (command.equals(CMD_PROCESS_IMAGE_TILES)) {
+                    processImageTiles((Map) param);
                 } else {
                     DElog.e(TAG, "imageProcess() error! undefine command=" + command);
                 }
@@ -545,6 +623,7 @@ class ImageProcessor {
             supportedCmd.add(CMD_CREATE_TILE_PROCESS_ENGINE);
             supportedCmd.add(CMD_PROCESS_TILE);
             supportedCmd.add(CMD_DESTROY_TILE_PROCESS_ENGINE);
+            supportedCmd.add(CMD_PROCESS_IMAGE_TILES);
         } else {
             supportedCmd.add(CMD_GET_SUPPORT_CMD);
         }
@@ -800,6 +879,61 @@ class ImageProcessor {
         collectInfoForImageRecognization(tileParam, commonInfo);
     }
 
+    private void processImageTiles(Map<String, Object> param) {
+        DElog.d(TAG, "processImageTiles()");
+        if (mAlgoStrategy.isImageProcessorEnable()) {
+            ImageTilesParam tilesParam = new ImageTilesParam(param);
+            BitmapConfigTransformer transformer = BitmapConfigTransformer.create(tilesParam);
+            if (transformer != null) {
+                transformer.doPreTransform();
+            }
+            processImageTiles(tilesParam);
+            if (transformer != null) {
+                transformer.doPostTransform();
+                return;
+            }
+            return;
+        }
+        throw new UnsupportedOperationException("image process is disabled");
+    }
+
+    private void processImageTiles(ImageTilesParam tilesParam) {
+        CommonInfo commonInfo = null;
+        if (mAlgoStrategy.needRunSoftwareAlgo(TileEngineType.NON_SR, tilesParam.mImageType)) {
+            commonInfo = getCommonInfo(tilesParam.mFilePath);
+            if (commonInfo == null) {
+                DElog.e(TAG, "processImageTiles() error! can't find commonInfo for " + tilesParam.mFilePath + ", mCommonInfoCache size=" + this.mCommonInfoCache.size());
+                transformColorspaceOnBitmap(tilesParam, tilesParam.mInBitmap, tilesParam.mOutBitmap);
+                collectInfoForImageRecognization(tilesParam.mFilePath, commonInfo);
+                throw new IllegalStateException("processImageTiles() can't find commonInfo, mCommonInfoCache size=" + this.mCommonInfoCache.size());
+            }
+        }
+        if (tilesParam.mInBitmap == tilesParam.mOutBitmap) {
+            tilesParam.mInBitmap = tilesParam.mOutBitmap.copy(Config.ARGB_8888, false);
+            if (tilesParam.mInBitmap == null) {
+                DElog.e(TAG, "processImageTiles() error! can't copy in bitmap");
+                throw new IllegalArgumentException("processImageTiles can't copy in bitmap");
+            }
+        }
+        try {
+            this.mTileScheduler.processImage(tilesParam, commonInfo);
+        } finally {
+            collectInfoForImageRecognization(tilesParam.mFilePath, commonInfo);
+        }
+    }
+
+    private void processTileInWorker(TileParam tileParam, ImageEngine imageEngine, CommonInfo commonInfo) {
+        boolean processDone = false;
+        if (!(imageEngine == null || commonInfo == null)) {
+            this.mAlgo.processTileAlgo(imageEngine, commonInfo, tileParam);
+            processDone = true;
+        }
+        transformColorspaceOnBitmap(tileParam, processDone ? tileParam.mOutBitmap : tileParam.mInBitmap, tileParam.mOutBitmap);
+        if (!processDone) {
+            copyPixelsToOutBitmapIfNeeded(tileParam);
+        }
+    }
+
     private void destroyTileProcessEngine(Map<String, Object> param) {
         DElog.i(TAG, "destroyTileProcessEngine()");
         if (mAlgoStrategy.isImageProcessorEnable()) {
@@ -856,6 +990,7 @@ class ImageProcessor {
                 return;
             case 13:
                 DElog.i(TAG, "setScene EXIT");
+                this.mTileScheduler.release();
                 clearCommonInfo();
                 return;
             default:
@@ -0,0 +1,332 @@
+package com.huawei.displayengine;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.os.Trace;
+import android.util.Size;
+import com.huawei.displayengine.ImageProcessor.CommonInfo;
+import com.huawei.displayengine.ImageProcessor.CreateTileProcessEngineParam;
+import com.huawei.displayengine.ImageProcessor.ImageEngine;
+import com.huawei.displayengine.ImageProcessor.ImageTilesParam;
+import com.huawei.displayengine.ImageProcessor.TileEngineType;
+import com.huawei.displayengine.ImageProcessor.TileParam;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a full decoded image into bordered tiles and runs them through per-worker tile engines
+ * on a bounded pool. Tiles inside the viewport are handed out first, then the rest by distance
+ * to the viewport center. Each worker owns its engine and its in/out tile bitmaps, which are kept
+ * between calls while the tile geometry stays the same. A worker only goes back to the idle pool
+ * if its geometry is still the current one and release() wasn't called while it was busy.
+ */
+class ImageTileScheduler {
+    private static final int KEEP_ALIVE_SECONDS = 30;
+    private static final int MAX_WORKER_COUNT = 8;
+    private static final String TAG = "DE J ImageTileScheduler";
+    private final ImageProcessorAlgoImpl mAlgo;
+    private ThreadPoolExecutor mExecutor;
+    private final ArrayList<TileWorker> mIdleWorkers = new ArrayList();
+    private final TileProcessor mProcessor;
+    private int mWorkerBorder;
+    private final int mWorkerCount = Math.max(1, Math.min(MAX_WORKER_COUNT, Runtime.getRuntime().availableProcessors()));
+    private int mWorkerGeneration;
+    private boolean mWorkerHasEngine;
+    private int mWorkerTileSize;
+
+    public interface TileProcessor {
+        void processTile(TileParam tileParam, ImageEngine imageEngine, CommonInfo commonInfo);
+    }
+
+    private static class Tile {
+        public final Rect mBordered;
+        public final Rect mInterior;
+        public final long mPriority;
+
+        public Tile(Rect interior, Rect bordered, long priority) {
+            this.mInterior = interior;
+            this.mBordered = bordered;
+            this.mPriority = priority;
+        }
+    }
+
+    private class TileWorker implements Callable<Void> {
+        public final int mBorder;
+        private CommonInfo mCommonInfo;
+        private final ImageEngine mEngine;
+        private AtomicBoolean mFailed;
+        public final int mGeneration;
+        private final Bitmap mInTile;
+        private AtomicInteger mNext;
+        private final Bitmap mOutTile;
+        private ImageTilesParam mParam;
+        private final int[] mPixels;
+        public final int mTileSize;
+        private List<Tile> mTiles;
+
+        public TileWorker(ImageEngine engine, int tileSize, int border, int generation) {
+            int maxSize = tileSize + (border * 2);
+            this.mEngine = engine;
+            this.mTileSize = tileSize;
+            this.mBorder = border;
+            this.mGeneration = generation;
+            this.mInTile = Bitmap.createBitmap(maxSize, maxSize, Config.ARGB_8888);
+            this.mOutTile = Bitmap.createBitmap(maxSize, maxSize, Config.ARGB_8888);
+            this.mPixels = new int[(maxSize * maxSize)];
+        }
+
+        public void prepare(ImageTilesParam param, CommonInfo commonInfo, List<Tile> tiles, AtomicInteger next, AtomicBoolean failed) {
+            this.mParam = param;
+            this.mCommonInfo = commonInfo;
+            this.mTiles = tiles;
+            this.mNext = next;
+            this.mFailed = failed;
+        }
+
+        public Void call() {
+            try {
+                while (!this.mFailed.get()) {
+                    int index = this.mNext.getAndIncrement();
+                    if (index >= this.mTiles.size()) {
+                        break;
+                    }
+                    processTile((Tile) this.mTiles.get(index));
+                }
+                return null;
+            } catch (RuntimeException e) {
+                this.mFailed.set(true);
+                throw e;
+            } finally {
+                this.mParam = null;
+                this.mCommonInfo = null;
+                this.mTiles = null;
+            }
+        }
+
+        private void processTile(Tile tile) {
+            Rect bordered = tile.mBordered;
+            Rect interior = tile.mInterior;
+            int width = bordered.width();
+            int height = bordered.height();
+            this.mInTile.reconfigure(width, height, Config.ARGB_8888);
+            this.mOutTile.reconfigure(width, height, Config.ARGB_8888);
+            this.mParam.mInBitmap.getPixels(this.mPixels, 0, width, bordered.left, bordered.top, width, height);
+            this.mInTile.setPixels(this.mPixels, 0, width, 0, 0, width, height);
+            TileParam tileParam = new TileParam(this.mParam, this.mInTile, this.mOutTile, new Point(bordered.left, bordered.top), new Size(width, height), this.mEngine != null ? this.mEngine.mAlgoHandle : 0);
+            ImageTileScheduler.this.mProcessor.processTile(tileParam, this.mEngine, this.mCommonInfo);
+            int interiorWidth = interior.width();
+            int interiorHeight = interior.height();
+            this.mOutTile.getPixels(this.mPixels, 0, interiorWidth, interior.left - bordered.left, interior.top - bordered.top, interiorWidth, interiorHeight);
+            this.mParam.mOutBitmap.setPixels(this.mPixels, 0, interiorWidth, interior.left, interior.top, interiorWidth, interiorHeight);
+        }
+
+        public boolean matches(int tileSize, int border, boolean hasEngine) {
+            return this.mTileSize == tileSize && this.mBorder == border && (this.mEngine != null) == hasEngine;
+        }
+
+        public void destroy() {
+            if (this.mEngine != null) {
+                ImageTileScheduler.this.mAlgo.destroyImageEngine(this.mEngine);
+            }
+            this.mInTile.recycle();
+            this.mOutTile.recycle();
+        }
+    }
+
+    public ImageTileScheduler(ImageProcessorAlgoImpl algo, TileProcessor processor) {
+        this.mAlgo = algo;
+        this.mProcessor = processor;
+    }
+
+    public void processImage(ImageTilesParam param, CommonInfo commonInfo) {
+        List<Tile> tiles = splitTiles(param.mInBitmap.getWidth(), param.mInBitmap.getHeight(), param.mTileSize, param.mTileBorder, param.mViewport);
+        int workerCount = Math.min(this.mWorkerCount, tiles.size());
+        DElog.i(TAG, "processImage() " + param.mInBitmap.getWidth() + "x" + param.mInBitmap.getHeight() + ", tiles=" + tiles.size() + ", workers=" + workerCount);
+        if (workerCount != 0) {
+            List<TileWorker> workers = obtainWorkers(param, commonInfo != null, workerCount);
+            AtomicInteger next = new AtomicInteger();
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<Void>> futures = new ArrayList(workerCount);
+            Trace.traceBegin(8, "processImageTiles");
+            try {
+                RuntimeException error = null;
+                try {
+                    ThreadPoolExecutor executor = getExecutor();
+                    for (TileWorker worker : workers) {
+                        worker.prepare(param, commonInfo, tiles, next, failed);
+                        futures.add(executor.submit(worker));
+                    }
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    error = e;
+                }
+                boolean interrupted = false;
+                for (Future<Void> future : futures) {
+                    while (true) {
+                        try {
+                            future.get();
+                            break;
+                        } catch (ExecutionException e2) {
+                            if (error == null) {
+                                error = e2.getCause() instanceof RuntimeException ? (RuntimeException) e2.getCause() : new IllegalStateException("processImage tile failed", e2.getCause());
+                            }
+                            break;
+                        } catch (InterruptedException e3) {
+                            failed.set(true);
+                            interrupted = true;
+                        }
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                    if (error == null) {
+                        error = new IllegalStateException("processImage interrupted");
+                    }
+                }
+                if (error != null) {
+                    DElog.e(TAG, "processImage() error! " + error);
+                    throw error;
+                }
+            } finally {
+                Trace.traceEnd(8);
+                releaseWorkers(workers, failed.get());
+            }
+        }
+    }
+
+    public void release() {
+        synchronized (this.mIdleWorkers) {
+            this.mWorkerGeneration++;
+            destroyWorkersLocked(this.mIdleWorkers);
+        }
+        synchronized (this) {
+            if (this.mExecutor != null) {
+                this.mExecutor.shutdown();
+                this.mExecutor = null;
+            }
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (this.mExecutor == null) {
+            this.mExecutor = new ThreadPoolExecutor(this.mWorkerCount, this.mWorkerCount, (long) KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "DisplayEngineTile-" + this.mCount.incrementAndGet());
+                }
+            });
+            this.mExecutor.allowCoreThreadTimeOut(true);
+        }
+        return this.mExecutor;
+    }
+
+    private List<TileWorker> obtainWorkers(ImageTilesParam param, boolean needEngine, int count) {
+        List<TileWorker> workers = new ArrayList(count);
+        CreateTileProcessEngineParam engineParam = null;
+        if (needEngine) {
+            engineParam = new CreateTileProcessEngineParam(TileEngineType.NON_SR, param.mTileSize, param.mTileBorder);
+            if (engineParam.mAlgos == null) {
+                engineParam = null;
+            }
+        }
+        boolean hasEngine = engineParam != null;
+        int generation;
+        synchronized (this.mIdleWorkers) {
+            if (!(this.mWorkerTileSize == param.mTileSize && this.mWorkerBorder == param.mTileBorder && this.mWorkerHasEngine == hasEngine)) {
+                destroyWorkersLocked(this.mIdleWorkers);
+                this.mWorkerTileSize = param.mTileSize;
+                this.mWorkerBorder = param.mTileBorder;
+                this.mWorkerHasEngine = hasEngine;
+            }
+            while (workers.size() < count && !this.mIdleWorkers.isEmpty()) {
+                workers.add((TileWorker) this.mIdleWorkers.remove(this.mIdleWorkers.size() - 1));
+            }
+            generation = this.mWorkerGeneration;
+        }
+        try {
+            while (workers.size() < count) {
+                workers.add(new TileWorker(hasEngine ? this.mAlgo.createImageEngine(engineParam) : null, param.mTileSize, param.mTileBorder, generation));
+            }
+            return workers;
+        } catch (RuntimeException e) {
+            releaseWorkers(workers, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the workers to the idle pool. Workers of another geometry, left over from a
+     * concurrent call with different tiles, and workers that were busy during release() are
+     * destroyed instead.
+     */
+    private void releaseWorkers(List<TileWorker> workers, boolean destroy) {
+        synchronized (this.mIdleWorkers) {
+            if (!destroy) {
+                for (int i = workers.size() - 1; i >= 0; i--) {
+                    TileWorker worker = (TileWorker) workers.get(i);
+                    if (worker.mGeneration == this.mWorkerGeneration && worker.matches(this.mWorkerTileSize, this.mWorkerBorder, this.mWorkerHasEngine)) {
+                        this.mIdleWorkers.add((TileWorker) workers.remove(i));
+                    }
+                }
+            }
+            destroyWorkersLocked(workers);
+        }
+    }
+
+    private void destroyWorkersLocked(List<TileWorker> workers) {
+        for (TileWorker worker : workers) {
+            try {
+                worker.destroy();
+            } catch (RuntimeException e) {
+                DElog.e(TAG, "destroyWorkers() error! " + e);
+            }
+        }
+        workers.clear();
+    }
+
+    private static List<Tile> splitTiles(int width, int height, int tileSize, int border, Rect viewport) {
+        List<Tile> tiles = new ArrayList();
+        if (tileSize <= 0 || width <= 0 || height <= 0) {
+            return tiles;
+        }
+        Rect focus = viewport != null ? new Rect(viewport) : null;
+        if (focus == null || !focus.intersect(0, 0, width, height)) {
+            focus = new Rect(0, 0, width, height);
+        }
+        long centerX = (long) focus.centerX();
+        long centerY = (long) focus.centerY();
+        for (int top = 0; top < height; top += tileSize) {
+            for (int left = 0; left < width; left += tileSize) {
+                Rect interior = new Rect(left, top, Math.min(left + tileSize, width), Math.min(top + tileSize, height));
+                Rect bordered = new Rect(Math.max(interior.left - border, 0), Math.max(interior.top - border, 0), Math.min(interior.right + border, width), Math.min(interior.bottom + border, height));
+                long dx = ((long) interior.centerX()) - centerX;
+                long dy = ((long) interior.centerY()) - centerY;
+                long priority = (dx * dx) + (dy * dy);
+                if (!Rect.intersects(interior, focus)) {
+                    priority += Long.MAX_VALUE / 2;
+                }
+                tiles.add(new Tile(interior, bordered, priority));
+            }
+        }
+        Collections.sort(tiles, new Comparator<Tile>() {
+            public int compare(Tile lhs, Tile rhs) {
+                return Long.compare(lhs.mPriority, rhs.mPriority);
+            }
+        });
+        return tiles;
+    }
+}
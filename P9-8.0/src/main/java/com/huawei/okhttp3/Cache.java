@@ -8,6 +8,7 @@ import com.huawei.okhttp3.internal.cache.DiskLruCache;
 import com.huawei.okhttp3.internal.cache.DiskLruCache.Editor;
 import com.huawei.okhttp3.internal.cache.DiskLruCache.Snapshot;
 import com.huawei.okhttp3.internal.cache.InternalCache;
+import com.huawei.okhttp3.internal.cache2.SharedFetches;
 import com.huawei.okhttp3.internal.http.HttpHeaders;
 import com.huawei.okhttp3.internal.http.HttpMethod;
 import com.huawei.okhttp3.internal.http.StatusLine;
@@ -46,6 +47,7 @@ public final class Cache implements Closeable, Flushable {
     final InternalCache internalCache;
     private int networkCount;
     private int requestCount;
+    final SharedFetches sharedFetches;
     int writeAbortCount;
     int writeSuccessCount;
 
@@ -337,6 +339,7 @@ public final class Cache implements Closeable, Flushable {
             }
         };
         this.cache = DiskLruCache.create(fileSystem, directory, VERSION, 2, maxSize);
+        this.sharedFetches = new SharedFetches(directory);
     }
 
     public static String key(HttpUrl url) {
@@ -534,6 +537,10 @@ public final class Cache implements Closeable, Flushable {
         return this.requestCount;
     }
 
+    public int sharedCount() {
+        return this.sharedFetches.sharedCount();
+    }
+
     static int readInt(BufferedSource source) throws IOException {
         try {
             long result = source.readDecimalLong();
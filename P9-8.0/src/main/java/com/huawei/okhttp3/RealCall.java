@@ -161,7 +161,7 @@ final class RealCall implements Call {
         interceptors.addAll(this.client.interceptors());
         interceptors.add(this.retryAndFollowUpInterceptor);
         interceptors.add(new BridgeInterceptor(this.client.cookieJar()));
-        interceptors.add(new CacheInterceptor(this.client.internalCache()));
+        interceptors.add(new CacheInterceptor(this.client.internalCache(), this.client.cache != null ? this.client.cache.sharedFetches : null, this.retryAndFollowUpInterceptor, (long) (this.client.connectTimeoutMillis() + this.client.readTimeoutMillis())));
         interceptors.add(new ConnectInterceptor(this.client));
         if (!this.forWebSocket) {
             interceptors.addAll(this.client.networkInterceptors());
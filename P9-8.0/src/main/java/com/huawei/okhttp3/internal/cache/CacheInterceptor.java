@@ -2,6 +2,7 @@ package com.huawei.okhttp3.internal.cache;
 
 import com.huawei.android.os.HwTransCodeEx;
 import com.huawei.motiondetection.MotionTypeApps;
+import com.huawei.okhttp3.CacheControl;
 import com.huawei.okhttp3.Headers;
 import com.huawei.okhttp3.Interceptor;
 import com.huawei.okhttp3.Interceptor.Chain;
@@ -12,9 +13,12 @@ import com.huawei.okhttp3.Response.Builder;
 import com.huawei.okhttp3.internal.Internal;
 import com.huawei.okhttp3.internal.Util;
 import com.huawei.okhttp3.internal.cache.CacheStrategy.Factory;
+import com.huawei.okhttp3.internal.cache2.SharedFetches;
+import com.huawei.okhttp3.internal.cache2.SharedFetches.Fetch;
 import com.huawei.okhttp3.internal.http.HttpHeaders;
 import com.huawei.okhttp3.internal.http.HttpMethod;
 import com.huawei.okhttp3.internal.http.RealResponseBody;
+import com.huawei.okhttp3.internal.http.RetryAndFollowUpInterceptor;
 import com.huawei.okio.Buffer;
 import com.huawei.okio.BufferedSink;
 import com.huawei.okio.BufferedSource;
@@ -27,9 +31,23 @@ import java.util.concurrent.TimeUnit;
 
 public final class CacheInterceptor implements Interceptor {
     final InternalCache cache;
+    final RetryAndFollowUpInterceptor retryAndFollowUpInterceptor;
+    final SharedFetches sharedFetches;
+    final long sharedWaitMillis;
 
     public CacheInterceptor(InternalCache cache) {
+        this(cache, null, null, 0);
+    }
+
+    /**
+     * A call waiting for a shared fetch gives up after sharedWaitMillis and fails once
+     * retryAndFollowUpInterceptor is canceled.
+     */
+    public CacheInterceptor(InternalCache cache, SharedFetches sharedFetches, RetryAndFollowUpInterceptor retryAndFollowUpInterceptor, long sharedWaitMillis) {
         this.cache = cache;
+        this.sharedFetches = sharedFetches;
+        this.retryAndFollowUpInterceptor = retryAndFollowUpInterceptor;
+        this.sharedWaitMillis = sharedWaitMillis;
     }
 
     public Response intercept(Chain chain) throws IOException {
@@ -54,6 +72,18 @@ public final class CacheInterceptor implements Interceptor {
         if (networkRequest == null) {
             return cacheResponse.newBuilder().cacheResponse(stripBody(cacheResponse)).build();
         }
+        String sharedKey = null;
+        if (this.sharedFetches != null && cacheResponse == null && isShareable(networkRequest)) {
+            sharedKey = networkRequest.url() + " " + networkRequest.header("Accept-Encoding");
+            Fetch fetch = this.sharedFetches.join(sharedKey);
+            if (fetch != null) {
+                sharedKey = null;
+                Response sharedResponse = this.sharedFetches.follow(fetch, networkRequest, this.sharedWaitMillis, this.retryAndFollowUpInterceptor);
+                if (sharedResponse != null) {
+                    return sharedResponse;
+                }
+            }
+        }
         Response networkResponse = null;
         try {
             Response response;
@@ -73,15 +103,38 @@ public final class CacheInterceptor implements Interceptor {
             response = networkResponse.newBuilder().cacheResponse(stripBody(cacheResponse)).networkResponse(stripBody(networkResponse)).build();
             if (HttpHeaders.hasBody(response)) {
                 response = cacheWritingResponse(maybeCache(response, networkResponse.request(), this.cache), response);
+                if (sharedKey != null && isShareable(response, networkResponse.request())) {
+                    response = this.sharedFetches.publish(sharedKey, response);
+                    sharedKey = null;
+                }
+            }
+            if (sharedKey != null) {
+                this.sharedFetches.abandon(sharedKey, true);
+                sharedKey = null;
             }
             return response;
         } finally {
+            if (sharedKey != null) {
+                this.sharedFetches.abandon(sharedKey, false);
+            }
             if (cacheCandidate != null) {
                 Util.closeQuietly(cacheCandidate.body());
             }
         }
     }
 
+    private static boolean isShareable(Request request) {
+        if (!"GET".equals(request.method()) || request.header("Range") != null || request.header("Authorization") != null || request.header("Cookie") != null) {
+            return false;
+        }
+        CacheControl cacheControl = request.cacheControl();
+        return !cacheControl.noCache() && !cacheControl.noStore();
+    }
+
+    private static boolean isShareable(Response response, Request networkRequest) {
+        return response.code() == 200 && response.header("Vary") == null && CacheStrategy.isCacheable(response, networkRequest);
+    }
+
     private static Response stripBody(Response response) {
         if (response == null || response.body() == null) {
             return response;
@@ -70,6 +70,20 @@ public final class DiskLruCache implements Closeable, Flushable {
     private final File journalFile;
     private final File journalFileBackup;
     private final File journalFileTmp;
+    boolean journalFlushPending;
+    private final Runnable journalFlushRunnable = new Runnable() {
+        public void run() {
+            synchronized (DiskLruCache.this) {
+                DiskLruCache.this.journalFlushPending = false;
+                if (DiskLruCache.this.initialized && !DiskLruCache.this.closed) {
+                    try {
+                        DiskLruCache.this.journalWriter.flush();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        }
+    };
     BufferedSink journalWriter;
     final LinkedHashMap<String, Entry> lruEntries = new LinkedHashMap(0, 0.75f, true);
     private long maxSize;
@@ -485,27 +499,79 @@ public final class DiskLruCache implements Closeable, Flushable {
         }
     }
 
-    /* JADX WARNING: Missing block: B:9:0x001c, code:
-            return null;
-     */
-    /* JADX WARNING: Missing block: B:20:0x0051, code:
-            return r1;
+    /**
+     * Returns a snapshot of the entry named key. The value files are opened without holding the
+     * cache lock, so concurrent reads don't queue behind each other's file opens; the snapshot is
+     * only handed out if no edit committed or removed the entry meanwhile.
      */
-    /* Code decompiled incorrectly, please refer to instructions dump. */
-    public synchronized Snapshot get(String key) throws IOException {
-        initialize();
+    public Snapshot get(String key) throws IOException {
+        Entry entry;
+        long[] lengths;
+        long sequenceNumber;
+        synchronized (this) {
+            initialize();
+            checkNotClosed();
+            validateKey(key);
+            entry = (Entry) this.lruEntries.get(key);
+            if (entry == null || (entry.readable ^ 1) != 0) {
+                return null;
+            }
+            sequenceNumber = entry.sequenceNumber;
+            lengths = (long[]) entry.lengths.clone();
+        }
+        Source[] sources = openSources(entry.cleanFiles);
+        synchronized (this) {
+            if (sources != null && !this.closed && this.lruEntries.get(key) == entry && entry.readable && entry.sequenceNumber == sequenceNumber) {
+                recordRead(key);
+                return new Snapshot(key, sequenceNumber, sources, lengths);
+            }
+            closeSources(sources);
+            return getLocked(key);
+        }
+    }
+
+    private synchronized Snapshot getLocked(String key) throws IOException {
         checkNotClosed();
-        validateKey(key);
         Entry entry = (Entry) this.lruEntries.get(key);
-        if (entry != null && (entry.readable ^ 1) == 0) {
-            Snapshot snapshot = entry.snapshot();
-            if (snapshot == null) {
+        if (entry == null || (entry.readable ^ 1) != 0) {
+            return null;
+        }
+        Snapshot snapshot = entry.snapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        recordRead(key);
+        return snapshot;
+    }
+
+    private void recordRead(String key) throws IOException {
+        this.redundantOpCount++;
+        this.journalWriter.writeUtf8(READ).writeByte(32).writeUtf8(key).writeByte(10);
+        if (journalRebuildRequired()) {
+            this.executor.execute(this.cleanupRunnable);
+        }
+    }
+
+    /** Opens every file, or returns null with nothing left open if one of them is missing. */
+    private Source[] openSources(File[] files) {
+        Source[] sources = new Source[files.length];
+        for (int i = 0; i < files.length; i++) {
+            try {
+                sources[i] = this.fileSystem.source(files[i]);
+            } catch (FileNotFoundException e) {
+                closeSources(sources);
                 return null;
             }
-            this.redundantOpCount++;
-            this.journalWriter.writeUtf8(READ).writeByte(32).writeUtf8(key).writeByte(10);
-            if (journalRebuildRequired()) {
-                this.executor.execute(this.cleanupRunnable);
+        }
+        return sources;
+    }
+
+    private static void closeSources(Source[] sources) {
+        if (sources != null) {
+            for (Closeable source : sources) {
+                if (source != null) {
+                    Util.closeQuietly(source);
+                }
             }
         }
     }
@@ -626,7 +692,10 @@ public final class DiskLruCache implements Closeable, Flushable {
             this.journalWriter.writeUtf8(entry.key);
             this.journalWriter.writeByte(10);
         }
-        this.journalWriter.flush();
+        if (!this.journalFlushPending) {
+            this.journalFlushPending = true;
+            this.executor.execute(this.journalFlushRunnable);
+        }
         if (this.size > this.maxSize || journalRebuildRequired()) {
             this.executor.execute(this.cleanupRunnable);
         }
@@ -35,90 +35,65 @@ final class Relay {
         RelaySource() {
         }
 
-        /* JADX WARNING: Missing block: B:23:?, code:
-            r28.this$0.upstreamReader = java.lang.Thread.currentThread();
-     */
-        /* JADX WARNING: Missing block: B:24:0x0051, code:
-            r24 = 1;
-     */
-        /* JADX WARNING: Missing block: B:31:?, code:
-            r22 = r26 - r28.this$0.buffer.size();
-     */
-        /* JADX WARNING: Missing block: B:33:0x0092, code:
-            if (r28.sourcePos >= r22) goto L_0x0098;
-     */
-        /* JADX WARNING: Missing block: B:34:0x0094, code:
-            r24 = 2;
-     */
-        /* JADX WARNING: Missing block: B:37:?, code:
-            r8 = java.lang.Math.min(r30, r26 - r28.sourcePos);
-            r28.this$0.buffer.copyTo(r29, r28.sourcePos - r22, r8);
-            r28.sourcePos += r8;
-     */
-        /* JADX WARNING: Missing block: B:39:0x00bf, code:
-            return r8;
-     */
-        /* Code decompiled incorrectly, please refer to instructions dump. */
         public long read(Buffer sink, long byteCount) throws IOException {
             if (this.fileOperator == null) {
                 throw new IllegalStateException("closed");
             }
+            long upstreamPos;
+            int source;
             synchronized (Relay.this) {
-                long upstreamPos;
                 while (true) {
-                    long j = this.sourcePos;
                     upstreamPos = Relay.this.upstreamPos;
-                    if (j == upstreamPos) {
-                        if (!Relay.this.complete) {
-                            if (Relay.this.upstreamReader == null) {
-                                break;
-                            }
-                            this.timeout.waitUntilNotified(Relay.this);
-                        } else {
-                            return -1;
+                    if (this.sourcePos != upstreamPos) {
+                        long bufferPos = upstreamPos - Relay.this.buffer.size();
+                        if (this.sourcePos < bufferPos) {
+                            source = Relay.SOURCE_FILE;
+                            break;
                         }
+                        long bytesToRead = Math.min(byteCount, upstreamPos - this.sourcePos);
+                        Relay.this.buffer.copyTo(sink, this.sourcePos - bufferPos, bytesToRead);
+                        this.sourcePos += bytesToRead;
+                        return bytesToRead;
+                    } else if (Relay.this.complete) {
+                        return -1;
+                    } else if (Relay.this.upstreamReader != null) {
+                        this.timeout.waitUntilNotified(Relay.this);
+                    } else {
+                        Relay.this.upstreamReader = Thread.currentThread();
+                        source = Relay.SOURCE_UPSTREAM;
+                        break;
                     }
-                    break;
                 }
-                if (source == 2) {
-                    long bytesToRead = Math.min(byteCount, upstreamPos - this.sourcePos);
-                    this.fileOperator.read(Relay.FILE_HEADER_SIZE + this.sourcePos, sink, bytesToRead);
-                    this.sourcePos += bytesToRead;
-                    return bytesToRead;
+            }
+            if (source == Relay.SOURCE_FILE) {
+                long bytesToRead = Math.min(byteCount, upstreamPos - this.sourcePos);
+                this.fileOperator.read(Relay.FILE_HEADER_SIZE + this.sourcePos, sink, bytesToRead);
+                this.sourcePos += bytesToRead;
+                return bytesToRead;
+            }
+            try {
+                long upstreamBytesRead = Relay.this.upstream.read(Relay.this.upstreamBuffer, Relay.this.bufferMaxSize);
+                if (upstreamBytesRead == -1) {
+                    Relay.this.commit(upstreamPos);
+                    return -1;
                 }
-                try {
-                    Source source = Relay.this.upstream;
-                    Buffer buffer = Relay.this.upstreamBuffer;
-                    Object obj = Relay.this.bufferMaxSize;
-                    long upstreamBytesRead = source.read(buffer, obj);
-                    if (upstreamBytesRead == -1) {
-                        Relay.this.commit(upstreamPos);
-                        Relay.this.upstreamReader = null;
-                        Relay.this.notifyAll();
-                        return -1;
-                    }
-                    long bytesRead = Math.min(upstreamBytesRead, byteCount);
-                    Relay.this.upstreamBuffer.copyTo(sink, 0, bytesRead);
-                    this.sourcePos += bytesRead;
-                    this.fileOperator.write(Relay.FILE_HEADER_SIZE + upstreamPos, Relay.this.upstreamBuffer.clone(), upstreamBytesRead);
-                    synchronized (Relay.this) {
-                        Relay.this.buffer.write(Relay.this.upstreamBuffer, upstreamBytesRead);
-                        if (Relay.this.buffer.size() > Relay.this.bufferMaxSize) {
-                            Relay.this.buffer.skip(Relay.this.buffer.size() - Relay.this.bufferMaxSize);
-                        }
-                        Relay relay = Relay.this;
-                        relay.upstreamPos += upstreamBytesRead;
-                    }
-                    synchronized (Relay.this) {
-                        Relay.this.upstreamReader = null;
-                        Relay.this.notifyAll();
-                    }
-                    return bytesRead;
-                } finally {
-                    synchronized (Relay.this) {
-                        Relay.this.upstreamReader = null;
-                        Relay.this.notifyAll();
+                long bytesRead = Math.min(upstreamBytesRead, byteCount);
+                Relay.this.upstreamBuffer.copyTo(sink, 0, bytesRead);
+                this.sourcePos += bytesRead;
+                this.fileOperator.write(Relay.FILE_HEADER_SIZE + upstreamPos, Relay.this.upstreamBuffer.clone(), upstreamBytesRead);
+                synchronized (Relay.this) {
+                    Relay.this.buffer.write(Relay.this.upstreamBuffer, upstreamBytesRead);
+                    if (Relay.this.buffer.size() > Relay.this.bufferMaxSize) {
+                        Relay.this.buffer.skip(Relay.this.buffer.size() - Relay.this.bufferMaxSize);
                     }
+                    Relay relay = Relay.this;
+                    relay.upstreamPos += upstreamBytesRead;
+                }
+                return bytesRead;
+            } finally {
+                synchronized (Relay.this) {
+                    Relay.this.upstreamReader = null;
+                    Relay.this.notifyAll();
                 }
             }
         }
@@ -131,17 +106,25 @@ final class Relay {
             if (this.fileOperator != null) {
                 this.fileOperator = null;
                 Closeable fileToClose = null;
+                Closeable upstreamToClose = null;
                 synchronized (Relay.this) {
                     Relay relay = Relay.this;
                     relay.sourceCount--;
                     if (Relay.this.sourceCount == 0) {
                         fileToClose = Relay.this.file;
                         Relay.this.file = null;
+                        if (!Relay.this.complete) {
+                            upstreamToClose = Relay.this.upstream;
+                            Relay.this.upstream = null;
+                        }
                     }
                 }
                 if (fileToClose != null) {
                     Util.closeQuietly(fileToClose);
                 }
+                if (upstreamToClose != null) {
+                    Util.closeQuietly(upstreamToClose);
+                }
             }
         }
     }
@@ -0,0 +1,247 @@
+package com.huawei.okhttp3.internal.cache2;
+
+import com.huawei.okhttp3.Request;
+import com.huawei.okhttp3.Response;
+import com.huawei.okhttp3.internal.http.RealResponseBody;
+import com.huawei.okhttp3.internal.http.RetryAndFollowUpInterceptor;
+import com.huawei.okio.Buffer;
+import com.huawei.okio.ByteString;
+import com.huawei.okio.ForwardingSource;
+import com.huawei.okio.Okio;
+import com.huawei.okio.Source;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Lets concurrent requests for the same resource share one network fetch. The first caller
+ * registers the fetch and runs it; callers arriving meanwhile wait for its response headers. A
+ * shareable response body is fed through a Relay backed by an unlinked file in the cache
+ * directory, and every caller reads it through its own source. The Relay is only created once a
+ * second caller follows the fetch, so a fetch nobody follows costs no file; if the first caller
+ * has already started reading the body by then, the follower runs its own request. Otherwise the
+ * waiting callers run their own requests. A fetch takes no new callers once the first caller is
+ * done with the body.
+ *
+ * Keys whose last response could not be shared are remembered, and callers for them run their own
+ * requests right away instead of waiting, until one of them gets a shareable response again.
+ */
+public final class SharedFetches {
+    private static final long BUFFER_MAX_SIZE = 65536;
+    private static final int MAX_UNSHAREABLE_KEYS = 64;
+    private static final long MAX_WAIT_MILLIS = 30000;
+    private static final long CANCEL_POLL_MILLIS = 100;
+    private final File directory;
+    private final Map<String, Fetch> fetches = new HashMap();
+    private int sharedCount;
+    private final Map<String, Boolean> unshareable = new LinkedHashMap<String, Boolean>() {
+        protected boolean removeEldestEntry(Entry<String, Boolean> entry) {
+            return size() > SharedFetches.MAX_UNSHAREABLE_KEYS;
+        }
+    };
+
+    public static final class Fetch {
+        boolean done;
+        int followers;
+        OwnerSource owner;
+        Response response;
+
+        Fetch() {
+        }
+    }
+
+    public SharedFetches(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the fetch running for key, or null if the caller has to run its own request. That
+     * request is registered for others to follow unless the last response for key was unshareable.
+     */
+    public synchronized Fetch join(String key) {
+        Fetch fetch = (Fetch) this.fetches.get(key);
+        if (fetch != null) {
+            fetch.followers++;
+            return fetch;
+        }
+        if (!this.unshareable.containsKey(key)) {
+            this.fetches.put(key, new Fetch());
+        }
+        return null;
+    }
+
+    /**
+     * Hands the response of the fetch for key to the waiting callers and returns the response the
+     * caller should use in its place. The Relay is created here if callers are already waiting,
+     * and otherwise by the first follower to arrive, see OwnerSource.relay().
+     */
+    public Response publish(String key, Response response) {
+        Fetch fetch;
+        OwnerSource source;
+        boolean followed;
+        synchronized (this) {
+            this.unshareable.remove(key);
+            fetch = (Fetch) this.fetches.get(key);
+            if (fetch == null) {
+                return response;
+            }
+            source = new OwnerSource(response.body().source(), key, fetch);
+            followed = fetch.followers > 0;
+        }
+        if (followed) {
+            source.relay();
+        }
+        synchronized (this) {
+            fetch.owner = source;
+            fetch.response = response.newBuilder().body(null).build();
+            fetch.done = true;
+            notifyAll();
+        }
+        return response.newBuilder().body(new RealResponseBody(response.headers(), Okio.buffer(source))).build();
+    }
+
+    /**
+     * Ends the fetch for key without a shared response, so the waiting callers run their own. If
+     * the response was unshareable, later callers for key don't wait either.
+     */
+    public synchronized void abandon(String key, boolean responseUnshareable) {
+        if (responseUnshareable) {
+            this.unshareable.put(key, Boolean.TRUE);
+        }
+        Fetch fetch = (Fetch) this.fetches.remove(key);
+        if (fetch != null) {
+            fetch.done = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the fetch to publish and returns a response to request reading the shared body,
+     * or null if the caller has to run its own request. The wait ends after timeoutMillis, or
+     * MAX_WAIT_MILLIS if that is 0 or longer, and fails if the call is canceled meanwhile.
+     */
+    public Response follow(Fetch fetch, Request request, long timeoutMillis, RetryAndFollowUpInterceptor call) throws IOException {
+        OwnerSource owner;
+        Response response;
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + ((timeoutMillis <= 0 || timeoutMillis > MAX_WAIT_MILLIS) ? MAX_WAIT_MILLIS : timeoutMillis);
+            while (!fetch.done) {
+                if (call != null && call.isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    wait(Math.min(remaining, CANCEL_POLL_MILLIS));
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            owner = fetch.owner;
+            response = fetch.response;
+        }
+        if (owner == null) {
+            return null;
+        }
+        Relay relay = owner.relay();
+        if (relay == null) {
+            return null;
+        }
+        Source source = relay.newSource();
+        if (source == null) {
+            return null;
+        }
+        synchronized (this) {
+            this.sharedCount++;
+        }
+        Response networkResponse = response.networkResponse();
+        if (networkResponse != null) {
+            networkResponse = networkResponse.newBuilder().request(request).priorResponse(null).build();
+        }
+        return response.newBuilder().request(request).networkResponse(networkResponse).priorResponse(null).body(new RealResponseBody(response.headers(), Okio.buffer(source))).build();
+    }
+
+    /** Number of responses served from another caller's fetch. */
+    public synchronized int sharedCount() {
+        return this.sharedCount;
+    }
+
+    synchronized void finish(String key, Fetch fetch) {
+        if (this.fetches.get(key) == fetch) {
+            this.fetches.remove(key);
+        }
+    }
+
+    /**
+     * The first caller's body. It reads the network directly unless a follower asked for the
+     * Relay before the first read; from then on it reads its own source of the Relay.
+     */
+    final class OwnerSource extends ForwardingSource {
+        private boolean closed;
+        private final Fetch fetch;
+        private final String key;
+        private Relay relay;
+        private Source relaySource;
+        private boolean started;
+
+        OwnerSource(Source delegate, String key, Fetch fetch) {
+            super(delegate);
+            this.key = key;
+            this.fetch = fetch;
+        }
+
+        /**
+         * Returns the Relay of the body, creating it on the first call, or null if the body can no
+         * longer be shared because it is already being read or the relay file can't be created.
+         */
+        synchronized Relay relay() {
+            if (this.relay != null || this.started || this.closed) {
+                return this.relay;
+            }
+            try {
+                File file = File.createTempFile("relay", null, SharedFetches.this.directory);
+                Relay relay = Relay.edit(file, delegate(), ByteString.EMPTY, BUFFER_MAX_SIZE);
+                file.delete();
+                this.relaySource = relay.newSource();
+                this.relay = relay;
+            } catch (IOException e) {
+                this.started = true;
+            }
+            return this.relay;
+        }
+
+        public long read(Buffer sink, long byteCount) throws IOException {
+            Source source;
+            boolean first;
+            synchronized (this) {
+                first = !this.started && this.relaySource == null;
+                this.started = true;
+                source = this.relaySource != null ? this.relaySource : delegate();
+            }
+            if (first) {
+                SharedFetches.this.finish(this.key, this.fetch);
+            }
+            long read = source.read(sink, byteCount);
+            if (read == -1) {
+                SharedFetches.this.finish(this.key, this.fetch);
+            }
+            return read;
+        }
+
+        public void close() throws IOException {
+            Source source;
+            synchronized (this) {
+                this.closed = true;
+                source = this.relaySource != null ? this.relaySource : delegate();
+            }
+            SharedFetches.this.finish(this.key, this.fetch);
+            source.close();
+        }
+    }
+}
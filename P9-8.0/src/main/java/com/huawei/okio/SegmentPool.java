@@ -1,40 +1,143 @@
 package com.huawei.okio;
 
+/**
+ * Pool of unused segments, split into stripes so that threads moving data at the same time don't
+ * queue on one monitor. A thread recycles into the stripe picked by its id and takes from it first.
+ * When that stripe is empty, take() looks at the other stripes before allocating, so segments left
+ * on the stripe of an idle thread are still reused. Each stripe may hold MAX_SIZE / STRIPE_COUNT
+ * bytes, so all stripes together never hold more than the unstriped pool did. MAX_SIZE can be set
+ * through the com.huawei.okio.SegmentPool.maxSize system property.
+ */
 final class SegmentPool {
-    static final long MAX_SIZE = 65536;
-    static long byteCount;
-    static Segment next;
+    static final long MAX_SIZE = Long.getLong("com.huawei.okio.SegmentPool.maxSize", 65536).longValue();
+    private static final int STRIPE_COUNT = stripeCount();
+    private static final long STRIPE_MAX_SIZE = (MAX_SIZE / ((long) STRIPE_COUNT));
+    private static final Stripe[] STRIPES = newStripes();
+
+    private static final class Stripe {
+        long byteCount;
+        long hitCount;
+        long missCount;
+        Segment next;
+
+        Stripe() {
+        }
+
+        Segment pollLocked() {
+            Segment result = this.next;
+            if (result != null) {
+                this.next = result.next;
+                result.next = null;
+                this.byteCount -= 8192;
+            }
+            return result;
+        }
+    }
 
     private SegmentPool() {
     }
 
+    /** CPUs rounded up to a power of two, at most 16, and few enough that each stripe holds two segments. */
+    private static int stripeCount() {
+        int count = Integer.highestOneBit((Runtime.getRuntime().availableProcessors() * 2) - 1);
+        long segments = MAX_SIZE / 16384;
+        if (segments < ((long) count)) {
+            count = segments < 1 ? 1 : Integer.highestOneBit((int) segments);
+        }
+        if (count < 1) {
+            return 1;
+        }
+        return Math.min(count, 16);
+    }
+
+    private static Stripe[] newStripes() {
+        Stripe[] stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    private static int stripeIndex() {
+        return ((int) Thread.currentThread().getId()) & (STRIPE_COUNT - 1);
+    }
+
     static Segment take() {
-        synchronized (SegmentPool.class) {
-            if (next != null) {
-                Segment result = next;
-                next = result.next;
-                result.next = null;
-                byteCount -= 8192;
+        int index = stripeIndex();
+        Stripe stripe = STRIPES[index];
+        synchronized (stripe) {
+            Segment result = stripe.pollLocked();
+            if (result != null) {
+                stripe.hitCount++;
                 return result;
             }
-            return new Segment();
         }
+        for (int i = 1; i < STRIPE_COUNT; i++) {
+            Stripe other = STRIPES[(index + i) & (STRIPE_COUNT - 1)];
+            if (other.next != null) {
+                synchronized (other) {
+                    Segment result = other.pollLocked();
+                    if (result != null) {
+                        other.hitCount++;
+                        return result;
+                    }
+                }
+            }
+        }
+        synchronized (stripe) {
+            stripe.missCount++;
+        }
+        return new Segment();
     }
 
     static void recycle(Segment segment) {
         if (segment.next != null || segment.prev != null) {
             throw new IllegalArgumentException();
         } else if (!segment.shared) {
-            synchronized (SegmentPool.class) {
-                if (byteCount + 8192 > MAX_SIZE) {
+            Stripe stripe = STRIPES[stripeIndex()];
+            synchronized (stripe) {
+                if (stripe.byteCount + 8192 > STRIPE_MAX_SIZE) {
                     return;
                 }
-                byteCount += 8192;
-                segment.next = next;
+                stripe.byteCount += 8192;
+                segment.next = stripe.next;
                 segment.limit = 0;
                 segment.pos = 0;
-                next = segment;
+                stripe.next = segment;
+            }
+        }
+    }
+
+    /** Bytes held by all stripes. */
+    static long byteCount() {
+        long total = 0;
+        for (Stripe stripe : STRIPES) {
+            synchronized (stripe) {
+                total += stripe.byteCount;
+            }
+        }
+        return total;
+    }
+
+    /** Takes served from a stripe, the taking thread's own or another one. */
+    static long hitCount() {
+        long total = 0;
+        for (Stripe stripe : STRIPES) {
+            synchronized (stripe) {
+                total += stripe.hitCount;
+            }
+        }
+        return total;
+    }
+
+    /** Takes that found every stripe empty and allocated a new segment. */
+    static long missCount() {
+        long total = 0;
+        for (Stripe stripe : STRIPES) {
+            synchronized (stripe) {
+                total += stripe.missCount;
             }
         }
+        return total;
     }
 }
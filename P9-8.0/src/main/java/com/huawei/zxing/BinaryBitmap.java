@@ -33,6 +33,26 @@ public final class BinaryBitmap {
         return this.matrix;
     }
 
+    public BinaryBitmap shareBlackMatrix() throws NotFoundException {
+        BinaryBitmap view = new BinaryBitmap(this.binarizer.createBinarizer(this.binarizer.getLuminanceSource()));
+        view.matrix = getBlackMatrix();
+        return view;
+    }
+
+    /**
+     * Returns a bitmap over private copies of the luminance and the black matrix, which stays valid
+     * while this one's buffers are reused for the next frame.
+     */
+    public BinaryBitmap copyBlackMatrix() throws NotFoundException {
+        LuminanceSource source = this.binarizer.getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        byte[] luminance = (byte[]) source.getMatrix().clone();
+        BinaryBitmap copy = new BinaryBitmap(this.binarizer.createBinarizer(new PlanarYUVLuminanceSource(luminance, width, height, 0, 0, width, height, false)));
+        copy.matrix = getBlackMatrix().clone();
+        return copy;
+    }
+
     public boolean isCropSupported() {
         return this.binarizer.getLuminanceSource().isCropSupported();
     }
@@ -0,0 +1,322 @@
+package com.huawei.zxing;
+
+import android.graphics.Rect;
+import android.util.Log;
+import com.huawei.zxing.common.HybridBinarizer;
+import com.huawei.zxing.common.HybridBinarizer.Buffers;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+public final class FrameDecodePipeline {
+    private static final int MIN_FINDER_POINTS = 3;
+    private static final int MIN_ROI_DIMENSION = 80;
+    private static final String TAG = "FrameDecodePipeline";
+    private final Buffers binarizerBuffers = new Buffers();
+    private boolean busy;
+    private final Callback callback;
+    private int droppedFrames;
+    private final FinderBounds finderBounds = new FinderBounds();
+    private int generation;
+    private final Object lock = new Object();
+    private byte[] luminanceBuffer;
+    private final PendingFrame pendingFrame = new PendingFrame();
+    private final ForkJoinPool pool;
+    private final MultiFormatReader reader;
+    private final Rect roi = new Rect();
+    private boolean roiValid;
+    private boolean running;
+    private final FrameStats stats = new FrameStats();
+    private Thread worker;
+
+    public interface Callback {
+        void onFrameDecoded(Result result, FrameStats frameStats);
+    }
+
+    public static final class FrameStats {
+        public long binarizeNanos;
+        public long decodeNanos;
+        public int droppedFrames;
+        public long queueNanos;
+        public boolean roiUsed;
+        public long totalNanos;
+
+        void reset() {
+            this.binarizeNanos = 0;
+            this.decodeNanos = 0;
+            this.droppedFrames = 0;
+            this.queueNanos = 0;
+            this.roiUsed = false;
+            this.totalNanos = 0;
+        }
+    }
+
+    /** Copy of the latest offered frame; the camera reuses its preview buffers. */
+    private static final class PendingFrame {
+        byte[] data;
+        int height;
+        long offerNanos;
+        boolean ready;
+        final Rect rect = new Rect();
+        int width;
+
+        PendingFrame() {
+        }
+    }
+
+    private static final class FinderBounds implements ResultPointCallback {
+        int count;
+        float maxX;
+        float maxY;
+        float minX;
+        float minY;
+
+        FinderBounds() {
+        }
+
+        void reset() {
+            this.count = 0;
+            this.minX = Float.MAX_VALUE;
+            this.minY = Float.MAX_VALUE;
+            this.maxX = -3.4028235E38f;
+            this.maxY = -3.4028235E38f;
+        }
+
+        void add(float x, float y) {
+            this.count++;
+            this.minX = Math.min(this.minX, x);
+            this.minY = Math.min(this.minY, y);
+            this.maxX = Math.max(this.maxX, x);
+            this.maxY = Math.max(this.maxY, y);
+        }
+
+        public void foundPossibleResultPoint(ResultPoint point) {
+            if (point != null) {
+                add(point.getX(), point.getY());
+            }
+        }
+    }
+
+    /**
+     * The pipeline decodes with a reader of its own, since it needs its own result point callback
+     * and keeps the reader busy on the worker thread. With a non-null pool, frames are binarized
+     * and the readers raced on it.
+     */
+    public FrameDecodePipeline(Map<DecodeHintType, ?> hints, ForkJoinPool pool, Callback callback) {
+        this.pool = pool;
+        this.reader = new MultiFormatReader();
+        this.reader.setParallelPool(pool);
+        this.callback = callback;
+        Map<DecodeHintType, Object> pipelineHints = new EnumMap(DecodeHintType.class);
+        if (hints != null) {
+            pipelineHints.putAll(hints);
+        }
+        pipelineHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, this.finderBounds);
+        this.reader.setHints(pipelineHints);
+    }
+
+    public void start() {
+        synchronized (this.lock) {
+            if (this.running) {
+                return;
+            }
+            this.running = true;
+            this.generation++;
+            final int workerGeneration = this.generation;
+            this.worker = new Thread(new Runnable() {
+                public void run() {
+                    FrameDecodePipeline.this.runWorker(workerGeneration);
+                }
+            }, TAG);
+            this.worker.start();
+        }
+    }
+
+    /**
+     * Stops decoding and waits for the worker to finish its current frame, unless called from the
+     * worker itself (e.g. from the callback). A worker of an earlier start() never picks up frames
+     * of a later one.
+     */
+    public void stop() {
+        Thread oldWorker;
+        synchronized (this.lock) {
+            this.running = false;
+            this.pendingFrame.ready = false;
+            this.lock.notifyAll();
+            oldWorker = this.worker;
+            this.worker = null;
+        }
+        if (oldWorker != null && oldWorker != Thread.currentThread()) {
+            try {
+                oldWorker.join();
+            } catch (InterruptedException e) {
+                Log.w(TAG, "interrupted while stopping the worker");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues a copy of the frame, replacing a frame that has not been picked up yet. The caller may
+     * hand data back to the camera as soon as this returns.
+     */
+    public boolean offerFrame(byte[] data, int width, int height, Rect rect) {
+        if (data == null || rect == null) {
+            return false;
+        }
+        synchronized (this.lock) {
+            if (!this.running) {
+                return false;
+            }
+            boolean dropped = this.pendingFrame.ready;
+            if (dropped) {
+                this.droppedFrames++;
+            }
+            if (this.pendingFrame.data == null || this.pendingFrame.data.length != data.length) {
+                this.pendingFrame.data = new byte[data.length];
+            }
+            System.arraycopy(data, 0, this.pendingFrame.data, 0, data.length);
+            this.pendingFrame.ready = true;
+            this.pendingFrame.width = width;
+            this.pendingFrame.height = height;
+            this.pendingFrame.rect.set(rect);
+            this.pendingFrame.offerNanos = System.nanoTime();
+            this.lock.notifyAll();
+            return !dropped && !this.busy;
+        }
+    }
+
+    public void resetRoi() {
+        synchronized (this.lock) {
+            this.roiValid = false;
+        }
+    }
+
+    private void runWorker(int workerGeneration) {
+        Rect rect = new Rect();
+        byte[] frame = null;
+        while (true) {
+            int width;
+            int height;
+            long offerNanos;
+            int dropped;
+            synchronized (this.lock) {
+                if (this.generation == workerGeneration) {
+                    this.busy = false;
+                }
+                while (isCurrentWorker(workerGeneration) && !this.pendingFrame.ready) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Log.w(TAG, "worker interrupted");
+                    }
+                }
+                if (isCurrentWorker(workerGeneration)) {
+                    byte[] free = frame;
+                    frame = this.pendingFrame.data;
+                    this.pendingFrame.data = free;
+                    this.pendingFrame.ready = false;
+                    width = this.pendingFrame.width;
+                    height = this.pendingFrame.height;
+                    rect.set(this.pendingFrame.rect);
+                    offerNanos = this.pendingFrame.offerNanos;
+                    dropped = this.droppedFrames;
+                    this.droppedFrames = 0;
+                    this.busy = true;
+                } else {
+                    return;
+                }
+            }
+            Result result;
+            try {
+                result = decodeFrame(frame, width, height, rect, this.stats);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "failed to decode frame", e);
+                result = null;
+                resetRoi();
+            }
+            this.stats.queueNanos = this.stats.totalNanos > 0 ? (System.nanoTime() - offerNanos) - this.stats.totalNanos : 0;
+            this.stats.droppedFrames = dropped;
+            if (this.callback != null) {
+                this.callback.onFrameDecoded(result, this.stats);
+            }
+        }
+    }
+
+    private boolean isCurrentWorker(int workerGeneration) {
+        return this.running && this.generation == workerGeneration;
+    }
+
+    /** Runs on the worker only; the buffers, the finder bounds and the reader are not shared. */
+    private Result decodeFrame(byte[] data, int width, int height, Rect rect, FrameStats frameStats) {
+        if (data == null || rect == null) {
+            return null;
+        }
+        if (frameStats != null) {
+            frameStats.reset();
+        }
+        long startNanos = System.nanoTime();
+        int left = rect.left;
+        int top = rect.top;
+        int cropWidth = rect.width();
+        int cropHeight = rect.height();
+        boolean roiUsed = false;
+        synchronized (this.lock) {
+            if (this.roiValid && rect.contains(this.roi)) {
+                left = this.roi.left;
+                top = this.roi.top;
+                cropWidth = this.roi.width();
+                cropHeight = this.roi.height();
+                roiUsed = true;
+            }
+        }
+        int area = cropWidth * cropHeight;
+        if (this.luminanceBuffer == null || this.luminanceBuffer.length != area) {
+            this.luminanceBuffer = new byte[area];
+        }
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new PlanarYUVLuminanceSource(data, width, height, left, top, cropWidth, cropHeight, false, this.luminanceBuffer), this.binarizerBuffers, this.pool));
+        this.finderBounds.reset();
+        Result result = null;
+        long binarizedNanos = startNanos;
+        try {
+            bitmap.getBlackMatrix();
+            binarizedNanos = System.nanoTime();
+            result = this.reader.decodeWithState(bitmap);
+        } catch (ReaderException e) {
+            if (binarizedNanos == startNanos) {
+                binarizedNanos = System.nanoTime();
+            }
+        }
+        long endNanos = System.nanoTime();
+        updateRoi(result, rect, left, top);
+        if (frameStats != null) {
+            frameStats.binarizeNanos = binarizedNanos - startNanos;
+            frameStats.decodeNanos = endNanos - binarizedNanos;
+            frameStats.totalNanos = endNanos - startNanos;
+            frameStats.roiUsed = roiUsed;
+        }
+        return result;
+    }
+
+    private void updateRoi(Result result, Rect bounds, int cropLeft, int cropTop) {
+        FinderBounds points = this.finderBounds;
+        if (result != null && result.getResultPoints() != null) {
+            points.reset();
+            for (ResultPoint point : result.getResultPoints()) {
+                if (point != null) {
+                    points.add(point.getX(), point.getY());
+                }
+            }
+        }
+        synchronized (this.lock) {
+            if ((result != null || points.count >= MIN_FINDER_POINTS) && points.count > 0) {
+                int halfSize = ((int) Math.max(points.maxX - points.minX, points.maxY - points.minY)) / 2;
+                int margin = Math.max(halfSize, MIN_ROI_DIMENSION / 2);
+                this.roi.set((((int) points.minX) + cropLeft) - margin, (((int) points.minY) + cropTop) - margin, (((int) points.maxX) + cropLeft) + margin, (((int) points.maxY) + cropTop) + margin);
+                this.roiValid = this.roi.intersect(bounds) && this.roi.width() >= MIN_ROI_DIMENSION && this.roi.height() >= MIN_ROI_DIMENSION;
+            } else {
+                this.roiValid = false;
+            }
+        }
+    }
+}
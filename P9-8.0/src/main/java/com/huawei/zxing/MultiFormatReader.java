@@ -8,17 +8,35 @@ import com.huawei.zxing.common.HybridBinarizer;
 import com.huawei.zxing.datamatrix.DataMatrixReader;
 import com.huawei.zxing.maxicode.MaxiCodeReader;
 import com.huawei.zxing.multi.GenericMultipleBarcodeReader;
+import com.huawei.zxing.multi.ParallelMultipleBarcodeReader;
 import com.huawei.zxing.oned.MultiFormatOneDReader;
 import com.huawei.zxing.pdf417.PDF417Reader;
 import com.huawei.zxing.qrcode.QRCodeReader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class MultiFormatReader implements Reader {
     private Map<DecodeHintType, ?> hints;
+    private ForkJoinPool pool;
+    private Reader[] raceReaders;
+    private CountDownLatch raceStragglers;
     private Reader[] readers;
 
+    public void setParallelPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
     public Result decode(BinaryBitmap image) throws NotFoundException {
         setHints(null);
         return decodeInternal(image);
@@ -60,7 +78,11 @@ public final class MultiFormatReader implements Reader {
         int[] lPixels = new int[(lWidth * lHeight)];
         image.getPixels(lPixels, 0, lWidth, 0, 0, lWidth, lHeight);
         try {
-            return new GenericMultipleBarcodeReader(this).decodeMultiple(new BinaryBitmap(new HybridBinarizer(new RGBLuminanceSource(lWidth, lHeight, lPixels))));
+            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(new RGBLuminanceSource(lWidth, lHeight, lPixels)));
+            if (this.pool != null) {
+                return new ParallelMultipleBarcodeReader(this.hints, this.pool).decodeMultiple(bitmap);
+            }
+            return new GenericMultipleBarcodeReader(this).decodeMultiple(bitmap);
         } catch (NotFoundException e) {
             Log.e("MultiFormateReader", "not found, rawResult=null");
             return null;
@@ -68,7 +90,34 @@ public final class MultiFormatReader implements Reader {
     }
 
     public void setHints(Map<DecodeHintType, ?> hints) {
+        if (this.readers != null && hints == null && this.hints == null) {
+            return;
+        }
         this.hints = hints;
+        this.readers = buildReaders(hints);
+        this.raceReaders = null;
+    }
+
+    /** Keeps the result points a raced reader reports until the race is decided. */
+    private static final class ResultPointRecorder implements ResultPointCallback {
+        private final ArrayList<ResultPoint> points = new ArrayList();
+
+        ResultPointRecorder() {
+        }
+
+        public synchronized void foundPossibleResultPoint(ResultPoint point) {
+            this.points.add(point);
+        }
+
+        synchronized void replay(ResultPointCallback callback) {
+            for (ResultPoint point : this.points) {
+                callback.foundPossibleResultPoint(point);
+            }
+            this.points.clear();
+        }
+    }
+
+    private static Reader[] buildReaders(Map<DecodeHintType, ?> hints) {
         int tryHarder = hints != null ? hints.containsKey(DecodeHintType.TRY_HARDER) : 0;
         Collection formats = hints == null ? null : (Collection) hints.get(DecodeHintType.POSSIBLE_FORMATS);
         Collection<Reader> readers = new ArrayList();
@@ -109,7 +158,7 @@ public final class MultiFormatReader implements Reader {
             readers.add(new MaxiCodeReader());
             readers.add(new MultiFormatOneDReader(hints));
         }
-        this.readers = (Reader[]) readers.toArray(new Reader[readers.size()]);
+        return (Reader[]) readers.toArray(new Reader[readers.size()]);
     }
 
     public void reset() {
@@ -118,9 +167,27 @@ public final class MultiFormatReader implements Reader {
                 reader.reset();
             }
         }
+        awaitRaceStragglers();
+        if (this.raceReaders != null) {
+            for (Reader reader : this.raceReaders) {
+                reader.reset();
+            }
+        }
     }
 
     private Result decodeInternal(BinaryBitmap image) throws NotFoundException {
+        if (this.pool != null && this.readers != null && this.readers.length > 1 && !ForkJoinTask.inForkJoinPool()) {
+            boolean hasBlackMatrix = true;
+            try {
+                image.getBlackMatrix();
+            } catch (NotFoundException e) {
+                hasBlackMatrix = false;
+                Log.w("MultiFormatReader", "no black matrix, decode serially");
+            }
+            if (hasBlackMatrix) {
+                return decodeRacing(image);
+            }
+        }
         if (this.readers != null) {
             Reader[] readerArr = this.readers;
             int i = 0;
@@ -137,4 +204,149 @@ public final class MultiFormatReader implements Reader {
         }
         throw NotFoundException.getNotFoundInstance();
     }
+
+    /**
+     * Races a second set of readers, so the serial path never shares scratch state with a race, and
+     * each reader of the set is used by one task per round. A reader that is already running can't
+     * be stopped, so the next round first waits for the stragglers of the previous one.
+     *
+     * The race decodes a private copy of the image, because the caller may reuse its buffers for
+     * the next frame while stragglers are still reading. Result points are collected per reader and
+     * handed to the caller's callback from this thread once the race is decided: only the winner's
+     * if there is one, otherwise those of every reader that ran to the end. The result of the first
+     * reader in format order that succeeds wins, as in the serial path.
+     */
+    private Result decodeRacing(BinaryBitmap image) throws NotFoundException {
+        awaitRaceStragglers();
+        if (this.raceReaders == null) {
+            this.raceReaders = buildReaders(this.hints);
+        }
+        BinaryBitmap copy = image.copyBlackMatrix();
+        ResultPointCallback callback = this.hints == null ? null : (ResultPointCallback) this.hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+        int count = this.raceReaders.length;
+        final AtomicInteger bestIndex = new AtomicInteger(count);
+        final CountDownLatch stragglers = new CountDownLatch(count);
+        this.raceStragglers = stragglers;
+        final ResultPointRecorder[] recorders = new ResultPointRecorder[count];
+        boolean[] done = new boolean[count];
+        Result[] results = new Result[count];
+        CompletionService<Result> completion = new ExecutorCompletionService(this.pool);
+        ArrayList<Future<Result>> futures = new ArrayList(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final Reader reader = this.raceReaders[i];
+            final BinaryBitmap view = copy.shareBlackMatrix();
+            final Map<DecodeHintType, Object> raceHints = new EnumMap(DecodeHintType.class);
+            if (this.hints != null) {
+                raceHints.putAll(this.hints);
+            }
+            if (callback != null) {
+                recorders[i] = new ResultPointRecorder();
+                raceHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, recorders[i]);
+            }
+            try {
+                futures.add(completion.submit(new Callable<Result>() {
+                    public Result call() throws ReaderException {
+                        try {
+                            if (index > bestIndex.get()) {
+                                return null;
+                            }
+                            Result result = reader.decode(view, raceHints);
+                            int best;
+                            do {
+                                best = bestIndex.get();
+                                if (index >= best) {
+                                    break;
+                                }
+                            } while (!bestIndex.compareAndSet(best, index));
+                            return result;
+                        } finally {
+                            stragglers.countDown();
+                        }
+                    }
+                }));
+            } catch (RuntimeException e) {
+                stragglers.countDown();
+                futures.add(null);
+                done[i] = true;
+                Log.e("MultiFormatReader", "failed to submit reader: " + e);
+            }
+        }
+        int winner = -1;
+        int pending = count;
+        for (boolean submitFailed : done) {
+            if (submitFailed) {
+                pending--;
+            }
+        }
+        while (pending > 0 && winner < 0) {
+            try {
+                Future<Result> future = completion.take();
+                int index = futures.indexOf(future);
+                pending--;
+                done[index] = true;
+                try {
+                    results[index] = (Result) future.get();
+                } catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof ReaderException)) {
+                        Log.e("MultiFormatReader", "reader failed: " + e.getCause());
+                    }
+                }
+                winner = findWinner(results, done);
+            } catch (InterruptedException e2) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (winner < 0) {
+            winner = findWinner(results, done);
+        }
+        bestIndex.set(-1);
+        if (callback != null) {
+            for (int i = 0; i < count; i++) {
+                if ((winner < 0 && done[i]) || i == winner) {
+                    recorders[i].replay(callback);
+                }
+            }
+        }
+        if (winner >= 0) {
+            return results[winner];
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * Returns the first reader in format order that found a result, once every reader before it is
+     * done, or -1 if that isn't known yet.
+     */
+    private static int findWinner(Result[] results, boolean[] done) {
+        for (int i = 0; i < results.length; i++) {
+            if (!done[i]) {
+                return -1;
+            }
+            if (results[i] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void awaitRaceStragglers() {
+        CountDownLatch stragglers = this.raceStragglers;
+        if (stragglers != null) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    stragglers.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            this.raceStragglers = null;
+        }
+    }
 }
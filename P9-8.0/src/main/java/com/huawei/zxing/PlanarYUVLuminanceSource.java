@@ -7,12 +7,17 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     private final int dataHeight;
     private final int dataWidth;
     private final int left;
+    private final byte[] matrixBuffer;
     private final int recHeight;
     private final int recWidth;
     private final int top;
     private final byte[] yuvData;
 
     public PlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top, int width, int height, boolean reverseHorizontal) {
+        this(yuvData, dataWidth, dataHeight, left, top, width, height, reverseHorizontal, null);
+    }
+
+    public PlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight, int left, int top, int width, int height, boolean reverseHorizontal, byte[] matrixBuffer) {
         super(width, height);
         if (left + width > dataWidth || top + height > dataHeight) {
             throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
@@ -22,6 +27,10 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
         this.dataHeight = dataHeight;
         this.left = left;
         this.top = top;
+        if (matrixBuffer == null || matrixBuffer.length != width * height) {
+            matrixBuffer = null;
+        }
+        this.matrixBuffer = matrixBuffer;
         if (reverseHorizontal) {
             reverseHorizontal(width, height);
         }
@@ -48,7 +57,7 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
             return this.yuvData;
         }
         int area = width * height;
-        byte[] matrix = new byte[area];
+        byte[] matrix = this.matrixBuffer != null ? this.matrixBuffer : new byte[area];
         int inputOffset = (this.top * this.dataWidth) + this.left;
         if (width == this.dataWidth) {
             System.arraycopy(this.yuvData, inputOffset, matrix, 0, area);
@@ -20,6 +20,13 @@ public final class BitMatrix {
         this.bits = new int[(this.rowSize * height)];
     }
 
+    private BitMatrix(int width, int height, int rowSize, int[] bits) {
+        this.width = width;
+        this.height = height;
+        this.rowSize = rowSize;
+        this.bits = bits;
+    }
+
     public boolean get(int x, int y) {
         if (((this.bits[(this.rowSize * y) + (x >> 5)] >>> (x & 31)) & 1) != 0) {
             return true;
@@ -33,6 +40,19 @@ public final class BitMatrix {
         iArr[offset] = iArr[offset] | (1 << (x & 31));
     }
 
+    void orBits(int x, int y, int pattern) {
+        int offset = (this.rowSize * y) + (x >> 5);
+        int shift = x & 31;
+        int[] iArr = this.bits;
+        iArr[offset] = iArr[offset] | (pattern << shift);
+        if (shift != 0) {
+            int carry = pattern >>> (32 - shift);
+            if (carry != 0) {
+                iArr[offset + 1] = iArr[offset + 1] | carry;
+            }
+        }
+    }
+
     public void flip(int x, int y) {
         int offset = (this.rowSize * y) + (x >> 5);
         int[] iArr = this.bits;
@@ -72,10 +92,7 @@ public final class BitMatrix {
         if (row == null || row.getSize() < this.width) {
             row = new BitArray(this.width);
         }
-        int offset = y * this.rowSize;
-        for (int x = 0; x < this.rowSize; x++) {
-            row.setBulk(x << 5, this.bits[offset + x]);
-        }
+        System.arraycopy(this.bits, y * this.rowSize, row.getBitArray(), 0, this.rowSize);
         return row;
     }
 
@@ -191,6 +208,10 @@ public final class BitMatrix {
         return hash;
     }
 
+    public BitMatrix clone() {
+        return new BitMatrix(this.width, this.height, this.rowSize, (int[]) this.bits.clone());
+    }
+
     public String toString() {
         StringBuilder result = new StringBuilder(this.height * (this.width + 1));
         for (int y = 0; y < this.height; y++) {
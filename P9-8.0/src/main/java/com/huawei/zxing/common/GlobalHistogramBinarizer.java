@@ -33,16 +33,23 @@ public class GlobalHistogramBinarizer extends Binarizer {
             localBuckets[i] = localBuckets[i] + 1;
         }
         int blackPoint = estimateBlackPoint(localBuckets);
+        int[] rowBits = row.getBitArray();
+        int word = 0;
         int left = localLuminances[0] & 255;
         int center = localLuminances[1] & 255;
         for (x = 1; x < width - 1; x++) {
             int right = localLuminances[x + 1] & 255;
-            if (((((center << 2) - left) - right) >> 1) < blackPoint) {
-                row.set(x);
+            word |= ((((((center << 2) - left) - right) >> 1) - blackPoint) >>> 31) << (x & 31);
+            if ((x & 31) == 31) {
+                rowBits[x >> 5] = word;
+                word = 0;
             }
             left = center;
             center = right;
         }
+        if (word != 0) {
+            rowBits[(width - 2) >> 5] = word;
+        }
         return row;
     }
 
@@ -53,7 +60,7 @@ public class GlobalHistogramBinarizer extends Binarizer {
         LuminanceSource source = getLuminanceSource();
         int width = source.getWidth();
         int height = source.getHeight();
-        BitMatrix matrix = new BitMatrix(width, height);
+        BitMatrix matrix = obtainMatrix(width, height);
         initArrays(width);
         int[] localBuckets = this.buckets;
         for (y = 1; y < 5; y++) {
@@ -68,15 +75,24 @@ public class GlobalHistogramBinarizer extends Binarizer {
         localLuminances = source.getMatrix();
         for (y = 0; y < height; y++) {
             int offset = y * width;
-            for (x = 0; x < width; x++) {
-                if ((localLuminances[offset + x] & 255) < blackPoint) {
-                    matrix.set(x, y);
+            for (x = 0; x < width; x += 32) {
+                int count = Math.min(32, width - x);
+                int word = 0;
+                for (int bit = 0; bit < count; bit++) {
+                    word |= (((localLuminances[(offset + x) + bit] & 255) - blackPoint) >>> 31) << bit;
+                }
+                if (word != 0) {
+                    matrix.orBits(x, y, word);
                 }
             }
         }
         return matrix;
     }
 
+    protected BitMatrix obtainMatrix(int width, int height) {
+        return new BitMatrix(width, height);
+    }
+
     public Binarizer createBinarizer(LuminanceSource source) {
         return new GlobalHistogramBinarizer(source);
     }
@@ -4,17 +4,60 @@ import com.huawei.zxing.Binarizer;
 import com.huawei.zxing.LuminanceSource;
 import com.huawei.zxing.NotFoundException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public final class HybridBinarizer extends GlobalHistogramBinarizer {
     private static final int BLOCK_SIZE = 8;
     private static final int BLOCK_SIZE_MASK = 7;
     private static final int BLOCK_SIZE_POWER = 3;
+    private static final long BYTE_LANES = 71777214294589695L;
     private static final int MINIMUM_DIMENSION = 40;
     private static final int MIN_DYNAMIC_RANGE = 24;
+    private static final int PARALLEL_MIN_PIXELS = 2097152;
+    private static final long SHORT_LANES = 281470681808895L;
+    private final Buffers buffers;
     private BitMatrix matrix;
+    private final ForkJoinPool pool;
+
+    public static final class Buffers {
+        private int[][] blackPoints;
+        private BitMatrix matrix;
+
+        int[][] obtainBlackPoints(int subWidth, int subHeight) {
+            if (this.blackPoints == null || this.blackPoints.length != subHeight || this.blackPoints[0].length != subWidth) {
+                this.blackPoints = (int[][]) Array.newInstance(Integer.TYPE, new int[]{subHeight, subWidth});
+            }
+            return this.blackPoints;
+        }
+
+        BitMatrix obtainMatrix(int width, int height) {
+            if (this.matrix == null || this.matrix.getWidth() != width || this.matrix.getHeight() != height) {
+                this.matrix = new BitMatrix(width, height);
+            } else {
+                this.matrix.clear();
+            }
+            return this.matrix;
+        }
+    }
 
     public HybridBinarizer(LuminanceSource source) {
+        this(source, null, null);
+    }
+
+    public HybridBinarizer(LuminanceSource source, Buffers buffers) {
+        this(source, buffers, null);
+    }
+
+    public HybridBinarizer(LuminanceSource source, Buffers buffers, ForkJoinPool pool) {
         super(source);
+        this.buffers = buffers;
+        this.pool = pool;
     }
 
     public BitMatrix getBlackMatrix() throws NotFoundException {
@@ -36,25 +79,77 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
             if ((height & 7) != 0) {
                 subHeight++;
             }
-            int[][] blackPoints = calculateBlackPoints(luminances, subWidth, subHeight, width, height);
-            BitMatrix newMatrix = new BitMatrix(width, height);
-            calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
+            int[][] blackPoints = this.buffers != null ? this.buffers.obtainBlackPoints(subWidth, subHeight) : (int[][]) Array.newInstance(Integer.TYPE, new int[]{subHeight, subWidth});
+            BitMatrix newMatrix = obtainMatrix(width, height);
+            if (this.pool == null || width * height < PARALLEL_MIN_PIXELS || subHeight < 2) {
+                calculateBlockStats(luminances, 0, subHeight, subWidth, width, height, blackPoints);
+                resolveBlackPoints(subWidth, subHeight, blackPoints);
+                calculateThresholdForBlock(luminances, 0, subHeight, subWidth, subHeight, width, height, blackPoints, newMatrix);
+            } else {
+                binarizeInBands(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
+            }
             this.matrix = newMatrix;
         }
         return this.matrix;
     }
 
+    protected BitMatrix obtainMatrix(int width, int height) {
+        return this.buffers != null ? this.buffers.obtainMatrix(width, height) : new BitMatrix(width, height);
+    }
+
     public Binarizer createBinarizer(LuminanceSource source) {
-        return new HybridBinarizer(source);
+        return new HybridBinarizer(source, null, this.pool);
     }
 
-    private static void calculateThresholdForBlock(byte[] luminances, int subWidth, int subHeight, int width, int height, int[][] blackPoints, BitMatrix matrix) {
-        for (int y = 0; y < subHeight; y++) {
+    private void binarizeInBands(final byte[] luminances, final int subWidth, final int subHeight, final int width, final int height, final int[][] blackPoints, final BitMatrix matrix) throws NotFoundException {
+        int bandCount = Math.min(subHeight - 1, this.pool.getParallelism() * 2);
+        final int bandRows = ((subHeight - 1) + (bandCount - 1)) / bandCount;
+        List<Callable<Void>> statsTasks = new ArrayList(bandCount);
+        List<Callable<Void>> thresholdTasks = new ArrayList(bandCount);
+        for (int start = 0; start < subHeight - 1; start += bandRows) {
+            final int bandStart = start;
+            final int bandEnd = Math.min(start + bandRows, subHeight - 1);
+            statsTasks.add(new Callable<Void>() {
+                public Void call() {
+                    HybridBinarizer.calculateBlockStats(luminances, bandStart, bandEnd, subWidth, width, height, blackPoints);
+                    return null;
+                }
+            });
+            thresholdTasks.add(new Callable<Void>() {
+                public Void call() {
+                    HybridBinarizer.calculateThresholdForBlock(luminances, bandStart, bandEnd, subWidth, subHeight, width, height, blackPoints, matrix);
+                    return null;
+                }
+            });
+        }
+        calculateBlockStats(luminances, subHeight - 1, subHeight, subWidth, width, height, blackPoints);
+        invokeBands(statsTasks);
+        resolveBlackPoints(subWidth, subHeight, blackPoints);
+        invokeBands(thresholdTasks);
+        calculateThresholdForBlock(luminances, subHeight - 1, subHeight, subWidth, subHeight, width, height, blackPoints, matrix);
+    }
+
+    private void invokeBands(List<Callable<Void>> tasks) throws NotFoundException {
+        try {
+            for (Future<Void> future : this.pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw NotFoundException.getNotFoundInstance();
+        } catch (ExecutionException e2) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+    }
+
+    private static void calculateThresholdForBlock(byte[] luminances, int startY, int endY, int subWidth, int subHeight, int width, int height, int[][] blackPoints, BitMatrix matrix) {
+        for (int y = startY; y < endY; y++) {
             int yoffset = y << 3;
             int maxYOffset = height - 8;
             if (yoffset > maxYOffset) {
                 yoffset = maxYOffset;
             }
+            int top = cap(y, 2, subHeight - 3);
             for (int x = 0; x < subWidth; x++) {
                 int xoffset = x << 3;
                 int maxXOffset = width - 8;
@@ -62,7 +157,6 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
                     xoffset = maxXOffset;
                 }
                 int left = cap(x, 2, subWidth - 3);
-                int top = cap(y, 2, subHeight - 3);
                 int sum = 0;
                 for (int z = -2; z <= 2; z++) {
                     int[] blackRow = blackPoints[top + z];
@@ -84,26 +178,34 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
         int y = 0;
         int offset = (yoffset * stride) + xoffset;
         while (y < 8) {
-            for (int x = 0; x < 8; x++) {
-                if ((luminances[offset + x] & 255) <= threshold) {
-                    matrix.set(xoffset + x, yoffset + y);
-                }
+            int pattern = ((((threshold - (luminances[offset] & 255)) >>> 31) ^ 1) | ((((threshold - (luminances[offset + 1] & 255)) >>> 31) ^ 1) << 1)) | ((((threshold - (luminances[offset + 2] & 255)) >>> 31) ^ 1) << 2);
+            pattern = (((pattern | ((((threshold - (luminances[offset + 3] & 255)) >>> 31) ^ 1) << 3)) | ((((threshold - (luminances[offset + 4] & 255)) >>> 31) ^ 1) << 4)) | ((((threshold - (luminances[offset + 5] & 255)) >>> 31) ^ 1) << 5)) | ((((threshold - (luminances[offset + 6] & 255)) >>> 31) ^ 1) << 6);
+            pattern |= (((threshold - (luminances[offset + 7] & 255)) >>> 31) ^ 1) << 7;
+            if (pattern != 0) {
+                matrix.orBits(xoffset, yoffset + y, pattern);
             }
             y++;
             offset += stride;
         }
     }
 
-    private static int[][] calculateBlackPoints(byte[] luminances, int subWidth, int subHeight, int width, int height) {
-        int[][] blackPoints = (int[][]) Array.newInstance(Integer.TYPE, new int[]{subHeight, subWidth});
-        for (int y = 0; y < subHeight; y++) {
+    private static int sumRow(ByteBuffer words, int offset) {
+        long word = words.getLong(offset);
+        word = (word & BYTE_LANES) + ((word >>> 8) & BYTE_LANES);
+        word = (word & SHORT_LANES) + ((word >>> 16) & SHORT_LANES);
+        return (int) ((4294967295L & word) + (word >>> 32));
+    }
+
+    private static void calculateBlockStats(byte[] luminances, int startY, int endY, int subWidth, int width, int height, int[][] blackPoints) {
+        ByteBuffer words = ByteBuffer.wrap(luminances);
+        for (int y = startY; y < endY; y++) {
             int yoffset = y << 3;
             int maxYOffset = height - 8;
             if (yoffset > maxYOffset) {
                 yoffset = maxYOffset;
             }
-            int x = 0;
-            while (x < subWidth) {
+            int[] blackRow = blackPoints[y];
+            for (int x = 0; x < subWidth; x++) {
                 int xoffset = x << 3;
                 int maxXOffset = width - 8;
                 if (xoffset > maxXOffset) {
@@ -115,46 +217,44 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
                 int yy = 0;
                 int offset = (yoffset * width) + xoffset;
                 while (yy < 8) {
-                    int xx;
-                    for (xx = 0; xx < 8; xx++) {
+                    for (int xx = 0; xx < 8; xx++) {
                         int pixel = luminances[offset + xx] & 255;
                         sum += pixel;
-                        if (pixel < min) {
-                            min = pixel;
-                        }
-                        if (pixel > max) {
-                            max = pixel;
-                        }
+                        min = Math.min(min, pixel);
+                        max = Math.max(max, pixel);
                     }
+                    yy++;
+                    offset += width;
                     if (max - min > MIN_DYNAMIC_RANGE) {
-                        while (true) {
+                        while (yy < 8) {
+                            sum += sumRow(words, offset);
                             yy++;
                             offset += width;
-                            if (yy >= 8) {
-                                break;
-                            }
-                            for (xx = 0; xx < 8; xx++) {
-                                sum += luminances[offset + xx] & 255;
-                            }
                         }
                     }
-                    yy++;
-                    offset += width;
                 }
-                int average = sum >> 6;
-                if (max - min <= MIN_DYNAMIC_RANGE) {
-                    average = min >> 1;
+                blackRow[x] = max - min > MIN_DYNAMIC_RANGE ? sum >> 6 : -1 - min;
+            }
+        }
+    }
+
+    private static void resolveBlackPoints(int subWidth, int subHeight, int[][] blackPoints) {
+        for (int y = 0; y < subHeight; y++) {
+            int[] blackRow = blackPoints[y];
+            for (int x = 0; x < subWidth; x++) {
+                int stats = blackRow[x];
+                if (stats < 0) {
+                    int min = -1 - stats;
+                    int average = min >> 1;
                     if (y > 0 && x > 0) {
-                        int averageNeighborBlackPoint = ((blackPoints[y - 1][x] + (blackPoints[y][x - 1] * 2)) + blackPoints[y - 1][x - 1]) >> 2;
+                        int averageNeighborBlackPoint = ((blackPoints[y - 1][x] + (blackRow[x - 1] * 2)) + blackPoints[y - 1][x - 1]) >> 2;
                         if (min < averageNeighborBlackPoint) {
                             average = averageNeighborBlackPoint;
                         }
                     }
+                    blackRow[x] = average;
                 }
-                blackPoints[y][x] = average;
-                x++;
             }
         }
-        return blackPoints;
     }
 }
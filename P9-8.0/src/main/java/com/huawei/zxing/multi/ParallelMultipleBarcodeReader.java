@@ -0,0 +1,153 @@
+package com.huawei.zxing.multi;
+
+import com.huawei.zxing.BinaryBitmap;
+import com.huawei.zxing.DecodeHintType;
+import com.huawei.zxing.MultiFormatReader;
+import com.huawei.zxing.NotFoundException;
+import com.huawei.zxing.ReaderException;
+import com.huawei.zxing.Result;
+import com.huawei.zxing.ResultPoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class ParallelMultipleBarcodeReader implements MultipleBarcodeReader {
+    private static final int MAX_DEPTH = 4;
+    private static final int MIN_DIMENSION_TO_RECUR = 100;
+    private final Map<DecodeHintType, ?> hints;
+    private final ForkJoinPool pool;
+
+    private static final class DecodeContext {
+        final Map<DecodeHintType, ?> hints;
+        final ThreadLocal<MultiFormatReader> readers = new ThreadLocal<MultiFormatReader>() {
+            protected MultiFormatReader initialValue() {
+                MultiFormatReader reader = new MultiFormatReader();
+                reader.setHints(DecodeContext.this.hints);
+                return reader;
+            }
+        };
+        final List<Result> results = new ArrayList();
+
+        DecodeContext(Map<DecodeHintType, ?> hints) {
+            this.hints = hints;
+        }
+
+        void addResult(Result result, int xOffset, int yOffset) {
+            synchronized (this.results) {
+                for (Result existingResult : this.results) {
+                    if (existingResult.getText().equals(result.getText())) {
+                        return;
+                    }
+                }
+                this.results.add(translateResultPoints(result, xOffset, yOffset));
+            }
+        }
+    }
+
+    private static final class RegionTask extends RecursiveAction {
+        private final DecodeContext context;
+        private final int currentDepth;
+        private final BinaryBitmap image;
+        private final int xOffset;
+        private final int yOffset;
+
+        RegionTask(DecodeContext context, BinaryBitmap image, int xOffset, int yOffset, int currentDepth) {
+            this.context = context;
+            this.image = image;
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
+            this.currentDepth = currentDepth;
+        }
+
+        protected void compute() {
+            if (this.currentDepth <= MAX_DEPTH) {
+                try {
+                    Result result = ((MultiFormatReader) this.context.readers.get()).decodeWithState(this.image);
+                    this.context.addResult(result, this.xOffset, this.yOffset);
+                    ResultPoint[] resultPoints = result.getResultPoints();
+                    if (resultPoints != null && resultPoints.length != 0) {
+                        forkSubRegions(resultPoints);
+                    }
+                } catch (ReaderException e) {
+                }
+            }
+        }
+
+        private void forkSubRegions(ResultPoint[] resultPoints) {
+            int width = this.image.getWidth();
+            int height = this.image.getHeight();
+            float minX = (float) width;
+            float minY = (float) height;
+            float maxX = 0.0f;
+            float maxY = 0.0f;
+            for (ResultPoint point : resultPoints) {
+                float x = point.getX();
+                float y = point.getY();
+                if (x < minX) {
+                    minX = x;
+                }
+                if (y < minY) {
+                    minY = y;
+                }
+                if (x > maxX) {
+                    maxX = x;
+                }
+                if (y > maxY) {
+                    maxY = y;
+                }
+            }
+            List<RegionTask> tasks = new ArrayList(4);
+            int depth = this.currentDepth + 1;
+            if (minX > 100.0f) {
+                tasks.add(new RegionTask(this.context, this.image.crop(0, 0, (int) minX, height), this.xOffset, this.yOffset, depth));
+            }
+            if (minY > 100.0f) {
+                tasks.add(new RegionTask(this.context, this.image.crop(0, 0, width, (int) minY), this.xOffset, this.yOffset, depth));
+            }
+            if (maxX < ((float) (width - 100))) {
+                tasks.add(new RegionTask(this.context, this.image.crop((int) maxX, 0, width - ((int) maxX), height), this.xOffset + ((int) maxX), this.yOffset, depth));
+            }
+            if (maxY < ((float) (height - 100))) {
+                tasks.add(new RegionTask(this.context, this.image.crop(0, (int) maxY, width, height - ((int) maxY)), this.xOffset, this.yOffset + ((int) maxY), depth));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    public ParallelMultipleBarcodeReader(Map<DecodeHintType, ?> hints, ForkJoinPool pool) {
+        this.hints = hints;
+        this.pool = pool;
+    }
+
+    public Result[] decodeMultiple(BinaryBitmap image) throws NotFoundException {
+        return decodeMultiple(image, this.hints);
+    }
+
+    public Result[] decodeMultiple(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+        DecodeContext context = new DecodeContext(hints);
+        this.pool.invoke(new RegionTask(context, image, 0, 0, 0));
+        synchronized (context.results) {
+            if (!context.results.isEmpty()) {
+                return (Result[]) context.results.toArray(new Result[context.results.size()]);
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    private static Result translateResultPoints(Result result, int xOffset, int yOffset) {
+        ResultPoint[] oldResultPoints = result.getResultPoints();
+        if (oldResultPoints == null) {
+            return result;
+        }
+        ResultPoint[] newResultPoints = new ResultPoint[oldResultPoints.length];
+        for (int i = 0; i < oldResultPoints.length; i++) {
+            ResultPoint oldPoint = oldResultPoints[i];
+            newResultPoints[i] = new ResultPoint(oldPoint.getX() + ((float) xOffset), oldPoint.getY() + ((float) yOffset));
+        }
+        Result newResult = new Result(result.getText(), result.getRawBytes(), newResultPoints, result.getBarcodeFormat());
+        newResult.putAllMetadata(result.getResultMetadata());
+        return newResult;
+    }
+}
@@ -33,6 +33,7 @@ public final class Detector {
         BitMatrix bitMatrix = image.getBlackMatrix();
         List<ResultPoint[]> barcodeCoordinates = detect(multiple, bitMatrix);
         if (barcodeCoordinates.isEmpty()) {
+            bitMatrix = bitMatrix.clone();
             rotate180(bitMatrix);
             barcodeCoordinates = detect(multiple, bitMatrix);
         }
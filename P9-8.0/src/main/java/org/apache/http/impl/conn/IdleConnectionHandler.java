@@ -1,9 +1,11 @@
 package org.apache.http.impl.conn;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -11,14 +13,30 @@ import org.apache.http.HttpConnection;
 
 @Deprecated
 public class IdleConnectionHandler {
-    private final Map<HttpConnection, TimeValues> connectionToTimes = new HashMap();
+    private final Map<HttpConnection, TimeValues> connectionToTimes = new LinkedHashMap();
+    private final TreeSet<TimeValues> expiryOrder = new TreeSet(new Comparator<TimeValues>() {
+        public int compare(TimeValues lhs, TimeValues rhs) {
+            if (lhs.timeExpires != rhs.timeExpires) {
+                return lhs.timeExpires < rhs.timeExpires ? -1 : 1;
+            }
+            if (lhs.sequence != rhs.sequence) {
+                return lhs.sequence < rhs.sequence ? -1 : 1;
+            }
+            return 0;
+        }
+    });
     private final Log log = LogFactory.getLog(getClass());
+    private long sequence;
 
     private static class TimeValues {
+        private final HttpConnection connection;
+        private final long sequence;
         private final long timeAdded;
         private final long timeExpires;
 
-        TimeValues(long now, long validDuration, TimeUnit validUnit) {
+        TimeValues(HttpConnection connection, long sequence, long now, long validDuration, TimeUnit validUnit) {
+            this.connection = connection;
+            this.sequence = sequence;
             this.timeAdded = now;
             if (validDuration > 0) {
                 this.timeExpires = validUnit.toMillis(validDuration) + now;
@@ -33,7 +51,17 @@ public class IdleConnectionHandler {
         if (this.log.isDebugEnabled()) {
             this.log.debug("Adding connection at: " + timeAdded);
         }
-        this.connectionToTimes.put(connection, new TimeValues(timeAdded.longValue(), validDuration, unit));
+        TimeValues old = (TimeValues) this.connectionToTimes.remove(connection);
+        if (old != null) {
+            this.expiryOrder.remove(old);
+        }
+        long j = this.sequence;
+        this.sequence = j + 1;
+        TimeValues times = new TimeValues(connection, j, timeAdded.longValue(), validDuration, unit);
+        this.connectionToTimes.put(connection, times);
+        if (times.timeExpires != Long.MAX_VALUE) {
+            this.expiryOrder.add(times);
+        }
     }
 
     public boolean remove(HttpConnection connection) {
@@ -43,6 +71,7 @@ public class IdleConnectionHandler {
             this.log.warn("Removing a connection that never existed!");
             return true;
         }
+        this.expiryOrder.remove(times);
         if (System.currentTimeMillis() > times.timeExpires) {
             z = false;
         }
@@ -51,51 +80,61 @@ public class IdleConnectionHandler {
 
     public void removeAll() {
         this.connectionToTimes.clear();
+        this.expiryOrder.clear();
     }
 
+    /**
+     * Connections are kept in the order they were added, so the scan stops at the first one that
+     * has not been idle for idleTime.
+     */
     public void closeIdleConnections(long idleTime) {
         long idleTimeout = System.currentTimeMillis() - idleTime;
         if (this.log.isDebugEnabled()) {
             this.log.debug("Checking for connections, idleTimeout: " + idleTimeout);
         }
-        Iterator<HttpConnection> connectionIter = this.connectionToTimes.keySet().iterator();
-        while (connectionIter.hasNext()) {
-            HttpConnection conn = (HttpConnection) connectionIter.next();
-            Long connectionTime = Long.valueOf(((TimeValues) this.connectionToTimes.get(conn)).timeAdded);
-            if (connectionTime.longValue() <= idleTimeout) {
-                if (this.log.isDebugEnabled()) {
-                    this.log.debug("Closing connection, connection time: " + connectionTime);
-                }
-                connectionIter.remove();
-                try {
-                    conn.close();
-                } catch (IOException ex) {
-                    this.log.debug("I/O error closing connection", ex);
-                }
+        Iterator<TimeValues> timesIter = this.connectionToTimes.values().iterator();
+        while (timesIter.hasNext()) {
+            TimeValues times = (TimeValues) timesIter.next();
+            if (times.timeAdded > idleTimeout) {
+                break;
             }
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Closing connection, connection time: " + times.timeAdded);
+            }
+            timesIter.remove();
+            this.expiryOrder.remove(times);
+            closeConnection(times.connection);
         }
     }
 
+    /**
+     * Only connections with an expiry time are kept in expiry order, so the scan stops at the
+     * first one that is still valid.
+     */
     public void closeExpiredConnections() {
         long now = System.currentTimeMillis();
         if (this.log.isDebugEnabled()) {
             this.log.debug("Checking for expired connections, now: " + now);
         }
-        Iterator<HttpConnection> connectionIter = this.connectionToTimes.keySet().iterator();
-        while (connectionIter.hasNext()) {
-            HttpConnection conn = (HttpConnection) connectionIter.next();
-            TimeValues times = (TimeValues) this.connectionToTimes.get(conn);
-            if (times.timeExpires <= now) {
-                if (this.log.isDebugEnabled()) {
-                    this.log.debug("Closing connection, expired @: " + times.timeExpires);
-                }
-                connectionIter.remove();
-                try {
-                    conn.close();
-                } catch (IOException ex) {
-                    this.log.debug("I/O error closing connection", ex);
-                }
+        while (!this.expiryOrder.isEmpty()) {
+            TimeValues times = (TimeValues) this.expiryOrder.first();
+            if (times.timeExpires > now) {
+                break;
+            }
+            if (this.log.isDebugEnabled()) {
+                this.log.debug("Closing connection, expired @: " + times.timeExpires);
             }
+            this.expiryOrder.pollFirst();
+            this.connectionToTimes.remove(times.connection);
+            closeConnection(times.connection);
+        }
+    }
+
+    private void closeConnection(HttpConnection conn) {
+        try {
+            conn.close();
+        } catch (IOException ex) {
+            this.log.debug("I/O error closing connection", ex);
         }
     }
 }
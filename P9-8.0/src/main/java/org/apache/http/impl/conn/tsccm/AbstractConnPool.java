@@ -72,8 +72,7 @@ public abstract class AbstractConnPool implements RefQueueHandler {
                 }
                 handleLostEntry(route);
             }
-            this.poolLock.unlock();
-        } catch (Throwable th) {
+        } finally {
             this.poolLock.unlock();
         }
     }
@@ -117,7 +116,6 @@ public abstract class AbstractConnPool implements RefQueueHandler {
                 }
                 this.idleConnHandler.removeAll();
                 this.isShutDown = true;
-                this.poolLock.unlock();
             }
         } finally {
             this.poolLock.unlock();
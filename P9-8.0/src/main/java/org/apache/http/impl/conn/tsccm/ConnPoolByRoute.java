@@ -20,11 +20,16 @@ import org.apache.http.params.HttpParams;
 @Deprecated
 public class ConnPoolByRoute extends AbstractConnPool {
     private final ConnPerRoute connPerRoute;
+    private long evictionCount;
     protected Queue<BasicPoolEntry> freeConnections;
+    private long leaseCount;
     private final Log log = LogFactory.getLog(getClass());
     protected final int maxTotalConnections;
     protected final ClientConnectionOperator operator;
+    private long reuseCount;
     protected final Map<HttpRoute, RouteSpecificPool> routeToPool;
+    private long waitCount;
+    private long waitMillis;
     protected Queue<WaitingThread> waitingThreads;
 
     public ConnPoolByRoute(ClientConnectionOperator operator, HttpParams params) {
@@ -67,9 +72,8 @@ public class ConnPoolByRoute extends AbstractConnPool {
                 rospl = newRouteSpecificPool(route);
                 this.routeToPool.put(route, rospl);
             }
-            this.poolLock.unlock();
             return rospl;
-        } catch (Throwable th) {
+        } finally {
             this.poolLock.unlock();
         }
     }
@@ -82,9 +86,8 @@ public class ConnPoolByRoute extends AbstractConnPool {
             if (rospl != null) {
                 i = rospl.getEntryCount();
             }
-            this.poolLock.unlock();
             return i;
-        } catch (Throwable th) {
+        } finally {
             this.poolLock.unlock();
         }
     }
@@ -113,12 +116,11 @@ public class ConnPoolByRoute extends AbstractConnPool {
             date = new Date(System.currentTimeMillis() + tunit.toMillis(timeout));
         }
         BasicPoolEntry entry = null;
+        long waitStart = 0;
         this.poolLock.lock();
-        RouteSpecificPool rospl;
-        WaitingThread waitingThread;
         try {
-            rospl = getRoutePool(route, true);
-            waitingThread = null;
+            RouteSpecificPool rospl = getRoutePool(route, true);
+            WaitingThread waitingThread = null;
             while (entry == null) {
                 if (this.isShutDown) {
                     throw new IllegalStateException("Connection pool shut down.");
@@ -127,9 +129,11 @@ public class ConnPoolByRoute extends AbstractConnPool {
                     this.log.debug("Total connections kept alive: " + this.freeConnections.size());
                     this.log.debug("Total issued connections: " + this.issuedConnections.size());
                     this.log.debug("Total allocated connection: " + this.numConnections + " out of " + this.maxTotalConnections);
+                    this.log.debug(getStatistics());
                 }
                 entry = getFreeEntry(rospl, state);
                 if (entry != null) {
+                    this.reuseCount++;
                     break;
                 }
                 boolean hasCapacity = rospl.getCapacity() > 0;
@@ -138,30 +142,38 @@ public class ConnPoolByRoute extends AbstractConnPool {
                 }
                 if (hasCapacity && this.numConnections < this.maxTotalConnections) {
                     entry = createEntry(rospl, this.operator);
-                } else if (!hasCapacity || (this.freeConnections.isEmpty() ^ 1) == 0) {
+                } else if (!hasCapacity || this.freeConnections.isEmpty()) {
                     if (this.log.isDebugEnabled()) {
                         this.log.debug("Need to wait for connection [" + route + "][" + state + "]");
                     }
                     if (waitingThread == null) {
                         waitingThread = newWaitingThread(this.poolLock.newCondition(), rospl);
                         aborter.setWaitingThread(waitingThread);
+                        waitStart = System.currentTimeMillis();
+                        this.waitCount++;
                     }
-                    rospl.queueThread(waitingThread);
-                    this.waitingThreads.add(waitingThread);
-                    boolean success = waitingThread.await(date);
-                    rospl.removeThread(waitingThread);
-                    this.waitingThreads.remove(waitingThread);
-                    if (!(success || date == null || date.getTime() > System.currentTimeMillis())) {
-                        throw new ConnectionPoolTimeoutException("Timeout waiting for connection");
+                    try {
+                        rospl.queueThread(waitingThread);
+                        this.waitingThreads.add(waitingThread);
+                        boolean success = waitingThread.await(date);
+                        if (!(success || date == null || date.getTime() > System.currentTimeMillis())) {
+                            throw new ConnectionPoolTimeoutException("Timeout waiting for connection");
+                        }
+                    } finally {
+                        rospl.removeThread(waitingThread);
+                        this.waitingThreads.remove(waitingThread);
                     }
                 } else {
                     deleteLeastUsedEntry();
                     entry = createEntry(rospl, this.operator);
                 }
             }
-            this.poolLock.unlock();
+            this.leaseCount++;
             return entry;
-        } catch (Throwable th) {
+        } finally {
+            if (waitStart != 0) {
+                this.waitMillis += System.currentTimeMillis() - waitStart;
+            }
             this.poolLock.unlock();
         }
     }
@@ -188,7 +200,6 @@ public class ConnPoolByRoute extends AbstractConnPool {
                 this.numConnections--;
             }
             notifyWaitingThread(rospl);
-            this.poolLock.unlock();
         } finally {
             this.poolLock.unlock();
         }
@@ -197,9 +208,9 @@ public class ConnPoolByRoute extends AbstractConnPool {
     protected BasicPoolEntry getFreeEntry(RouteSpecificPool rospl, Object state) {
         BasicPoolEntry entry = null;
         this.poolLock.lock();
-        boolean done = false;
-        while (!done) {
-            try {
+        try {
+            boolean done = false;
+            while (!done) {
                 entry = rospl.allocEntry(state);
                 if (entry != null) {
                     if (this.log.isDebugEnabled()) {
@@ -216,6 +227,8 @@ public class ConnPoolByRoute extends AbstractConnPool {
                         closeConnection(entry.getConnection());
                         rospl.dropEntry();
                         this.numConnections--;
+                        this.evictionCount++;
+                        entry = null;
                     }
                 } else {
                     done = true;
@@ -223,12 +236,11 @@ public class ConnPoolByRoute extends AbstractConnPool {
                         this.log.debug("No free connections [" + rospl.getRoute() + "][" + state + "]");
                     }
                 }
-            } catch (Throwable th) {
-                this.poolLock.unlock();
             }
+            return entry;
+        } finally {
+            this.poolLock.unlock();
         }
-        this.poolLock.unlock();
-        return entry;
     }
 
     protected BasicPoolEntry createEntry(RouteSpecificPool rospl, ClientConnectionOperator op) {
@@ -268,16 +280,16 @@ public class ConnPoolByRoute extends AbstractConnPool {
     }
 
     protected void deleteLeastUsedEntry() {
+        this.poolLock.lock();
         try {
-            this.poolLock.lock();
-            BasicPoolEntry entry = (BasicPoolEntry) this.freeConnections.remove();
+            BasicPoolEntry entry = (BasicPoolEntry) this.freeConnections.poll();
             if (entry != null) {
                 deleteEntry(entry);
+                this.evictionCount++;
             } else if (this.log.isDebugEnabled()) {
                 this.log.debug("No free connection to delete.");
             }
-            this.poolLock.unlock();
-        } catch (Throwable th) {
+        } finally {
             this.poolLock.unlock();
         }
     }
@@ -297,38 +309,29 @@ public class ConnPoolByRoute extends AbstractConnPool {
         }
     }
 
-    /* JADX WARNING: Removed duplicated region for block: B:10:0x0040 A:{Catch:{ all -> 0x007d }} */
-    /* Code decompiled incorrectly, please refer to instructions dump. */
     protected void notifyWaitingThread(RouteSpecificPool rospl) {
         WaitingThread waitingThread = null;
         this.poolLock.lock();
-        if (rospl != null) {
-            try {
-                if (rospl.hasThread()) {
-                    if (this.log.isDebugEnabled()) {
-                        this.log.debug("Notifying thread waiting on pool [" + rospl.getRoute() + "]");
-                    }
-                    waitingThread = rospl.nextThread();
-                    if (waitingThread != null) {
-                        waitingThread.wakeup();
-                    }
-                    this.poolLock.unlock();
+        try {
+            if (rospl != null && rospl.hasThread()) {
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("Notifying thread waiting on pool [" + rospl.getRoute() + "]");
                 }
-            } catch (Throwable th) {
-                this.poolLock.unlock();
+                waitingThread = rospl.nextThread();
+            } else if (!this.waitingThreads.isEmpty()) {
+                if (this.log.isDebugEnabled()) {
+                    this.log.debug("Notifying thread waiting on any pool");
+                }
+                waitingThread = (WaitingThread) this.waitingThreads.remove();
+            } else if (this.log.isDebugEnabled()) {
+                this.log.debug("Notifying no-one, there are no waiting threads");
             }
-        }
-        if (!this.waitingThreads.isEmpty()) {
-            if (this.log.isDebugEnabled()) {
-                this.log.debug("Notifying thread waiting on any pool");
+            if (waitingThread != null) {
+                waitingThread.wakeup();
             }
-            waitingThread = (WaitingThread) this.waitingThreads.remove();
-        } else if (this.log.isDebugEnabled()) {
-            this.log.debug("Notifying no-one, there are no waiting threads");
-        }
-        if (waitingThread != null) {
+        } finally {
+            this.poolLock.unlock();
         }
-        this.poolLock.unlock();
     }
 
     public void deleteClosedConnections() {
@@ -340,6 +343,7 @@ public class ConnPoolByRoute extends AbstractConnPool {
                 if (!entry.getConnection().isOpen()) {
                     iter.remove();
                     deleteEntry(entry);
+                    this.evictionCount++;
                 }
             }
         } finally {
@@ -364,8 +368,17 @@ public class ConnPoolByRoute extends AbstractConnPool {
                 waiter.wakeup();
             }
             this.routeToPool.clear();
+            if (this.log.isDebugEnabled()) {
+                this.log.debug(getStatistics());
+            }
         } finally {
             this.poolLock.unlock();
         }
     }
+
+    private String getStatistics() {
+        long hitRate = this.leaseCount > 0 ? (this.reuseCount * 100) / this.leaseCount : 0;
+        long averageWait = this.waitCount > 0 ? this.waitMillis / this.waitCount : 0;
+        return "Pool statistics: leased " + this.leaseCount + ", reused " + this.reuseCount + " (" + hitRate + "%), waited " + this.waitCount + " (avg " + averageWait + " ms), evicted " + this.evictionCount;
+    }
 }